@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.runtime;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A list implementation that delegates to a provided add method to perform element validation and
+ * insertion into a random-access backing list.
+ */
+public final class CheckedList<E> extends AbstractList<E> implements RandomAccess {
+
+  private final List<E> list;
+  private final Consumer<E> add;
+
+  public CheckedList(List<E> list, Consumer<E> add) {
+    this.list = list;
+    this.add = add;
+  }
+
+  @Override
+  public int size() {
+    return list.size();
+  }
+
+  @Override
+  public E get(int index) {
+    return list.get(index);
+  }
+
+  @Override
+  public E set(int index, E element) {
+    add.accept(element);
+    return list.set(index, list.remove(list.size() - 1));
+  }
+
+  @Override
+  public void add(int index, E element) {
+    // Append to the end of the list with add, then move the inserted element
+    // to the desired location.
+    int endIndex = list.size();
+    add.accept(element);
+    if (index != endIndex) {
+      list.add(index, list.remove(endIndex));
+    }
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends E> elements) {
+    int oldSize = list.size();
+    for (E element : elements) {
+      add.accept(element);
+    }
+    return list.size() != oldSize;
+  }
+
+  @Override
+  public boolean addAll(int index, Collection<? extends E> elements) {
+    if (index < 0 || index > list.size()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + list.size());
+    }
+    // Append to the end of the list with add, then rotate the inserted elements
+    // into place in a single pass.
+    int oldSize = list.size();
+    addAll(elements);
+    int added = list.size() - oldSize;
+    if (added != 0 && index != oldSize) {
+      Collections.rotate(list.subList(index, list.size()), added);
+    }
+    return added != 0;
+  }
+
+  @Override
+  public E remove(int index) {
+    return list.remove(index);
+  }
+
+  @Override
+  public void clear() {
+    list.clear();
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    list.subList(fromIndex, toIndex).clear();
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super E> filter) {
+    return list.removeIf(filter);
+  }
+
+  @Override
+  public void replaceAll(UnaryOperator<E> operator) {
+    // Append the replacements to the end of the list with add, then drop the
+    // originals in a single pass; if add rejects one, drop the replacements.
+    int oldSize = list.size();
+    boolean replaced = false;
+    try {
+      for (int i = 0; i < oldSize; i++) {
+        add.accept(operator.apply(list.get(i)));
+      }
+      replaced = true;
+    } finally {
+      if (replaced) {
+        list.subList(0, oldSize).clear();
+      } else {
+        list.subList(oldSize, list.size()).clear();
+      }
+    }
+  }
+
+  @Override
+  public void sort(Comparator<? super E> comparator) {
+    list.sort(comparator);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.runtime;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A set implementation that delegates to a provided add method to perform element validation and
+ * insertion into a backing set.
+ */
+public final class CheckedSet<E> extends AbstractSet<E> {
+
+  private final Set<E> set;
+  private final Consumer<E> add;
+
+  public CheckedSet(Set<E> set, Consumer<E> add) {
+    this.set = set;
+    this.add = add;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return set.iterator();
+  }
+
+  @Override
+  public int size() {
+    return set.size();
+  }
+
+  @Override
+  public boolean contains(Object e) {
+    return set.contains(e);
+  }
+
+  @Override
+  public boolean add(E e) {
+    if (!set.contains(e)) {
+      add.accept(e);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public boolean remove(Object e) {
+    return set.remove(e);
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> elements) {
+    return set.removeAll(elements);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> elements) {
+    return set.retainAll(elements);
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super E> filter) {
+    return set.removeIf(filter);
+  }
+
+  @Override
+  public void clear() {
+    set.clear();
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.runtime;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Static helper methods shared by builders generated without Guava, in place of each declaring its
+ * own private copy.
+ */
+public final class FreeBuilderCollections {
+
+  /** Returns an unmodifiable copy of {@code elements}, which must not contain null. */
+  @SuppressWarnings("unchecked")
+  public static <E> List<E> immutableList(List<E> elements) {
+    switch (elements.size()) {
+    case 0:
+      return Collections.emptyList();
+    case 1:
+      return Collections.singletonList(elements.get(0));
+    default:
+      return (List<E>)(List<?>) Collections.unmodifiableList(Arrays.asList(elements.toArray()));
+    }
+  }
+
+  /**
+   * Returns an unmodifiable copy of {@code elements}, or throws a NullPointerException if it
+   * contains a null element.
+   */
+  @SuppressWarnings("unchecked")
+  public static <E> List<E> immutableListCopy(Collection<? extends E> elements) {
+    Object[] array = elements.toArray();
+    for (Object element : array) {
+      if (element == null) {
+        throw new NullPointerException();
+      }
+    }
+    switch (array.length) {
+    case 0:
+      return Collections.emptyList();
+    case 1:
+      return Collections.singletonList((E) array[0]);
+    default:
+      return (List<E>)(List<?>) Collections.unmodifiableList(Arrays.asList(array));
+    }
+  }
+
+  /** Returns an unmodifiable copy of {@code elements}, which must not contain null. */
+  public static <E> Set<E> immutableSet(Set<E> elements) {
+    switch (elements.size()) {
+    case 0:
+      return Collections.emptySet();
+    case 1:
+      return Collections.singleton(elements.iterator().next());
+    default:
+      return Collections.unmodifiableSet(new LinkedHashSet<>(elements));
+    }
+  }
+
+  /**
+   * Returns an unmodifiable copy of {@code elements}, or throws a NullPointerException if it
+   * contains a null element.
+   */
+  public static <E> Set<E> immutableSetCopy(Collection<? extends E> elements) {
+    Set<E> copy = new LinkedHashSet<>(elements);
+    if (copy.contains(null)) {
+      throw new NullPointerException();
+    }
+    switch (copy.size()) {
+    case 0:
+      return Collections.emptySet();
+    case 1:
+      return Collections.singleton(copy.iterator().next());
+    default:
+      return Collections.unmodifiableSet(copy);
+    }
+  }
+
+  /** Returns an unmodifiable copy of {@code entries}, which must not contain null. */
+  public static <K, V> Map<K, V> immutableMap(Map<K, V> entries) {
+    switch (entries.size()) {
+    case 0:
+      return Collections.emptyMap();
+    case 1:
+      Map.Entry<K, V> entry = entries.entrySet().iterator().next();
+      return Collections.singletonMap(entry.getKey(), entry.getValue());
+    default:
+      return Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    }
+  }
+
+  /**
+   * Returns an unmodifiable copy of {@code entries}, or throws a NullPointerException if it
+   * contains a null key or value.
+   */
+  public static <K, V> Map<K, V> immutableMapCopy(Map<? extends K, ? extends V> entries) {
+    Map<K, V> copy = new LinkedHashMap<>(entries);
+    if (copy.containsKey(null) || copy.containsValue(null)) {
+      throw new NullPointerException();
+    }
+    switch (copy.size()) {
+    case 0:
+      return Collections.emptyMap();
+    case 1:
+      Map.Entry<K, V> entry = copy.entrySet().iterator().next();
+      return Collections.singletonMap(entry.getKey(), entry.getValue());
+    default:
+      return Collections.unmodifiableMap(copy);
+    }
+  }
+
+  /**
+   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it contains a
+   * null element.
+   */
+  @SuppressWarnings("unchecked")
+  public static <E> List<E> nonNullElements(Collection<? extends E> elements) {
+    Object[] array = elements.toArray();
+    for (Object element : array) {
+      if (element == null) {
+        throw new NullPointerException();
+      }
+    }
+    return (List<E>)(List<?>) Arrays.asList(array);
+  }
+
+  private FreeBuilderCollections() {}
+}
@@ -0,0 +1,13 @@
+package org.inferred.freebuilder;
+
+import java.util.List;
+import java.util.Map;
+
+@FreeBuilder
+public interface AggregateType {
+  String getName();
+  List<Integer> getSamples();
+  Map<String, Long> getCounters();
+
+  class Builder extends AggregateType_Builder {}
+}
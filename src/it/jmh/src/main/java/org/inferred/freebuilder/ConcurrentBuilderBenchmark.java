@@ -0,0 +1,70 @@
+package org.inferred.freebuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares many producer threads accumulating into one {@link AggregateType.Builder} guarded
+ * by a single lock against {@code AggregateType.Builder.ConcurrentBuilder}, whose writers take
+ * no lock at all.
+ *
+ * <p>Each group runs seven writer threads and one thread repeatedly building a snapshot.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Group)
+public class ConcurrentBuilderBenchmark {
+
+  private static final int KEYS = 64;
+
+  private AggregateType.Builder lockedBuilder;
+  private AggregateType.Builder.ConcurrentBuilder concurrentBuilder;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    lockedBuilder = new AggregateType.Builder().setName("benchmark");
+    concurrentBuilder = new AggregateType.Builder.ConcurrentBuilder().setName("benchmark");
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(7)
+  public void lockedWrite() {
+    int sample = ThreadLocalRandom.current().nextInt();
+    synchronized (lockedBuilder) {
+      lockedBuilder.addSamples(sample);
+      lockedBuilder.putCounters("key" + (sample & (KEYS - 1)), (long) sample);
+    }
+  }
+
+  @Benchmark
+  @Group("locked")
+  @GroupThreads(1)
+  public AggregateType lockedBuild() {
+    synchronized (lockedBuilder) {
+      return lockedBuilder.build();
+    }
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(7)
+  public void concurrentWrite() {
+    int sample = ThreadLocalRandom.current().nextInt();
+    concurrentBuilder.addSamples(sample);
+    concurrentBuilder.putCounters("key" + (sample & (KEYS - 1)), (long) sample);
+  }
+
+  @Benchmark
+  @Group("concurrent")
+  @GroupThreads(1)
+  public AggregateType concurrentBuild() {
+    return concurrentBuilder.build();
+  }
+}
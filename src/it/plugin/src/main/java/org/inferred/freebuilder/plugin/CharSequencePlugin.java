@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.plugin;
+
+import org.inferred.freebuilder.processor.PropertyCodeGenerator;
+import org.inferred.freebuilder.processor.PropertyCodeGeneratorPlugin;
+import org.inferred.freebuilder.shaded.com.google.common.base.Optional;
+import org.inferred.freebuilder.shaded.com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * Stores {@code CharSequence} properties as strings, so a builder does not hold on to a caller's
+ * mutable {@code StringBuilder}.
+ *
+ * <p>Compiled against the shaded freebuilder jar, so {@link #create} returns FreeBuilder's
+ * relocated Guava {@code Optional}.
+ */
+public class CharSequencePlugin implements PropertyCodeGeneratorPlugin {
+
+  @Override
+  public Set<String> getPropertyTypes() {
+    return ImmutableSet.of(CharSequence.class.getName());
+  }
+
+  @Override
+  public Optional<CharSequenceProperty> create(PropertyCodeGenerator.Config config) {
+    return Optional.of(new CharSequenceProperty(config.getMetadata(), config.getProperty()));
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.plugin;
+
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+
+import org.inferred.freebuilder.processor.Metadata;
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+/** {@link PropertyCodeGenerator} for {@code CharSequence} properties, defaulting to empty. */
+class CharSequenceProperty extends PropertyCodeGenerator {
+
+  CharSequenceProperty(Metadata metadata, Property property) {
+    super(metadata, property);
+  }
+
+  @Override
+  public void addBuilderFieldDeclaration(SourceBuilder code) {
+    code.addLine("private String %s = \"\";", property.getField());
+  }
+
+  @Override
+  public void addBuilderFieldAccessors(SourceBuilder code) {
+    code.addLine("")
+        .addLine("/** Sets the value to be returned by %s. */",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine("public %s set%s(CharSequence %s) {",
+            metadata.getBuilder(), property.getCapitalizedName(), property.getName());
+    Block body = methodBody(code, property.getName())
+        .addLine("  %s = %s.toString();", property.getField(), property.getName())
+        .addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
+        .addLine("}")
+        .addLine("")
+        .addLine("/** Returns the value that will be returned by %s. */",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine("public String get%s() {", property.getCapitalizedName())
+        .addLine("  return %s;", property.getField())
+        .addLine("}");
+  }
+
+  @Override
+  public void addFinalFieldAssignment(SourceBuilder code, Excerpt finalField, String builder) {
+    code.addLine("%s = %s;", finalField, property.getField().on(builder));
+  }
+
+  @Override
+  public void addMergeFromValue(Block code, String value) {
+    code.addLine("set%s(%s.%s());",
+        property.getCapitalizedName(), value, property.getGetterName());
+  }
+
+  @Override
+  public void addMergeFromBuilder(Block code, String builder) {
+    code.addLine("set%s(%s.get%s());",
+        property.getCapitalizedName(), builder, property.getCapitalizedName());
+  }
+
+  @Override
+  public void addSetFromResult(SourceBuilder code, Excerpt builder, Excerpt variable) {
+    code.addLine("%s.set%s(%s);", builder, property.getCapitalizedName(), variable);
+  }
+
+  @Override
+  public void addClearField(Block code) {
+    code.addLine("%s = \"\";", property.getField());
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.inferred.freebuilder.processor.PropertyCodeGenerator;
+import org.inferred.freebuilder.processor.PropertyCodeGeneratorPlugin;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+@RunWith(JUnit4.class)
+public class CharSequencePluginTest {
+
+  @Test
+  public void pluginIsLoadedFromShadedJar() throws NoSuchMethodException {
+    List<Class<?>> plugins = new ArrayList<Class<?>>();
+    for (PropertyCodeGeneratorPlugin plugin : ServiceLoader.load(
+        PropertyCodeGeneratorPlugin.class, PropertyCodeGeneratorPlugin.class.getClassLoader())) {
+      plugins.add(plugin.getClass());
+    }
+    assertTrue(plugins.contains(CharSequencePlugin.class));
+    assertEquals(
+        "org.inferred.freebuilder.shaded.com.google.common.base.Optional",
+        PropertyCodeGenerator.Factory.class
+            .getMethod("create", PropertyCodeGenerator.Config.class)
+            .getReturnType()
+            .getName());
+  }
+
+  @Test
+  public void builderUsesPluginProperty() {
+    StringBuilder text = new StringBuilder("Hello");
+    Message.Builder builder = new Message.Builder();
+    assertEquals("", builder.getText());
+
+    Message message = builder.setText(text).build();
+    text.append(", world");
+
+    assertEquals("Hello", message.getText());
+  }
+
+  @Test
+  public void mergeFromCopiesPluginProperty() {
+    Message message = new Message.Builder().setText("Hello").build();
+
+    Message copy = new Message.Builder().mergeFrom(message).build();
+
+    assertEquals("Hello", copy.getText());
+    assertEquals(message, copy);
+  }
+}
@@ -19,15 +19,23 @@ import static com.google.common.base.Functions.toStringFunction;
 import static com.google.common.base.Objects.equal;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.any;
+import static com.google.common.collect.Iterables.getOnlyElement;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Iterables.tryFind;
 import static com.google.common.collect.Maps.newLinkedHashMap;
 import static javax.lang.model.element.ElementKind.INTERFACE;
 import static javax.lang.model.util.ElementFilter.constructorsIn;
+import static javax.lang.model.util.ElementFilter.methodsIn;
 import static javax.lang.model.util.ElementFilter.typesIn;
 import static javax.tools.Diagnostic.Kind.ERROR;
 import static javax.tools.Diagnostic.Kind.NOTE;
 import static org.inferred.freebuilder.processor.BuilderFactory.NO_ARGS_CONSTRUCTOR;
+import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.putAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.setter;
+import static org.inferred.freebuilder.processor.BuilderMethods.witherMethod;
 import static org.inferred.freebuilder.processor.GwtSupport.gwtMetadata;
 import static org.inferred.freebuilder.processor.naming.NamingConventions.determineNamingConvention;
 import static org.inferred.freebuilder.processor.util.MethodFinder.methodsOn;
@@ -35,6 +43,7 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.asElement;
 import static org.inferred.freebuilder.processor.util.ModelUtils.getReturnType;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeType;
+import static org.inferred.freebuilder.processor.util.feature.BinaryCodec.BINARY_CODEC;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
@@ -52,8 +61,12 @@ import org.inferred.freebuilder.processor.util.MethodFinder.ErrorTypeHandling;
 import org.inferred.freebuilder.processor.util.ModelUtils;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +74,7 @@ import java.util.Set;
 
 import javax.annotation.processing.Messager;
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
@@ -71,12 +85,14 @@ import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ErrorType;
+import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.PrimitiveType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.WildcardType;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.SimpleTypeVisitor6;
 import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
 
 /**
  * Analyses a {@link org.inferred.freebuilder.FreeBuilder FreeBuilder}
@@ -96,23 +112,6 @@ class Analyser {
    */
   public static class CannotGenerateCodeException extends Exception { }
 
-  /**
-   * Factories of {@link PropertyCodeGenerator} instances. Note: order is important; the default
-   * factory should always be last.
-   */
-  private static final List<PropertyCodeGenerator.Factory> PROPERTY_FACTORIES = ImmutableList.of(
-      new NullableProperty.Factory(), // Must be first, as no other factory supports nulls
-      new ListProperty.Factory(),
-      new SetProperty.Factory(),
-      new SortedSetProperty.Factory(),
-      new MapProperty.Factory(),
-      new MultisetProperty.Factory(),
-      new ListMultimapProperty.Factory(),
-      new SetMultimapProperty.Factory(),
-      new OptionalProperty.Factory(),
-      new BuildableProperty.Factory(),
-      new DefaultProperty.Factory()); // Must be last, as it will always return a CodeGenerator
-
   private static final String BUILDER_SIMPLE_NAME_TEMPLATE = "%s_Builder";
   private static final String USER_BUILDER_NAME = "Builder";
 
@@ -128,13 +127,56 @@ class Analyser {
   private final Messager messager;
   private final MethodIntrospector methodIntrospector;
   private final Types types;
+  private final PropertyFactories propertyFactories;
+  private final FeatureSet features;
+  /** Whether each {@code @FreeBuilder} type seen so far has, or will get, a binary codec. */
+  private final Map<QualifiedName, Boolean> binaryCodecs;
 
   Analyser(
       Elements elements, Messager messager, MethodIntrospector methodIntrospector, Types types) {
+    this(elements, messager, methodIntrospector, types, PropertyFactories.builtIn());
+  }
+
+  Analyser(
+      Elements elements,
+      Messager messager,
+      MethodIntrospector methodIntrospector,
+      Types types,
+      PropertyFactories propertyFactories) {
+    this(elements, messager, methodIntrospector, types, propertyFactories, new StaticFeatureSet());
+  }
+
+  Analyser(
+      Elements elements,
+      Messager messager,
+      MethodIntrospector methodIntrospector,
+      Types types,
+      PropertyFactories propertyFactories,
+      FeatureSet features) {
+    this(elements,
+        messager,
+        methodIntrospector,
+        types,
+        propertyFactories,
+        features,
+        new HashMap<QualifiedName, Boolean>());
+  }
+
+  private Analyser(
+      Elements elements,
+      Messager messager,
+      MethodIntrospector methodIntrospector,
+      Types types,
+      PropertyFactories propertyFactories,
+      FeatureSet features,
+      Map<QualifiedName, Boolean> binaryCodecs) {
     this.elements = elements;
     this.messager = messager;
     this.methodIntrospector = methodIntrospector;
     this.types = types;
+    this.propertyFactories = propertyFactories;
+    this.features = features;
+    this.binaryCodecs = binaryCodecs;
   }
 
   /**
@@ -154,8 +196,11 @@ class Analyser {
     QualifiedName partialType = generatedBuilder.nestedType("Partial");
     QualifiedName propertyType = generatedBuilder.nestedType("Property");
     List<? extends TypeParameterElement> typeParameters = type.getTypeParameters();
-    Map<ExecutableElement, Property> properties =
-        findProperties(type, removeNonGetterMethods(builder, methods));
+    Optional<JacksonSupport> jacksonSupport = JacksonSupport.create(type, features);
+    Map<ExecutableElement, Property> properties = addWitherData(
+        type,
+        findProperties(type, removeNonGetterMethods(type, builder, methods), jacksonSupport),
+        methods);
     Metadata.Builder metadataBuilder = new Metadata.Builder()
         .setType(QualifiedName.of(type).withParameters(typeParameters))
         .setInterfaceType(type.getKind().isInterface())
@@ -172,17 +217,34 @@ class Analyser {
         .setHasToBuilderMethod(hasToBuilderMethod(
             builder, constructionAndExtension.isExtensible(), methods))
         .setBuilderSerializable(shouldBuilderBeSerializable(builder))
+        .setBuilderCustomized(isBuilderCustomized(builder, properties.values()))
+        .setValueSerializable(isSerializable(type))
         .addAllProperties(properties.values());
     if (builder.isPresent()) {
       metadataBuilder.setBuilder(ParameterizedType.from(builder.get()));
     }
     Metadata baseMetadata = metadataBuilder.build();
     metadataBuilder.mergeFrom(gwtMetadata(type, baseMetadata));
+    if (jacksonSupport.isPresent()) {
+      metadataBuilder.mergeFrom(jacksonSupport.get().jacksonMetadata(type, builder, baseMetadata));
+    }
     if (builder.isPresent()) {
       metadataBuilder
           .clearProperties()
           .addAllProperties(codeGenerators(properties, baseMetadata, builder.get()));
     }
+    if (builder.isPresent() && features.get(BINARY_CODEC).isEnabled()) {
+      QualifiedName name = QualifiedName.of(type);
+      if (!Boolean.FALSE.equals(binaryCodecs.get(name))) {
+        binaryCodecs.put(name, false);  // Until proven otherwise, in case the type contains itself
+        Optional<Metadata.Builder> codec = BinaryCodecSupport.binaryCodecMetadata(
+            metadataBuilder.build(), new HasBinaryCodec());
+        binaryCodecs.put(name, codec.isPresent());
+        if (codec.isPresent()) {
+          metadataBuilder.mergeFrom(codec.get());
+        }
+      }
+    }
     return metadataBuilder.build();
   }
 
@@ -350,14 +412,28 @@ class Analyser {
           && types.isSameType(method.getReturnType(), declaredType));
   }
 
+  /**
+   * Returns true if {@code method} looks like a wither: an abstract method named withX, taking a
+   * single parameter and returning the value type.
+   */
+  private boolean isWitherMethod(TypeElement type, ExecutableElement method) {
+    String name = method.getSimpleName().toString();
+    return name.startsWith("with")
+        && name.length() > "with".length()
+        && method.getModifiers().contains(Modifier.ABSTRACT)
+        && method.getParameters().size() == 1
+        && types.isSameType(getReturnType(type, method, types), type.asType());
+  }
+
   private Set<ExecutableElement> removeNonGetterMethods(
-      Optional<DeclaredType> builder, Iterable<ExecutableElement> methods) {
+      TypeElement type, Optional<DeclaredType> builder, Iterable<ExecutableElement> methods) {
     ImmutableSet.Builder<ExecutableElement> nonUnderriddenMethods = ImmutableSet.builder();
     for (ExecutableElement method : methods) {
       boolean isAbstract = method.getModifiers().contains(Modifier.ABSTRACT);
       boolean isStandardMethod = maybeStandardMethod(method).isPresent();
       boolean isToBuilderMethod = builder.isPresent() && isToBuilderMethod(builder.get(), method);
-      if (isAbstract && !isStandardMethod && !isToBuilderMethod) {
+      boolean isWitherMethod = isWitherMethod(type, method);
+      if (isAbstract && !isStandardMethod && !isToBuilderMethod && !isWitherMethod) {
         nonUnderriddenMethods.add(method);
       }
     }
@@ -450,10 +526,11 @@ class Analyser {
   }
 
   private Map<ExecutableElement, Property> findProperties(
-      TypeElement type, Iterable<ExecutableElement> methods) {
+      TypeElement type,
+      Iterable<ExecutableElement> methods,
+      Optional<JacksonSupport> jacksonSupport) {
     NamingConvention namingConvention = determineNamingConvention(type, methods, messager, types);
     Map<ExecutableElement, Property> propertiesByMethod = newLinkedHashMap();
-    Optional<JacksonSupport> jacksonSupport = JacksonSupport.create(type);
     for (ExecutableElement method : methods) {
       Property.Builder propertyBuilder = namingConvention.getPropertyNames(type, method).orNull();
       if (propertyBuilder != null) {
@@ -464,6 +541,47 @@ class Analyser {
     return propertiesByMethod;
   }
 
+  /**
+   * Marks each property with a matching {@code withX} method declared on {@code type}, and issues
+   * an error for any wither that does not match a property.
+   */
+  private Map<ExecutableElement, Property> addWitherData(
+      TypeElement type,
+      Map<ExecutableElement, Property> properties,
+      Iterable<ExecutableElement> methods) {
+    Map<String, ExecutableElement> withers = new LinkedHashMap<String, ExecutableElement>();
+    for (ExecutableElement method : methods) {
+      if (isWitherMethod(type, method)) {
+        withers.put(method.getSimpleName().toString(), method);
+      }
+    }
+    if (withers.isEmpty()) {
+      return properties;
+    }
+    Map<ExecutableElement, Property> result = newLinkedHashMap();
+    for (Map.Entry<ExecutableElement, Property> entry : properties.entrySet()) {
+      Property property = entry.getValue();
+      ExecutableElement wither = withers.remove(witherMethod(property));
+      if (wither != null) {
+        ExecutableType witherType =
+            (ExecutableType) types.asMemberOf((DeclaredType) type.asType(), wither);
+        if (types.isSameType(getOnlyElement(witherType.getParameterTypes()), property.getType())) {
+          property = property.toBuilder().setWitherDeclared(true).build();
+        } else {
+          messager.printMessage(ERROR,
+              "Parameter of " + wither.getSimpleName() + " must match the type of property "
+                  + property.getName(),
+              wither);
+        }
+      }
+      result.put(entry.getKey(), property);
+    }
+    for (ExecutableElement wither : withers.values()) {
+      messager.printMessage(ERROR, "No property found for wither method", wither);
+    }
+    return result;
+  }
+
   private List<Property> codeGenerators(
       Map<ExecutableElement, Property> properties,
       Metadata metadata,
@@ -480,7 +598,7 @@ class Analyser {
           methodsInvokedInBuilderConstructor);
       codeGenerators.add(new Property.Builder()
           .mergeFrom(entry.getValue())
-          .setCodeGenerator(createCodeGenerator(config))
+          .setCodeGenerator(propertyFactories.create(config))
           .build());
     }
     return codeGenerators.build();
@@ -522,16 +640,6 @@ class Analyser {
     }
   }
 
-  private static PropertyCodeGenerator createCodeGenerator(Config config) {
-    for (PropertyCodeGenerator.Factory factory : PROPERTY_FACTORIES) {
-      Optional<? extends PropertyCodeGenerator> codeGenerator = factory.create(config);
-      if (codeGenerator.isPresent()) {
-        return codeGenerator.get();
-      }
-    }
-    throw new AssertionError("DefaultPropertyFactory not registered");
-  }
-
   private class ConfigImpl implements Config {
 
     private final DeclaredType builder;
@@ -656,6 +764,43 @@ class Analyser {
     return any(asElement(builder.get()).getInterfaces(), isEqualTo(Serializable.class));
   }
 
+  private boolean isSerializable(TypeElement type) {
+    TypeMirror serializable = elements.getTypeElement(Serializable.class.getName()).asType();
+    return types.isAssignable(types.erasure(type.asType()), serializable);
+  }
+
+  /**
+   * Returns whether the user's builder overrides {@code build()} or a method that sets a property,
+   * e.g. to validate its argument.
+   */
+  private static boolean isBuilderCustomized(
+      Optional<DeclaredType> builder, Iterable<Property> properties) {
+    if (!builder.isPresent()) {
+      return false;
+    }
+    Set<String> mutators = new HashSet<String>();
+    for (Property property : properties) {
+      mutators.add(setter(property));
+      mutators.add(addMethod(property));
+      mutators.add(addAllMethod(property));
+      mutators.add(putMethod(property));
+      mutators.add(putAllMethod(property));
+    }
+    for (ExecutableElement method : methodsIn(asElement(builder.get()).getEnclosedElements())) {
+      String methodName = method.getSimpleName().toString();
+      if (method.getModifiers().contains(Modifier.STATIC)) {
+        continue;
+      }
+      if (methodName.equals("build") && method.getParameters().isEmpty()) {
+        return true;
+      }
+      if (mutators.contains(methodName) && !method.getParameters().isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Returns whether a method is one of the {@link StandardMethod}s, and if so, which. */
   private static Optional<StandardMethod> maybeStandardMethod(ExecutableElement method) {
     String methodName = method.getSimpleName().toString();
@@ -742,4 +887,68 @@ class Analyser {
       }
     };
   }
+
+  /**
+   * Whether another {@code @FreeBuilder} type has, or will get, a binary codec. A type compiled
+   * earlier has one if its generated builder declares it; a type in this compilation is analysed
+   * quietly, as it will be when its own builder is generated. Types that contain themselves,
+   * directly or through other types, are assumed not to.
+   */
+  private class HasBinaryCodec implements Predicate<TypeElement> {
+    @Override
+    public boolean apply(TypeElement type) {
+      QualifiedName name = QualifiedName.of(type);
+      if (!binaryCodecs.containsKey(name)) {
+        TypeElement generatedBuilder = elements.getTypeElement(
+            elements.getPackageOf(type).getQualifiedName() + "."
+                + generatedBuilderSimpleName(type));
+        if (generatedBuilder != null) {
+          boolean hasCodec = false;
+          for (TypeElement nestedType : typesIn(generatedBuilder.getEnclosedElements())) {
+            hasCodec |= nestedType.getSimpleName().contentEquals(BinaryCodecSupport.CODEC);
+          }
+          binaryCodecs.put(name, hasCodec);
+        } else {
+          Analyser quietAnalyser = new Analyser(
+              elements,
+              new QuietMessager(),
+              methodIntrospector,
+              types,
+              propertyFactories,
+              features,
+              binaryCodecs);
+          try {
+            quietAnalyser.analyse(type);
+          } catch (CannotGenerateCodeException e) {
+            // Leaves the type without a codec
+          }
+          if (!binaryCodecs.containsKey(name)) {
+            binaryCodecs.put(name, false);
+          }
+        }
+      }
+      return binaryCodecs.get(name);
+    }
+  }
+
+  /** Discards every message, for types analysed only to inspect their metadata. */
+  private static class QuietMessager implements Messager {
+    @Override
+    public void printMessage(Diagnostic.Kind kind, CharSequence msg) {}
+
+    @Override
+    public void printMessage(Diagnostic.Kind kind, CharSequence msg, Element e) {}
+
+    @Override
+    public void printMessage(
+        Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a) {}
+
+    @Override
+    public void printMessage(
+        Diagnostic.Kind kind,
+        CharSequence msg,
+        Element e,
+        AnnotationMirror a,
+        AnnotationValue v) {}
+  }
 }
@@ -0,0 +1,978 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.witherMethod;
+import static org.inferred.freebuilder.processor.Metadata.UnderrideLevel.ABSENT;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.Metadata.StandardMethod;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.ValueType;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Generates the optional {@code Value_BinaryCodec} nested in a generated builder.
+ *
+ * <p>The layout is a sequence of tagged fields, in the style of protocol buffers, ended by a zero
+ * tag. A property's tag combines its position in {@link Metadata#getProperties()}, starting at
+ * 1, with a wire type that says how to skip its value, so readers can ignore fields they do not
+ * know, and properties can be appended to a type without invalidating data already written.
+ */
+class BinaryCodecSupport {
+
+  static final String CODEC = "Value_BinaryCodec";
+
+  /** Wire types, as named in the generated code, by value. */
+  private static final int VARINT = 0;
+  private static final int FIXED64 = 1;
+  private static final int BYTES = 2;
+  private static final int MESSAGE = 3;
+  private static final int LIST = 4;
+  private static final int FIXED32 = 5;
+  private static final int MAP = 6;
+  private static final List<String> WIRE_TYPES = ImmutableList.of(
+      "WIRE_VARINT",
+      "WIRE_FIXED64",
+      "WIRE_BYTES",
+      "WIRE_MESSAGE",
+      "WIRE_LIST",
+      "WIRE_FIXED32",
+      "WIRE_MAP");
+
+  /** How a single value is written and read back. */
+  private enum Encoding {
+    BOOLEAN(VARINT, "writeVarint(out, %s ? 1 : 0)", "readVarint(in) != 0"),
+    BYTE(VARINT, "writeSigned(out, %s)", "(byte) readSigned(in)"),
+    SHORT(VARINT, "writeSigned(out, %s)", "(short) readSigned(in)"),
+    INT(VARINT, "writeSigned(out, %s)", "(int) readSigned(in)"),
+    LONG(VARINT, "writeSigned(out, %s)", "readSigned(in)"),
+    CHAR(VARINT, "writeVarint(out, %s)", "(char) readVarint(in)"),
+    FLOAT(FIXED32, "out.writeFloat(%s)", "in.readFloat()"),
+    DOUBLE(FIXED64, "out.writeDouble(%s)", "in.readDouble()"),
+    STRING(BYTES, "writeString(out, %s)", "readString(in)"),
+    ENUM(BYTES, "writeString(out, %s.name())", "readEnum(in, %s.class)"),
+    NESTED(MESSAGE, "%2$s.writeTo(%1$s, out)", "%s.readFrom(in)");
+
+    final int wireType;
+    final String writeFormat;
+    final String readFormat;
+
+    Encoding(int wireType, String writeFormat, String readFormat) {
+      this.wireType = wireType;
+      this.writeFormat = writeFormat;
+      this.readFormat = readFormat;
+    }
+  }
+
+  private static final Map<String, Encoding> ENCODINGS = ImmutableMap.<String, Encoding>builder()
+      .put("boolean", Encoding.BOOLEAN)
+      .put("byte", Encoding.BYTE)
+      .put("short", Encoding.SHORT)
+      .put("int", Encoding.INT)
+      .put("long", Encoding.LONG)
+      .put("char", Encoding.CHAR)
+      .put("float", Encoding.FLOAT)
+      .put("double", Encoding.DOUBLE)
+      .put(Boolean.class.getName(), Encoding.BOOLEAN)
+      .put(Byte.class.getName(), Encoding.BYTE)
+      .put(Short.class.getName(), Encoding.SHORT)
+      .put(Integer.class.getName(), Encoding.INT)
+      .put(Long.class.getName(), Encoding.LONG)
+      .put(Character.class.getName(), Encoding.CHAR)
+      .put(Float.class.getName(), Encoding.FLOAT)
+      .put(Double.class.getName(), Encoding.DOUBLE)
+      .put(String.class.getName(), Encoding.STRING)
+      .build();
+
+  /**
+   * An encoding for values of a particular type. The type is referenced by the generated code if
+   * it is an enum, or a nested type with a codec of its own.
+   */
+  private static final class Leaf {
+    private final Encoding encoding;
+    private final Optional<Object> type;
+
+    Leaf(Encoding encoding) {
+      this.encoding = encoding;
+      this.type = Optional.absent();
+    }
+
+    Leaf(Encoding encoding, Object type) {
+      this.encoding = encoding;
+      this.type = Optional.of(type);
+    }
+
+    String wireType() {
+      return WIRE_TYPES.get(encoding.wireType);
+    }
+
+    Excerpt write(Excerpt value) {
+      return type.isPresent()
+          ? Excerpts.add(encoding.writeFormat, value, type.get())
+          : Excerpts.add(encoding.writeFormat, value);
+    }
+
+    Excerpt read() {
+      return type.isPresent()
+          ? Excerpts.add(encoding.readFormat, type.get())
+          : Excerpts.add(encoding.readFormat);
+    }
+  }
+
+  /**
+   * Returns how values of {@code type} are encoded, or absent if they cannot be. Other
+   * {@code @FreeBuilder} types are encoded with their own codec if they are in the same package,
+   * have no type parameters, and {@code hasCodec} confirms the codec exists.
+   */
+  private static Optional<Leaf> leaf(
+      TypeMirror type, Metadata metadata, Predicate<TypeElement> hasCodec) {
+    Optional<TypeElement> element = maybeAsTypeElement(type);
+    String name = element.isPresent()
+        ? element.get().getQualifiedName().toString()
+        : type.toString();
+    if (ENCODINGS.containsKey(name)) {
+      return Optional.of(new Leaf(ENCODINGS.get(name)));
+    } else if (!element.isPresent()) {
+      return Optional.absent();
+    } else if (element.get().getKind() == ElementKind.ENUM) {
+      return Optional.of(new Leaf(Encoding.ENUM, type));
+    } else if (findAnnotationMirror(element.get(), "org.inferred.freebuilder.FreeBuilder")
+            .isPresent()
+        && element.get().getTypeParameters().isEmpty()) {
+      QualifiedName nestedType = QualifiedName.of(element.get());
+      if (!nestedType.getPackage().equals(metadata.getType().getQualifiedName().getPackage())
+          || !hasCodec.apply(element.get())) {
+        return Optional.absent();
+      }
+      QualifiedName generatedBuilder = QualifiedName.of(
+          nestedType.getPackage(),
+          Joiner.on('_').join(nestedType.getSimpleNames()) + "_Builder");
+      return Optional.of(new Leaf(Encoding.NESTED, generatedBuilder.nestedType(CODEC)));
+    }
+    return Optional.absent();
+  }
+
+  /** The encodings of a property's value, or of its elements or keys and values. */
+  private static Optional<List<Leaf>> leaves(
+      Property property, Metadata metadata, Predicate<TypeElement> hasCodec) {
+    PropertyCodeGenerator generator = property.getCodeGenerator();
+    List<TypeMirror> types = generator.getJsonStreamingTypes();
+    if (types.isEmpty()) {
+      if (generator.getCollectorElementType().isPresent()) {
+        return Optional.absent();
+      }
+      types = ImmutableList.of(generator.getValueFieldType());
+    }
+    ImmutableList.Builder<Leaf> leaves = ImmutableList.builder();
+    for (TypeMirror type : types) {
+      Optional<Leaf> leaf = leaf(type, metadata, hasCodec);
+      if (!leaf.isPresent()) {
+        return Optional.absent();
+      }
+      leaves.add(leaf.get());
+    }
+    return Optional.<List<Leaf>>of(leaves.build());
+  }
+
+  /**
+   * Returns the metadata adding a {@code Value_BinaryCodec} to the generated builder, or absent
+   * if a property of {@code metadata} cannot be encoded. Properties holding another
+   * {@code @FreeBuilder} type are only encodable if {@code hasCodec} confirms that type has a
+   * codec of its own; the generated code would not compile otherwise.
+   */
+  static Optional<Metadata.Builder> binaryCodecMetadata(
+      Metadata metadata, final Predicate<TypeElement> hasCodec) {
+    if (metadata.getType().isParameterized() || !metadata.getBuilderFactory().isPresent()) {
+      return Optional.absent();
+    }
+    final Set<QualifiedName> nestedCodecs = new LinkedHashSet<QualifiedName>();
+    Predicate<TypeElement> recordingHasCodec = new Predicate<TypeElement>() {
+      @Override
+      public boolean apply(TypeElement type) {
+        if (!hasCodec.apply(type)) {
+          return false;
+        }
+        nestedCodecs.add(QualifiedName.of(type));
+        return true;
+      }
+    };
+    for (Property property : metadata.getProperties()) {
+      if (!leaves(property, metadata, recordingHasCodec).isPresent()) {
+        return Optional.absent();
+      }
+    }
+    QualifiedName generatedBuilder = metadata.getGeneratedBuilder().getQualifiedName();
+    return Optional.of(new Metadata.Builder()
+        .addNestedClasses(new ValueBinaryCodec(nestedCodecs))
+        .addVisibleNestedTypes(generatedBuilder.nestedType(CODEC)));
+  }
+
+  private static final class ValueBinaryCodec extends ValueType
+      implements Function<Metadata, Excerpt> {
+    private final ImmutableSet<QualifiedName> nestedCodecs;
+
+    ValueBinaryCodec(Set<QualifiedName> nestedCodecs) {
+      this.nestedCodecs = ImmutableSet.copyOf(nestedCodecs);
+    }
+
+    @Override
+    public Excerpt apply(Metadata metadata) {
+      return new ValueBinaryCodecExcerpt(metadata, nestedCodecs);
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("nestedCodecs", nestedCodecs);
+    }
+  }
+
+  private static final class ValueBinaryCodecExcerpt extends Excerpt {
+    private final Metadata metadata;
+    private final ImmutableSet<QualifiedName> nestedCodecs;
+
+    ValueBinaryCodecExcerpt(Metadata metadata, ImmutableSet<QualifiedName> nestedCodecs) {
+      this.metadata = metadata;
+      this.nestedCodecs = nestedCodecs;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      Predicate<TypeElement> hasCodec = new Predicate<TypeElement>() {
+        @Override
+        public boolean apply(TypeElement type) {
+          return nestedCodecs.contains(QualifiedName.of(type));
+        }
+      };
+      ImmutableMap.Builder<Property, List<Leaf>> leaves = ImmutableMap.builder();
+      for (Property property : metadata.getProperties()) {
+        leaves.put(property, leaves(property, metadata, hasCodec).get());
+      }
+      addBinaryCodec(code, metadata, leaves.build());
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("metadata", metadata);
+      fields.add("nestedCodecs", nestedCodecs);
+    }
+  }
+
+  private static void addBinaryCodec(
+      SourceBuilder code, Metadata metadata, Map<Property, List<Leaf>> leaves) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Compact binary codec for %s.", metadata.getType().javadocLink())
+        .addLine(" *")
+        .addLine(" * <p>Each property that is set, and not empty, is written as a varint tag")
+        .addLine(" * followed by its value, and a zero tag ends the value. A tag holds the")
+        .addLine(" * property's position in the type, starting at 1, shifted left 3 bits, and")
+        .addLine(" * the wire type of its value in the low 3 bits. Integral values are zig-zag")
+        .addLine(" * varints; floating-point values are fixed-width; strings and enum names are")
+        .addLine(" * length-prefixed UTF-8; collections and maps are prefixed with their size")
+        .addLine(" * and the wire types of their elements; and nested values are written")
+        .addLine(" * recursively. Unknown tags are skipped when reading, so properties may be")
+        .addLine(" * added to the end of the type without breaking data already written.")
+        .addLine(" */")
+        .addLine("public static final class %s {", CODEC)
+        .addLine("");
+    for (int i = 0; i < WIRE_TYPES.size(); i++) {
+      code.addLine("  private static final int %s = %s;", WIRE_TYPES.get(i), i);
+    }
+    for (Property property : metadata.getProperties()) {
+      code.addLine("  private static final int %s = (%s << 3) | %s;",
+          tag(property),
+          metadata.getProperties().indexOf(property) + 1,
+          wireType(property, leaves.get(property)));
+    }
+    code.add("  private static final int[] TAGS = { ");
+    String separator = "";
+    for (Property property : metadata.getProperties()) {
+      code.add("%s%s", separator, tag(property));
+      separator = ", ";
+    }
+    code.add(" };\n")
+        .addLine("  private static final %1$s UTF_8 = %1$s.forName(\"UTF-8\");", Charset.class);
+    addWriteTo(code, metadata, leaves);
+    addReadFrom(code, metadata, leaves);
+    addBufferMethods(code, metadata);
+    addView(code, metadata, leaves);
+    addHelpers(code);
+    code.addLine("")
+        .addLine("  private %s() {}", CODEC)
+        .addLine("}");
+  }
+
+  private static void addWriteTo(
+      SourceBuilder code, Metadata metadata, Map<Property, List<Leaf>> leaves) {
+    code.addLine("")
+        .addLine("  /** Writes {@code value} to {@code out}. */")
+        .addLine("  public static void writeTo(%s value, %s out) throws %s {",
+            metadata.getType(), DataOutput.class, IOException.class);
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      List<Leaf> propertyLeaves = leaves.get(property);
+      Excerpt getter = Excerpts.add("value.%s()", property.getGetterName());
+      List<TypeMirror> types = generator.getJsonStreamingTypes();
+      if (types.size() == 1) {
+        code.addLine("    if (!%s.isEmpty()) {", getter)
+            .addLine("      writeVarint(out, %s);", tag(property))
+            .addLine("      writeVarint(out, %s.size());", getter)
+            .addLine("      writeVarint(out, %s);", propertyLeaves.get(0).wireType())
+            .addLine("      for (%s element : %s) {", types.get(0), getter)
+            .addLine("        %s;", propertyLeaves.get(0).write(Excerpts.add("element")))
+            .addLine("      }")
+            .addLine("    }");
+      } else if (types.size() == 2) {
+        code.addLine("    if (!%s.isEmpty()) {", getter)
+            .addLine("      writeVarint(out, %s);", tag(property))
+            .addLine("      writeVarint(out, %s.size());", getter)
+            .addLine("      writeVarint(out, %s);", propertyLeaves.get(0).wireType())
+            .addLine("      writeVarint(out, %s);", propertyLeaves.get(1).wireType())
+            .addLine("      for (%s<%s, %s> entry : %s.entrySet()) {",
+                Map.Entry.class, types.get(0), types.get(1), getter)
+            .addLine("        %s;", propertyLeaves.get(0).write(Excerpts.add("entry.getKey()")))
+            .addLine("        %s;", propertyLeaves.get(1).write(Excerpts.add("entry.getValue()")))
+            .addLine("      }")
+            .addLine("    }");
+      } else if (generator.getType() == Type.OPTIONAL) {
+        Optional<Excerpt> presence = generator.getJsonPresenceCheck(getter);
+        code.addLine("    if (%s) {", presence.isPresent()
+                ? presence.get()
+                : Excerpts.add("%s != null", getter))
+            .addLine("      writeVarint(out, %s);", tag(property))
+            .addLine("      %s;", propertyLeaves.get(0).write(presence.isPresent()
+                ? Excerpts.add("%s.get()", getter)
+                : getter))
+            .addLine("    }");
+      } else {
+        code.addLine("    writeVarint(out, %s);", tag(property))
+            .addLine("    %s;", propertyLeaves.get(0).write(getter));
+      }
+    }
+    code.addLine("    out.writeByte(0);")
+        .addLine("  }");
+  }
+
+  private static void addReadFrom(
+      SourceBuilder code, Metadata metadata, Map<Property, List<Leaf>> leaves) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Reads a value written by {@link #writeTo(%s, %s)} from {@code in}.",
+            metadata.getType().getQualifiedName(), DataOutput.class)
+        .addLine("   *")
+        .addLine("   * @throws %s if {@code in} does not hold a well-formed value, or a",
+            IOException.class)
+        .addLine("   *     required property is missing")
+        .addLine("   */")
+        .addLine("  public static %s readFrom(%s in) throws %s {",
+            metadata.getType(), DataInput.class, IOException.class);
+    Block body = methodBody(code, "in");
+    Excerpt builder = body.declare(
+        Excerpts.add("%s", metadata.getBuilder()),
+        "builder",
+        metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
+    body.addLine("    for (int tag = readTag(in); tag != 0; tag = readTag(in)) {")
+        .addLine("      switch (tag) {");
+    for (Property property : metadata.getProperties()) {
+      body.addLine("        case %s:", tag(property));
+      addReadProperty(body, "          ", builder, property, leaves.get(property));
+      body.addLine("          break;");
+    }
+    body.addLine("        default:")
+        .addLine("          skip(in, tag & 7);")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("    try {")
+        .addLine("      return %s.build();", builder)
+        .addLine("    } catch (IllegalStateException e) {")
+        .addLine("      throw new %s(e.getMessage(), e);", IOException.class)
+        .addLine("    }");
+    code.add(body)
+        .addLine("  }");
+  }
+
+  /**
+   * Adds statements reading {@code property} from {@code in}, its tag already consumed, onto
+   * {@code builder}.
+   */
+  private static void addReadProperty(
+      Block body, String indent, Excerpt builder, Property property, List<Leaf> leaves) {
+    PropertyCodeGenerator generator = property.getCodeGenerator();
+    switch (generator.getJsonStreamingTypes().size()) {
+      case 0:
+        body.add(indent);
+        generator.addSetFromResult(body, builder, leaves.get(0).read());
+        break;
+      case 1:
+        body.addLine("%sfor (int i = 0, size = readSize(in, %s); i < size; i++) {",
+                indent, leaves.get(0).wireType())
+            .addLine("%s  %s;",
+                indent, generator.addToCollector(builder, leaves.get(0).read()).get())
+            .addLine("%s}", indent);
+        break;
+      default:
+        body.addLine("%sfor (int i = 0, size = readSize(in, %s, %s); i < size; i++) {",
+                indent, leaves.get(0).wireType(), leaves.get(1).wireType())
+            .addLine("%s  %s.%s(%s, %s);",
+                indent,
+                builder,
+                putMethod(property),
+                leaves.get(0).read(),
+                leaves.get(1).read())
+            .addLine("%s}", indent);
+        break;
+    }
+  }
+
+  private static void addBufferMethods(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Writes {@code value} to {@code buffer}, starting at its current position.")
+        .addLine("   *")
+        .addLine("   * @throws %s if {@code buffer} runs out of space",
+            BufferOverflowException.class)
+        .addLine("   */")
+        .addLine("  public static void writeTo(%s value, %s buffer) {",
+            metadata.getType(), ByteBuffer.class)
+        .addLine("    try {")
+        .addLine("      writeTo(value, new %s(new BufferOutput(buffer)));",
+            DataOutputStream.class)
+        .addLine("    } catch (%s e) {", IOException.class)
+        .addLine("      throw new AssertionError(e);")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Reads a value written by {@link #writeTo(%s, %s)} from {@code buffer},",
+            metadata.getType().getQualifiedName(), ByteBuffer.class)
+        .addLine("   * leaving its position just after the value.")
+        .addLine("   *")
+        .addLine("   * @throws %s if {@code buffer} does not hold a well-formed value, or a",
+            IOException.class)
+        .addLine("   *     required property is missing")
+        .addLine("   */")
+        .addLine("  public static %s readFrom(%s buffer) throws %s {",
+            metadata.getType(), ByteBuffer.class, IOException.class)
+        .addLine("    return readFrom(new %s(new BufferInput(buffer)));", DataInputStream.class)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static final class BufferOutput extends %s {", OutputStream.class)
+        .addLine("    private final %s buffer;", ByteBuffer.class)
+        .addLine("")
+        .addLine("    BufferOutput(%s buffer) {", ByteBuffer.class)
+        .addLine("      this.buffer = buffer;")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public void write(int b) {")
+        .addLine("      buffer.put((byte) b);")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public void write(byte[] b, int off, int len) {")
+        .addLine("      buffer.put(b, off, len);")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static final class BufferInput extends %s {", InputStream.class)
+        .addLine("    private final %s buffer;", ByteBuffer.class)
+        .addLine("")
+        .addLine("    BufferInput(%s buffer) {", ByteBuffer.class)
+        .addLine("      this.buffer = buffer;")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public int read() {")
+        .addLine("      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public int read(byte[] b, int off, int len) {")
+        .addLine("      if (len == 0) {")
+        .addLine("        return 0;")
+        .addLine("      } else if (!buffer.hasRemaining()) {")
+        .addLine("        return -1;")
+        .addLine("      }")
+        .addLine("      int count = Math.min(len, buffer.remaining());")
+        .addLine("      buffer.get(b, off, count);")
+        .addLine("      return count;")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public long skip(long n) {")
+        .addLine("      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));")
+        .addLine("      buffer.position(buffer.position() + count);")
+        .addLine("      return count;")
+        .addLine("    }")
+        .addLine("  }");
+  }
+
+  /**
+   * Adds code to the start of the value type's equals method replacing a {@code View} in
+   * {@code obj} with its decoded value, so views and built values are equal both ways round.
+   * Does nothing if {@code metadata} has no binary codec.
+   */
+  static void addUnwrapView(SourceBuilder code, Metadata metadata) {
+    QualifiedName codec = metadata.getGeneratedBuilder().getQualifiedName().nestedType(CODEC);
+    if (!metadata.getVisibleNestedTypes().contains(codec)) {
+      return;
+    }
+    QualifiedName view = codec.nestedType("View");
+    code.addLine("    if (obj instanceof %s) {", view)
+        .addLine("      obj = ((%s) obj).decodeAll();", view)
+        .addLine("    }");
+  }
+
+  /**
+   * Adds a {@code view(ByteBuffer)} method, and the read-only {@code View} implementation it
+   * returns, which finds each property's value in a single pass over the buffer, but only decodes
+   * it the first time its getter is called.
+   */
+  private static void addView(
+      SourceBuilder code, Metadata metadata, Map<Property, List<Leaf>> leaves) {
+    Excerpt newBuilder =
+        metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES);
+    Object unchecked = uncheckedIOException(code);
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns a read-only view of a value written by")
+        .addLine("   * {@link #writeTo(%s, %s)} to {@code buffer}, leaving its position just",
+            metadata.getType().getQualifiedName(), ByteBuffer.class)
+        .addLine("   * after the value. The value's bytes are scanned once to find where each")
+        .addLine("   * property starts, but a property is only decoded the first time its getter")
+        .addLine("   * is called, making this far cheaper than {@link #readFrom(%s)} when only a",
+            ByteBuffer.class)
+        .addLine("   * few properties will be read. Heap, direct and memory-mapped buffers are")
+        .addLine("   * all supported.")
+        .addLine("   *")
+        .addLine("   * <p>The view shares {@code buffer}'s content, which must not be modified")
+        .addLine("   * while the view is in use. Properties are decoded without going through")
+        .addLine("   * the builder, so any validation or normalization it performs is skipped.")
+        .addLine("   * Unless the type defines its own, a view's equals and hashCode methods")
+        .addLine("   * compare its decoded properties, so a view is equal to, and has the same")
+        .addLine("   * hash code as, an instance built normally with the same properties.")
+        .addLine("   *")
+        .addLine("   * <p>The value's structure is checked here, but each property's content is")
+        .addLine("   * only checked when decoded: if it is malformed, its getter throws")
+        .addLine("   * {@link %s}, wrapping the {@link %s}.", unchecked, IOException.class)
+        .addLine("   *")
+        .addLine("   * @throws %s if {@code buffer} does not hold a well-formed value, or a",
+            IOException.class)
+        .addLine("   *     required property is missing")
+        .addLine("   */")
+        .addLine("  public static %s view(%s buffer) throws %s {",
+            metadata.getType(), ByteBuffer.class, IOException.class)
+        .addLine("    %s bytes = buffer.slice();", ByteBuffer.class)
+        .addLine("    %1$s in = new %1$s(new BufferInput(bytes));", DataInputStream.class)
+        .addLine("    int[] offsets = new int[TAGS.length];")
+        .addLine("    %s.fill(offsets, -1);", Arrays.class)
+        .addLine("    for (int tag = readTag(in); tag != 0; tag = readTag(in)) {")
+        .addLine("      int index = (tag >>> 3) - 1;")
+        .addLine("      if (index >= 0 && index < TAGS.length && TAGS[index] == tag) {")
+        .addLine("        offsets[index] = bytes.position();")
+        .addLine("      }")
+        .addLine("      skip(in, tag & 7);")
+        .addLine("    }");
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator().getType() == Type.REQUIRED) {
+        code.addLine("    if (offsets[%s] < 0) {", metadata.getProperties().indexOf(property))
+            .addLine("      throw new %s(\"Not set: %s\");", IOException.class, property.getName())
+            .addLine("    }");
+      }
+    }
+    code.addLine("    bytes.flip();")
+        .addLine("    buffer.position(buffer.position() + bytes.limit());")
+        .addLine("    return new View(bytes, offsets);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static final class View %s {",
+            extending(metadata.getType(), metadata.isInterfaceType()))
+        .addLine("")
+        .addLine("    private final %s _bytes;", ByteBuffer.class)
+        .addLine("    private final int[] _offsets;");
+    for (Property property : metadata.getProperties()) {
+      code.addLine("    private %s %s;", cacheType(property), property.getField());
+    }
+    code.addLine("    private %s _decoded;", metadata.getType());
+    code.addLine("")
+        .addLine("    View(%s bytes, int[] offsets) {", ByteBuffer.class)
+        .addLine("      this._bytes = bytes;")
+        .addLine("      this._offsets = offsets;")
+        .addLine("    }");
+    for (Property property : metadata.getProperties()) {
+      addViewGetter(code, metadata, property, leaves.get(property), newBuilder, unchecked);
+    }
+    if (metadata.getHasToBuilderMethod()) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public %s toBuilder() {", metadata.getBuilder())
+          .addLine("      return %s.mergeFrom(this);", newBuilder)
+          .addLine("    }");
+    }
+    for (Property property : metadata.getProperties()) {
+      if (property.isWitherDeclared()) {
+        code.addLine("")
+            .addLine("    @%s", Override.class)
+            .add("    public %s %s(", metadata.getType(), witherMethod(property));
+        property.getCodeGenerator().addGetterAnnotations(code);
+        code.add("%s %s) {\n", property.getType(), property.getName())
+            .addLine("      return decodeAll().%s(%s);", witherMethod(property), property.getName())
+            .addLine("    }");
+      }
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.EQUALS) == ABSENT) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public boolean equals(Object obj) {")
+          .addLine("      if (obj instanceof View) {")
+          .addLine("        obj = ((View) obj).decodeAll();")
+          .addLine("      }")
+          .addLine("      return decodeAll().equals(obj);")
+          .addLine("    }");
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public int hashCode() {")
+          .addLine("      return decodeAll().hashCode();")
+          .addLine("    }");
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public String toString() {")
+          .addLine("      return decodeAll().toString();")
+          .addLine("    }");
+    }
+    code.addLine("")
+        .addLine("    /** Decodes and caches every property, as an instance built normally. */")
+        .addLine("    private %s decodeAll() {", metadata.getType())
+        .addLine("      %s value = _decoded;", metadata.getType())
+        .addLine("      if (value == null) {")
+        .addLine("        try {")
+        .addLine("          value = readFrom(_bytes.duplicate());")
+        .addLine("        } catch (%s e) {", IOException.class)
+        .addLine("          throw new %s(e.getMessage(), e);", unchecked)
+        .addLine("        }")
+        .addLine("        _decoded = value;")
+        .addLine("      }")
+        .addLine("      return value;")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    private %s input(int offset) {", DataInput.class)
+        .addLine("      %s buffer = _bytes.duplicate();", ByteBuffer.class)
+        .addLine("      buffer.position(offset);")
+        .addLine("      return new %s(new BufferInput(buffer));", DataInputStream.class)
+        .addLine("    }")
+        .addLine("  }");
+  }
+
+  /**
+   * Adds a getter to the {@code View} class that decodes and caches its property on first call.
+   * Single values are read directly from the buffer; everything else, including defaults for
+   * properties that were not written, is read onto a fresh builder and taken from
+   * {@code buildPartial()}, so views return exactly the collection and optional types a built
+   * value would.
+   */
+  private static void addViewGetter(
+      SourceBuilder code,
+      Metadata metadata,
+      Property property,
+      List<Leaf> leaves,
+      Excerpt newBuilder,
+      Object unchecked) {
+    PropertyCodeGenerator generator = property.getCodeGenerator();
+    int index = metadata.getProperties().indexOf(property);
+    boolean isNullable = generator.getType() == Type.OPTIONAL
+        && generator.getJsonStreamingTypes().isEmpty()
+        && !generator.getJsonPresenceCheck(Excerpts.add("value")).isPresent();
+    boolean readsDirectly = generator.getJsonStreamingTypes().isEmpty()
+        && (generator.getType() != Type.OPTIONAL || isNullable);
+    Excerpt builder = Excerpts.add("builder");
+    code.addLine("")
+        .addLine("    @%s", Override.class);
+    generator.addAccessorAnnotations(code);
+    generator.addGetterAnnotations(code);
+    code.addLine("    public %s %s() {", property.getType(), property.getGetterName())
+        .addLine("      %s value = %s;", cacheType(property), property.getField().on("this"))
+        .addLine("      if (value == null) {")
+        .addLine("        int offset = _offsets[%s];", index);
+    if (isNullable) {
+      code.addLine("        if (offset < 0) {")
+          .addLine("          return null;")
+          .addLine("        }");
+    }
+    String indent = "        ";
+    if (!isNullable && generator.getType() != Type.REQUIRED) {
+      code.addLine("        if (offset < 0) {")
+          .addLine("          value = %s.buildPartial().%s();",
+              newBuilder, property.getGetterName())
+          .addLine("        } else {");
+      indent = "          ";
+    }
+    code.addLine("%stry {", indent)
+        .addLine("%s  %s in = input(offset);", indent, DataInput.class);
+    if (readsDirectly) {
+      code.addLine("%s  value = %s;", indent, leaves.get(0).read());
+    } else {
+      Block body = methodBody(code);
+      body.addLine("%s  %s %s = %s;", indent, metadata.getBuilder(), builder, newBuilder);
+      addReadProperty(body, indent + "  ", builder, property, leaves);
+      body.addLine("%s  value = %s.buildPartial().%s();",
+          indent, builder, property.getGetterName());
+      code.add(body);
+    }
+    code.addLine("%s} catch (%s e) {", indent, IOException.class)
+        .addLine("%s  throw new %s(e.getMessage(), e);", indent, unchecked)
+        .addLine("%s}", indent);
+    if (!isNullable && generator.getType() != Type.REQUIRED) {
+      code.addLine("        }");
+    }
+    code.addLine("        %s = value;", property.getField().on("this"))
+        .addLine("      }")
+        .addLine("      return value;")
+        .addLine("    }");
+  }
+
+  /**
+   * Returns the unchecked exception a view's getters wrap decoding errors in: Java 8's
+   * {@code UncheckedIOException} where available, or a plain {@code RuntimeException}.
+   */
+  private static Object uncheckedIOException(SourceBuilder code) {
+    Optional<QualifiedName> unchecked = code.feature(SOURCE_LEVEL).uncheckedIOException();
+    return unchecked.isPresent() ? unchecked.get() : RuntimeException.class;
+  }
+
+  private static Object cacheType(Property property) {
+    return firstNonNull(property.getBoxedType(), property.getType());
+  }
+
+  private static void addHelpers(SourceBuilder code) {
+    code.addLine("")
+        .addLine("  private static void writeVarint(%s out, long value) throws %s {",
+            DataOutput.class, IOException.class)
+        .addLine("    while ((value & ~0x7FL) != 0) {")
+        .addLine("      out.writeByte(((int) value & 0x7F) | 0x80);")
+        .addLine("      value >>>= 7;")
+        .addLine("    }")
+        .addLine("    out.writeByte((int) value);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static void writeSigned(%s out, long value) throws %s {",
+            DataOutput.class, IOException.class)
+        .addLine("    writeVarint(out, (value << 1) ^ (value >> 63));")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static void writeString(%s out, String value) throws %s {",
+            DataOutput.class, IOException.class)
+        .addLine("    byte[] bytes = value.getBytes(UTF_8);")
+        .addLine("    writeVarint(out, bytes.length);")
+        .addLine("    out.write(bytes);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static long readVarint(%s in) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    long result = 0;")
+        .addLine("    for (int shift = 0; shift < 64; shift += 7) {")
+        .addLine("      byte b = in.readByte();")
+        .addLine("      result |= (long) (b & 0x7F) << shift;")
+        .addLine("      if ((b & 0x80) == 0) {")
+        .addLine("        return result;")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("    throw new %s(\"Malformed varint\");", IOException.class)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static long readSigned(%s in) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    long value = readVarint(in);")
+        .addLine("    return (value >>> 1) ^ -(value & 1);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static int readTag(%s in) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    long tag = readVarint(in);")
+        .addLine("    if (tag < 0 || tag > Integer.MAX_VALUE) {")
+        .addLine("      throw new %s(\"Malformed tag \" + tag);", IOException.class)
+        .addLine("    }")
+        .addLine("    return (int) tag;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static int readLength(%s in) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    long length = readVarint(in);")
+        .addLine("    if (length < 0 || length > Integer.MAX_VALUE) {")
+        .addLine("      throw new %s(\"Malformed length \" + length);", IOException.class)
+        .addLine("    }")
+        .addLine("    return (int) length;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Reads the size of a collection or map, and checks the wire types of its")
+        .addLine("   * elements, or keys and values, are {@code wireTypes}.")
+        .addLine("   */")
+        .addLine("  private static int readSize(%s in, int... wireTypes) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    int size = readLength(in);")
+        .addLine("    for (int wireType : wireTypes) {")
+        .addLine("      long actual = readVarint(in);")
+        .addLine("      if (actual != wireType) {")
+        .addLine("        throw new %s(", IOException.class)
+        .addLine("            \"Expected wire type \" + wireType + \" but found \" + actual);")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("    return size;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static String readString(%s in) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    byte[] bytes = new byte[readLength(in)];")
+        .addLine("    in.readFully(bytes);")
+        .addLine("    return new String(bytes, UTF_8);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static <E extends Enum<E>> E readEnum(%s in, Class<E> type)",
+            DataInput.class)
+        .addLine("      throws %s {", IOException.class)
+        .addLine("    String name = readString(in);")
+        .addLine("    try {")
+        .addLine("      return Enum.valueOf(type, name);")
+        .addLine("    } catch (IllegalArgumentException e) {")
+        .addLine("      throw new %s(\"Unknown \" + type.getSimpleName() + \" \" + name, e);",
+            IOException.class)
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private static void skipBytes(%s in, int length) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    while (length > 0) {")
+        .addLine("      int skipped = in.skipBytes(length);")
+        .addLine("      if (skipped > 0) {")
+        .addLine("        length -= skipped;")
+        .addLine("      } else {")
+        .addLine("        in.readByte();")
+        .addLine("        length--;")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /** Skips over a value of type {@code wireType}. */")
+        .addLine("  private static void skip(%s in, int wireType) throws %s {",
+            DataInput.class, IOException.class)
+        .addLine("    switch (wireType) {")
+        .addLine("      case WIRE_VARINT:")
+        .addLine("        readVarint(in);")
+        .addLine("        break;")
+        .addLine("      case WIRE_FIXED64:")
+        .addLine("        in.readLong();")
+        .addLine("        break;")
+        .addLine("      case WIRE_BYTES:")
+        .addLine("        skipBytes(in, readLength(in));")
+        .addLine("        break;")
+        .addLine("      case WIRE_MESSAGE:")
+        .addLine("        for (int tag = readTag(in); tag != 0; tag = readTag(in)) {")
+        .addLine("          skip(in, tag & 7);")
+        .addLine("        }")
+        .addLine("        break;")
+        .addLine("      case WIRE_LIST: {")
+        .addLine("        int size = readLength(in);")
+        .addLine("        int elementType = readLength(in);")
+        .addLine("        for (int i = 0; i < size; i++) {")
+        .addLine("          skip(in, elementType);")
+        .addLine("        }")
+        .addLine("        break;")
+        .addLine("      }")
+        .addLine("      case WIRE_FIXED32:")
+        .addLine("        in.readInt();")
+        .addLine("        break;")
+        .addLine("      case WIRE_MAP: {")
+        .addLine("        int size = readLength(in);")
+        .addLine("        int keyType = readLength(in);")
+        .addLine("        int valueType = readLength(in);")
+        .addLine("        for (int i = 0; i < size; i++) {")
+        .addLine("          skip(in, keyType);")
+        .addLine("          skip(in, valueType);")
+        .addLine("        }")
+        .addLine("        break;")
+        .addLine("      }")
+        .addLine("      default:")
+        .addLine("        throw new %s(\"Unknown wire type \" + wireType);", IOException.class)
+        .addLine("    }")
+        .addLine("  }");
+  }
+
+  /** Returns an {@link Excerpt} of "implements/extends {@code type}". */
+  private static Excerpt extending(Object type, boolean isInterface) {
+    return Excerpts.add(isInterface ? "implements %s" : "extends %s", type);
+  }
+
+  private static String tag(Property property) {
+    return property.getAllCapsName() + "_TAG";
+  }
+
+  private static String wireType(Property property, List<Leaf> leaves) {
+    switch (property.getCodeGenerator().getJsonStreamingTypes().size()) {
+      case 0:
+        return leaves.get(0).wireType();
+      case 1:
+        return WIRE_TYPES.get(LIST);
+      default:
+        return WIRE_TYPES.get(MAP);
+    }
+  }
+
+  private BinaryCodecSupport() {}
+}
@@ -28,6 +28,8 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.asElement;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
@@ -260,7 +262,7 @@ class BuildableProperty extends PropertyCodeGenerator {
 
   private void addMutate(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
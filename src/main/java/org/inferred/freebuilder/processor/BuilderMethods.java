@@ -81,5 +81,13 @@ public class BuilderMethods {
     return "clear" + property.getCapitalizedName();
   }
 
+  public static String witherMethod(Property property) {
+    return "with" + property.getCapitalizedName();
+  }
+
+  public static String collectorMethod(Property property) {
+    return property.getName() + "Collector";
+  }
+
   private BuilderMethods() {}
 }
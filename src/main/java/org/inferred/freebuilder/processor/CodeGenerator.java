@@ -19,15 +19,24 @@ import static com.google.common.collect.Iterables.any;
 import static com.google.common.collect.Iterables.getLast;
 import static com.google.common.collect.Iterables.getOnlyElement;
 import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.collectorMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.witherMethod;
 import static org.inferred.freebuilder.processor.Metadata.GET_CODE_GENERATOR;
 import static org.inferred.freebuilder.processor.Metadata.UnderrideLevel.ABSENT;
 import static org.inferred.freebuilder.processor.Metadata.UnderrideLevel.FINAL;
+import static org.inferred.freebuilder.processor.MethodSplitting.chunks;
 import static org.inferred.freebuilder.processor.util.Block.methodBody;
 import static org.inferred.freebuilder.processor.util.LazyName.addLazyDefinitions;
 import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
 import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
+import static org.inferred.freebuilder.processor.util.feature.BinaryCodec.BINARY_CODEC;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
+import static org.inferred.freebuilder.processor.util.feature.CollectorMethods.COLLECTORS;
 import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.PARTIALS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+import static org.inferred.freebuilder.processor.util.feature.StaticFactoryMethod.STATIC_FACTORY;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
@@ -41,6 +50,7 @@ import com.google.common.collect.Lists;
 import org.inferred.freebuilder.FreeBuilder;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.Metadata.StandardMethod;
+import org.inferred.freebuilder.processor.MethodSplitting.Cost;
 import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
@@ -48,12 +58,18 @@ import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.FieldAccess;
 import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
 import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
 
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.type.TypeKind;
 
 /**
  * Code generation for the &#64;{@link FreeBuilder} annotation.
@@ -62,6 +78,9 @@ public class CodeGenerator {
 
   static final FieldAccess UNSET_PROPERTIES = new FieldAccess("_unsetProperties");
 
+  /** The JVM allows 255 parameter slots per method, one of which a constructor needs for this. */
+  private static final int MAX_PARAMETER_SLOTS = 254;
+
   /** Write the source code for a generated builder. */
   void writeBuilderSource(SourceBuilder code, Metadata metadata) {
     if (!metadata.hasBuilder()) {
@@ -72,6 +91,8 @@ public class CodeGenerator {
     addBuilderTypeDeclaration(code, metadata);
     code.addLine(" {");
     addStaticFromMethod(code, metadata);
+    addStaticFactoryMethod(code, metadata);
+    addCollectorMethods(code, metadata);
     addConstantDeclarations(metadata, code);
     if (any(metadata.getProperties(), IS_REQUIRED)) {
       addPropertyEnum(metadata, code);
@@ -84,10 +105,18 @@ public class CodeGenerator {
     addMergeFromBuilderMethod(code, metadata);
     addClearMethod(code, metadata);
     addBuildMethod(code, metadata);
-    addBuildPartialMethod(code, metadata);
+    addBuildAndResetMethod(code, metadata);
+    if (hasPartialType(code)) {
+      addBuildPartialMethod(code, metadata);
+    }
 
     addValueType(code, metadata);
-    addPartialType(code, metadata);
+    if (hasPartialType(code)) {
+      addPartialType(code, metadata);
+    }
+    ConcurrentBuilderSupport.addConcurrentBuilder(code, metadata);
+    ColumnsSupport.addColumns(code, metadata);
+    DiagnosticsSupport.addDiagnostics(code, metadata);
     for (Function<Metadata, Excerpt> nestedClass : metadata.getNestedClasses()) {
       code.add(nestedClass.apply(metadata));
     }
@@ -128,6 +157,107 @@ public class CodeGenerator {
         .addLine("}");
   }
 
+  private static void addStaticFactoryMethod(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(STATIC_FACTORY).isEnabled()
+        || parameterSlots(metadata) > MAX_PARAMETER_SLOTS) {
+      return;
+    }
+    BuilderFactory builderFactory = metadata.getBuilderFactory().orNull();
+    boolean bypassBuilder =
+        canBypassBuilder(metadata) && !SparseValueSupport.isSparse(code, metadata);
+    if (!bypassBuilder && builderFactory == null) {
+      return;
+    }
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a newly-created %s with the given property values.",
+            metadata.getType().javadocLink());
+    if (bypassBuilder) {
+      code.addLine(" *")
+          .addLine(" * <p>Equivalent to setting each property on a new {@code %s} and calling",
+              metadata.getBuilder().getSimpleName())
+          .addLine(" * {@link %s#build() build()}, without allocating the builder.",
+              metadata.getBuilder());
+    }
+    code.addLine(" */")
+        .add("public static %s %s of(",
+            metadata.getType().declarationParameters(), metadata.getType());
+    List<String> parameters = Lists.newArrayList();
+    for (Property property : metadata.getProperties()) {
+      if (!parameters.isEmpty()) {
+        code.add(", ");
+      }
+      property.getCodeGenerator().addGetterAnnotations(code);
+      code.add("%s %s", property.getType(), property.getName());
+      parameters.add(property.getName());
+    }
+    code.add(") {\n");
+    Block body = methodBody(code, parameters.toArray(new String[0]));
+    if (bypassBuilder) {
+      List<Excerpt> values = Lists.newArrayList();
+      for (Property property : metadata.getProperties()) {
+        values.add(property.getCodeGenerator()
+            .convertToValueField(body, Excerpts.add("%s", property.getName())));
+      }
+      body.addLine("  return %s(%s);",
+          metadata.getValueType().constructor(), Excerpts.join(", ", values));
+    } else {
+      Excerpt builder = body.declare(
+          Excerpts.add("%s", metadata.getBuilder()),
+          "builder",
+          builderFactory.newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
+      for (Property property : metadata.getProperties()) {
+        property.getCodeGenerator()
+            .addSetFromResult(body, builder, Excerpts.add("%s", property.getName()));
+      }
+      body.addLine("  return %s.build();", builder);
+    }
+    code.add(body)
+        .addLine("}");
+  }
+
+  private static void addCollectorMethods(SourceBuilder code, Metadata metadata) {
+    Optional<QualifiedName> collector = code.feature(SOURCE_LEVEL).collector();
+    BuilderFactory builderFactory = metadata.getBuilderFactory().orNull();
+    if (!code.feature(COLLECTORS).isEnabled()
+        || !collector.isPresent()
+        || builderFactory == null
+        || any(metadata.getProperties(), IS_REQUIRED)) {
+      return;
+    }
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      Optional<Excerpt> elementType = generator.getCollectorElementType();
+      if (!elementType.isPresent()) {
+        continue;
+      }
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Returns a {@link %s} adding each element to the {@code %s} property of a",
+              collector.get(), property.getName())
+          .addLine(" * new {@code %s}, then building it.", metadata.getBuilder().getSimpleName())
+          .addLine(" *")
+          .addLine(" * <p>Partial results are combined with {@code mergeFrom}, so the collector")
+          .addLine(" * can be used on parallel streams.")
+          .addLine(" */")
+          .addLine("public static %s %s<%s, %s, %s> %s() {",
+              metadata.getType().declarationParameters(),
+              collector.get(),
+              elementType.get(),
+              metadata.getBuilder(),
+              metadata.getType(),
+              collectorMethod(property))
+          .addLine("  return %s.of(", collector.get())
+          .addLine("      () -> %s,",
+              builderFactory.newBuilder(metadata.getBuilder(), EXPLICIT_TYPES))
+          .addLine("      (builder, element) -> %s,", generator.addToCollector(
+              Excerpts.add("builder"), Excerpts.add("element")).get())
+          .addLine("      (builder, other) -> builder.mergeFrom(other),")
+          .addLine("      builder -> builder.build());")
+          .addLine("}");
+    }
+  }
+
   private static void addConstantDeclarations(Metadata metadata, SourceBuilder body) {
     if (body.feature(GUAVA).isAvailable() && metadata.getProperties().size() > 1) {
       body.addLine("")
@@ -169,9 +299,11 @@ public class CodeGenerator {
     code.addLine(" */")
         .addLine("public %s build() {", metadata.getType());
     if (hasRequiredProperties) {
+      DiagnosticsSupport.addValidationHook(code);
       code.add(PreconditionExcerpts.checkState(
           Excerpts.add("%s.isEmpty()", UNSET_PROPERTIES), "Not set: %s", UNSET_PROPERTIES));
     }
+    DiagnosticsSupport.addBuildHook(code, metadata);
     code.addLine("  return %s(this);", metadata.getValueType().constructor())
         .addLine("}");
   }
@@ -183,6 +315,26 @@ public class CodeGenerator {
             metadata.getType().getQualifiedName())
         .addLine(" */")
         .addLine("public %s mergeFrom(%s value) {", metadata.getBuilder(), metadata.getType());
+    DiagnosticsSupport.addMergeHook(code);
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.MERGE_FROM);
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("  _mergeFromValue%s(value);", i);
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("private void _mergeFromValue%s(%s value) {", i, metadata.getType());
+        Block body = methodBody(code, "value");
+        for (Property property : chunks.get(i)) {
+          property.getCodeGenerator().addMergeFromValue(body, "value");
+        }
+        code.add(body)
+            .addLine("}");
+      }
+      return;
+    }
     Block body = methodBody(code, "value");
     for (Property property : metadata.getProperties()) {
       property.getCodeGenerator().addMergeFromValue(body, "value");
@@ -200,6 +352,26 @@ public class CodeGenerator {
         .addLine(" * Does not affect any properties not set on the input.")
         .addLine(" */")
         .addLine("public %1$s mergeFrom(%1$s template) {", metadata.getBuilder());
+    DiagnosticsSupport.addMergeHook(code);
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.MERGE_FROM);
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("  _mergeFromBuilder%s(template);", i);
+      }
+      code.addLine("  return (%s) this;", metadata.getBuilder())
+          .addLine("}");
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("private void _mergeFromBuilder%s(%s template) {", i, metadata.getBuilder());
+        Block body = methodBody(code, "template");
+        for (Property property : chunks.get(i)) {
+          property.getCodeGenerator().addMergeFromBuilder(body, "template");
+        }
+        code.add(body)
+            .addLine("}");
+      }
+      return;
+    }
     Block body = methodBody(code, "template");
     for (Property property : metadata.getProperties()) {
       property.getCodeGenerator().addMergeFromBuilder(body, "template");
@@ -209,28 +381,106 @@ public class CodeGenerator {
         .addLine("}");
   }
 
+  private static void addBuildAndResetMethod(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(BUILD_AND_RESET).isEnabled()) {
+      return;
+    }
+    boolean hasRequiredProperties = any(metadata.getProperties(), IS_REQUIRED);
+    boolean transfer = hasFieldwiseValueConstructor(code, metadata);
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a newly-created %s based on the contents of the {@code %s},",
+            metadata.getType().javadocLink(), metadata.getBuilder().getSimpleName())
+        .addLine(" * and resets the builder as if by {@link #clear()}.");
+    if (transfer) {
+      code.addLine(" *")
+          .addLine(" * <p>Unlike {@link #build()}, this does not copy the builder's lists, sets")
+          .addLine(" * and maps: they are handed to the returned value, behind unmodifiable")
+          .addLine(" * views, and the builder starts afresh with new collections.");
+    }
+    if (hasRequiredProperties) {
+      code.addLine(" *")
+          .addLine(" * @throws IllegalStateException if any field has not been set");
+    }
+    code.addLine(" */")
+        .addLine("public %s buildAndReset() {", metadata.getType());
+    if (!transfer) {
+      code.addLine("  %s value = build();", metadata.getType())
+          .addLine("  clear();")
+          .addLine("  return value;")
+          .addLine("}");
+      return;
+    }
+    if (hasRequiredProperties) {
+      DiagnosticsSupport.addValidationHook(code);
+      code.add(PreconditionExcerpts.checkState(
+          Excerpts.add("%s.isEmpty()", UNSET_PROPERTIES), "Not set: %s", UNSET_PROPERTIES));
+    }
+    DiagnosticsSupport.addBuildHook(code, metadata);
+    // Transfers may declare locals named after their property
+    Block body = methodBody(code);
+    List<Excerpt> fields = Lists.newArrayList();
+    Set<String> propertyNames = new HashSet<String>();
+    for (Property property : metadata.getProperties()) {
+      fields.add(property.getCodeGenerator().transferToValueField(body));
+      propertyNames.add(property.getName());
+    }
+    String value = "value";
+    while (propertyNames.contains(value)) {
+      value = "_" + value;
+    }
+    code.add(body)
+        .addLine("  %s %s = %s(%s);",
+            metadata.getType(),
+            value,
+            metadata.getValueType().constructor(),
+            Excerpts.join(", ", fields))
+        .addLine("  clear();")
+        .addLine("  return %s;", value)
+        .addLine("}");
+  }
+
   private static void addClearMethod(SourceBuilder code, Metadata metadata) {
     code.addLine("")
         .addLine("/**")
         .addLine(" * Resets the state of this builder.")
         .addLine(" */")
         .addLine("public %s clear() {", metadata.getBuilder());
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.CLEAR);
     Block body = new Block(code);
-    List<PropertyCodeGenerator> codeGenerators =
-        Lists.transform(metadata.getProperties(), GET_CODE_GENERATOR);
-    for (PropertyCodeGenerator codeGenerator : codeGenerators) {
-      codeGenerator.addClearField(body);
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        body.addLine("  _clear%s();", i);
+      }
+    } else {
+      List<PropertyCodeGenerator> codeGenerators =
+          Lists.transform(metadata.getProperties(), GET_CODE_GENERATOR);
+      for (PropertyCodeGenerator codeGenerator : codeGenerators) {
+        codeGenerator.addClearField(body);
+      }
     }
-    code.add(body);
     if (any(metadata.getProperties(), IS_REQUIRED)) {
       Optional<Excerpt> defaults = Declarations.freshBuilder(body, metadata);
       if (defaults.isPresent()) {
-        code.addLine("  %s.clear();", UNSET_PROPERTIES)
+        body.addLine("  %s.clear();", UNSET_PROPERTIES)
             .addLine("  %s.addAll(%s);", UNSET_PROPERTIES, UNSET_PROPERTIES.on(defaults.get()));
       }
     }
-    code.addLine("  return (%s) this;", metadata.getBuilder())
+    body.addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
         .addLine("}");
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("private void _clear%s() {", i);
+        Block chunkBody = methodBody(code);
+        for (Property property : chunks.get(i)) {
+          property.getCodeGenerator().addClearField(chunkBody);
+        }
+        code.add(chunkBody)
+            .addLine("}");
+      }
+    }
   }
 
   private static void addBuildPartialMethod(SourceBuilder code, Metadata metadata) {
@@ -298,22 +548,37 @@ public class CodeGenerator {
         metadata.getValueTypeVisibility(),
         metadata.getValueType().declaration(),
         extending(metadata.getType(), metadata.isInterfaceType()));
-    // Fields
-    for (Property property : metadata.getProperties()) {
-      property.getCodeGenerator().addValueFieldDeclaration(code, property.getField());
+    boolean sparse = SparseValueSupport.isSparse(code, metadata);
+    boolean packed = PackedFlagsSupport.isPacked(code, metadata);
+    if (sparse) {
+      SparseValueSupport.addFields(code, metadata);
+      SparseValueSupport.addConstructor(code, metadata);
+    } else if (packed) {
+      PackedFlagsSupport.addFields(code, metadata);
+      PackedFlagsSupport.addConstructor(code, metadata);
+    } else {
+      // Fields
+      for (Property property : metadata.getProperties()) {
+        property.getCodeGenerator().addValueFieldDeclaration(code, property.getField());
+      }
+      // Constructor
+      code.addLine("")
+          .addLine("  private %s(%s builder) {",
+              metadata.getValueType().getSimpleName(),
+              metadata.getGeneratedBuilder());
+      Block body = methodBody(code, "builder");
+      for (Property property : metadata.getProperties()) {
+        property.getCodeGenerator()
+            .addFinalFieldAssignment(body, property.getField().on("this"), "builder");
+      }
+      code.add(body)
+          .addLine("  }");
     }
-    // Constructor
-    code.addLine("")
-        .addLine("  private %s(%s builder) {",
-            metadata.getValueType().getSimpleName(),
-            metadata.getGeneratedBuilder());
-    Block body = methodBody(code, "builder");
-    for (Property property : metadata.getProperties()) {
-      property.getCodeGenerator()
-          .addFinalFieldAssignment(body, property.getField().on("this"), "builder");
+    if (hasFieldwiseValueConstructor(code, metadata) && packed) {
+      PackedFlagsSupport.addFieldwiseConstructor(code, metadata);
+    } else if (hasFieldwiseValueConstructor(code, metadata)) {
+      addFieldwiseValueConstructor(code, metadata);
     }
-    code.add(body)
-        .addLine("  }");
     // Getters
     for (Property property : metadata.getProperties()) {
       code.addLine("")
@@ -322,7 +587,7 @@ public class CodeGenerator {
       property.getCodeGenerator().addGetterAnnotations(code);
       code.addLine("  public %s %s() {", property.getType(), property.getGetterName());
       code.add("    return ");
-      property.getCodeGenerator().addReadValueFragment(code, property.getField());
+      property.getCodeGenerator().addReadValueFragment(code, valueField(code, metadata, property));
       code.add(";\n");
       code.addLine("  }");
     }
@@ -333,6 +598,7 @@ public class CodeGenerator {
           .addLine("  public %s toBuilder() {", metadata.getBuilder());
       BuilderFactory builderFactory = metadata.getBuilderFactory().orNull();
       if (builderFactory != null) {
+        DiagnosticsSupport.addToBuilderHook(code);
         code.addLine("    return %s.mergeFrom(this);",
                 builderFactory.newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
       } else {
@@ -340,13 +606,28 @@ public class CodeGenerator {
       }
       code.addLine("  }");
     }
+    // Withers
+    for (Property property : metadata.getProperties()) {
+      if (property.isWitherDeclared()) {
+        addWitherMethod(code, metadata, property, false);
+      }
+    }
     // Equals
     switch (metadata.standardMethodUnderride(StandardMethod.EQUALS)) {
       case ABSENT:
-        addValueTypeEquals(code, metadata);
+        if (sparse) {
+          SparseValueSupport.addEquals(code, metadata);
+        } else if (packed) {
+          PackedFlagsSupport.addEquals(code, metadata);
+        } else {
+          addValueTypeEquals(code, metadata);
+        }
         break;
 
       case OVERRIDEABLE:
+        if (!hasPartialType(code)) {
+          break;
+        }
         // Partial-respecting override if a non-final user implementation exists.
         code.addLine("")
             .addLine("  @%s", Override.class)
@@ -361,24 +642,177 @@ public class CodeGenerator {
         break;
     }
     // Hash code
-    if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT) {
-      FieldAccessList properties = getFields(metadata.getProperties());
+    if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT && sparse) {
+      SparseValueSupport.addHashCode(code, metadata);
+    } else if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT && packed) {
+      PackedFlagsSupport.addHashCode(code, metadata);
+    } else if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT) {
+      addHashCode(code, metadata, false);
+    }
+    // toString
+    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT && sparse) {
       code.addLine("")
           .addLine("  @%s", Override.class)
-          .addLine("  public int hashCode() {");
-      if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
-        code.addLine("    return %s.hash(%s);",
-            code.feature(SOURCE_LEVEL).javaUtilObjects().get(), properties);
+          .addLine("  public %s toString() {", String.class);
+      addChunkedToString(
+          code, metadata, chunks(metadata.getProperties(), Cost.TO_STRING), false);
+    } else if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT) {
+      addValueTypeToString(code, metadata);
+    }
+    if (sparse) {
+      SparseValueSupport.addHelpers(code, metadata);
+    }
+    if (packed) {
+      PackedFlagsSupport.addHelpers(code, metadata);
+    }
+    SerializationProxySupport.addSerializationProxy(code, metadata);
+    code.addLine("}");
+  }
+
+  /** Returns an excerpt reading the value field of {@code property}, on {@code this}. */
+  private static Excerpt valueField(SourceBuilder code, Metadata metadata, Property property) {
+    if (SparseValueSupport.isSparse(code, metadata)) {
+      return SparseValueSupport.valueField(metadata, property);
+    } else if (PackedFlagsSupport.isPacked(code, metadata)) {
+      return PackedFlagsSupport.valueField(metadata, property);
+    }
+    return property.getField();
+  }
+
+  /** Adds a constructor taking the value of each field, for code that bypasses the builder. */
+  private static void addFieldwiseValueConstructor(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .add("  private %s(", metadata.getValueType().getSimpleName());
+    String separator = "";
+    for (Property property : metadata.getProperties()) {
+      code.add(separator);
+      property.getCodeGenerator().addGetterAnnotations(code);
+      code.add("%s %s", property.getCodeGenerator().getValueFieldType(), property.getName());
+      separator = ", ";
+    }
+    code.add(") {\n");
+    for (Property property : metadata.getProperties()) {
+      code.addLine("    %s = %s;", property.getField().on("this"), property.getName());
+    }
+    code.addLine("  }");
+  }
+
+  /**
+   * Adds a withX method returning a copy of the value with {@code property} changed. Where
+   * possible, the other fields are shared with the new value, and only the new property value is
+   * validated.
+   */
+  private static void addWitherMethod(
+      SourceBuilder code, Metadata metadata, Property property, boolean isPartial) {
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .add("  public %s %s(", metadata.getType(), witherMethod(property));
+    property.getCodeGenerator().addGetterAnnotations(code);
+    code.add("%s %s) {\n", property.getType(), property.getName());
+    Block body = methodBody(code, property.getName());
+    if (!isPartial && hasFieldwiseValueConstructor(code, metadata)) {
+      List<Excerpt> values = Lists.newArrayList();
+      for (Property other : metadata.getProperties()) {
+        if (other == property) {
+          values.add(property.getCodeGenerator()
+              .convertToValueField(body, Excerpts.add("%s", property.getName())));
+        } else if (PackedFlagsSupport.isPacked(code, metadata)) {
+          values.add(PackedFlagsSupport.valueField(metadata, other));
+        } else {
+          values.add(other.getField().on("this"));
+        }
+      }
+      body.addLine("    return %s(%s);",
+          metadata.getValueType().constructor(), Excerpts.join(", ", values));
+    } else {
+      addWitherViaBuilder(body, metadata, property, isPartial);
+    }
+    code.add(body)
+        .addLine("  }");
+  }
+
+  /**
+   * Adds a wither body that copies every property into a fresh builder, replacing
+   * {@code property}, for when the value cannot be constructed directly.
+   */
+  private static void addWitherViaBuilder(
+      Block body, Metadata metadata, Property property, boolean isPartial) {
+    BuilderFactory builderFactory = metadata.getBuilderFactory().orNull();
+    if (builderFactory == null) {
+      body.addLine("    throw new %s();", UnsupportedOperationException.class);
+      return;
+    }
+    // The parameter shadows any field of the same name, so only it can collide with the builder.
+    String builderName = property.getName().equals("builder") ? "_builder" : "builder";
+    Excerpt builder = Excerpts.add("%s", builderName);
+    body.addLine("    %s %s = %s;",
+        metadata.getBuilder(),
+        builder,
+        builderFactory.newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
+    for (Property other : metadata.getProperties()) {
+      if (other == property) {
+        other.getCodeGenerator()
+            .addSetFromResult(body, builder, Excerpts.add("%s", property.getName()));
+      } else if (isPartial) {
+        other.getCodeGenerator().addSetBuilderFromPartial(body, builderName);
       } else {
-        code.addLine("    return %s.hashCode(new Object[] { %s });", Arrays.class, properties);
+        other.getCodeGenerator()
+            .addSetFromResult(body, builder, Excerpts.add("%s()", other.getGetterName()));
       }
-      code.addLine("  }");
     }
-    // toString
-    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT) {
-      addValueTypeToString(code, metadata);
+    body.addLine("    return %s.%s();", builder, isPartial ? "buildPartial" : "build");
+  }
+
+  static boolean hasFieldwiseValueConstructor(SourceBuilder code, Metadata metadata) {
+    return (code.feature(STATIC_FACTORY).isEnabled()
+            || code.feature(BUILD_AND_RESET).isEnabled()
+            || any(metadata.getProperties(), HAS_WITHER)
+            || GwtSupport.hasCustomFieldSerializer(metadata))
+        && canBypassBuilder(metadata)
+        && parameterSlots(metadata) <= MAX_PARAMETER_SLOTS
+        && !SparseValueSupport.isSparse(code, metadata);
+  }
+
+  /**
+   * Returns whether to generate a partial type and {@code buildPartial()} method. Binary codec
+   * views read defaults from partials, so keep them if the codec is enabled.
+   */
+  static boolean hasPartialType(SourceBuilder code) {
+    return !code.feature(SLIM_API).omits(PARTIALS) || code.feature(BINARY_CODEC).isEnabled();
+  }
+
+  /** As {@link #hasPartialType(SourceBuilder)}, for code outside the builder source. */
+  static boolean hasPartialType(FeatureSet features) {
+    return !features.get(SLIM_API).omits(PARTIALS) || features.get(BINARY_CODEC).isEnabled();
+  }
+
+  /**
+   * Returns whether values can be constructed directly from their field values without skipping
+   * any validation the user has added to the builder.
+   */
+  private static boolean canBypassBuilder(Metadata metadata) {
+    if (metadata.isBuilderCustomized()) {
+      return false;
     }
-    code.addLine("}");
+    // A lone type-variable field would make the fieldwise constructor ambiguous with the
+    // builder-taking one when invoked with the diamond operator.
+    if (metadata.getProperties().size() == 1) {
+      Property property = getOnlyElement(metadata.getProperties());
+      if (property.getCodeGenerator().getValueFieldType().getKind() == TypeKind.TYPEVAR) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the number of JVM parameter slots needed to pass every property to a method. */
+  private static int parameterSlots(Metadata metadata) {
+    int slots = 0;
+    for (Property property : metadata.getProperties()) {
+      TypeKind kind = property.getType().getKind();
+      slots += (kind == TypeKind.LONG || kind == TypeKind.DOUBLE) ? 2 : 1;
+    }
+    return slots;
   }
 
   private static void addValueTypeEquals(SourceBuilder code, Metadata metadata) {
@@ -387,15 +821,39 @@ public class CodeGenerator {
         .addLine("  @%s", Override.class)
         .addLine("  public boolean equals(Object obj) {");
     Block body = methodBody(code, "obj");
+    BinaryCodecSupport.addUnwrapView(body, metadata);
     body.addLine("    if (!(obj instanceof %s)) {", metadata.getValueType().getQualifiedName())
         .addLine("      return false;")
         .addLine("    }")
         .addLine("    %1$s other = (%1$s) obj;", metadata.getValueType().withWildcards());
-    if (metadata.getProperties().isEmpty()) {
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.EQUALS);
+    if (chunks.size() > 1) {
+      addEqualsHelperCalls(body, chunks.size(), false);
+    } else {
+      addValueTypeFieldComparisons(body, metadata.getProperties());
+    }
+    code.add(body)
+        .addLine("  }");
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private boolean _equals%s(%s other) {",
+                i, metadata.getValueType().withWildcards());
+        Block chunkBody = methodBody(code, "other");
+        addValueTypeFieldComparisons(chunkBody, chunks.get(i));
+        code.add(chunkBody)
+            .addLine("  }");
+      }
+    }
+  }
+
+  /** Adds statements returning whether {@code properties} are equal on {@code this} and other. */
+  private static void addValueTypeFieldComparisons(Block body, List<Property> properties) {
+    if (properties.isEmpty()) {
       body.addLine("    return true;");
     } else if (body.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
       String prefix = "    return ";
-      for (Property property : metadata.getProperties()) {
+      for (Property property : properties) {
         body.add(prefix);
         body.add("%s.equals(%s, %s)",
             body.feature(SOURCE_LEVEL).javaUtilObjects().get(),
@@ -405,7 +863,7 @@ public class CodeGenerator {
       }
       body.add(";\n");
     } else {
-      for (Property property : metadata.getProperties()) {
+      for (Property property : properties) {
         body.addLine("    if (%s) {", ObjectsExcerpts.notEquals(
                 property.getField(),
                 property.getField().on("other"),
@@ -416,14 +874,34 @@ public class CodeGenerator {
       }
       body.addLine("    return true;");
     }
-    code.add(body)
-        .addLine("  }");
+  }
+
+  /**
+   * Adds a statement returning whether every {@code _equalsN} helper, and optionally the unset
+   * properties, agree on {@code this} and other.
+   */
+  private static void addEqualsHelperCalls(
+      Block body, int chunkCount, boolean compareUnsetProperties) {
+    String prefix = "    return ";
+    for (int i = 0; i < chunkCount; i++) {
+      body.add("%s_equals%s(other)", prefix, i);
+      prefix = "\n        && ";
+    }
+    if (compareUnsetProperties) {
+      body.add("%s%s.equals(%s)", prefix, UNSET_PROPERTIES, UNSET_PROPERTIES.on("other"));
+    }
+    body.add(";\n");
   }
 
   private static void addValueTypeToString(SourceBuilder code, Metadata metadata) {
     code.addLine("")
         .addLine("  @%s", Override.class)
         .addLine("  public %s toString() {", String.class);
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.TO_STRING);
+    if (chunks.size() > 1) {
+      addChunkedToString(code, metadata, chunks, false);
+      return;
+    }
     Block body = methodBody(code);
     switch (metadata.getProperties().size()) {
       case 0: {
@@ -449,7 +927,8 @@ public class CodeGenerator {
           body.addLine("    return \"%s{\"", metadata.getType().getSimpleName());
           Property lastProperty = getLast(metadata.getProperties());
           for (Property property : metadata.getProperties()) {
-            body.add("        + \"%s=\" + %s", property.getName(), property.getField());
+            body.add("        + \"%s=\" + %s",
+                property.getName(), valueField(code, metadata, property));
             if (property != lastProperty) {
               body.add(" + \", \"\n");
             } else {
@@ -466,7 +945,7 @@ public class CodeGenerator {
             if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
               body.add("(%s != null ? ", property.getField());
             }
-            body.add("\"%s=\" + %s", property.getName(), property.getField());
+            body.add("\"%s=\" + %s", property.getName(), valueField(code, metadata, property));
             if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
               body.add(" : null)");
             }
@@ -536,6 +1015,12 @@ public class CodeGenerator {
       code.addLine("  }");
     }
     addPartialToBuilderMethod(code, metadata);
+    // Withers
+    for (Property property : metadata.getProperties()) {
+      if (property.isWitherDeclared()) {
+        addWitherMethod(code, metadata, property, true);
+      }
+    }
     // Equals
     if (metadata.standardMethodUnderride(StandardMethod.EQUALS) != FINAL) {
       code.addLine("")
@@ -546,97 +1031,163 @@ public class CodeGenerator {
           .addLine("      return false;")
           .addLine("    }")
           .addLine("    %1$s other = (%1$s) obj;", metadata.getPartialType().withWildcards());
-      if (metadata.getProperties().isEmpty()) {
-        body.addLine("    return true;");
-      } else if (body.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
-        String prefix = "    return ";
-        for (Property property : metadata.getProperties()) {
-          body.add(prefix);
-          body.add("%s.equals(%s, %s)",
-              body.feature(SOURCE_LEVEL).javaUtilObjects().get(),
-              property.getField(),
-              property.getField().on("other"));
-          prefix = "\n        && ";
-        }
-        if (hasRequiredProperties) {
-          body.add(prefix);
-          body.add("%s.equals(%s, %s)",
-              body.feature(SOURCE_LEVEL).javaUtilObjects().get(),
-              UNSET_PROPERTIES,
-              UNSET_PROPERTIES.on("other"));
-        }
-        body.add(";\n");
+      List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.EQUALS);
+      if (chunks.size() > 1) {
+        addEqualsHelperCalls(body, chunks.size(), hasRequiredProperties);
       } else {
-        for (Property property : metadata.getProperties()) {
-          switch (property.getType().getKind()) {
-            case FLOAT:
-            case DOUBLE:
-              body.addLine("    if (%s.doubleToLongBits(%s)", Double.class, property.getField())
-                  .addLine("        != %s.doubleToLongBits(%s)) {",
-                      Double.class, property.getField().on("other"));
-              break;
-
-            default:
-              if (property.getType().getKind().isPrimitive()) {
-                body.addLine("    if (%s != %s) {",
-                    property.getField(), property.getField().on("other"));
-              } else if (property.getCodeGenerator().getType() == Type.HAS_DEFAULT) {
-                body.addLine("    if (!%s.equals(%s)) {",
-                    property.getField(), property.getField().on("other"));
-              } else {
-                body.addLine("    if (%s != %s",
-                        property.getField(), property.getField().on("other"))
-                    .addLine("        && (%1$s == null || !%1$s.equals(%2$s))) {",
-                        property.getField(), property.getField().on("other"));
-              }
-          }
-          body.addLine("      return false;")
-              .addLine("    }");
-        }
-        if (hasRequiredProperties) {
-          body.addLine("    return %s.equals(%s);",
-              UNSET_PROPERTIES, UNSET_PROPERTIES.on("other"));
-        } else {
-          body.addLine("    return true;");
-        }
+        addPartialFieldComparisons(body, metadata.getProperties(), hasRequiredProperties);
       }
       code.add(body)
           .addLine("  }");
+      if (chunks.size() > 1) {
+        for (int i = 0; i < chunks.size(); i++) {
+          code.addLine("")
+              .addLine("  private boolean _equals%s(%s other) {",
+                  i, metadata.getPartialType().withWildcards());
+          Block chunkBody = methodBody(code, "other");
+          addPartialFieldComparisons(chunkBody, chunks.get(i), false);
+          code.add(chunkBody)
+              .addLine("  }");
+        }
+      }
     }
     // Hash code
     if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) != FINAL) {
+      addHashCode(code, metadata, hasRequiredProperties);
+    }
+    // toString
+    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) != FINAL) {
       code.addLine("")
           .addLine("  @%s", Override.class)
-          .addLine("  public int hashCode() {");
+          .addLine("  public %s toString() {", String.class);
+      List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.TO_STRING);
+      if (chunks.size() > 1) {
+        addChunkedToString(code, metadata, chunks, true);
+      } else {
+        Block body = methodBody(code);
+        if (metadata.getProperties().size() > 1 && !body.feature(GUAVA).isAvailable()) {
+          writeToStringWithBuilder(body, metadata, true);
+        } else {
+          writePartialToStringWithConcatenation(body, metadata);
+        }
+        code.add(body)
+            .addLine("  }");
+      }
+    }
+    code.addLine("}");
+  }
 
-      FieldAccessList properties = getFields(metadata.getProperties());
-      if (hasRequiredProperties) {
-        properties = properties.plus(UNSET_PROPERTIES);
+  /**
+   * Adds statements returning whether {@code properties}, and optionally the unset properties,
+   * are equal on {@code this} and other.
+   */
+  private static void addPartialFieldComparisons(
+      Block body, List<Property> properties, boolean compareUnsetProperties) {
+    if (properties.isEmpty()) {
+      body.addLine("    return true;");
+    } else if (body.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
+      String prefix = "    return ";
+      for (Property property : properties) {
+        body.add(prefix);
+        body.add("%s.equals(%s, %s)",
+            body.feature(SOURCE_LEVEL).javaUtilObjects().get(),
+            property.getField(),
+            property.getField().on("other"));
+        prefix = "\n        && ";
+      }
+      if (compareUnsetProperties) {
+        body.add(prefix);
+        body.add("%s.equals(%s, %s)",
+            body.feature(SOURCE_LEVEL).javaUtilObjects().get(),
+            UNSET_PROPERTIES,
+            UNSET_PROPERTIES.on("other"));
       }
+      body.add(";\n");
+    } else {
+      for (Property property : properties) {
+        switch (property.getType().getKind()) {
+          case FLOAT:
+          case DOUBLE:
+            body.addLine("    if (%s.doubleToLongBits(%s)", Double.class, property.getField())
+                .addLine("        != %s.doubleToLongBits(%s)) {",
+                    Double.class, property.getField().on("other"));
+            break;
 
-      if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
-        code.addLine("    return %s.hash(%s);",
-            code.feature(SOURCE_LEVEL).javaUtilObjects().get(), properties);
+          default:
+            if (property.getType().getKind().isPrimitive()) {
+              body.addLine("    if (%s != %s) {",
+                  property.getField(), property.getField().on("other"));
+            } else if (property.getCodeGenerator().getType() == Type.HAS_DEFAULT) {
+              body.addLine("    if (!%s.equals(%s)) {",
+                  property.getField(), property.getField().on("other"));
+            } else {
+              body.addLine("    if (%s != %s",
+                      property.getField(), property.getField().on("other"))
+                  .addLine("        && (%1$s == null || !%1$s.equals(%2$s))) {",
+                      property.getField(), property.getField().on("other"));
+            }
+        }
+        body.addLine("      return false;")
+            .addLine("    }");
+      }
+      if (compareUnsetProperties) {
+        body.addLine("    return %s.equals(%s);",
+            UNSET_PROPERTIES, UNSET_PROPERTIES.on("other"));
       } else {
-        code.addLine("    return %s.hashCode(new Object[] { %s });", Arrays.class, properties);
+        body.addLine("    return true;");
       }
-      code.addLine("  }");
     }
-    // toString
-    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) != FINAL) {
-      code.addLine("")
-          .addLine("  @%s", Override.class)
-          .addLine("  public %s toString() {", String.class);
+  }
+
+  /**
+   * Adds a hashCode method hashing every property field, and the unset properties if
+   * {@code hashUnsetProperties} is true. Huge types gather the fields into an array in helper
+   * methods, which gives the same hash code as {@code Objects.hash}.
+   */
+  private static void addHashCode(
+      SourceBuilder code, Metadata metadata, boolean hashUnsetProperties) {
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int hashCode() {");
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.HASH_CODE);
+    if (chunks.size() > 1) {
+      int size = metadata.getProperties().size();
       Block body = methodBody(code);
-      if (metadata.getProperties().size() > 1 && !body.feature(GUAVA).isAvailable()) {
-        writeToStringWithBuilder(body, metadata, true);
-      } else {
-        writePartialToStringWithConcatenation(body, metadata);
+      Excerpt values = body.declare(Excerpts.add("Object[]"), "values",
+          Excerpts.add("new Object[%s]", hashUnsetProperties ? size + 1 : size));
+      for (int i = 0; i < chunks.size(); i++) {
+        body.addLine("    _hashValues%s(%s);", i, values);
+      }
+      if (hashUnsetProperties) {
+        body.addLine("    %s[%s] = %s;", values, size, UNSET_PROPERTIES);
       }
+      body.addLine("    return %s.hashCode(%s);", Arrays.class, values);
       code.add(body)
           .addLine("  }");
+      int index = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private void _hashValues%s(Object[] values) {", i);
+        Block chunkBody = methodBody(code, "values");
+        for (Property property : chunks.get(i)) {
+          chunkBody.addLine("    values[%s] = %s;", index++, property.getField());
+        }
+        code.add(chunkBody)
+            .addLine("  }");
+      }
+      return;
     }
-    code.addLine("}");
+    FieldAccessList properties = getFields(metadata.getProperties());
+    if (hashUnsetProperties) {
+      properties = properties.plus(UNSET_PROPERTIES);
+    }
+    if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
+      code.addLine("    return %s.hash(%s);",
+          code.feature(SOURCE_LEVEL).javaUtilObjects().get(), properties);
+    } else {
+      code.addLine("    return %s.hashCode(new Object[] { %s });", Arrays.class, properties);
+    }
+    code.addLine("  }");
   }
 
   private static void addPartialToBuilderMethod(SourceBuilder code, Metadata metadata) {
@@ -658,6 +1209,25 @@ public class CodeGenerator {
     if (metadata.isExtensible()) {
       code.addLine("    %s builder = new PartialBuilder%s();",
               metadata.getBuilder(), metadata.getBuilder().typeParametersOrDiamondOperator());
+      List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.TO_BUILDER);
+      if (chunks.size() > 1) {
+        for (int i = 0; i < chunks.size(); i++) {
+          code.addLine("    _toBuilder%s(builder);", i);
+        }
+        code.addLine("    return builder;")
+            .addLine("  }");
+        for (int i = 0; i < chunks.size(); i++) {
+          code.addLine("")
+              .addLine("  private void _toBuilder%s(%s builder) {", i, metadata.getBuilder());
+          Block body = methodBody(code, "builder");
+          for (Property property : chunks.get(i)) {
+            property.getCodeGenerator().addSetBuilderFromPartial(body, "builder");
+          }
+          code.add(body)
+              .addLine("  }");
+        }
+        return;
+      }
       Block block = new Block(code);
       for (Property property : metadata.getProperties()) {
         property.getCodeGenerator().addSetBuilderFromPartial(block, "builder");
@@ -670,6 +1240,58 @@ public class CodeGenerator {
     code.addLine("  }");
   }
 
+  /**
+   * Adds the body of a toString method that appends each chunk of properties in its own helper
+   * method, followed by the helpers. Every property appended is followed by a separator, and the
+   * last one is dropped at the end.
+   */
+  private static void addChunkedToString(
+      SourceBuilder code, Metadata metadata, List<List<Property>> chunks, boolean isPartial) {
+    String prefix = (isPartial ? "partial " : "") + metadata.getType().getSimpleName() + "{";
+    Block body = methodBody(code);
+    Excerpt result = body.declare(
+        Excerpts.add("%s", StringBuilder.class),
+        "result",
+        Excerpts.add("new %s(\"%s\")", StringBuilder.class, prefix));
+    for (int i = 0; i < chunks.size(); i++) {
+      body.addLine("    _toString%s(%s);", i, result);
+    }
+    body.addLine("    if (%s.length() > %s) {", result, prefix.length())
+        .addLine("      %1$s.setLength(%1$s.length() - 2);", result)
+        .addLine("    }")
+        .addLine("    return %s.append(\"}\").toString();", result);
+    code.add(body)
+        .addLine("  }");
+    for (int i = 0; i < chunks.size(); i++) {
+      code.addLine("")
+          .addLine("  private void _toString%s(%s result) {", i, StringBuilder.class);
+      Block chunkBody = methodBody(code, "result");
+      for (Property property : chunks.get(i)) {
+        Excerpt value = isPartial ? property.getField() : valueField(code, metadata, property);
+        Excerpt field = value;
+        if (property.getType().getKind() == TypeKind.ARRAY) {
+          // Avoid StringBuilder.append(char[]) appending the characters themselves
+          field = Excerpts.add("(Object) %s", field);
+        }
+        boolean isOptional = property.getCodeGenerator().getType() == Type.OPTIONAL;
+        boolean isUnsettable = isPartial && property.getCodeGenerator().getType() == Type.REQUIRED;
+        if (isOptional) {
+          chunkBody.addLine("    if (%s != null) {", value);
+        } else if (isUnsettable) {
+          chunkBody.addLine("    if (!%s.contains(%s.%s)) {",
+              UNSET_PROPERTIES, metadata.getPropertyEnum(), property.getAllCapsName());
+        }
+        chunkBody.addLine("%sresult.append(\"%s=\").append(%s).append(\", \");",
+            (isOptional || isUnsettable) ? "      " : "    ", property.getName(), field);
+        if (isOptional || isUnsettable) {
+          chunkBody.addLine("    }");
+        }
+      }
+      code.add(chunkBody)
+          .addLine("  }");
+    }
+  }
+
   private static void writeToStringWithBuilder(Block code, Metadata metadata, boolean isPartial) {
     Excerpt result = code.declare(
         Excerpts.add("%s", StringBuilder.class),
@@ -709,7 +1331,9 @@ public class CodeGenerator {
         code.addLine("%s.append(\", \");", result);
       }
       code.addLine("%s.append(\"%s=\").append(%s);",
-          result, property.getName(), property.getField());
+          result,
+          property.getName(),
+          isPartial ? property.getField() : valueField(code, metadata, property));
       if (!noDefaults && !seenDefault) {
         code.addLine("%s.append(\", \");", result);
       } else if (noDefaults && property != last) {
@@ -865,6 +1489,12 @@ public class CodeGenerator {
     }
   };
 
+  private static final Predicate<Property> HAS_WITHER = new Predicate<Property>() {
+    @Override public boolean apply(Property property) {
+      return property.isWitherDeclared();
+    }
+  };
+
   private static final Predicate<Property> HAS_DEFAULT = new Predicate<Property>() {
     @Override public boolean apply(Property property) {
       return property.getCodeGenerator().getType() == Type.HAS_DEFAULT;
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.witherMethod;
+import static org.inferred.freebuilder.processor.Metadata.UnderrideLevel.ABSENT;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
+import static org.inferred.freebuilder.processor.util.feature.ColumnsContainer.COLUMNS;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.Metadata.StandardMethod;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Generates the optional {@code Value_Columns} nested in a generated builder.
+ *
+ * <p>Each property gets its own array, holding the same representation the value type keeps in
+ * its field: primitive properties use primitive arrays, and everything else an {@code Object[]}.
+ * Values read back from the container are flyweight views onto a row of the arrays.
+ */
+class ColumnsSupport {
+
+  static final String COLUMNS_CLASS = "Value_Columns";
+
+  private static final int DEFAULT_CAPACITY = 10;
+
+  static void addColumns(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(COLUMNS).isEnabled()
+        || metadata.getType().isParameterized()
+        || !metadata.getBuilderFactory().isPresent()) {
+      return;
+    }
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Struct-of-arrays storage for %s values.", metadata.getType().javadocLink())
+        .addLine(" *")
+        .addLine(" * <p>Each property is held in its own array, primitive where the property is,")
+        .addLine(" * so a large collection of values costs neither an object header nor a")
+        .addLine(" * reference per value. Values can only be appended; {@link #get(int)} returns a")
+        .addLine(" * lightweight view of a stored value, and each property also has an indexed")
+        .addLine(" * getter here for iterating over a single column without creating any views.")
+        .addLine(" */");
+    if (hasUncheckedCasts(metadata)) {
+      code.addLine("@%s(\"unchecked\")", SuppressWarnings.class);
+    }
+    code.addLine("public static final class %s implements %s<%s> {",
+            COLUMNS_CLASS, Iterable.class, metadata.getType())
+        .addLine("")
+        .addLine("  private int _size;")
+        .addLine("  private int _capacity;");
+    for (Property property : metadata.getProperties()) {
+      code.addLine("  private %s[] %s;", columnType(property), property.getField());
+    }
+    code.addLine("")
+        .addLine("  /** Creates an empty container. */")
+        .addLine("  public %s() {", COLUMNS_CLASS)
+        .addLine("    this(%s);", DEFAULT_CAPACITY)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Creates an empty container with room for {@code initialCapacity} values")
+        .addLine("   * before its columns need to grow.")
+        .addLine("   *")
+        .addLine("   * @throws IllegalArgumentException if {@code initialCapacity} is negative")
+        .addLine("   */")
+        .addLine("  public %s(int initialCapacity) {", COLUMNS_CLASS)
+        .addLine("    if (initialCapacity < 0) {")
+        .addLine("      throw new IllegalArgumentException(")
+        .addLine("          \"Negative capacity: \" + initialCapacity);")
+        .addLine("    }")
+        .addLine("    _capacity = initialCapacity;");
+    for (Property property : metadata.getProperties()) {
+      code.addLine("    %s = new %s[initialCapacity];", property.getField(), columnType(property));
+    }
+    code.addLine("  }")
+        .addLine("")
+        .addLine("  /** Returns the number of values in this container. */")
+        .addLine("  public int size() {")
+        .addLine("    return _size;")
+        .addLine("  }");
+    addAppend(code, metadata);
+    addGet(code, metadata);
+    for (Property property : metadata.getProperties()) {
+      addColumnGetter(code, property);
+    }
+    addIterator(code, metadata);
+    code.addLine("")
+        .addLine("  private void ensureCapacity(int minCapacity) {")
+        .addLine("    if (minCapacity > _capacity) {")
+        .addLine("      _capacity = %s.max(minCapacity, _capacity + (_capacity >> 1) + 1);",
+            Math.class);
+    for (Property property : metadata.getProperties()) {
+      code.addLine("      %1$s = %2$s.copyOf(%1$s, _capacity);", property.getField(), Arrays.class);
+    }
+    code.addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private void checkIndex(int index) {")
+        .addLine("    if (index < 0 || index >= _size) {")
+        .addLine("      throw new %s(", IndexOutOfBoundsException.class)
+        .addLine("          \"Index: \" + index + \", Size: \" + _size);")
+        .addLine("    }")
+        .addLine("  }");
+    addView(code, metadata);
+    code.addLine("}");
+  }
+
+  private static void addAppend(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Appends the property values of {@code value} to this container.")
+        .addLine("   *")
+        .addLine("   * @return this {@code %s} object", COLUMNS_CLASS)
+        .addLine("   * @throws NullPointerException if {@code value} is null")
+        .addLine("   */")
+        .addLine("  public %s append(%s value) {", COLUMNS_CLASS, metadata.getType());
+    Block body = methodBody(code, "value");
+    body.addLine("    ensureCapacity(_size + 1);");
+    for (Property property : metadata.getProperties()) {
+      Excerpt fieldValue = property.getCodeGenerator().convertToValueField(
+          body, Excerpts.add("value.%s()", property.getGetterName()));
+      body.addLine("    %s[_size] = %s;", property.getField(), fieldValue);
+    }
+    body.addLine("    _size++;")
+        .addLine("    return this;");
+    code.add(body)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Builds {@code builder} and appends the resulting value to this container.")
+        .addLine("   *")
+        .addLine("   * @return this {@code %s} object", COLUMNS_CLASS)
+        .addLine("   * @throws IllegalStateException if a field has not been set")
+        .addLine("   */")
+        .addLine("  public %s append(%s builder) {", COLUMNS_CLASS, metadata.getBuilder())
+        .addLine("    return append(builder.build());")
+        .addLine("  }");
+  }
+
+  private static void addGet(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns a view of the value at {@code index}. The view reads its properties")
+        .addLine("   * from this container's columns each time they are requested. Unless the")
+        .addLine("   * type defines its own, a view's equals method only compares it to other")
+        .addLine("   * views, never to an instance built normally, but its hashCode matches.")
+        .addLine("   *")
+        .addLine("   * @throws IndexOutOfBoundsException if {@code index} is negative, or not")
+        .addLine("   *     less than {@link #size()}")
+        .addLine("   */")
+        .addLine("  public %s get(int index) {", metadata.getType())
+        .addLine("    checkIndex(index);")
+        .addLine("    return new View(this, index);")
+        .addLine("  }");
+  }
+
+  private static void addColumnGetter(SourceBuilder code, Property property) {
+    PropertyCodeGenerator generator = property.getCodeGenerator();
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns the value of the %s property of the value at {@code index}.",
+            property.getName())
+        .addLine("   *")
+        .addLine("   * @throws IndexOutOfBoundsException if {@code index} is negative, or not")
+        .addLine("   *     less than {@link #size()}")
+        .addLine("   */");
+    generator.addGetterAnnotations(code);
+    code.addLine("  public %s %s(int index) {", property.getType(), property.getGetterName())
+        .addLine("    checkIndex(index);")
+        .add("    return ");
+    generator.addReadValueFragment(code, element(property, property.getField(), "index"));
+    code.add(";\n")
+        .addLine("  }");
+  }
+
+  private static void addIterator(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("  /** Returns an iterator over views of the values in this container. */")
+        .addLine("  @%s", Override.class)
+        .addLine("  public %s<%s> iterator() {", Iterator.class, metadata.getType())
+        .addLine("    return new %s<%s>() {", Iterator.class, metadata.getType())
+        .addLine("      private int next = 0;")
+        .addLine("")
+        .addLine("      @%s", Override.class)
+        .addLine("      public boolean hasNext() {")
+        .addLine("        return next < _size;")
+        .addLine("      }")
+        .addLine("")
+        .addLine("      @%s", Override.class)
+        .addLine("      public %s next() {", metadata.getType())
+        .addLine("        if (next >= _size) {")
+        .addLine("          throw new %s();", NoSuchElementException.class)
+        .addLine("        }")
+        .addLine("        return new View(%s.this, next++);", COLUMNS_CLASS)
+        .addLine("      }")
+        .addLine("")
+        .addLine("      @%s", Override.class)
+        .addLine("      public void remove() {")
+        .addLine("        throw new %s();", UnsupportedOperationException.class)
+        .addLine("      }")
+        .addLine("    };")
+        .addLine("  }");
+  }
+
+  private static void addView(SourceBuilder code, Metadata metadata) {
+    Excerpt newBuilder =
+        metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES);
+    code.addLine("")
+        .addLine("  private static final class View %s %s {",
+            metadata.isInterfaceType() ? "implements" : "extends", metadata.getType())
+        .addLine("")
+        .addLine("    private final %s _columns;", COLUMNS_CLASS)
+        .addLine("    private final int _index;")
+        .addLine("")
+        .addLine("    View(%s columns, int index) {", COLUMNS_CLASS)
+        .addLine("      this._columns = columns;")
+        .addLine("      this._index = index;")
+        .addLine("    }");
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      code.addLine("")
+          .addLine("    @%s", Override.class);
+      generator.addAccessorAnnotations(code);
+      generator.addGetterAnnotations(code);
+      code.addLine("    public %s %s() {", property.getType(), property.getGetterName())
+          .add("      return ");
+      generator.addReadValueFragment(code, element(property, column(property), "_index"));
+      code.add(";\n")
+          .addLine("    }");
+    }
+    if (metadata.getHasToBuilderMethod()) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public %s toBuilder() {", metadata.getBuilder())
+          .addLine("      return %s.mergeFrom(this);", newBuilder)
+          .addLine("    }");
+    }
+    for (Property property : metadata.getProperties()) {
+      if (property.isWitherDeclared()) {
+        code.addLine("")
+            .addLine("    @%s", Override.class)
+            .add("    public %s %s(", metadata.getType(), witherMethod(property));
+        property.getCodeGenerator().addGetterAnnotations(code);
+        code.add("%s %s) {\n", property.getType(), property.getName())
+            .addLine("      return %s.mergeFrom(this).build().%s(%s);",
+                newBuilder, witherMethod(property), property.getName())
+            .addLine("    }");
+      }
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.EQUALS) == ABSENT) {
+      addViewEquals(code, metadata);
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.HASH_CODE) == ABSENT) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public int hashCode() {")
+          .add("      return %s.hashCode(new Object[] {", Arrays.class);
+      String separator = " ";
+      for (Property property : metadata.getProperties()) {
+        code.add("%s%s", separator, Excerpts.add("%s[_index]", column(property)));
+        separator = ", ";
+      }
+      code.add(" });\n")
+          .addLine("    }");
+    }
+    if (metadata.standardMethodUnderride(StandardMethod.TO_STRING) == ABSENT) {
+      code.addLine("")
+          .addLine("    @%s", Override.class)
+          .addLine("    public String toString() {")
+          .addLine("      return %s.mergeFrom(this).build().toString();", newBuilder)
+          .addLine("    }");
+    }
+    code.addLine("  }");
+  }
+
+  private static void addViewEquals(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("    @%s", Override.class)
+        .addLine("    public boolean equals(Object obj) {")
+        .addLine("      if (!(obj instanceof View)) {")
+        .addLine("        return false;")
+        .addLine("      }")
+        .addLine("      View other = (View) obj;");
+    for (Property property : metadata.getProperties()) {
+      Excerpt column = column(property);
+      code.addLine("      if (%s) {", ObjectsExcerpts.notEquals(
+              Excerpts.add("%s[_index]", column),
+              Excerpts.add("other.%s[other._index]", column),
+              property.getType().getKind(),
+              (property.getCodeGenerator().getType() == Type.OPTIONAL) ? NULLABLE : NOT_NULLABLE))
+          .addLine("        return false;")
+          .addLine("      }");
+    }
+    code.addLine("      return true;")
+        .addLine("    }");
+  }
+
+  /** Returns an excerpt of {@code property}'s column array, as seen from a view. */
+  private static Excerpt column(Property property) {
+    return property.getField().on("_columns");
+  }
+
+  /**
+   * Returns an excerpt of the element at {@code index} of {@code column}, cast to the type the
+   * value type keeps in its field.
+   */
+  private static Excerpt element(Property property, Object column, String index) {
+    TypeMirror fieldType = property.getCodeGenerator().getValueFieldType();
+    if (fieldType.getKind().isPrimitive()) {
+      return Excerpts.add("%s[%s]", column, index);
+    }
+    return Excerpts.add("((%s) %s[%s])", fieldType, column, index);
+  }
+
+  /** Returns the element type of {@code property}'s column array. */
+  private static Object columnType(Property property) {
+    TypeMirror fieldType = property.getCodeGenerator().getValueFieldType();
+    return fieldType.getKind().isPrimitive() ? fieldType : Object.class;
+  }
+
+  private static boolean hasUncheckedCasts(Metadata metadata) {
+    for (Property property : metadata.getProperties()) {
+      TypeMirror fieldType = property.getCodeGenerator().getValueFieldType();
+      if (fieldType.getKind() == TypeKind.DECLARED
+          && !((DeclaredType) fieldType).getTypeArguments().isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private ColumnsSupport() {}
+}
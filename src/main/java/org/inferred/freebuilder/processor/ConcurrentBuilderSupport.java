@@ -0,0 +1,439 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.setter;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.ConcurrentBuilderClass;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Generates the optional {@code ConcurrentBuilder} nested in a generated builder.
+ *
+ * <p>Collection properties accumulate into a concurrent collection chosen by their
+ * {@link ConcurrentAccumulator}: lists into a {@link ConcurrentLinkedQueue}, sets into a key set
+ * of a {@link ConcurrentHashMap}, multisets into a {@link ConcurrentHashMultiset}, and maps and
+ * multimaps into a {@link ConcurrentHashMap}. All other properties are held in volatile fields.
+ * No writer takes a lock, so {@code build()} sees every write that completed before it was
+ * called, and may or may not see writes racing with it.
+ */
+class ConcurrentBuilderSupport {
+
+  private static final String SIMPLE_NAME = "ConcurrentBuilder";
+
+  static void addConcurrentBuilder(SourceBuilder code, Metadata metadata) {
+    Optional<BuilderFactory> builderFactory = metadata.getBuilderFactory();
+    if (!code.feature(ConcurrentBuilderClass.CONCURRENT_BUILDER).isEnabled()
+        || !builderFactory.isPresent()) {
+      return;
+    }
+    ParameterizedType concurrentBuilder = concurrentBuilderType(metadata);
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * A thread-safe builder for %s, for accumulating a single value from many",
+            metadata.getType().javadocLink())
+        .addLine(" * threads without external locking.")
+        .addLine(" *")
+        .addLine(" * <p>Setters and collection methods may be called concurrently and never take")
+        .addLine(" * a lock. {@link #build()} replays everything set before it was called onto a")
+        .addLine(" * new {@code %s}, so any validation the builder performs happens at that",
+            metadata.getBuilder().getSimpleName())
+        .addLine(" * point. Sets, maps and multimaps are accumulated in hash order, not insertion")
+        .addLine(" * order.")
+        .addLine(" */")
+        .addLine("public static class %s {", concurrentBuilder.declaration())
+        .addLine("");
+    for (Property property : metadata.getProperties()) {
+      Optional<ConcurrentAccumulator> accumulator =
+          property.getCodeGenerator().getConcurrentAccumulator();
+      if (accumulator.isPresent()) {
+        accumulator.get().addFieldDeclaration(code);
+      } else {
+        code.addLine("  private volatile %s %s;",
+            firstNonNull(property.getBoxedType(), property.getType()), property.getField());
+      }
+    }
+    for (Property property : metadata.getProperties()) {
+      Optional<ConcurrentAccumulator> accumulator =
+          property.getCodeGenerator().getConcurrentAccumulator();
+      if (accumulator.isPresent()) {
+        accumulator.get().addAccumulatorMethods(code, concurrentBuilder);
+      } else {
+        addSetter(code, metadata, property, concurrentBuilder);
+      }
+    }
+    addBuild(code, metadata, builderFactory.get());
+    code.addLine("}");
+  }
+
+  /** Returns an accumulator keeping every element in order, as a list does. */
+  static ConcurrentAccumulator queueAccumulator(
+      Metadata metadata, Property property, Object elementType) {
+    return new ElementAccumulator(metadata, property, elementType, Queue.class) {
+      @Override
+      Excerpt newCollection(SourceBuilder code) {
+        return Excerpts.add("new %s%s()",
+            ConcurrentLinkedQueue.class, diamondOperator(elementType));
+      }
+    };
+  }
+
+  /** Returns an accumulator keeping distinct elements, as a set does. */
+  static ConcurrentAccumulator setAccumulator(
+      Metadata metadata, Property property, Object elementType) {
+    return new ElementAccumulator(metadata, property, elementType, Set.class) {
+      @Override
+      Excerpt newCollection(SourceBuilder code) {
+        return newConcurrentSet(code, elementType);
+      }
+    };
+  }
+
+  /** Returns an accumulator keeping a count of each element, as a multiset does. */
+  static ConcurrentAccumulator multisetAccumulator(
+      Metadata metadata, Property property, Object elementType) {
+    return new ElementAccumulator(metadata, property, elementType, Multiset.class) {
+      @Override
+      Excerpt newCollection(SourceBuilder code) {
+        return Excerpts.add("%s.create()", ConcurrentHashMultiset.class);
+      }
+    };
+  }
+
+  /** Returns an accumulator keeping the last value put for each key, as a map does. */
+  static ConcurrentAccumulator mapAccumulator(
+      Metadata metadata, Property property, Object keyType, Object valueType) {
+    return new MapAccumulator(metadata, property, keyType, valueType);
+  }
+
+  /**
+   * Returns an accumulator keeping every value put for each key, as a multimap does, or only
+   * distinct values if {@code distinctValues} is true.
+   */
+  static ConcurrentAccumulator multimapAccumulator(
+      Metadata metadata,
+      Property property,
+      Object keyType,
+      Object valueType,
+      boolean distinctValues) {
+    return new MultimapAccumulator(metadata, property, keyType, valueType, distinctValues);
+  }
+
+  /**
+   * Returns an excerpt creating an empty concurrent set: a key set of a {@link ConcurrentHashMap}
+   * from Java 8, or an equivalent set backed by one before.
+   */
+  private static Excerpt newConcurrentSet(SourceBuilder code, Object elementType) {
+    if (code.feature(SOURCE_LEVEL).hasLambdas()) {
+      return Excerpts.add("%s.newKeySet()", ConcurrentHashMap.class);
+    }
+    return Excerpts.add("%s.newSetFromMap(new %s<%s, %s>())",
+        Collections.class, ConcurrentHashMap.class, elementType, Boolean.class);
+  }
+
+  /** Accumulates a collection property element by element. */
+  private abstract static class ElementAccumulator extends ConcurrentAccumulator {
+
+    private final Metadata metadata;
+    private final Property property;
+    final Object elementType;
+    private final Class<?> collectionType;
+
+    ElementAccumulator(
+        Metadata metadata, Property property, Object elementType, Class<?> collectionType) {
+      this.metadata = metadata;
+      this.property = property;
+      this.elementType = elementType;
+      this.collectionType = collectionType;
+    }
+
+    /** Returns an excerpt creating the empty concurrent collection. */
+    abstract Excerpt newCollection(SourceBuilder code);
+
+    @Override
+    public void addFieldDeclaration(SourceBuilder code) {
+      code.addLine("  private final %s<%s> %s = %s;",
+          collectionType, elementType, property.getField(), newCollection(code));
+    }
+
+    @Override
+    public void addAccumulatorMethods(SourceBuilder code, Excerpt concurrentBuilder) {
+      code.addLine("")
+          .addLine("  /**")
+          .addLine("   * Adds {@code element} to the collection to be returned from %s.",
+              metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+          .addLine("   *")
+          .addLine("   * @return this {@code %s} object", SIMPLE_NAME)
+          .addLine("   * @throws NullPointerException if {@code element} is null")
+          .addLine("   */")
+          .addLine("  public %s %s(%s element) {",
+              concurrentBuilder, addMethod(property), elementType);
+      Block body = methodBody(code, "element");
+      body.add(checkNotNullPreamble("element"))
+          .addLine("    %s.add(%s);", property.getField().on("this"), checkNotNullInline("element"))
+          .addLine("    return this;");
+      code.add(body)
+          .addLine("  }");
+    }
+
+    @Override
+    public void addReplay(Block code, Excerpt builder) {
+      code.addLine("    for (%s element : %s) {", elementType, property.getField().on("this"))
+          .addLine("      %s.%s(element);", builder, addMethod(property))
+          .addLine("    }");
+    }
+  }
+
+  /** Accumulates a map property entry by entry. */
+  private static class MapAccumulator extends ConcurrentAccumulator {
+
+    private final Metadata metadata;
+    private final Property property;
+    private final Object keyType;
+    private final Object valueType;
+
+    MapAccumulator(Metadata metadata, Property property, Object keyType, Object valueType) {
+      this.metadata = metadata;
+      this.property = property;
+      this.keyType = keyType;
+      this.valueType = valueType;
+    }
+
+    @Override
+    public void addFieldDeclaration(SourceBuilder code) {
+      code.addLine("  private final %s<%s, %s> %s = new %s%s();",
+          ConcurrentMap.class,
+          keyType,
+          valueType,
+          property.getField(),
+          ConcurrentHashMap.class,
+          diamondOperator(Excerpts.add("%s, %s", keyType, valueType)));
+    }
+
+    @Override
+    public void addAccumulatorMethods(SourceBuilder code, Excerpt concurrentBuilder) {
+      Block body = addPutMethodHeader(
+          code, metadata, property, concurrentBuilder, keyType, valueType);
+      body.addLine("    %s.put(%s, %s);",
+              property.getField().on("this"),
+              checkNotNullInline("key"),
+              checkNotNullInline("value"))
+          .addLine("    return this;");
+      code.add(body)
+          .addLine("  }");
+    }
+
+    @Override
+    public void addReplay(Block code, Excerpt builder) {
+      code.addLine("    for (%s.Entry<%s, %s> entry : %s.entrySet()) {",
+              Map.class, keyType, valueType, property.getField().on("this"))
+          .addLine("      %s.%s(entry.getKey(), entry.getValue());", builder, putMethod(property))
+          .addLine("    }");
+    }
+  }
+
+  /** Accumulates a multimap property entry by entry. */
+  private static class MultimapAccumulator extends ConcurrentAccumulator {
+
+    private final Metadata metadata;
+    private final Property property;
+    private final Object keyType;
+    private final Object valueType;
+    private final boolean distinctValues;
+
+    MultimapAccumulator(
+        Metadata metadata,
+        Property property,
+        Object keyType,
+        Object valueType,
+        boolean distinctValues) {
+      this.metadata = metadata;
+      this.property = property;
+      this.keyType = keyType;
+      this.valueType = valueType;
+      this.distinctValues = distinctValues;
+    }
+
+    @Override
+    public void addFieldDeclaration(SourceBuilder code) {
+      Excerpt valuesType = Excerpts.add("%s<%s>", Collection.class, valueType);
+      code.addLine("  private final %s<%s, %s> %s = new %s%s();",
+          ConcurrentMap.class,
+          keyType,
+          valuesType,
+          property.getField(),
+          ConcurrentHashMap.class,
+          diamondOperator(Excerpts.add("%s, %s", keyType, valuesType)));
+    }
+
+    @Override
+    public void addAccumulatorMethods(SourceBuilder code, Excerpt concurrentBuilder) {
+      Block body = addPutMethodHeader(
+          code, metadata, property, concurrentBuilder, keyType, valueType);
+      Excerpt newValues = distinctValues
+          ? newConcurrentSet(code, valueType)
+          : Excerpts.add("new %s%s()", ConcurrentLinkedQueue.class, diamondOperator(valueType));
+      body.addLine("    %s<%s> values = %s.get(key);",
+              Collection.class, valueType, property.getField().on("this"))
+          .addLine("    if (values == null) {")
+          .addLine("      %s<%s> newValues = %s;", Collection.class, valueType, newValues)
+          .addLine("      values = %s.putIfAbsent(key, newValues);", property.getField().on("this"))
+          .addLine("      if (values == null) {")
+          .addLine("        values = newValues;")
+          .addLine("      }")
+          .addLine("    }")
+          .addLine("    values.add(%s);", checkNotNullInline("value"))
+          .addLine("    return this;");
+      code.add(body)
+          .addLine("  }");
+    }
+
+    @Override
+    public void addReplay(Block code, Excerpt builder) {
+      code.addLine("    for (%s.Entry<%s, %s<%s>> entry : %s.entrySet()) {",
+              Map.class, keyType, Collection.class, valueType, property.getField().on("this"))
+          .addLine("      for (%s value : entry.getValue()) {", valueType)
+          .addLine("        %s.%s(entry.getKey(), value);", builder, putMethod(property))
+          .addLine("      }")
+          .addLine("    }");
+    }
+  }
+
+  /**
+   * Adds the javadoc and signature of a concurrent builder method associating {@code key} with
+   * {@code value}, returning its body with both parameters null-checked.
+   */
+  private static Block addPutMethodHeader(
+      SourceBuilder code,
+      Metadata metadata,
+      Property property,
+      Excerpt concurrentBuilder,
+      Object keyType,
+      Object valueType) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Associates {@code key} with {@code value} in the map to be returned from")
+        .addLine("   * %s.",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine("   *")
+        .addLine("   * @return this {@code %s} object", SIMPLE_NAME)
+        .addLine("   * @throws NullPointerException if either {@code key} or {@code value} are"
+            + " null")
+        .addLine("   */")
+        .addLine("  public %s %s(%s key, %s value) {",
+            concurrentBuilder, putMethod(property), keyType, valueType);
+    Block body = methodBody(code, "key", "value");
+    body.add(checkNotNullPreamble("key"))
+        .add(checkNotNullPreamble("value"));
+    return body;
+  }
+
+  private static ParameterizedType concurrentBuilderType(Metadata metadata) {
+    ParameterizedType generatedBuilder = metadata.getGeneratedBuilder();
+    return generatedBuilder.withQualifiedName(
+        generatedBuilder.getQualifiedName().nestedType(SIMPLE_NAME));
+  }
+
+  private static void addSetter(
+      SourceBuilder code, Metadata metadata, Property property, Excerpt concurrentBuilder) {
+    boolean checkNotNull = !property.getType().getKind().isPrimitive()
+        && property.getCodeGenerator().getType() != Type.OPTIONAL;
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Sets the value to be returned by %s.",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine("   *")
+        .addLine("   * @return this {@code %s} object", SIMPLE_NAME);
+    if (checkNotNull) {
+      code.addLine("   * @throws NullPointerException if {@code %s} is null", property.getName());
+    }
+    code.addLine("   */")
+        .addLine("  public %s %s(%s %s) {",
+            concurrentBuilder, setter(property), property.getType(), property.getName());
+    Block body = methodBody(code, property.getName());
+    Excerpt value = Excerpts.add("%s", property.getName());
+    if (checkNotNull) {
+      body.add(checkNotNullPreamble(property.getName()));
+      value = checkNotNullInline(property.getName());
+    }
+    body.addLine("    %s = %s;", property.getField().on("this"), value)
+        .addLine("    return this;");
+    code.add(body)
+        .addLine("  }");
+  }
+
+  private static void addBuild(
+      SourceBuilder code, Metadata metadata, BuilderFactory builderFactory) {
+    code.addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns a newly-created %s built from the properties set so far.",
+            metadata.getType().javadocLink())
+        .addLine("   *")
+        .addLine("   * @throws IllegalStateException if any field has not been set")
+        .addLine("   */")
+        .addLine("  public %s build() {", metadata.getType());
+    Block body = methodBody(code);
+    Excerpt builder = body.declare(
+        Excerpts.add("%s", metadata.getBuilder()),
+        "builder",
+        builderFactory.newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      Optional<ConcurrentAccumulator> accumulator = generator.getConcurrentAccumulator();
+      if (accumulator.isPresent()) {
+        accumulator.get().addReplay(body, builder);
+      } else {
+        body.addLine("    if (%s != null) {", property.getField().on("this"));
+        generator.addSetFromResult(body, builder, property.getField().on("this"));
+        body.addLine("    }");
+      }
+    }
+    body.addLine("    return %s.build();", builder);
+    code.add(body)
+        .addLine("  }");
+  }
+
+  private ConcurrentBuilderSupport() {}
+}
@@ -25,6 +25,8 @@ import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullabilit
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MAPPERS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 
 import com.google.common.base.Optional;
 
@@ -117,7 +119,7 @@ class DefaultProperty extends PropertyCodeGenerator {
 
   private void addMapper(SourceBuilder code, final Metadata metadata) {
     ParameterizedType unaryOperator = code.feature(FUNCTION_PACKAGE).unaryOperator().orNull();
-    if (unaryOperator == null) {
+    if (unaryOperator == null || code.feature(SLIM_API).omits(MAPPERS)) {
       return;
     }
     code.addLine("")
@@ -175,6 +177,11 @@ class DefaultProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s;", finalField, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    return property.getField();
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     Excerpt defaults = Declarations.freshBuilder(code, metadata).orNull();
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.BuilderDiagnostics.BUILDER_DIAGNOSTICS;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.BuilderDiagnostics;
+
+/**
+ * Generates the optional {@code Value_Diagnostics} nested in a generated builder, and the hooks
+ * that feed it from {@code build()}, {@code mergeFrom} and {@code toBuilder()}.
+ *
+ * <p>Every hook is guarded by {@code Value_Diagnostics.ENABLED}, a {@code static final} flag read
+ * from the {@value BuilderDiagnostics#RUNTIME_PROPERTY} system property, so the JIT removes the
+ * hooks entirely when diagnostics are switched off at runtime.
+ */
+class DiagnosticsSupport {
+
+  static final String DIAGNOSTICS_CLASS = "Value_Diagnostics";
+
+  private static final QualifiedName LONG_ADDER =
+      QualifiedName.of("java.util.concurrent.atomic", "LongAdder");
+  private static final QualifiedName EVENT = QualifiedName.of("jdk.jfr", "Event");
+  private static final QualifiedName NAME = QualifiedName.of("jdk.jfr", "Name");
+  private static final QualifiedName LABEL = QualifiedName.of("jdk.jfr", "Label");
+  private static final QualifiedName CATEGORY = QualifiedName.of("jdk.jfr", "Category");
+
+  static void addDiagnostics(SourceBuilder code, Metadata metadata) {
+    BuilderDiagnostics diagnostics = code.feature(BUILDER_DIAGNOSTICS);
+    if (!diagnostics.isEnabled()) {
+      return;
+    }
+    String typeName = metadata.getType().getQualifiedName().toString();
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Per-type counters%s for %s builders, switched on at runtime",
+            diagnostics.hasEvents() ? " and Java Flight Recorder events" : "",
+            metadata.getType().javadocLink())
+        .addLine(" * with {@code -D%s=true}.", BuilderDiagnostics.RUNTIME_PROPERTY)
+        .addLine(" */")
+        .addLine("public static final class %s {", DIAGNOSTICS_CLASS)
+        .addLine("")
+        .addLine("  static final boolean ENABLED = %s.getBoolean(\"%s\");",
+            Boolean.class, BuilderDiagnostics.RUNTIME_PROPERTY);
+    if (diagnostics.hasEvents()) {
+      code.addLine("  static final int LARGE_COLLECTION_SIZE =")
+          .addLine("      %s.getInteger(\"%s\", %s);",
+              Integer.class,
+              BuilderDiagnostics.SIZE_PROPERTY,
+              diagnostics.largeCollectionSize());
+    }
+    code.addLine("")
+        .addLine("  /** Values returned from {@code build()}. */")
+        .addLine("  public static final %1$s BUILDS = new %1$s();", LONG_ADDER)
+        .addLine("  /** Calls to {@code mergeFrom}, including those from {@code toBuilder()}. */")
+        .addLine("  public static final %1$s MERGES = new %1$s();", LONG_ADDER)
+        .addLine("  /** Calls to {@code toBuilder()}. */")
+        .addLine("  public static final %1$s TO_BUILDERS = new %1$s();", LONG_ADDER)
+        .addLine("")
+        .addLine("  private %s() {}", DIAGNOSTICS_CLASS);
+    if (diagnostics.hasEvents()) {
+      addEvents(code, typeName);
+    }
+    code.addLine("}");
+  }
+
+  private static void addEvents(SourceBuilder code, String typeName) {
+    code.addLine("")
+        .addLine("  static void validationFailed(%s unsetProperties) {", Object.class)
+        .addLine("    ValidationFailure event = new ValidationFailure();")
+        .addLine("    if (event.shouldCommit()) {")
+        .addLine("      event.unsetProperties = unsetProperties.toString();")
+        .addLine("      event.commit();")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  static void built(%s property, int size) {", String.class)
+        .addLine("    if (size > LARGE_COLLECTION_SIZE) {")
+        .addLine("      LargeBuild event = new LargeBuild();")
+        .addLine("      if (event.shouldCommit()) {")
+        .addLine("        event.property = property;")
+        .addLine("        event.size = size;")
+        .addLine("        event.commit();")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @%s(\"%s.ValidationFailure\")", NAME, typeName)
+        .addLine("  @%s(\"Validation failure\")", LABEL)
+        .addLine("  @%s({\"FreeBuilder\", \"%s\"})", CATEGORY, typeName)
+        .addLine("  static final class ValidationFailure extends %s {", EVENT)
+        .addLine("    @%s(\"Unset properties\")", LABEL)
+        .addLine("    %s unsetProperties;", String.class)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @%s(\"%s.LargeBuild\")", NAME, typeName)
+        .addLine("  @%s(\"Large build\")", LABEL)
+        .addLine("  @%s({\"FreeBuilder\", \"%s\"})", CATEGORY, typeName)
+        .addLine("  static final class LargeBuild extends %s {", EVENT)
+        .addLine("    @%s(\"Property\")", LABEL)
+        .addLine("    %s property;", String.class)
+        .addLine("    @%s(\"Size\")", LABEL)
+        .addLine("    int size;")
+        .addLine("  }");
+  }
+
+  /**
+   * Adds a statement to {@code build()} recording an event if required properties are unset,
+   * ahead of the check that throws.
+   */
+  static void addValidationHook(SourceBuilder code) {
+    if (!code.feature(BUILDER_DIAGNOSTICS).hasEvents()) {
+      return;
+    }
+    code.addLine("  if (%s.ENABLED && !%s.isEmpty()) {",
+            DIAGNOSTICS_CLASS, CodeGenerator.UNSET_PROPERTIES)
+        .addLine("    %s.validationFailed(%s);",
+            DIAGNOSTICS_CLASS, CodeGenerator.UNSET_PROPERTIES)
+        .addLine("  }");
+  }
+
+  /**
+   * Adds statements to {@code build()} counting the build, and recording an event for each
+   * collection property larger than the configured size.
+   */
+  static void addBuildHook(SourceBuilder code, Metadata metadata) {
+    BuilderDiagnostics diagnostics = code.feature(BUILDER_DIAGNOSTICS);
+    if (!diagnostics.isEnabled()) {
+      return;
+    }
+    code.addLine("  if (%s.ENABLED) {", DIAGNOSTICS_CLASS)
+        .addLine("    %s.BUILDS.increment();", DIAGNOSTICS_CLASS);
+    if (diagnostics.hasEvents()) {
+      for (Property property : metadata.getProperties()) {
+        if (property.getCodeGenerator().getCollectorElementType().isPresent()) {
+          code.addLine("    %s.built(\"%s\", %s.size());",
+              DIAGNOSTICS_CLASS, property.getName(), property.getField());
+        }
+      }
+    }
+    code.addLine("  }");
+  }
+
+  /** Adds a statement to a {@code mergeFrom} method counting the merge. */
+  static void addMergeHook(SourceBuilder code) {
+    addCounterHook(code, "MERGES", "  ");
+  }
+
+  /** Adds a statement to the value type's {@code toBuilder()} method counting the call. */
+  static void addToBuilderHook(SourceBuilder code) {
+    addCounterHook(code, "TO_BUILDERS", "    ");
+  }
+
+  private static void addCounterHook(SourceBuilder code, String counter, String indent) {
+    if (!code.feature(BUILDER_DIAGNOSTICS).isEnabled()) {
+      return;
+    }
+    code.addLine("%sif (%s.ENABLED) {", indent, DIAGNOSTICS_CLASS)
+        .addLine("%s  %s.%s.increment();", indent, DIAGNOSTICS_CLASS, counter)
+        .addLine("%s}", indent);
+  }
+
+  private DiagnosticsSupport() {}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderMethods.addAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.addMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.getter;
+import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
+import static org.inferred.freebuilder.processor.BuilderMethods.removeMethod;
+import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
+
+import com.google.common.base.Optional;
+
+import org.inferred.freebuilder.processor.FastutilTypes.Kind;
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.Collection;
+
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * {@link PropertyCodeGenerator} providing fluent methods for fastutil's type-specific lists and
+ * sets, e.g. {@code IntList} and {@code LongSet}, taking unboxed elements.
+ */
+class FastutilCollectionProperty extends PropertyCodeGenerator {
+
+  static class Factory implements PropertyCodeGenerator.Factory {
+
+    @Override
+    public Optional<FastutilCollectionProperty> create(Config config) {
+      DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+      if (type == null) {
+        return Optional.absent();
+      }
+      for (Kind kind : Kind.values()) {
+        if (!kind.isPrimitive()) {
+          continue;
+        }
+        if (erasesToAnyOf(type, kind.type("List"))) {
+          return Optional.of(create(config, kind, false));
+        }
+        if (FastutilTypes.HASHABLE_KINDS.contains(kind) && erasesToAnyOf(type, kind.type("Set"))) {
+          return Optional.of(create(config, kind, true));
+        }
+      }
+      return Optional.absent();
+    }
+
+    private static FastutilCollectionProperty create(Config config, Kind kind, boolean isSet) {
+      PrimitiveType elementType = config.getTypes().getPrimitiveType(kind.primitive());
+      TypeMirror boxedType = config.getTypes().boxedClass(elementType).asType();
+      boolean overridesAddMethod = overrides(
+          config.getBuilder(), config.getTypes(), addMethod(config.getProperty()), elementType);
+      return new FastutilCollectionProperty(
+          config.getMetadata(),
+          config.getProperty(),
+          kind,
+          isSet,
+          elementType,
+          boxedType,
+          overridesAddMethod);
+    }
+  }
+
+  private static final ParameterizedType COLLECTION =
+      QualifiedName.of(Collection.class).withParameters("E");
+
+  private final Kind kind;
+  private final boolean isSet;
+  private final TypeMirror elementType;
+  private final TypeMirror boxedType;
+  private final boolean overridesAddMethod;
+
+  FastutilCollectionProperty(
+      Metadata metadata,
+      Property property,
+      Kind kind,
+      boolean isSet,
+      TypeMirror elementType,
+      TypeMirror boxedType,
+      boolean overridesAddMethod) {
+    super(metadata, property);
+    this.kind = kind;
+    this.isSet = isSet;
+    this.elementType = elementType;
+    this.boxedType = boxedType;
+    this.overridesAddMethod = overridesAddMethod;
+  }
+
+  /** The property's type, e.g. IntList. */
+  private QualifiedName collectionType() {
+    return kind.type(isSet ? "Set" : "List");
+  }
+
+  /** The mutable type the builder accumulates elements in, e.g. IntArrayList. */
+  private QualifiedName implementationType() {
+    return kind.type(isSet ? "LinkedOpenHashSet" : "ArrayList");
+  }
+
+  /** The static utility class with an {@code unmodifiable} method, e.g. IntLists. */
+  private QualifiedName utilityType() {
+    return kind.type(isSet ? "Sets" : "Lists");
+  }
+
+  private String noun() {
+    return isSet ? "set" : "list";
+  }
+
+  @Override
+  public void addBuilderFieldDeclaration(SourceBuilder code) {
+    code.addLine("private %s%s %s = new %s();",
+        code.feature(BUILD_AND_RESET).isEnabled() ? "" : "final ",
+        collectionType(),
+        property.getField(),
+        implementationType());
+  }
+
+  @Override
+  public void addBuilderFieldAccessors(SourceBuilder code) {
+    addAdd(code, metadata);
+    addVarargsAdd(code, metadata);
+    addPrimitiveAddAll(code, metadata);
+    addIterableAddAll(code, metadata);
+    if (isSet) {
+      addRemove(code, metadata);
+    }
+    addMutate(code, metadata);
+    addClear(code, metadata);
+    addGetter(code, metadata);
+  }
+
+  private void addAdd(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Adds {@code element} to the %s to be returned from %s.",
+            noun(), metadata.getType().javadocNoArgMethodLink(property.getGetterName()));
+    if (isSet) {
+      code.addLine(" * If the set already contains {@code element}, then {@code %s}",
+              addMethod(property))
+          .addLine(" * has no effect.");
+    }
+    code.addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" */")
+        .addLine("public %s %s(%s element) {",
+            metadata.getBuilder(), addMethod(property), elementType)
+        .addLine("  %s.add(element);", property.getField())
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addVarargsAdd(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Adds each element of {@code elements} to the %s to be returned from",
+            noun())
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" * @throws NullPointerException if {@code elements} is null")
+        .addLine(" */")
+        .addLine("public %s %s(%s... elements) {",
+            metadata.getBuilder(), addMethod(property), elementType);
+    if (!isSet && !overridesAddMethod) {
+      code.addLine("  %1$s.addElements(%1$s.size(), elements);", property.getField());
+    } else {
+      code.addLine("  for (%s element : elements) {", elementType)
+          .addLine("    %s(element);", addMethod(property))
+          .addLine("  }");
+    }
+    code.addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addPrimitiveAddAll(SourceBuilder code, Metadata metadata) {
+    addJavadocForAddAll(code, metadata, false);
+    code.addLine("public %s %s(%s elements) {",
+        metadata.getBuilder(), addAllMethod(property), kind.type("Iterable"));
+    if (!overridesAddMethod) {
+      code.addLine("  if (elements instanceof %s) {", kind.type("Collection"))
+          .addLine("    %s.addAll((%s) elements);", property.getField(), kind.type("Collection"))
+          .addLine("    return (%s) this;", metadata.getBuilder())
+          .addLine("  }");
+    }
+    code.addLine("  for (%1$s iterator = elements.iterator(); iterator.hasNext();) {",
+            kind.type("Iterator"))
+        .addLine("    %s(iterator.next%s());", addMethod(property), kind.prefix())
+        .addLine("  }")
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addIterableAddAll(SourceBuilder code, Metadata metadata) {
+    addJavadocForAddAll(code, metadata, true);
+    addAccessorAnnotations(code);
+    code.addLine("public %s %s(%s<? extends %s> elements) {",
+            metadata.getBuilder(), addAllMethod(property), Iterable.class, boxedType)
+        .add(Excerpts.forEach(elementType, "elements", addMethod(property)))
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addJavadocForAddAll(SourceBuilder code, Metadata metadata, boolean boxed) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Adds each element of {@code elements} to the %s to be returned from",
+            noun())
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName());
+    if (boxed) {
+      code.addLine(" * @throws NullPointerException if {@code elements} is null or contains a")
+          .addLine(" *     null element");
+    } else {
+      code.addLine(" * @throws NullPointerException if {@code elements} is null");
+    }
+    code.addLine(" */");
+  }
+
+  private void addRemove(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Removes {@code element} from the set to be returned from %s.",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" * Does nothing if {@code element} is not a member of the set.")
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" */")
+        .addLine("public %s %s(%s element) {",
+            metadata.getBuilder(), removeMethod(property), elementType)
+        .addLine("  %s.remove(element);", property.getField())
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addMutate(SourceBuilder code, Metadata metadata) {
+    ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
+      return;
+    }
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Applies {@code mutator} to the %s to be returned from %s.",
+            noun(), metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * <p>This method mutates the %s in-place. {@code mutator} is a void", noun())
+        .addLine(" * consumer, so any value returned from a lambda will be ignored. Take care")
+        .addLine(" * not to call pure functions, like %s.",
+            COLLECTION.javadocNoArgMethodLink("stream"))
+        .addLine(" *")
+        .addLine(" * @return this {@code Builder} object")
+        .addLine(" * @throws NullPointerException if {@code mutator} is null")
+        .addLine(" */")
+        .addLine("public %s %s(%s<? super %s> mutator) {",
+            metadata.getBuilder(),
+            mutator(property),
+            consumer.getQualifiedName(),
+            collectionType());
+    Block body = methodBody(code, "mutator");
+    if (overridesAddMethod) {
+      // Mutate a copy, then re-add every element through the overridden add method
+      Excerpt elements = body.declare(
+          Excerpts.add("%s", collectionType()),
+          "elements",
+          Excerpts.add("new %s(%s)", implementationType(), property.getField()));
+      body.addLine("  mutator.accept(%s);", elements)
+          .addLine("  %s.clear();", property.getField())
+          .addLine("  %s(%s);", addAllMethod(property), elements);
+    } else {
+      body.addLine("  // If %s is overridden, this method will be updated to delegate to it",
+              addMethod(property))
+          .addLine("  mutator.accept(%s);", property.getField());
+    }
+    body.addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
+        .addLine("}");
+  }
+
+  private void addClear(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Clears the %s to be returned from %s.",
+            noun(), metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" */")
+        .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+        .addLine("  %s.clear();", property.getField())
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addGetter(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns an unmodifiable view of the %s that will be returned by", noun())
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" * Changes to this builder will be reflected in the view.")
+        .addLine(" */")
+        .addLine("public %s %s() {", collectionType(), getter(property))
+        .addLine("  return %s.unmodifiable(%s);", utilityType(), property.getField())
+        .addLine("}");
+  }
+
+  @Override
+  public void addFinalFieldAssignment(SourceBuilder code, Excerpt finalField, String builder) {
+    code.addLine("%s = %s;", finalField, unmodifiableCopy(property.getField().on(builder)));
+  }
+
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s %s = %s.unmodifiable(%s);",
+            collectionType(), field, utilityType(), property.getField().on("this"))
+        .addLine("%s = new %s();", property.getField().on("this"), implementationType());
+    return field;
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return unmodifiableCopy(parameter);
+  }
+
+  private Excerpt unmodifiableCopy(Object collection) {
+    return Excerpts.add("%s.unmodifiable(new %s(%s))",
+        utilityType(), implementationType(), collection);
+  }
+
+  @Override
+  public void addMergeFromValue(Block code, String value) {
+    code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
+  }
+
+  @Override
+  public void addMergeFromBuilder(Block code, String builder) {
+    Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+    code.addLine("%s(%s);", addAllMethod(property), property.getField().on(base));
+  }
+
+  @Override
+  public void addSetFromResult(SourceBuilder code, Excerpt builder, Excerpt variable) {
+    code.addLine("%s.%s(%s);", builder, addAllMethod(property), variable);
+  }
+
+  @Override
+  public void addClearField(Block code) {
+    code.addLine("%s();", clearMethod(property));
+  }
+}
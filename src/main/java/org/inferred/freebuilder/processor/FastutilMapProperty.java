@@ -0,0 +1,424 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderMethods.clearMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.getter;
+import static org.inferred.freebuilder.processor.BuilderMethods.mutator;
+import static org.inferred.freebuilder.processor.BuilderMethods.putAllMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.BuilderMethods.removeMethod;
+import static org.inferred.freebuilder.processor.FastutilTypes.diamond;
+import static org.inferred.freebuilder.processor.FastutilTypes.parameterized;
+import static org.inferred.freebuilder.processor.FastutilTypes.parameterizedWithWildcards;
+import static org.inferred.freebuilder.processor.Util.erasesToAnyOf;
+import static org.inferred.freebuilder.processor.Util.upperBound;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
+import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.FastutilTypes.Kind;
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ParameterizedType;
+import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+/**
+ * {@link PropertyCodeGenerator} providing fluent methods for fastutil's type-specific maps, e.g.
+ * {@code Int2ObjectMap} and {@code Object2DoubleMap}, taking unboxed keys and values.
+ */
+class FastutilMapProperty extends PropertyCodeGenerator {
+
+  static class Factory implements PropertyCodeGenerator.Factory {
+
+    @Override
+    public Optional<FastutilMapProperty> create(Config config) {
+      DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+      if (type == null) {
+        return Optional.absent();
+      }
+      for (Kind keyKind : FastutilTypes.HASHABLE_KINDS) {
+        for (Kind valueKind : Kind.values()) {
+          if (keyKind == Kind.OBJECT && valueKind == Kind.OBJECT) {
+            // Object2ObjectMap has no unboxed methods to add
+            continue;
+          }
+          if (erasesToAnyOf(type, mapType(keyKind, valueKind))) {
+            return create(config, type, keyKind, valueKind);
+          }
+        }
+      }
+      return Optional.absent();
+    }
+
+    private static Optional<FastutilMapProperty> create(
+        Config config, DeclaredType type, Kind keyKind, Kind valueKind) {
+      ImmutableList.Builder<TypeMirror> typeArguments = ImmutableList.builder();
+      for (TypeMirror typeArgument : type.getTypeArguments()) {
+        typeArguments.add(upperBound(config.getElements(), typeArgument));
+      }
+      ImmutableList<TypeMirror> objectTypes = typeArguments.build();
+      int objectKinds = (keyKind.isPrimitive() ? 0 : 1) + (valueKind.isPrimitive() ? 0 : 1);
+      if (objectTypes.size() != objectKinds) {
+        // Raw type
+        return Optional.absent();
+      }
+      Types types = config.getTypes();
+      TypeMirror keyType = keyKind.isPrimitive()
+          ? types.getPrimitiveType(keyKind.primitive())
+          : objectTypes.get(0);
+      TypeMirror valueType = valueKind.isPrimitive()
+          ? types.getPrimitiveType(valueKind.primitive())
+          : objectTypes.get(objectTypes.size() - 1);
+      boolean overridesPutMethod = overrides(
+          config.getBuilder(), types, putMethod(config.getProperty()), keyType, valueType);
+      return Optional.of(new FastutilMapProperty(
+          config.getMetadata(),
+          config.getProperty(),
+          keyKind,
+          valueKind,
+          objectTypes,
+          keyType,
+          boxed(types, keyType),
+          valueType,
+          boxed(types, valueType),
+          overridesPutMethod));
+    }
+
+    private static TypeMirror boxed(Types types, TypeMirror type) {
+      if (type.getKind().isPrimitive()) {
+        return types.boxedClass((PrimitiveType) type).asType();
+      }
+      return type;
+    }
+  }
+
+  private static final ParameterizedType COLLECTION =
+      QualifiedName.of(Collection.class).withParameters("E");
+
+  private final Kind keyKind;
+  private final Kind valueKind;
+  private final ImmutableList<TypeMirror> objectTypes;
+  private final TypeMirror keyType;
+  private final TypeMirror boxedKeyType;
+  private final TypeMirror valueType;
+  private final TypeMirror boxedValueType;
+  private final boolean overridesPutMethod;
+
+  FastutilMapProperty(
+      Metadata metadata,
+      Property property,
+      Kind keyKind,
+      Kind valueKind,
+      ImmutableList<TypeMirror> objectTypes,
+      TypeMirror keyType,
+      TypeMirror boxedKeyType,
+      TypeMirror valueType,
+      TypeMirror boxedValueType,
+      boolean overridesPutMethod) {
+    super(metadata, property);
+    this.keyKind = keyKind;
+    this.valueKind = valueKind;
+    this.objectTypes = objectTypes;
+    this.keyType = keyType;
+    this.boxedKeyType = boxedKeyType;
+    this.valueType = valueType;
+    this.boxedValueType = boxedValueType;
+    this.overridesPutMethod = overridesPutMethod;
+  }
+
+  /** The erased type of maps from {@code keyKind} to {@code valueKind}, e.g. Int2ObjectMap. */
+  private static QualifiedName mapType(Kind keyKind, Kind valueKind) {
+    return keyKind.type("2" + valueKind.prefix() + "Map");
+  }
+
+  /** The mutable type the builder accumulates mappings in, e.g. Int2ObjectLinkedOpenHashMap. */
+  private QualifiedName implementationType() {
+    return keyKind.type("2" + valueKind.prefix() + "LinkedOpenHashMap");
+  }
+
+  /** The static utility class with an {@code unmodifiable} method, e.g. Int2ObjectMaps. */
+  private QualifiedName utilityType() {
+    return keyKind.type("2" + valueKind.prefix() + "Maps");
+  }
+
+  /** The property's type, e.g. {@code Int2ObjectMap<String>}. */
+  private Excerpt propertyType() {
+    return parameterized(mapType(keyKind, valueKind), objectTypes);
+  }
+
+  @Override
+  public void addBuilderFieldDeclaration(SourceBuilder code) {
+    code.addLine("private %s%s %s = new %s%s();",
+        code.feature(BUILD_AND_RESET).isEnabled() ? "" : "final ",
+        propertyType(),
+        property.getField(),
+        implementationType(),
+        diamond(objectTypes));
+  }
+
+  @Override
+  public void addBuilderFieldAccessors(SourceBuilder code) {
+    addPut(code, metadata);
+    addPrimitivePutAll(code, metadata);
+    addMapPutAll(code, metadata);
+    addRemove(code, metadata);
+    addMutate(code, metadata);
+    addClear(code, metadata);
+    addGetter(code, metadata);
+  }
+
+  private void addPut(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Associates {@code key} with {@code value} in the map to be returned from")
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" * If the map previously contained a mapping for the key,")
+        .addLine(" * the old value is replaced by the specified value.")
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName());
+    if (!keyKind.isPrimitive()) {
+      code.addLine(" * @throws NullPointerException if {@code key} is null");
+    } else if (!valueKind.isPrimitive()) {
+      code.addLine(" * @throws NullPointerException if {@code value} is null");
+    }
+    code.addLine(" */")
+        .addLine("public %s %s(%s key, %s value) {",
+            metadata.getBuilder(), putMethod(property), keyType, valueType);
+    Block body = methodBody(code, "key", "value");
+    if (!keyKind.isPrimitive()) {
+      body.add(PreconditionExcerpts.checkNotNull("key"));
+    }
+    if (!valueKind.isPrimitive()) {
+      body.add(PreconditionExcerpts.checkNotNull("value"));
+    }
+    body.addLine("  %s.put(key, value);", property.getField())
+        .addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
+        .addLine("}");
+  }
+
+  private void addPrimitivePutAll(SourceBuilder code, Metadata metadata) {
+    QualifiedName entryType = mapType(keyKind, valueKind).nestedType("Entry");
+    addJavadocForPutAll(code, metadata);
+    code.addLine("public %s %s(%s map) {",
+            metadata.getBuilder(),
+            putAllMethod(property),
+            parameterizedWithWildcards(mapType(keyKind, valueKind), objectTypes))
+        .addLine("  for (%s entry : map.%s2%sEntrySet()) {",
+            parameterizedWithWildcards(entryType, objectTypes),
+            keyKind.methodPrefix(),
+            valueKind.prefix())
+        .addLine("    %s(entry.%s(), entry.%s());",
+            putMethod(property),
+            keyKind.isPrimitive() ? "get" + keyKind.prefix() + "Key" : "getKey",
+            valueKind.isPrimitive() ? "get" + valueKind.prefix() + "Value" : "getValue")
+        .addLine("  }")
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addMapPutAll(SourceBuilder code, Metadata metadata) {
+    addJavadocForPutAll(code, metadata);
+    addAccessorAnnotations(code);
+    code.addLine("public %s %s(%s<? extends %s, ? extends %s> map) {",
+            metadata.getBuilder(),
+            putAllMethod(property),
+            Map.class,
+            boxedKeyType,
+            boxedValueType)
+        .addLine("  for (%s<? extends %s, ? extends %s> entry : map.entrySet()) {",
+            Map.Entry.class, boxedKeyType, boxedValueType)
+        .addLine("    %s(entry.getKey(), entry.getValue());", putMethod(property))
+        .addLine("  }")
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addJavadocForPutAll(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Copies all of the mappings from {@code map} to the map to be returned from")
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" * @throws NullPointerException if {@code map} is null or contains a")
+        .addLine(" *     null key or value")
+        .addLine(" */");
+  }
+
+  private void addRemove(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Removes the mapping for {@code key} from the map to be returned from")
+        .addLine(" * %s, if one is present.",
+            metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName());
+    if (!keyKind.isPrimitive()) {
+      code.addLine(" * @throws NullPointerException if {@code key} is null");
+    }
+    code.addLine(" */")
+        .addLine("public %s %s(%s key) {",
+            metadata.getBuilder(), removeMethod(property), keyType);
+    Block body = methodBody(code, "key");
+    if (keyKind.isPrimitive()) {
+      body.addLine("  %s.remove(key);", property.getField());
+    } else {
+      // remove(Object) would box the removed value; use the type-specific method instead
+      body.add(PreconditionExcerpts.checkNotNull("key"))
+          .addLine("  %s.remove%s(key);", property.getField(), valueKind.prefix());
+    }
+    body.addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
+        .addLine("}");
+  }
+
+  private void addMutate(SourceBuilder code, Metadata metadata) {
+    ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
+      return;
+    }
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Invokes {@code mutator} with the map to be returned from")
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * <p>This method mutates the map in-place. {@code mutator} is a void")
+        .addLine(" * consumer, so any value returned from a lambda will be ignored. Take care")
+        .addLine(" * not to call pure functions, like %s.",
+            COLLECTION.javadocNoArgMethodLink("stream"))
+        .addLine(" *")
+        .addLine(" * @return this {@code Builder} object")
+        .addLine(" * @throws NullPointerException if {@code mutator} is null")
+        .addLine(" */")
+        .addLine("public %s %s(%s<? super %s> mutator) {",
+            metadata.getBuilder(),
+            mutator(property),
+            consumer.getQualifiedName(),
+            propertyType());
+    Block body = methodBody(code, "mutator");
+    if (overridesPutMethod) {
+      // Mutate a copy, then re-add every mapping through the overridden put method
+      Excerpt mappings = body.declare(
+          propertyType(),
+          "mappings",
+          Excerpts.add("new %s%s(%s)",
+              implementationType(), diamond(objectTypes), property.getField()));
+      body.addLine("  mutator.accept(%s);", mappings)
+          .addLine("  %s.clear();", property.getField())
+          .addLine("  %s(%s);", putAllMethod(property), mappings);
+    } else {
+      body.addLine("  // If %s is overridden, this method will be updated to delegate to it",
+              putMethod(property))
+          .addLine("  mutator.accept(%s);", property.getField());
+    }
+    body.addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
+        .addLine("}");
+  }
+
+  private void addClear(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Removes all of the mappings from the map to be returned from ")
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" *")
+        .addLine(" * @return this {@code %s} object", metadata.getBuilder().getSimpleName())
+        .addLine(" */")
+        .addLine("public %s %s() {", metadata.getBuilder(), clearMethod(property))
+        .addLine("  %s.clear();", property.getField())
+        .addLine("  return (%s) this;", metadata.getBuilder())
+        .addLine("}");
+  }
+
+  private void addGetter(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns an unmodifiable view of the map that will be returned by")
+        .addLine(" * %s.", metadata.getType().javadocNoArgMethodLink(property.getGetterName()))
+        .addLine(" * Changes to this builder will be reflected in the view.")
+        .addLine(" */")
+        .addLine("public %s %s() {", propertyType(), getter(property))
+        .addLine("  return %s.unmodifiable(%s);", utilityType(), property.getField())
+        .addLine("}");
+  }
+
+  @Override
+  public void addFinalFieldAssignment(SourceBuilder code, Excerpt finalField, String builder) {
+    code.addLine("%s = %s;", finalField, unmodifiableCopy(property.getField().on(builder)));
+  }
+
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s %s = %s.unmodifiable(%s);",
+            propertyType(), field, utilityType(), property.getField().on("this"))
+        .addLine("%s = new %s%s();",
+            property.getField().on("this"), implementationType(), diamond(objectTypes));
+    return field;
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return unmodifiableCopy(parameter);
+  }
+
+  private Excerpt unmodifiableCopy(Object map) {
+    return Excerpts.add("%s.unmodifiable(new %s%s(%s))",
+        utilityType(), implementationType(), diamond(objectTypes), map);
+  }
+
+  @Override
+  public void addMergeFromValue(Block code, String value) {
+    code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
+  }
+
+  @Override
+  public void addMergeFromBuilder(Block code, String builder) {
+    Excerpt base = Declarations.upcastToGeneratedBuilder(code, metadata, builder);
+    code.addLine("%s(%s);", putAllMethod(property), property.getField().on(base));
+  }
+
+  @Override
+  public void addSetFromResult(SourceBuilder code, Excerpt builder, Excerpt variable) {
+    code.addLine("%s.%s(%s);", builder, putAllMethod(property), variable);
+  }
+
+  @Override
+  public void addClearField(Block code) {
+    code.addLine("%s();", clearMethod(property));
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+
+import java.util.List;
+import java.util.Locale;
+
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Names of the fastutil types FreeBuilder generates code for, which are not available to the
+ * processor itself.
+ */
+class FastutilTypes {
+
+  /** The element types fastutil specializes its collections for. */
+  enum Kind {
+    BOOLEAN(TypeKind.BOOLEAN, "Boolean"),
+    BYTE(TypeKind.BYTE, "Byte"),
+    SHORT(TypeKind.SHORT, "Short"),
+    INT(TypeKind.INT, "Int"),
+    LONG(TypeKind.LONG, "Long"),
+    CHAR(TypeKind.CHAR, "Char"),
+    FLOAT(TypeKind.FLOAT, "Float"),
+    DOUBLE(TypeKind.DOUBLE, "Double"),
+    OBJECT(null, "Object");
+
+    private final TypeKind primitive;
+    private final String prefix;
+
+    Kind(TypeKind primitive, String prefix) {
+      this.primitive = primitive;
+      this.prefix = prefix;
+    }
+
+    boolean isPrimitive() {
+      return primitive != null;
+    }
+
+    TypeKind primitive() {
+      return primitive;
+    }
+
+    /** Returns the prefix of types specialized for this kind, e.g. "Int". */
+    String prefix() {
+      return prefix;
+    }
+
+    /** Returns the prefix of specialized methods, e.g. "int" in int2ObjectEntrySet. */
+    String methodPrefix() {
+      return prefix.toLowerCase(Locale.ENGLISH);
+    }
+
+    /** Returns the type {@code suffix} specialized for this kind, e.g. IntList for "List". */
+    QualifiedName type(String suffix) {
+      return QualifiedName.of("it.unimi.dsi.fastutil." + methodPrefix() + "s", prefix + suffix);
+    }
+  }
+
+  /** Kinds fastutil has hash sets and maps keyed on. */
+  static final ImmutableList<Kind> HASHABLE_KINDS = ImmutableList.of(
+      Kind.BYTE, Kind.SHORT, Kind.INT, Kind.LONG, Kind.CHAR, Kind.FLOAT, Kind.DOUBLE, Kind.OBJECT);
+
+  /** Returns {@code type}, parameterized with {@code typeArguments} if there are any. */
+  static Excerpt parameterized(QualifiedName type, List<?> typeArguments) {
+    if (typeArguments.isEmpty()) {
+      return Excerpts.add("%s", type);
+    }
+    return Excerpts.add("%s<%s>", type, Excerpts.join(", ", typeArguments));
+  }
+
+  /** Returns {@code type}, parameterized with upper-bounded wildcards of {@code typeArguments}. */
+  static Excerpt parameterizedWithWildcards(QualifiedName type, List<?> typeArguments) {
+    ImmutableList.Builder<Excerpt> wildcards = ImmutableList.builder();
+    for (Object typeArgument : typeArguments) {
+      wildcards.add(Excerpts.add("? extends %s", typeArgument));
+    }
+    return parameterized(type, wildcards.build());
+  }
+
+  /** Returns a diamond operator for {@code typeArguments}, or nothing if there are none. */
+  static Excerpt diamond(List<?> typeArguments) {
+    if (typeArguments.isEmpty()) {
+      return Excerpts.empty();
+    }
+    return diamondOperator(Excerpts.join(", ", typeArguments));
+  }
+
+  private FastutilTypes() {}
+}
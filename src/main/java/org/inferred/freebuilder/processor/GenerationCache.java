@@ -0,0 +1,329 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.FeatureType;
+import org.inferred.freebuilder.processor.util.feature.GenerationCacheDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * A local cache of generated builder source, so types that have not changed since an earlier
+ * compilation skip the {@link CodeGenerator} and formatting.
+ *
+ * <p>Entries are keyed by a fingerprint of everything the source is generated from: the analysed
+ * {@link Metadata}, every feature in the processor jar, the constants of enum properties, the
+ * types the generated builder's imports may collide with, and the processor itself. Types with
+ * buildable properties are never cached, as their source depends on the shape of other builders.
+ * The cache is best-effort: I/O errors are treated as misses, and the least recently used entries
+ * are evicted once the directory grows past its size bound.
+ */
+class GenerationCache {
+
+  static final String SUFFIX = ".java.cached";
+
+  /** Fraction of the size bound to evict down to, so evictions do not happen on every write. */
+  private static final double EVICTION_TARGET = 0.75;
+
+  /**
+   * Returns a cache for {@code config}, or absent if it is disabled, or the version or features of
+   * this processor or the version of any of its {@code plugins} cannot be determined.
+   */
+  static Optional<GenerationCache> open(GenerationCacheDir config, Iterable<?> plugins) {
+    if (!config.isEnabled()) {
+      return Optional.absent();
+    }
+    StringBuilder processorVersion = new StringBuilder();
+    String jar = jarVersion(Processor.class);
+    if (jar == null) {
+      return Optional.absent();
+    }
+    processorVersion.append(jar);
+    for (Object plugin : plugins) {
+      jar = jarVersion(plugin.getClass());
+      if (jar == null) {
+        return Optional.absent();
+      }
+      processorVersion.append('\n').append(jar);
+    }
+    List<FeatureType<?>> featureTypes = featureTypes();
+    if (featureTypes == null) {
+      return Optional.absent();
+    }
+    return Optional.of(new GenerationCache(
+        config.directory(), config.maxBytes(), processorVersion.toString(), featureTypes));
+  }
+
+  private final File directory;
+  private final long maxBytes;
+  private final String processorVersion;
+  private final List<FeatureType<?>> featureTypes;
+  private long knownBytes = -1;
+
+  @VisibleForTesting
+  GenerationCache(File directory, long maxBytes, String processorVersion) {
+    this(directory, maxBytes, processorVersion, ImmutableList.<FeatureType<?>>of());
+  }
+
+  private GenerationCache(
+      File directory, long maxBytes, String processorVersion, List<FeatureType<?>> featureTypes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.processorVersion = processorVersion;
+    this.featureTypes = featureTypes;
+  }
+
+  /**
+   * Returns the key the source generated for {@code metadata} is cached under, or null if the
+   * source depends on inputs the key cannot capture.
+   */
+  @Nullable
+  String fingerprint(ProcessingEnvironment env, Metadata metadata, FeatureSet features) {
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator() instanceof BuildableProperty) {
+        return null;
+      }
+    }
+    Hasher hasher = Hashing.sha256().newHasher()
+        .putString(processorVersion, Charsets.UTF_8)
+        .putChar('\n');
+    for (FeatureType<?> featureType : featureTypes) {
+      hasher.putString(String.valueOf(features.get(featureType)), Charsets.UTF_8)
+          .putChar('\n');
+    }
+    // Packed flags size their fields by the number of constants in each enum property
+    for (Property property : metadata.getProperties()) {
+      Element element = env.getTypeUtils().asElement(property.getType());
+      if (element != null && element.getKind() == ElementKind.ENUM) {
+        for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+          if (field.getKind() == ElementKind.ENUM_CONSTANT) {
+            hasher.putString(field.getSimpleName().toString(), Charsets.UTF_8).putChar(',');
+          }
+        }
+        hasher.putChar('\n');
+      }
+    }
+    // CompilationUnitBuilder avoids importing names that collide with the package's own types
+    String pkg = metadata.getGeneratedBuilder().getQualifiedName().getPackage();
+    PackageElement packageElement = env.getElementUtils().getPackageElement(pkg);
+    if (packageElement != null) {
+      List<String> siblings = new ArrayList<String>();
+      for (TypeElement sibling : ElementFilter.typesIn(packageElement.getEnclosedElements())) {
+        siblings.add(sibling.getQualifiedName().toString());
+      }
+      for (String sibling : Ordering.natural().sortedCopy(siblings)) {
+        hasher.putString(sibling, Charsets.UTF_8).putChar('\n');
+      }
+    }
+    return hasher.putString(metadata.toString(), Charsets.UTF_8).hash().toString();
+  }
+
+  /** Returns the source cached under {@code fingerprint}, or null on a miss. */
+  @Nullable
+  String get(String fingerprint) {
+    File entry = new File(directory, fingerprint + SUFFIX);
+    if (!entry.isFile()) {
+      return null;
+    }
+    try {
+      String source = Files.toString(entry, Charsets.UTF_8);
+      entry.setLastModified(System.currentTimeMillis());
+      return source;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Caches {@code source} under {@code fingerprint}, evicting old entries if necessary. */
+  void put(String fingerprint, String source) {
+    try {
+      directory.mkdirs();
+      if (knownBytes < 0) {
+        knownBytes = totalBytes(entries());
+      }
+      // Write to a temporary file first, so concurrent builds never read a partial entry
+      File temp = File.createTempFile(fingerprint, ".tmp", directory);
+      Files.write(source, temp, Charsets.UTF_8);
+      File entry = new File(directory, fingerprint + SUFFIX);
+      if (!temp.renameTo(entry)) {
+        temp.delete();
+        return;
+      }
+      knownBytes += entry.length();
+      if (knownBytes > maxBytes) {
+        evict();
+      }
+    } catch (IOException e) {
+      // The cache is best-effort; the source has been generated regardless
+    }
+  }
+
+  private void evict() {
+    File[] entries = entries();
+    Arrays.sort(entries, LEAST_RECENTLY_USED);
+    long bytes = totalBytes(entries);
+    long target = (long) (maxBytes * EVICTION_TARGET);
+    for (File entry : entries) {
+      if (bytes <= target) {
+        break;
+      }
+      long length = entry.length();
+      if (entry.delete()) {
+        bytes -= length;
+      }
+    }
+    knownBytes = bytes;
+  }
+
+  private File[] entries() {
+    File[] entries = directory.listFiles();
+    if (entries == null) {
+      return new File[0];
+    }
+    List<File> cached = new ArrayList<File>();
+    for (File entry : entries) {
+      if (entry.getName().endsWith(SUFFIX)) {
+        cached.add(entry);
+      }
+    }
+    return cached.toArray(new File[0]);
+  }
+
+  private static long totalBytes(File[] entries) {
+    long bytes = 0;
+    for (File entry : entries) {
+      bytes += entry.length();
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns a string identifying the build of {@code cls}: the location, size and timestamp of the
+   * jar it was loaded from. Returns null if it was not loaded from a jar, as changes to a class
+   * directory cannot be detected cheaply.
+   */
+  @Nullable
+  private static String jarVersion(Class<?> cls) {
+    CodeSource codeSource = cls.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+    try {
+      File jar = new File(codeSource.getLocation().toURI());
+      if (!jar.isFile()) {
+        return null;
+      }
+      return jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified();
+    } catch (URISyntaxException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns every {@link FeatureType} constant declared in the feature package of the processor
+   * jar, sorted by declaring class, so new features are fingerprinted without being listed here.
+   * Returns null if the jar cannot be read.
+   */
+  @Nullable
+  private static List<FeatureType<?>> featureTypes() {
+    CodeSource codeSource = FeatureType.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+    String prefix = FeatureType.class.getPackage().getName().replace('.', '/') + "/";
+    List<String> classNames = new ArrayList<String>();
+    try {
+      JarFile jar = new JarFile(new File(codeSource.getLocation().toURI()));
+      try {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (name.startsWith(prefix)
+              && name.endsWith(".class")
+              && name.indexOf('/', prefix.length()) < 0) {
+            classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+          }
+        }
+      } finally {
+        jar.close();
+      }
+      List<FeatureType<?>> featureTypes = new ArrayList<FeatureType<?>>();
+      for (String className : Ordering.natural().sortedCopy(classNames)) {
+        Class<?> cls = Class.forName(className, true, FeatureType.class.getClassLoader());
+        for (Field field : cls.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())
+              && FeatureType.class.isAssignableFrom(field.getType())) {
+            field.setAccessible(true);
+            featureTypes.add((FeatureType<?>) field.get(null));
+          }
+        }
+      }
+      return featureTypes;
+    } catch (IOException e) {
+      return null;
+    } catch (URISyntaxException e) {
+      return null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  private static final Comparator<File> LEAST_RECENTLY_USED = new Comparator<File>() {
+    @Override
+    public int compare(File a, File b) {
+      long difference = a.lastModified() - b.lastModified();
+      return (difference < 0) ? -1 : (difference > 0) ? 1 : 0;
+    }
+  };
+}
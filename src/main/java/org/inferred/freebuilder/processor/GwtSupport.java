@@ -1,24 +1,40 @@
 package org.inferred.freebuilder.processor;
 
+import static org.inferred.freebuilder.processor.BuilderMethods.nullableSetter;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findProperty;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.Metadata.Visibility;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
-import org.inferred.freebuilder.processor.util.TypeMirrorExcerpt;
+import org.inferred.freebuilder.processor.util.ValueType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 
 class GwtSupport {
 
@@ -31,6 +47,19 @@ class GwtSupport {
   private static final QualifiedName SERIALIZATION_STREAM_WRITER =
       QualifiedName.of("com.google.gwt.user.client.rpc", "SerializationStreamWriter");
 
+  /** Suffix of the typed stream methods for each boxed primitive, by qualified name. */
+  private static final Map<String, String> BOXED_TYPE_METHODS =
+      ImmutableMap.<String, String>builder()
+          .put(Boolean.class.getName(), "Boolean")
+          .put(Byte.class.getName(), "Byte")
+          .put(Short.class.getName(), "Short")
+          .put(Integer.class.getName(), "Int")
+          .put(Long.class.getName(), "Long")
+          .put(Character.class.getName(), "Char")
+          .put(Float.class.getName(), "Float")
+          .put(Double.class.getName(), "Double")
+          .build();
+
   public static Metadata.Builder gwtMetadata(TypeElement type, Metadata metadata) {
     Metadata.Builder extraMetadata = new Metadata.Builder();
     Optional<AnnotationMirror> annotation = findAnnotationMirror(type, GwtCompatible.class);
@@ -54,11 +83,15 @@ class GwtSupport {
     return extraMetadata;
   }
 
-  private static final class CustomValueSerializer implements Function<Metadata, Excerpt> {
+  private static final class CustomValueSerializer extends ValueType
+      implements Function<Metadata, Excerpt> {
     @Override
     public Excerpt apply(final Metadata metadata) {
       return new CustomValueSerializerExcerpt(metadata);
     }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {}
   }
 
   private static final class CustomValueSerializerExcerpt extends Excerpt {
@@ -113,54 +146,115 @@ class GwtSupport {
 
     private void addInstantiateInstance(SourceBuilder code) {
       code.addLine("")
-          .addLine("  @%s", Override.class)
-          .addLine("  public %s instantiateInstance(%s reader)",
+          .addLine("  @%s", Override.class);
+      if (hasUncheckedCasts()) {
+        code.addLine("  @%s(\"unchecked\")", SuppressWarnings.class);
+      }
+      code.addLine("  public %s instantiateInstance(%s reader)",
               metadata.getValueType(), SERIALIZATION_STREAM_READER)
           .addLine("      throws %s {", SERIALIZATION_EXCEPTION);
       Block body = Block.methodBody(code, "reader");
-      Excerpt builder = body.declare(
-          metadata.getBuilder(), "builder", Excerpts.add("new %s()", metadata.getBuilder()));
+      if (CodeGenerator.hasFieldwiseValueConstructor(code, metadata)) {
+        addInstantiateFieldwise(body);
+      } else {
+        addInstantiateViaBuilder(body);
+      }
+      code.add(body)
+          .addLine("  }");
+    }
+
+    /**
+     * Reads each property, in the order {@link #addSerializeInstance} wrote them, into a local
+     * variable, then passes them all to the value type's private fieldwise constructor.
+     */
+    private void addInstantiateFieldwise(Block body) {
+      List<Excerpt> values = new ArrayList<Excerpt>();
       for (Property property : metadata.getProperties()) {
-        TypeMirrorExcerpt propertyType = new TypeMirrorExcerpt(property.getType());
-        if (property.getType().getKind().isPrimitive()) {
-          Excerpt value = body.declare(
-              propertyType,
-              property.getName(),
-              Excerpts.add("reader.read%s()", withInitialCapital(property.getType())));
-          property.getCodeGenerator()
-              .addSetFromResult(body, builder, value);
-        } else if (String.class.getName().equals(property.getType().toString())) {
-          Excerpt value = body.declare(
-              propertyType,
-              property.getName(),
-              Excerpts.add("reader.readString()"));
-          property.getCodeGenerator()
-              .addSetFromResult(body, builder, value);
+        PropertyCodeGenerator generator = property.getCodeGenerator();
+        String local = "_" + property.getName();
+        List<TypeMirror> types = inlineTypes(property);
+        if (types.size() == 1) {
+          TypeMirror elementType = types.get(0);
+          Class<?> implementation =
+              isErasureOf(property.getType(), Set.class) ? LinkedHashSet.class : ArrayList.class;
+          body.addLine("    %s %s = new %s<%s>();",
+              property.getType(), local, implementation, elementType);
+          beginCatch(body, isCast(elementType));
+          body.addLine("    for (int i = 0, size = reader.readInt(); i < size; i++) {")
+              .addLine("      %s.add(%s);", local, read(elementType))
+              .addLine("    }");
+          endCatch(body, property, isCast(elementType));
+          values.add(generator.convertToValueField(body, Excerpts.add("%s", local)));
+        } else if (types.size() == 2) {
+          boolean cast = isCast(types.get(0)) || isCast(types.get(1));
+          body.addLine("    %s %s = new %s<%s, %s>();",
+              property.getType(), local, LinkedHashMap.class, types.get(0), types.get(1));
+          beginCatch(body, cast);
+          body.addLine("    for (int i = 0, size = reader.readInt(); i < size; i++) {")
+              .addLine("      %s.put(%s, %s);", local, read(types.get(0)), read(types.get(1)))
+              .addLine("    }");
+          endCatch(body, property, cast);
+          values.add(generator.convertToValueField(body, Excerpts.add("%s", local)));
+        } else if (generator.getType() == Type.OPTIONAL) {
+          body.addLine("    %s %s;", generator.getValueFieldType(), local);
+          beginCatch(body, true);
+          body.addLine("    %s = (%s) reader.readObject();", local, generator.getValueFieldType());
+          endCatch(body, property, true);
+          values.add(Excerpts.add("%s", local));
         } else {
-          body.addLine("    try {");
-          Block tryBlock = body.innerBlock();
-          Excerpt typeAndPreamble;
-          if (!property.isFullyCheckedCast()) {
-            typeAndPreamble = Excerpts.add("@SuppressWarnings(\"unchecked\") %s", propertyType);
+          Excerpt value = readProperty(property);
+          if (isCast(property)) {
+            body.addLine("    %s %s;", property.getType(), local);
+            beginCatch(body, true);
+            body.addLine("    %s = %s;", local, value);
+            endCatch(body, property, true);
           } else {
-            typeAndPreamble = propertyType;
+            body.addLine("    %s %s = %s;", property.getType(), local, value);
           }
-          Excerpt value = tryBlock.declare(
-              typeAndPreamble,
-              property.getName(),
-              Excerpts.add("(%s) reader.readObject()", propertyType));
-          property.getCodeGenerator()
-              .addSetFromResult(tryBlock, builder, value);
-          body.add(tryBlock)
-              .addLine("    } catch (%s e) {", ClassCastException.class)
-              .addLine("      throw new %s(", SERIALIZATION_EXCEPTION)
-              .addLine("          \"Wrong type for property '%s'\", e);", property.getName())
+          values.add(generator.convertToValueField(body, Excerpts.add("%s", local)));
+        }
+      }
+      body.addLine("    return %s(%s);",
+          metadata.getValueType().constructor(), Excerpts.join(", ", values));
+    }
+
+    /**
+     * Reads each property, in the order {@link #addSerializeInstance} wrote them, straight into a
+     * new builder, so any validation the user has added to it still runs.
+     */
+    private void addInstantiateViaBuilder(Block body) {
+      Excerpt builder = Excerpts.add("builder");
+      body.addLine("    %1$s builder = new %1$s();", metadata.getBuilder());
+      for (Property property : metadata.getProperties()) {
+        PropertyCodeGenerator generator = property.getCodeGenerator();
+        List<TypeMirror> types = inlineTypes(property);
+        if (types.size() == 1) {
+          beginCatch(body, isCast(types.get(0)));
+          body.addLine("    for (int i = 0, size = reader.readInt(); i < size; i++) {")
+              .addLine("      %s;", generator.addToCollector(builder, read(types.get(0))).get())
+              .addLine("    }");
+          endCatch(body, property, isCast(types.get(0)));
+        } else if (types.size() == 2) {
+          boolean cast = isCast(types.get(0)) || isCast(types.get(1));
+          beginCatch(body, cast);
+          body.addLine("    for (int i = 0, size = reader.readInt(); i < size; i++) {")
+              .addLine("      builder.%s(%s, %s);",
+                  putMethod(property), read(types.get(0)), read(types.get(1)))
               .addLine("    }");
+          endCatch(body, property, cast);
+        } else if (generator.getType() == Type.OPTIONAL) {
+          beginCatch(body, true);
+          body.addLine("    builder.%s((%s) reader.readObject());",
+              nullableSetter(property), generator.getValueFieldType());
+          endCatch(body, property, true);
+        } else {
+          beginCatch(body, isCast(property));
+          body.add("    ");
+          generator.addSetFromResult(body, builder, readProperty(property));
+          endCatch(body, property, isCast(property));
         }
       }
-      body.addLine("    return (%s) %s.build();", metadata.getValueType(), builder);
-      code.add(body)
-          .addLine("  }");
+      body.addLine("    return (%s) builder.build();", metadata.getValueType());
     }
 
     private void addSerializeInstance(SourceBuilder code) {
@@ -170,30 +264,172 @@ class GwtSupport {
               SERIALIZATION_STREAM_WRITER, metadata.getValueType())
           .addLine("      throws %s {", SERIALIZATION_EXCEPTION);
       for (Property property : metadata.getProperties()) {
-        if (property.getType().getKind().isPrimitive()) {
-          code.add("    writer.write%s(", withInitialCapital(property.getType()));
-        } else if (String.class.getName().equals(property.getType().toString())) {
-          code.add("    writer.writeString(");
+        PropertyCodeGenerator generator = property.getCodeGenerator();
+        Excerpt field = property.getField().on("instance");
+        List<TypeMirror> types = inlineTypes(property);
+        if (types.size() == 1) {
+          code.addLine("    writer.writeInt(%s.size());", field)
+              .addLine("    for (%s element : %s) {", types.get(0), field)
+              .addLine("      %s;", write(types.get(0), "element"))
+              .addLine("    }");
+        } else if (types.size() == 2) {
+          code.addLine("    writer.writeInt(%s.size());", field)
+              .addLine("    for (%s<%s, %s> entry : %s.entrySet()) {",
+                  Map.Entry.class, types.get(0), types.get(1), field)
+              .addLine("      %s;", write(types.get(0), "entry.getKey()"))
+              .addLine("      %s;", write(types.get(1), "entry.getValue()"))
+              .addLine("    }");
+        } else if (generator.getType() == Type.OPTIONAL) {
+          code.addLine("    writer.writeObject(%s);", field);
         } else {
-          code.add("    writer.writeObject(");
+          code.add("    writer.write%s(", streamMethod(property.getType(), false).or("Object"));
+          generator.addReadValueFragment(code, field);
+          code.add(");\n");
         }
-        property.getCodeGenerator().addReadValueFragment(code, property.getField().on("instance"));
-        code.add(");\n");
       }
       code.addLine("  }");
     }
 
+    /**
+     * Returns the element type, or key and value types, of {@code property} if it is a plain
+     * {@link List}, {@link Set} or {@link Map}, which are written inline as a size followed by
+     * their contents; otherwise, returns an empty list, and the property is written whole.
+     */
+    private static List<TypeMirror> inlineTypes(Property property) {
+      List<TypeMirror> types = property.getCodeGenerator().getJsonStreamingTypes();
+      if ((types.size() == 1
+              && (isErasureOf(property.getType(), List.class)
+                  || isErasureOf(property.getType(), Set.class)))
+          || (types.size() == 2 && isErasureOf(property.getType(), Map.class))) {
+        return types;
+      }
+      return ImmutableList.of();
+    }
+
+    private boolean hasUncheckedCasts() {
+      for (Property property : metadata.getProperties()) {
+        List<TypeMirror> types = inlineTypes(property);
+        if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
+          if (isParameterized(property.getCodeGenerator().getValueFieldType())) {
+            return true;
+          }
+        } else if (types.isEmpty() && !property.isFullyCheckedCast()) {
+          return true;
+        }
+        for (TypeMirror type : types) {
+          if (isParameterized(type)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
     @Override
     protected void addFields(FieldReceiver fields) {
       fields.add("metadata", metadata);
     }
   }
 
-  private static final class GwtWhitelist implements Function<Metadata, Excerpt> {
+  /**
+   * Returns true if a {@code Value_CustomFieldSerializer} will be generated for {@code metadata},
+   * which instantiates the value type through its fieldwise constructor where possible.
+   */
+  static boolean hasCustomFieldSerializer(Metadata metadata) {
+    QualifiedName builderName = metadata.getGeneratedBuilder().getQualifiedName();
+    return metadata.getVisibleNestedTypes().contains(
+        builderName.nestedType("Value_CustomFieldSerializer"));
+  }
+
+  private static void beginCatch(Block body, boolean cast) {
+    if (cast) {
+      body.addLine("    try {");
+    }
+  }
+
+  private static void endCatch(Block body, Property property, boolean cast) {
+    if (cast) {
+      body.addLine("    } catch (%s e) {", ClassCastException.class)
+          .addLine("      throw new %s(", SERIALIZATION_EXCEPTION)
+          .addLine("          \"Wrong type for property '%s'\", e);", property.getName())
+          .addLine("    }");
+    }
+  }
+
+  /** Returns an excerpt writing {@code value}, a non-null element of type {@code type}. */
+  private static Excerpt write(TypeMirror type, Object value) {
+    return Excerpts.add("writer.write%s(%s)", streamMethod(type, true).or("Object"), value);
+  }
+
+  /** Returns an excerpt reading an element of type {@code type}, written by {@link #write}. */
+  private static Excerpt read(TypeMirror type) {
+    Optional<String> method = streamMethod(type, true);
+    if (method.isPresent()) {
+      return Excerpts.add("reader.read%s()", method.get());
+    }
+    return Excerpts.add("(%s) reader.readObject()", type);
+  }
+
+  /** Returns an excerpt reading a property written whole by {@code serializeInstance}. */
+  private static Excerpt readProperty(Property property) {
+    Optional<String> method = streamMethod(property.getType(), false);
+    if (method.isPresent()) {
+      return Excerpts.add("reader.read%s()", method.get());
+    }
+    return Excerpts.add("(%s) reader.readObject()", property.getType());
+  }
+
+  private static boolean isCast(TypeMirror elementType) {
+    return !streamMethod(elementType, true).isPresent();
+  }
+
+  private static boolean isCast(Property property) {
+    return !streamMethod(property.getType(), false).isPresent();
+  }
+
+  /**
+   * Returns the suffix of the typed {@code SerializationStreamWriter} and
+   * {@code SerializationStreamReader} methods for {@code type}, if it has one. Boxed primitives
+   * only qualify if {@code nonNull}, as when they are elements of a collection.
+   */
+  private static Optional<String> streamMethod(TypeMirror type, boolean nonNull) {
+    if (type.getKind().isPrimitive()) {
+      return Optional.of(withInitialCapital(type));
+    }
+    Optional<TypeElement> element = maybeAsTypeElement(type);
+    if (!element.isPresent()) {
+      return Optional.absent();
+    }
+    String name = element.get().getQualifiedName().toString();
+    if (name.equals(String.class.getName())) {
+      return Optional.of("String");
+    }
+    if (!nonNull) {
+      return Optional.absent();
+    }
+    return Optional.fromNullable(BOXED_TYPE_METHODS.get(name));
+  }
+
+  private static boolean isErasureOf(TypeMirror type, Class<?> cls) {
+    Optional<TypeElement> element = maybeAsTypeElement(type);
+    return element.isPresent() && element.get().getQualifiedName().contentEquals(cls.getName());
+  }
+
+  private static boolean isParameterized(TypeMirror type) {
+    return type.getKind() == TypeKind.TYPEVAR
+        || (type.getKind() == TypeKind.DECLARED
+            && !((DeclaredType) type).getTypeArguments().isEmpty());
+  }
+
+  private static final class GwtWhitelist extends ValueType
+      implements Function<Metadata, Excerpt> {
     @Override
     public Excerpt apply(final Metadata metadata) {
       return new GwtWhitelistExcerpt(metadata);
     }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {}
   }
 
   private static final class GwtWhitelistExcerpt extends Excerpt {
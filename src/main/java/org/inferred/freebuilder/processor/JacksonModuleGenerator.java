@@ -0,0 +1,360 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static javax.lang.model.util.ElementFilter.typesIn;
+import static org.inferred.freebuilder.processor.JacksonSupport.DESERIALIZER;
+import static org.inferred.freebuilder.processor.JacksonSupport.SERIALIZER;
+import static org.inferred.freebuilder.processor.util.feature.StreamingJackson.STREAMING_JACKSON;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.util.CompilationUnitBuilder;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.FilerUtils;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Collects the types given streaming Jackson codecs across processing rounds, and generates a
+ * {@code FreeBuilderModule} in each of their packages registering all of them, listed under
+ * {@value #SERVICES} so {@code ObjectMapper.findAndRegisterModules()} picks it up.
+ *
+ * <p>Each module's name depends only on its package, so it can also be registered explicitly.
+ * Types compiled earlier are found from their generated builders on the classpath, so an
+ * incremental build recompiling only some of a package's types still registers all of them.
+ * Entries already in the services file, such as the project's own modules, are kept; only
+ * entries naming a {@code FreeBuilderModule} that no longer exists are dropped.
+ *
+ * <p>Deserializers are looked up by value type, and also substituted for Jackson's own
+ * builder-based deserializer, as Jackson consults {@code @JsonDeserialize(builder = ...)} before
+ * any deserializer registered by a module.
+ */
+class JacksonModuleGenerator {
+
+  static final String SIMPLE_NAME = "FreeBuilderModule";
+  static final String SERVICES = "META-INF/services/com.fasterxml.jackson.databind.Module";
+
+  private static final QualifiedName BEAN_DESCRIPTION =
+      QualifiedName.of("com.fasterxml.jackson.databind", "BeanDescription");
+  private static final QualifiedName BEAN_DESERIALIZER_MODIFIER =
+      QualifiedName.of("com.fasterxml.jackson.databind.deser", "BeanDeserializerModifier");
+  private static final QualifiedName BUILDER_BASED_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind.deser", "BuilderBasedDeserializer");
+  private static final QualifiedName DESERIALIZATION_CONFIG =
+      QualifiedName.of("com.fasterxml.jackson.databind", "DeserializationConfig");
+  private static final QualifiedName DESERIALIZERS =
+      QualifiedName.of("com.fasterxml.jackson.databind.deser", "Deserializers");
+  private static final QualifiedName JAVA_TYPE =
+      QualifiedName.of("com.fasterxml.jackson.databind", "JavaType");
+  private static final QualifiedName JSON_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind", "JsonDeserializer");
+  private static final QualifiedName SIMPLE_MODULE =
+      QualifiedName.of("com.fasterxml.jackson.databind.module", "SimpleModule");
+
+  private static final class Codecs {
+    final QualifiedName type;
+    final QualifiedName builder;
+    /** The type's source element, or null if it was compiled earlier. */
+    @Nullable final TypeElement element;
+
+    Codecs(QualifiedName type, QualifiedName builder, @Nullable TypeElement element) {
+      this.type = type;
+      this.builder = builder;
+      this.element = element;
+    }
+  }
+
+  private final List<Codecs> codecs = new ArrayList<Codecs>();
+  private boolean written = false;
+
+  /** Records {@code type} for the module, if streaming codecs were generated for it. */
+  void add(
+      TypeElement type, Metadata metadata, ProcessingEnvironment env, FeatureSet features) {
+    if (!features.get(STREAMING_JACKSON).isEnabled()
+        || !JacksonSupport.hasStreamingCodecs(metadata)) {
+      return;
+    }
+    if (written) {
+      env.getMessager().printMessage(Kind.NOTE,
+          "Not registered in the " + SIMPLE_NAME + ": generated in a later processing round",
+          type);
+      return;
+    }
+    codecs.add(new Codecs(
+        metadata.getType().getQualifiedName(), metadata.getBuilder().getQualifiedName(), type));
+  }
+
+  /** Returns true if types have been recorded that have not yet been written to a module. */
+  boolean hasPendingTypes() {
+    return !written && !codecs.isEmpty();
+  }
+
+  /** Writes a module for each package of the types recorded so far, and their service entry. */
+  void write(ProcessingEnvironment env, FeatureSet features) throws IOException {
+    written = true;
+    Map<String, List<Codecs>> codecsByPackage = new TreeMap<String, List<Codecs>>();
+    for (Codecs type : codecs) {
+      String pkg = type.type.getPackage();
+      if (!codecsByPackage.containsKey(pkg)) {
+        codecsByPackage.put(pkg, new ArrayList<Codecs>());
+      }
+      codecsByPackage.get(pkg).add(type);
+    }
+    Set<String> modules = new LinkedHashSet<String>();
+    for (Map.Entry<String, List<Codecs>> entry : codecsByPackage.entrySet()) {
+      List<Codecs> registered = new ArrayList<Codecs>(entry.getValue());
+      registered.addAll(earlierCodecs(env, entry.getKey(), entry.getValue()));
+      Element[] originatingElements = originatingElements(entry.getValue());
+      QualifiedName module = QualifiedName.of(entry.getKey(), SIMPLE_NAME);
+      CompilationUnitBuilder code = new CompilationUnitBuilder(
+          env, module, ImmutableList.<QualifiedName>of(), features);
+      addModule(code, module, registered);
+      FilerUtils.writeCompilationUnit(
+          env.getFiler(), module, originatingElements, code.toString());
+      NativeImageConfigGenerator.writeModuleConfig(env, module, features, originatingElements);
+      modules.add(binaryName(module));
+    }
+    writeServices(env, modules, originatingElements(codecs));
+  }
+
+  /**
+   * Writes {@code modules} to the {@value #SERVICES} file, after any entries already in the class
+   * output, e.g. copied there from the project's resources or written by an earlier compilation.
+   */
+  private static void writeServices(
+      ProcessingEnvironment env, Set<String> modules, Element[] originatingElements)
+      throws IOException {
+    Set<String> entries = new LinkedHashSet<String>();
+    for (String entry : existingServices(env)) {
+      if (!isMissingModule(env, entry)) {
+        entries.add(entry);
+      }
+    }
+    entries.addAll(modules);
+    Writer services = env.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES, originatingElements)
+        .openWriter();
+    try {
+      for (String entry : entries) {
+        services.append(entry).append('\n');
+      }
+    } finally {
+      services.close();
+    }
+  }
+
+  private static List<String> existingServices(ProcessingEnvironment env) {
+    List<String> entries = new ArrayList<String>();
+    try {
+      FileObject existing =
+          env.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICES);
+      for (String line : Splitter.on('\n').split(existing.getCharContent(true))) {
+        if (!line.trim().isEmpty()) {
+          entries.add(line.trim());
+        }
+      }
+    } catch (IOException e) {
+      // No services file yet
+    }
+    return entries;
+  }
+
+  /**
+   * Returns whether {@code entry} names a {@code FreeBuilderModule} that no longer exists, e.g.
+   * because every type in its package has been deleted since an earlier compilation.
+   */
+  private static boolean isMissingModule(ProcessingEnvironment env, String entry) {
+    int comment = entry.indexOf('#');
+    String name = ((comment < 0) ? entry : entry.substring(0, comment)).trim();
+    if (!(name.equals(SIMPLE_NAME) || name.endsWith("." + SIMPLE_NAME))) {
+      return false;
+    }
+    return env.getElementUtils().getTypeElement(name) == null;
+  }
+
+  /**
+   * Returns the types in {@code pkg} given streaming codecs by an earlier compilation, and not in
+   * {@code current}, found by the codecs nested in their generated builders.
+   */
+  private static List<Codecs> earlierCodecs(
+      ProcessingEnvironment env, String pkg, List<Codecs> current) {
+    List<Codecs> earlier = new ArrayList<Codecs>();
+    PackageElement packageElement = env.getElementUtils().getPackageElement(pkg);
+    if (packageElement == null) {
+      return earlier;
+    }
+    Set<QualifiedName> known = new LinkedHashSet<QualifiedName>();
+    for (Codecs type : current) {
+      known.add(type.type);
+    }
+    Types types = env.getTypeUtils();
+    for (TypeElement generatedBuilder : typesIn(packageElement.getEnclosedElements())) {
+      TypeElement deserializer = nestedType(generatedBuilder, DESERIALIZER);
+      if (deserializer == null
+          || nestedType(generatedBuilder, SERIALIZER) == null
+          || deserializer.getSuperclass().getKind() != TypeKind.DECLARED) {
+        continue;
+      }
+      List<? extends TypeMirror> typeArguments =
+          ((DeclaredType) deserializer.getSuperclass()).getTypeArguments();
+      if (typeArguments.size() != 1 || typeArguments.get(0).getKind() != TypeKind.DECLARED) {
+        continue;
+      }
+      TypeElement type = (TypeElement) ((DeclaredType) typeArguments.get(0)).asElement();
+      if (!known.add(QualifiedName.of(type))) {
+        continue;
+      }
+      TypeMirror generatedType = types.erasure(generatedBuilder.asType());
+      for (TypeElement builder : typesIn(type.getEnclosedElements())) {
+        if (types.isSameType(types.erasure(builder.getSuperclass()), generatedType)) {
+          earlier.add(new Codecs(QualifiedName.of(type), QualifiedName.of(builder), null));
+          break;
+        }
+      }
+    }
+    return earlier;
+  }
+
+  @Nullable
+  private static TypeElement nestedType(TypeElement type, String simpleName) {
+    for (TypeElement nested : typesIn(type.getEnclosedElements())) {
+      if (nested.getSimpleName().contentEquals(simpleName)) {
+        return nested;
+      }
+    }
+    return null;
+  }
+
+  private static Element[] originatingElements(List<Codecs> types) {
+    List<Element> elements = new ArrayList<Element>();
+    for (Codecs type : types) {
+      if (type.element != null) {
+        elements.add(type.element);
+      }
+    }
+    return elements.toArray(new Element[0]);
+  }
+
+  private static void addModule(
+      CompilationUnitBuilder code, QualifiedName module, List<Codecs> registered) {
+    code.addLine("/**")
+        .addLine(" * Registers the streaming Jackson codecs FreeBuilder generated in this")
+        .addLine(" * package.")
+        .addLine(" */")
+        .add(Excerpts.generated(JacksonModuleGenerator.class))
+        .addLine("public class %s extends %s {", module.getSimpleName(), SIMPLE_MODULE)
+        .addLine("")
+        .addLine("  private static final long serialVersionUID = 1L;")
+        .addLine("")
+        .addLine("  public %s() {", module.getSimpleName())
+        .addLine("    super(\"%s\");", module.getSimpleName());
+    for (Codecs type : registered) {
+      code.addLine("    addSerializer(%s.class, new %s());",
+          type.type,
+          type.builder.nestedType(SERIALIZER));
+    }
+    code.addLine("  }")
+        .addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public void setupModule(SetupContext context) {")
+        .addLine("    super.setupModule(context);")
+        .addLine("    context.addDeserializers(new %s.Base() {", DESERIALIZERS)
+        .addLine("      @%s", Override.class)
+        .addLine("      public %s<?> findBeanDeserializer(", JSON_DESERIALIZER)
+        .addLine("          %s type, %s config, %s description) {",
+            JAVA_TYPE, DESERIALIZATION_CONFIG, BEAN_DESCRIPTION)
+        .addLine("        return deserializer(type.getRawClass());")
+        .addLine("      }")
+        .addLine("    });")
+        .addLine("    context.addBeanDeserializerModifier(new %s() {", BEAN_DESERIALIZER_MODIFIER)
+        .addLine("      @%s", Override.class)
+        .addLine("      public %s<?> modifyDeserializer(", JSON_DESERIALIZER)
+        .addLine("          %s config, %s description, %s<?> deserializer) {",
+            DESERIALIZATION_CONFIG, BEAN_DESCRIPTION, JSON_DESERIALIZER)
+        .addLine("        if (deserializer instanceof %s) {", BUILDER_BASED_DESERIALIZER)
+        .addLine("          %s<?> streaming = builderDeserializer(deserializer.handledType());",
+            JSON_DESERIALIZER)
+        .addLine("          if (streaming != null) {")
+        .addLine("            return streaming;")
+        .addLine("          }")
+        .addLine("        }")
+        .addLine("        return deserializer;")
+        .addLine("      }")
+        .addLine("    });")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns a new streaming deserializer for {@code type}, or null if it")
+        .addLine("   * has none. Deserializers resolve their delegates per mapper, so instances")
+        .addLine("   * are not shared.")
+        .addLine("   */")
+        .addLine("  private static %s<?> deserializer(Class<?> type) {", JSON_DESERIALIZER);
+    for (Codecs type : registered) {
+      code.addLine("    if (type == %s.class) {", type.type)
+          .addLine("      return new %s();",
+              type.builder.nestedType(DESERIALIZER))
+          .addLine("    }");
+    }
+    code.addLine("    return null;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Returns a new streaming deserializer for values built by {@code builder},")
+        .addLine("   * or null if it has none.")
+        .addLine("   */")
+        .addLine("  private static %s<?> builderDeserializer(Class<?> builder) {",
+            JSON_DESERIALIZER);
+    for (Codecs type : registered) {
+      code.addLine("    if (builder == %s.class) {", type.builder)
+          .addLine("      return new %s();",
+              type.builder.nestedType(DESERIALIZER))
+          .addLine("    }");
+    }
+    code.addLine("    return null;")
+        .addLine("  }")
+        .addLine("}");
+  }
+
+  private static String binaryName(QualifiedName type) {
+    String nestedName = Joiner.on('$').join(type.getSimpleNames());
+    return type.getPackage().isEmpty() ? nestedName : type.getPackage() + "." + nestedName;
+  }
+}
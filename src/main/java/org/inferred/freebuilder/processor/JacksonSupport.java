@@ -1,28 +1,125 @@
 package org.inferred.freebuilder.processor;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.collect.Iterables.getLast;
+import static org.apache.commons.lang3.StringEscapeUtils.escapeJava;
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
+import static org.inferred.freebuilder.processor.util.ModelUtils.findProperty;
+import static org.inferred.freebuilder.processor.util.feature.StreamingJackson.STREAMING_JACKSON;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.ValueType;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 
 class JacksonSupport {
 
-  private static final String JSON_DESERIALIZE =
-      "com.fasterxml.jackson.databind.annotation.JsonDeserialize";
+  private static final QualifiedName JSON_DESERIALIZE =
+      QualifiedName.of("com.fasterxml.jackson.databind.annotation", "JsonDeserialize");
   private static final QualifiedName JSON_PROPERTY =
       QualifiedName.of("com.fasterxml.jackson.annotation", "JsonProperty");
   private static final QualifiedName JACKSON_XML_PROPERTY =
       QualifiedName.of("com.fasterxml.jackson.dataformat.xml.annotation", "JacksonXmlProperty");
+  private static final String JACKSON_PACKAGE = "com.fasterxml.jackson";
+  private static final QualifiedName JSON_INCLUDE =
+      QualifiedName.of("com.fasterxml.jackson.annotation", "JsonInclude");
+  private static final QualifiedName JSON_INCLUDE_INCLUDE = JSON_INCLUDE.nestedType("Include");
+  private static final String ALWAYS = "ALWAYS";
+  private static final String NON_NULL = "NON_NULL";
+  private static final String NON_EMPTY = "NON_EMPTY";
+  private static final String NON_DEFAULT = "NON_DEFAULT";
+  private static final String USE_DEFAULTS = "USE_DEFAULTS";
+  /**
+   * Type annotations that streaming codecs honour, with the attributes of each they read. Any
+   * other Jackson annotation or attribute on the type, such as {@code @JsonIgnoreProperties} or
+   * {@code @JsonDeserialize(as = ...)}, leaves it to builder-based binding.
+   */
+  private static final Map<QualifiedName, Set<String>> STREAMABLE_TYPE_ANNOTATIONS =
+      ImmutableMap.<QualifiedName, Set<String>>of(
+          JSON_DESERIALIZE, ImmutableSet.of("builder", "using"),
+          JSON_INCLUDE, ImmutableSet.of("value"));
+  /**
+   * Getter annotations that streaming codecs honour, with the attributes of each they read. Any
+   * other Jackson annotation or attribute on a getter, such as {@code @JsonFormat} or
+   * {@code @JsonProperty(access = ...)}, leaves the type to builder-based binding.
+   */
+  private static final Map<QualifiedName, Set<String>> STREAMABLE_GETTER_ANNOTATIONS =
+      ImmutableMap.<QualifiedName, Set<String>>of(
+          JSON_PROPERTY, ImmutableSet.of("value"),
+          JSON_INCLUDE, ImmutableSet.of("value"));
+  static final String DESERIALIZER = "Value_JsonDeserializer";
+  static final String SERIALIZER = "Value_JsonSerializer";
+  private static final QualifiedName JSON_GENERATOR =
+      QualifiedName.of("com.fasterxml.jackson.core", "JsonGenerator");
+  private static final QualifiedName JSON_SERIALIZE =
+      QualifiedName.of("com.fasterxml.jackson.databind.annotation", "JsonSerialize");
+  private static final QualifiedName SERIALIZED_STRING =
+      QualifiedName.of("com.fasterxml.jackson.core.io", "SerializedString");
+  private static final QualifiedName SERIALIZER_PROVIDER =
+      QualifiedName.of("com.fasterxml.jackson.databind", "SerializerProvider");
+  private static final QualifiedName STD_SERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind.ser.std", "StdSerializer");
+  private static final QualifiedName DESERIALIZATION_CONTEXT =
+      QualifiedName.of("com.fasterxml.jackson.databind", "DeserializationContext");
+  private static final QualifiedName JSON_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind", "JsonDeserializer");
+  private static final QualifiedName JSON_MAPPING_EXCEPTION =
+      QualifiedName.of("com.fasterxml.jackson.databind", "JsonMappingException");
+  private static final QualifiedName JSON_PARSER =
+      QualifiedName.of("com.fasterxml.jackson.core", "JsonParser");
+  private static final QualifiedName JSON_TOKEN =
+      QualifiedName.of("com.fasterxml.jackson.core", "JsonToken");
+  private static final QualifiedName KEY_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind", "KeyDeserializer");
+  private static final QualifiedName RESOLVABLE_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind.deser", "ResolvableDeserializer");
+  private static final QualifiedName STD_DESERIALIZER =
+      QualifiedName.of("com.fasterxml.jackson.databind.deser.std", "StdDeserializer");
+  private static final QualifiedName TYPE_FACTORY =
+      QualifiedName.of("com.fasterxml.jackson.databind.type", "TypeFactory");
+  private static final QualifiedName TYPE_REFERENCE =
+      QualifiedName.of("com.fasterxml.jackson.core.type", "TypeReference");
+  /** {@code StdDeserializer} methods parsing each primitive type it supports inline. */
+  private static final Map<TypeKind, String> PRIMITIVE_PARSERS =
+      ImmutableMap.<TypeKind, String>builder()
+          .put(TypeKind.BOOLEAN, "_parseBooleanPrimitive")
+          .put(TypeKind.SHORT, "_parseShortPrimitive")
+          .put(TypeKind.INT, "_parseIntPrimitive")
+          .put(TypeKind.LONG, "_parseLongPrimitive")
+          .put(TypeKind.FLOAT, "_parseFloatPrimitive")
+          .put(TypeKind.DOUBLE, "_parseDoublePrimitive")
+          .build();
   /** Annotations which disable automatic generation of JsonProperty annotations. */
   private static final Set<QualifiedName> DISABLE_PROPERTY_ANNOTATIONS = ImmutableSet.of(
       QualifiedName.of("com.fasterxml.jackson.annotation", "JsonAnyGetter"),
@@ -30,24 +127,141 @@ class JacksonSupport {
       QualifiedName.of("com.fasterxml.jackson.annotation", "JsonUnwrapped"),
       QualifiedName.of("com.fasterxml.jackson.annotation", "JsonValue"));
 
-  public static Optional<JacksonSupport> create(TypeElement userValueType) {
+  public static Optional<JacksonSupport> create(TypeElement userValueType, FeatureSet features) {
     if (findAnnotationMirror(userValueType, JSON_DESERIALIZE).isPresent()) {
-      return Optional.of(new JacksonSupport());
+      return Optional.of(new JacksonSupport(userValueType, features));
     }
     return Optional.absent();
   }
 
-  private JacksonSupport() {}
+  /** JSON field names, keyed by property name. */
+  private final Map<String, String> jsonNames = new LinkedHashMap<String, String>();
+  /** {@code @JsonInclude} values set on individual getters, keyed by property name. */
+  private final Map<String, String> inclusions = new LinkedHashMap<String, String>();
+  /** The {@code @JsonInclude} value set on the type, if any. */
+  private final Optional<String> typeInclusion;
+  /**
+   * Whether streaming codecs are enabled and every property is a plain JSON field, so they can be
+   * generated.
+   */
+  private boolean streamable;
+
+  private JacksonSupport(TypeElement userValueType, FeatureSet features) {
+    typeInclusion = inclusion(userValueType);
+    streamable = features.get(STREAMING_JACKSON).isEnabled()
+        && !typeInclusion.equals(Optional.of(NON_DEFAULT))
+        && hasOnlyStreamableAnnotations(userValueType, STREAMABLE_TYPE_ANNOTATIONS);
+  }
+
+  /**
+   * Returns the streaming codecs to generate for {@code type}, once all of its properties have
+   * had their Jackson annotations added. Types with generic parameters, or with properties that
+   * do not map to plain JSON fields, are left to Jackson's reflective binding.
+   */
+  public Metadata.Builder jacksonMetadata(
+      TypeElement type, Optional<DeclaredType> builder, Metadata metadata) {
+    Metadata.Builder extraMetadata = new Metadata.Builder();
+    if (streamable
+        && type.getTypeParameters().isEmpty()
+        && isPlainBuilder(builder)
+        && metadata.getBuilderFactory().isPresent()) {
+      QualifiedName generatedBuilder = metadata.getGeneratedBuilder().getQualifiedName();
+      extraMetadata.addNestedClasses(new ValueJsonDeserializer(jsonNames));
+      extraMetadata.addVisibleNestedTypes(generatedBuilder.nestedType(DESERIALIZER));
+      extraMetadata.addNestedClasses(
+          new ValueJsonSerializer(jsonNames, inclusions, typeInclusion));
+      extraMetadata.addVisibleNestedTypes(generatedBuilder.nestedType(SERIALIZER));
+      extraMetadata.addValueTypeAnnotations(
+          new JsonSerializeAnnotation(generatedBuilder.nestedType(SERIALIZER)));
+    }
+    return extraMetadata;
+  }
+
+  /**
+   * Returns whether the user's builder, if any, carries no Jackson annotations of its own, such as
+   * {@code @JsonIgnoreProperties(ignoreUnknown = true)} or {@code @JsonAnySetter}, that change
+   * what builder-based binding accepts.
+   */
+  private static boolean isPlainBuilder(Optional<DeclaredType> builder) {
+    if (!builder.isPresent()) {
+      return true;
+    }
+    Map<QualifiedName, Set<String>> none = ImmutableMap.of();
+    TypeElement builderElement = (TypeElement) builder.get().asElement();
+    if (!hasOnlyStreamableAnnotations(builderElement, none)) {
+      return false;
+    }
+    for (Element member : builderElement.getEnclosedElements()) {
+      if (!hasOnlyStreamableAnnotations(member, none)) {
+        return false;
+      }
+      if (member instanceof ExecutableElement) {
+        for (VariableElement parameter : ((ExecutableElement) member).getParameters()) {
+          if (!hasOnlyStreamableAnnotations(parameter, none)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether every Jackson annotation on {@code element} is a key of {@code streamable},
+   * setting only attributes in the corresponding value.
+   */
+  private static boolean hasOnlyStreamableAnnotations(
+      Element element, Map<QualifiedName, Set<String>> streamable) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      QualifiedName annotationType =
+          QualifiedName.of((TypeElement) annotation.getAnnotationType().asElement());
+      if (!annotationType.getPackage().startsWith(JACKSON_PACKAGE)) {
+        continue;
+      }
+      Set<String> attributes = streamable.get(annotationType);
+      if (attributes == null) {
+        return false;
+      }
+      for (ExecutableElement attribute : annotation.getElementValues().keySet()) {
+        if (!attributes.contains(attribute.getSimpleName().toString())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether {@link #jacksonMetadata} added streaming codecs to {@code metadata}. */
+  public static boolean hasStreamingCodecs(Metadata metadata) {
+    return metadata.getVisibleNestedTypes().contains(
+        metadata.getGeneratedBuilder().getQualifiedName().nestedType(SERIALIZER));
+  }
 
   public void addJacksonAnnotations(
       Property.Builder resultBuilder, ExecutableElement getterMethod) {
+    if (!hasOnlyStreamableAnnotations(getterMethod, STREAMABLE_GETTER_ANNOTATIONS)) {
+      streamable = false;
+    }
     Optional<AnnotationMirror> jsonPropertyAnnotation = findAnnotationMirror(getterMethod,
             JSON_PROPERTY);
     if (jsonPropertyAnnotation.isPresent()) {
       resultBuilder.addAccessorAnnotations(Excerpts.add("%s%n", jsonPropertyAnnotation.get()));
+      jsonNames.put(
+          resultBuilder.getName(), jsonName(jsonPropertyAnnotation.get(), resultBuilder));
     } else if (generateDefaultAnnotations(getterMethod)) {
       resultBuilder.addAccessorAnnotations(Excerpts.add(
           "@%s(\"%s\")%n", JSON_PROPERTY, resultBuilder.getName()));
+      jsonNames.put(resultBuilder.getName(), resultBuilder.getName());
+    } else {
+      streamable = false;
+    }
+
+    Optional<String> inclusion = inclusion(getterMethod);
+    if (inclusion.isPresent()) {
+      inclusions.put(resultBuilder.getName(), inclusion.get());
+      if (inclusion.get().equals(NON_DEFAULT)) {
+        streamable = false;
+      }
     }
 
     Optional<AnnotationMirror> jacksonXmlPropertyAnnotation = findAnnotationMirror(getterMethod,
@@ -55,7 +269,36 @@ class JacksonSupport {
     if (jacksonXmlPropertyAnnotation.isPresent()) {
       resultBuilder
               .addAccessorAnnotations(Excerpts.add("%s%n", jacksonXmlPropertyAnnotation.get()));
+      streamable = false;
+    }
+  }
+
+  private static String jsonName(AnnotationMirror jsonProperty, Property.Builder resultBuilder) {
+    Optional<AnnotationValue> value = findProperty(jsonProperty, "value");
+    if (value.isPresent() && !value.get().getValue().toString().isEmpty()) {
+      return value.get().getValue().toString();
     }
+    return resultBuilder.getName();
+  }
+
+  /**
+   * Returns the {@code JsonInclude.Include} constant named by {@code element}'s
+   * {@code @JsonInclude} annotation, or absent if there is none or it defers to the defaults.
+   */
+  private static Optional<String> inclusion(Element element) {
+    Optional<AnnotationMirror> jsonInclude = findAnnotationMirror(element, JSON_INCLUDE);
+    if (!jsonInclude.isPresent()) {
+      return Optional.absent();
+    }
+    Optional<AnnotationValue> value = findProperty(jsonInclude.get(), "value");
+    if (!value.isPresent()) {
+      return Optional.of(ALWAYS);
+    }
+    String inclusion = ((VariableElement) value.get().getValue()).getSimpleName().toString();
+    if (inclusion.equals(USE_DEFAULTS)) {
+      return Optional.absent();
+    }
+    return Optional.of(inclusion);
   }
 
   private static boolean generateDefaultAnnotations(ExecutableElement getterMethod) {
@@ -70,4 +313,464 @@ class JacksonSupport {
     return true;
   }
 
+  private static final class ValueJsonDeserializer extends ValueType
+      implements Function<Metadata, Excerpt> {
+    private final ImmutableMap<String, String> jsonNames;
+
+    ValueJsonDeserializer(Map<String, String> jsonNames) {
+      this.jsonNames = ImmutableMap.copyOf(jsonNames);
+    }
+
+    @Override
+    public Excerpt apply(Metadata metadata) {
+      return new ValueJsonDeserializerExcerpt(metadata, jsonNames);
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("jsonNames", jsonNames);
+    }
+  }
+
+  /**
+   * A {@code StdDeserializer} that reads JSON fields straight off the parser onto the builder.
+   *
+   * <p>Field names are matched by switching on their precomputed hash codes. Primitives and
+   * strings are parsed inline; collections and maps are streamed one element or entry at a time
+   * into the builder's {@code addX} and {@code putX} methods; anything else is bound with the
+   * deserializer Jackson would use, resolved once per mapper.
+   */
+  private static final class ValueJsonDeserializerExcerpt extends Excerpt {
+    private final Metadata metadata;
+    private final ImmutableMap<String, String> jsonNames;
+
+    private ValueJsonDeserializerExcerpt(
+        Metadata metadata, ImmutableMap<String, String> jsonNames) {
+      this.metadata = metadata;
+      this.jsonNames = jsonNames;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Streaming Jackson deserializer for %s, binding JSON fields directly onto a",
+              metadata.getType().javadocLink())
+          .addLine(" * {@code %s}.", metadata.getBuilder().getSimpleName())
+          .addLine(" */")
+          .addLine("public static class %s extends %s<%s>", DESERIALIZER, STD_DESERIALIZER,
+              metadata.getType())
+          .addLine("    implements %s {", RESOLVABLE_DESERIALIZER)
+          .addLine("");
+      for (Property property : metadata.getProperties()) {
+        List<TypeMirror> streamingTypes = property.getCodeGenerator().getJsonStreamingTypes();
+        if (streamingTypes.size() == 2) {
+          code.addLine("  private %s %s;", KEY_DESERIALIZER, keyDeserializer(property));
+        }
+        if (!streamingTypes.isEmpty() || !hasInlineParser(property)) {
+          code.addLine("  private %s<Object> %s;", JSON_DESERIALIZER, deserializer(property));
+        }
+      }
+      code.addLine("")
+          .addLine("  public %s() {", DESERIALIZER)
+          .addLine("    super(%s.class);", metadata.getType().getQualifiedName())
+          .addLine("  }");
+      addResolve(code);
+      addDeserialize(code);
+      code.addLine("")
+          .addLine("  private static Object read(")
+          .addLine("      %s<Object> deserializer, %s parser, %s context)",
+              JSON_DESERIALIZER, JSON_PARSER, DESERIALIZATION_CONTEXT)
+          .addLine("      throws %s {", IOException.class)
+          .addLine("    if (parser.getCurrentToken() == %s.VALUE_NULL) {", JSON_TOKEN)
+          .addLine("      return deserializer.getNullValue(context);")
+          .addLine("    }")
+          .addLine("    return deserializer.deserialize(parser, context);")
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    private void addResolve(SourceBuilder code) {
+      code.addLine("")
+          .addLine("  @%s", Override.class)
+          .addLine("  public void resolve(%s context) throws %s {",
+              DESERIALIZATION_CONTEXT, JSON_MAPPING_EXCEPTION)
+          .addLine("    %s types = context.getTypeFactory();", TYPE_FACTORY);
+      for (Property property : metadata.getProperties()) {
+        List<TypeMirror> streamingTypes = property.getCodeGenerator().getJsonStreamingTypes();
+        if (streamingTypes.size() == 2) {
+          code.addLine("    %s = context.findKeyDeserializer(", keyDeserializer(property))
+              .addLine("        types.constructType(new %s<%s>() {}), null);",
+                  TYPE_REFERENCE, streamingTypes.get(0));
+        }
+        if (!streamingTypes.isEmpty()) {
+          code.addLine("    %s = context.findRootValueDeserializer(", deserializer(property))
+              .addLine("        types.constructType(new %s<%s>() {}));",
+                  TYPE_REFERENCE, getLast(streamingTypes));
+        } else if (!hasInlineParser(property)) {
+          code.addLine("    %s = context.findRootValueDeserializer(", deserializer(property))
+              .addLine("        types.constructType(new %s<%s>() {}));",
+                  TYPE_REFERENCE, boxedType(property));
+        }
+      }
+      code.addLine("  }");
+    }
+
+    private void addDeserialize(SourceBuilder code) {
+      code.addLine("")
+          .addLine("  @%s", Override.class)
+          .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("  public %s deserialize(%s parser, %s context)",
+              metadata.getType(), JSON_PARSER, DESERIALIZATION_CONTEXT)
+          .addLine("      throws %s {", IOException.class);
+      Block body = methodBody(code, "parser", "context");
+      Excerpt builder = body.declare(
+          Excerpts.add("%s", metadata.getBuilder()),
+          "builder",
+          metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES));
+      body.addLine("    %s token = parser.getCurrentToken();", JSON_TOKEN)
+          .addLine("    if (token == %s.START_OBJECT) {", JSON_TOKEN)
+          .addLine("      token = parser.nextToken();")
+          .addLine("    }")
+          .addLine("    for (; token == %1$s.FIELD_NAME; token = parser.nextToken()) {",
+              JSON_TOKEN)
+          .addLine("      String field = parser.getCurrentName();")
+          .addLine("      token = parser.nextToken();")
+          .addLine("      // Report values the builder rejects as mapping errors, as Jackson does")
+          .addLine("      try {")
+          .addLine("      switch (field.hashCode()) {");
+      Map<Integer, List<Property>> propertiesByHash = new TreeMap<Integer, List<Property>>();
+      for (Property property : metadata.getProperties()) {
+        int hash = jsonNames.get(property.getName()).hashCode();
+        if (!propertiesByHash.containsKey(hash)) {
+          propertiesByHash.put(hash, new ArrayList<Property>());
+        }
+        propertiesByHash.get(hash).add(property);
+      }
+      for (Map.Entry<Integer, List<Property>> entry : propertiesByHash.entrySet()) {
+        body.addLine("        case %s:", entry.getKey());
+        for (Property property : entry.getValue()) {
+          body.addLine("          if (field.equals(\"%s\")) {",
+              escapeJava(jsonNames.get(property.getName())));
+          addReadProperty(body, builder, property);
+          body.addLine("            continue;")
+              .addLine("          }");
+        }
+        body.addLine("          break;");
+      }
+      body.addLine("        default:")
+          .addLine("          break;")
+          .addLine("      }")
+          .addLine("      } catch (%s e) {", RuntimeException.class)
+          .addLine("        throw %s.from(", JSON_MAPPING_EXCEPTION)
+          .addLine("            parser, \"Invalid value for '\" + field + \"': \" + e, e);")
+          .addLine("      }")
+          .addLine("      handleUnknownProperty(parser, context, handledType(), field);")
+          .addLine("    }")
+          .addLine("    try {")
+          .addLine("      return %s.build();", builder)
+          .addLine("    } catch (%s e) {", IllegalStateException.class)
+          .addLine("      throw %s.from(parser, e.getMessage(), e);", JSON_MAPPING_EXCEPTION)
+          .addLine("    }");
+      code.add(body)
+          .addLine("  }");
+    }
+
+    private void addReadProperty(Block body, Excerpt builder, Property property) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      List<TypeMirror> streamingTypes = generator.getJsonStreamingTypes();
+      if (streamingTypes.size() == 1) {
+        body.addLine("            if (token == %s.START_ARRAY) {", JSON_TOKEN)
+            .addLine("              while (parser.nextToken() != %s.END_ARRAY) {", JSON_TOKEN)
+            .addLine("                %s;", generator.addToCollector(builder, Excerpts.add(
+                "(%s) read(%s, parser, context)", streamingTypes.get(0), deserializer(property)))
+                .get())
+            .addLine("              }");
+        addUnexpectedToken(body, "START_ARRAY", property);
+      } else if (streamingTypes.size() == 2) {
+        body.addLine("            if (token == %s.START_OBJECT) {", JSON_TOKEN)
+            .addLine("              while (parser.nextToken() == %s.FIELD_NAME) {", JSON_TOKEN)
+            .addLine("                Object key = %s.deserializeKey(", keyDeserializer(property))
+            .addLine("                    parser.getCurrentName(), context);")
+            .addLine("                parser.nextToken();")
+            .addLine("                %s.%s((%s) key, (%s) read(%s, parser, context));",
+                builder,
+                putMethod(property),
+                streamingTypes.get(0),
+                streamingTypes.get(1),
+                deserializer(property))
+            .addLine("              }");
+        addUnexpectedToken(body, "START_OBJECT", property);
+      } else if (hasInlineParser(property)) {
+        generator.addSetFromResult(body, builder, inlineParser(property));
+      } else {
+        generator.addSetFromResult(body, builder, Excerpts.add(
+            "(%s) read(%s, parser, context)", boxedType(property), deserializer(property)));
+      }
+    }
+
+    private static void addUnexpectedToken(Block body, String expected, Property property) {
+      body.addLine("            } else if (token != %s.VALUE_NULL) {", JSON_TOKEN)
+          .addLine("              throw context.wrongTokenException(")
+          .addLine("                  parser, %s.%s, \"%s\");",
+              JSON_TOKEN, expected, escapeJava(property.getName()))
+          .addLine("            }");
+    }
+
+    private static boolean hasInlineParser(Property property) {
+      return PRIMITIVE_PARSERS.containsKey(property.getType().getKind())
+          || String.class.getName().equals(property.getType().toString());
+    }
+
+    private static Excerpt inlineParser(Property property) {
+      String parser = PRIMITIVE_PARSERS.get(property.getType().getKind());
+      if (parser != null) {
+        return Excerpts.add("%s(parser, context)", parser);
+      }
+      return Excerpts.add("(token == %s.VALUE_NULL) ? null : _parseString(parser, context)",
+          JSON_TOKEN);
+    }
+
+    private static TypeMirror boxedType(Property property) {
+      return firstNonNull(property.getBoxedType(), property.getType());
+    }
+
+    private static String deserializer(Property property) {
+      return property.getName() + "Deserializer";
+    }
+
+    private static String keyDeserializer(Property property) {
+      return property.getName() + "KeyDeserializer";
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("metadata", metadata);
+      fields.add("jsonNames", jsonNames);
+    }
+  }
+
+  private static final class JsonSerializeAnnotation extends Excerpt {
+    private final QualifiedName serializer;
+
+    JsonSerializeAnnotation(QualifiedName serializer) {
+      this.serializer = serializer;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.add("@%s(using = %s.class)%n", JSON_SERIALIZE, serializer);
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("serializer", serializer);
+    }
+  }
+
+  private static final class ValueJsonSerializer extends ValueType
+      implements Function<Metadata, Excerpt> {
+    private final ImmutableMap<String, String> jsonNames;
+    private final ImmutableMap<String, String> inclusions;
+    private final Optional<String> typeInclusion;
+
+    ValueJsonSerializer(
+        Map<String, String> jsonNames,
+        Map<String, String> inclusions,
+        Optional<String> typeInclusion) {
+      this.jsonNames = ImmutableMap.copyOf(jsonNames);
+      this.inclusions = ImmutableMap.copyOf(inclusions);
+      this.typeInclusion = typeInclusion;
+    }
+
+    @Override
+    public Excerpt apply(Metadata metadata) {
+      return new ValueJsonSerializerExcerpt(metadata, jsonNames, inclusions, typeInclusion);
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("jsonNames", jsonNames);
+      fields.add("inclusions", inclusions);
+      fields.add("typeInclusion", typeInclusion);
+    }
+  }
+
+  /**
+   * A {@code StdSerializer} that writes each property straight to the generator.
+   *
+   * <p>Field names are pre-encoded {@code SerializedString} constants, and primitives are written
+   * without boxing. Properties are skipped following {@code @JsonInclude}: a getter's annotation
+   * wins over the type's, and if neither is annotated the mapper's default inclusion is read at
+   * runtime.
+   */
+  private static final class ValueJsonSerializerExcerpt extends Excerpt {
+    private final Metadata metadata;
+    private final ImmutableMap<String, String> jsonNames;
+    private final ImmutableMap<String, String> inclusions;
+    private final Optional<String> typeInclusion;
+
+    private ValueJsonSerializerExcerpt(
+        Metadata metadata,
+        ImmutableMap<String, String> jsonNames,
+        ImmutableMap<String, String> inclusions,
+        Optional<String> typeInclusion) {
+      this.metadata = metadata;
+      this.jsonNames = jsonNames;
+      this.inclusions = inclusions;
+      this.typeInclusion = typeInclusion;
+    }
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("/**")
+          .addLine(" * Streaming Jackson serializer for %s, writing each property with a",
+              metadata.getType().javadocLink())
+          .addLine(" * pre-encoded field name.")
+          .addLine(" */")
+          .addLine("public static class %s extends %s<%s> {",
+              SERIALIZER, STD_SERIALIZER, metadata.getType())
+          .addLine("");
+      for (Property property : metadata.getProperties()) {
+        code.addLine("  private static final %1$s %2$s = new %1$s(\"%3$s\");",
+            SERIALIZED_STRING,
+            property.getAllCapsName(),
+            escapeJava(jsonNames.get(property.getName())));
+      }
+      code.addLine("")
+          .addLine("  public %s() {", SERIALIZER)
+          .addLine("    super(%s.class);", metadata.getType().getQualifiedName())
+          .addLine("  }");
+      addSerialize(code);
+      code.addLine("}");
+    }
+
+    private void addSerialize(SourceBuilder code) {
+      code.addLine("")
+          .addLine("  @%s", Override.class)
+          .addLine("  public void serialize(")
+          .addLine("      %s value, %s generator, %s provider)",
+              metadata.getType(), JSON_GENERATOR, SERIALIZER_PROVIDER)
+          .addLine("      throws %s {", IOException.class);
+      Block body = methodBody(code, "value", "generator", "provider");
+      Excerpt runtimeInclusion = null;
+      for (Property property : metadata.getProperties()) {
+        if (!inclusion(property).isPresent() && isSkippable(property)) {
+          runtimeInclusion = body.declare(
+              Excerpts.add("%s", JSON_INCLUDE_INCLUDE),
+              "inclusion",
+              Excerpts.add("provider.getConfig().getSerializationInclusion()"));
+          break;
+        }
+      }
+      body.addLine("    generator.writeStartObject();");
+      for (Property property : metadata.getProperties()) {
+        Excerpt getter = Excerpts.add("value.%s()", property.getGetterName());
+        Optional<String> inclusion = inclusion(property);
+        Excerpt condition = null;
+        if (isSkippable(property)) {
+          getter = body.declare(Excerpts.add("%s", property.getType()), property.getName(), getter);
+          condition = inclusion.isPresent()
+              ? staticCondition(property, getter, inclusion.get())
+              : runtimeCondition(property, getter, runtimeInclusion);
+        }
+        String indent = "    ";
+        if (condition != null) {
+          body.addLine("    if (%s) {", condition);
+          indent = "      ";
+        }
+        body.addLine("%sgenerator.writeFieldName(%s);", indent, property.getAllCapsName())
+            .addLine("%s%s;", indent, writeValue(property, getter));
+        if (condition != null) {
+          body.addLine("    }");
+        }
+      }
+      body.addLine("    generator.writeEndObject();");
+      code.add(body)
+          .addLine("  }");
+    }
+
+    private Optional<String> inclusion(Property property) {
+      String inclusion = inclusions.get(property.getName());
+      return (inclusion != null) ? Optional.of(inclusion) : typeInclusion;
+    }
+
+    /** Returns whether any {@code JsonInclude.Include} value can skip {@code property}. */
+    private static boolean isSkippable(Property property) {
+      return property.getCodeGenerator().getType() == Type.OPTIONAL || isEmptiable(property);
+    }
+
+    /** Returns whether {@code NON_EMPTY} can skip a non-null value of {@code property}. */
+    private static boolean isEmptiable(Property property) {
+      return property.getCodeGenerator().getCollectorElementType().isPresent()
+          || (property.getCodeGenerator().getType() != Type.OPTIONAL && isString(property));
+    }
+
+    /**
+     * Returns an expression that is true if {@code property} should be written under the
+     * {@code inclusion} known at compile time, or null if it is always written.
+     */
+    private static Excerpt staticCondition(Property property, Excerpt value, String inclusion) {
+      Optional<Excerpt> presence = property.getCodeGenerator().getJsonPresenceCheck(value);
+      if (presence.isPresent()) {
+        return (inclusion.equals(ALWAYS) || inclusion.equals(NON_NULL)) ? null : presence.get();
+      } else if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
+        return inclusion.equals(ALWAYS) ? null : Excerpts.add("%s != null", value);
+      } else {
+        return inclusion.equals(NON_EMPTY) ? Excerpts.add("!%s.isEmpty()", value) : null;
+      }
+    }
+
+    /**
+     * Returns an expression that is true if {@code property} should be written under the mapper's
+     * default {@code inclusion}.
+     */
+    private static Excerpt runtimeCondition(Property property, Excerpt value, Excerpt inclusion) {
+      Optional<Excerpt> presence = property.getCodeGenerator().getJsonPresenceCheck(value);
+      if (presence.isPresent()) {
+        return Excerpts.add("%1$s || %2$s == %3$s.%4$s || %2$s == %3$s.%5$s",
+            presence.get(), inclusion, JSON_INCLUDE_INCLUDE, ALWAYS, NON_NULL);
+      } else if (property.getCodeGenerator().getType() == Type.OPTIONAL) {
+        return Excerpts.add("%s != null || %s == %s.%s",
+            value, inclusion, JSON_INCLUDE_INCLUDE, ALWAYS);
+      } else {
+        return Excerpts.add("!%1$s.isEmpty() || (%2$s != %3$s.%4$s && %2$s != %3$s.%5$s)",
+            value, inclusion, JSON_INCLUDE_INCLUDE, NON_EMPTY, NON_DEFAULT);
+      }
+    }
+
+    private static Excerpt writeValue(Property property, Excerpt value) {
+      switch (property.getType().getKind()) {
+        case BOOLEAN:
+          return Excerpts.add("generator.writeBoolean(%s)", value);
+        case CHAR:
+          return Excerpts.add("generator.writeString(String.valueOf(%s))", value);
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+          return Excerpts.add("generator.writeNumber(%s)", value);
+        default:
+          if (isString(property)) {
+            return Excerpts.add("generator.writeString(%s)", value);
+          }
+          return Excerpts.add("provider.defaultSerializeValue(%s, generator)", value);
+      }
+    }
+
+    private static boolean isString(Property property) {
+      return String.class.getName().equals(property.getType().toString());
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {
+      fields.add("metadata", metadata);
+      fields.add("jsonNames", jsonNames);
+      fields.add("inclusions", inclusions);
+      fields.add("typeInclusion", typeInclusion);
+    }
+  }
 }
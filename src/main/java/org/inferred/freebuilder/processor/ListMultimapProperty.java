@@ -29,6 +29,8 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -40,9 +42,11 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedListMultimap;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 
@@ -302,7 +306,7 @@ class ListMultimapProperty extends PropertyCodeGenerator {
 
   private void addMutate(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -374,6 +378,28 @@ class ListMultimapProperty extends PropertyCodeGenerator {
             finalField, ImmutableListMultimap.class, property.getField().on(builder));
   }
 
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s<%s, %s>", Entry.class, keyType, valueType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt entry) {
+    return Optional.of(Excerpts.add("%s.%s(%s.getKey(), %s.getValue())",
+        builder, putMethod(property), entry, entry));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(ConcurrentBuilderSupport.multimapAccumulator(
+        metadata, property, keyType, valueType, false));
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return Excerpts.add("%s.copyOf(%s)", ImmutableListMultimap.class, parameter);
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
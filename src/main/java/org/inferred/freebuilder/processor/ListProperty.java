@@ -29,8 +29,12 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.needsSafeVararg
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.STREAM_OVERLOADS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 
@@ -39,7 +43,10 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedList;
+import org.inferred.freebuilder.processor.excerpt.NonNullElements;
+import org.inferred.freebuilder.processor.excerpt.RuntimeName;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
@@ -139,7 +146,8 @@ class ListProperty extends PropertyCodeGenerator {
           property.getField(),
           ImmutableList.class);
     } else {
-      code.addLine("private final %1$s<%2$s> %3$s = new %1$s%4$s();",
+      code.addLine("private %1$s%2$s<%3$s> %4$s = new %2$s%5$s();",
+          code.feature(BUILD_AND_RESET).isEnabled() ? "" : "final ",
           ArrayList.class,
           elementType,
           property.getField(),
@@ -236,7 +244,8 @@ class ListProperty extends PropertyCodeGenerator {
   }
 
   private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
-    if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+    if (code.feature(SOURCE_LEVEL).stream().isPresent()
+        && !code.feature(SLIM_API).omits(STREAM_OVERLOADS)) {
       addSpliteratorAddAll(code, metadata);
       addStreamAddAll(code, metadata);
       addIterableAddAll(code, metadata);
@@ -254,6 +263,14 @@ class ListProperty extends PropertyCodeGenerator {
         Iterable.class,
         elementType);
     Block body = methodBody(code, "elements");
+    if (!overridesAddMethod) {
+      addBulkAddAll(body, metadata);
+      body.add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
+          .addLine("  return (%s) this;", metadata.getBuilder());
+      code.add(body)
+          .addLine("}");
+      return;
+    }
     body.addLine("  if (elements instanceof %s) {", Collection.class)
         .addLine("    int elementsSize = ((%s<?>) elements).size();", Collection.class);
     if (body.feature(GUAVA).isAvailable()) {
@@ -311,14 +328,52 @@ class ListProperty extends PropertyCodeGenerator {
     addJavadocForAddAll(code, metadata);
     addAccessorAnnotations(code);
     code.addLine("public %s %s(%s<? extends %s> elements) {",
-            metadata.getBuilder(),
-            addAllMethod(property),
-            Iterable.class,
-            elementType)
-        .addLine("  return %s(elements.spliterator());", addAllMethod(property))
+        metadata.getBuilder(),
+        addAllMethod(property),
+        Iterable.class,
+        elementType);
+    Block body = methodBody(code, "elements");
+    if (!overridesAddMethod) {
+      addBulkAddAll(body, metadata);
+    }
+    body.addLine("  return %s(elements.spliterator());", addAllMethod(property));
+    code.add(body)
         .addLine("}");
   }
 
+  /**
+   * Adds a fast path for collections, used when the add method is not overridden: one null
+   * check of each element of a snapshot, then one bulk add. An empty list takes an immutable list
+   * as-is.
+   */
+  private void addBulkAddAll(Block body, Metadata metadata) {
+    body.addLine("  if (elements instanceof %s) {", Collection.class);
+    if (body.feature(GUAVA).isAvailable()) {
+      body.addLine("    if (%1$s.isEmpty() && %1$s instanceof %2$s && elements instanceof %2$s) {",
+              property.getField(), ImmutableList.class)
+          .addLine("      %s = %s.copyOf((%s<? extends %s>) elements);",
+              property.getField(), ImmutableList.class, ImmutableList.class, elementType)
+          .addLine("      return (%s) this;", metadata.getBuilder())
+          .addLine("    }");
+    }
+    body.addLine("    %s<%s> checked = %s((%s<? extends %s>) elements);",
+        List.class, elementType, NonNullElements.METHOD, Collection.class, elementType);
+    if (body.feature(GUAVA).isAvailable()) {
+      // Adding nothing must not copy an immutable list that may yet be reused
+      body.addLine("    if (!checked.isEmpty()) {")
+          .addLine("      if (%s instanceof %s) {", property.getField(), ImmutableList.class)
+          .addLine("        %1$s = new %2$s%3$s(%1$s);",
+              property.getField(), ArrayList.class, diamondOperator(elementType))
+          .addLine("      }")
+          .addLine("      %s.addAll(checked);", property.getField())
+          .addLine("    }");
+    } else {
+      body.addLine("    %s.addAll(checked);", property.getField());
+    }
+    body.addLine("    return (%s) this;", metadata.getBuilder())
+        .addLine("  }");
+  }
+
   private void addStreamAddAll(SourceBuilder code, Metadata metadata) {
     QualifiedName baseStream = code.feature(SOURCE_LEVEL).baseStream().get();
     addJavadocForAddAll(code, metadata);
@@ -345,7 +400,7 @@ class ListProperty extends PropertyCodeGenerator {
 
   private void addMutate(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -440,6 +495,49 @@ class ListProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s(%s);", finalField, immutableListMethod, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s<%s> %s = %s.unmodifiableList(%s);",
+        List.class, elementType, field, Collections.class, property.getField().on("this"));
+    if (code.feature(GUAVA).isAvailable()) {
+      code.addLine("%s = %s.of();", property.getField().on("this"), ImmutableList.class);
+    } else {
+      code.addLine("%s = new %s%s();",
+          property.getField().on("this"), ArrayList.class, diamondOperator(elementType));
+    }
+    return field;
+  }
+
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s", elementType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt element) {
+    return Optional.of(Excerpts.add("%s.%s(%s)", builder, addMethod(property), element));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(ConcurrentBuilderSupport.queueAccumulator(metadata, property, elementType));
+  }
+
+  @Override
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of(elementType);
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    if (code.feature(GUAVA).isAvailable()) {
+      return Excerpts.add("%s.copyOf(%s)", ImmutableList.class, parameter);
+    } else {
+      return Excerpts.add("%s(%s)", ImmutableListCopyMethod.REFERENCE, parameter);
+    }
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     if (code.feature(GUAVA).isAvailable()) {
@@ -477,7 +575,11 @@ class ListProperty extends PropertyCodeGenerator {
 
   private static class ImmutableListMethod extends Excerpt {
 
-    static final LazyName REFERENCE = new LazyName("immutableList", new ImmutableListMethod());
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableList", new ImmutableListMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableList", INLINE_REFERENCE);
 
     private ImmutableListMethod() {}
 
@@ -485,7 +587,8 @@ class ListProperty extends PropertyCodeGenerator {
     public void addTo(SourceBuilder code) {
       code.addLine("")
           .addLine("@%s(\"unchecked\")", SuppressWarnings.class)
-          .addLine("private static <E> %1$s<E> %2$s(%1$s<E> elements) {", List.class, REFERENCE)
+          .addLine("private static <E> %1$s<E> %2$s(%1$s<E> elements) {",
+              List.class, INLINE_REFERENCE)
           .addLine("  switch (elements.size()) {")
           .addLine("  case 0:")
           .addLine("    return %s.emptyList();", Collections.class)
@@ -502,4 +605,42 @@ class ListProperty extends PropertyCodeGenerator {
     @Override
     protected void addFields(FieldReceiver fields) {}
   }
+
+  private static class ImmutableListCopyMethod extends Excerpt {
+
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableListCopy", new ImmutableListCopyMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableListCopy", INLINE_REFERENCE);
+
+    private ImmutableListCopyMethod() {}
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("@%s(\"unchecked\")", SuppressWarnings.class)
+          .addLine("private static <E> %s<E> %s(%s<? extends E> elements) {",
+              List.class, INLINE_REFERENCE, Collection.class)
+          .addLine("  Object[] array = elements.toArray();")
+          .addLine("  for (Object element : array) {")
+          .addLine("    if (element == null) {")
+          .addLine("      throw new %s();", NullPointerException.class)
+          .addLine("    }")
+          .addLine("  }")
+          .addLine("  switch (array.length) {")
+          .addLine("  case 0:")
+          .addLine("    return %s.emptyList();", Collections.class)
+          .addLine("  case 1:")
+          .addLine("    return %s.singletonList((E) array[0]);", Collections.class)
+          .addLine("  default:")
+          .addLine("    return (%1$s<E>)(%1$s<?>) %2$s.unmodifiableList(%3$s.asList(array));",
+              List.class, Collections.class, Arrays.class)
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {}
+  }
 }
@@ -27,15 +27,21 @@ import static org.inferred.freebuilder.processor.util.Block.methodBody;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedMap;
+import org.inferred.freebuilder.processor.excerpt.RuntimeName;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
@@ -48,6 +54,7 @@ import org.inferred.freebuilder.processor.util.LazyName;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.lang.model.type.DeclaredType;
@@ -120,7 +127,8 @@ class MapProperty extends PropertyCodeGenerator {
 
   @Override
   public void addBuilderFieldDeclaration(SourceBuilder code) {
-    code.addLine("private final %1$s<%2$s, %3$s> %4$s = new %1$s%5$s();",
+    code.addLine("private %1$s%2$s<%3$s, %4$s> %5$s = new %2$s%6$s();",
+        code.feature(BUILD_AND_RESET).isEnabled() ? "" : "final ",
         LinkedHashMap.class,
         keyType,
         valueType,
@@ -195,10 +203,18 @@ class MapProperty extends PropertyCodeGenerator {
             keyType,
             valueType)
         .addLine("  for (%s<? extends %s, ? extends %s> entry : map.entrySet()) {",
-            Map.Entry.class, keyType, valueType)
-        .addLine("    %s(entry.getKey(), entry.getValue());", putMethod(property))
-        .addLine("  }")
-        .addLine("  return (%s) this;", metadata.getBuilder())
+            Map.Entry.class, keyType, valueType);
+    if (overridesPutMethod) {
+      code.addLine("    %s(entry.getKey(), entry.getValue());", putMethod(property))
+          .addLine("  }");
+    } else {
+      // Check every mapping before adding any, then add them in bulk
+      code.add(PreconditionExcerpts.checkNotNull("entry.getKey()"))
+          .add(PreconditionExcerpts.checkNotNull("entry.getValue()"))
+          .addLine("  }")
+          .addLine("  %s.putAll(map);", property.getField());
+    }
+    code.addLine("  return (%s) this;", metadata.getBuilder())
         .addLine("}");
   }
 
@@ -230,7 +246,7 @@ class MapProperty extends PropertyCodeGenerator {
 
   private void addMutate(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -304,6 +320,49 @@ class MapProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s(%s);", finalField, immutableMapMethod, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s<%s, %s> %s = %s.unmodifiableMap(%s);",
+        Map.class, keyType, valueType, field, Collections.class, property.getField().on("this"));
+    code.addLine("%s = new %s%s();",
+        property.getField().on("this"),
+        LinkedHashMap.class,
+        diamondOperator(Excerpts.add("%s, %s", keyType, valueType)));
+    return field;
+  }
+
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s<%s, %s>", Map.Entry.class, keyType, valueType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt entry) {
+    return Optional.of(Excerpts.add("%s.%s(%s.getKey(), %s.getValue())",
+        builder, putMethod(property), entry, entry));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(
+        ConcurrentBuilderSupport.mapAccumulator(metadata, property, keyType, valueType));
+  }
+
+  @Override
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of(keyType, valueType);
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    if (code.feature(GUAVA).isAvailable()) {
+      return Excerpts.add("%s.copyOf(%s)", ImmutableMap.class, parameter);
+    } else {
+      return Excerpts.add("%s(%s)", ImmutableMapCopyMethod.REFERENCE, parameter);
+    }
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     code.addLine("%s(%s.%s());", putAllMethod(property), value, property.getGetterName());
@@ -327,7 +386,11 @@ class MapProperty extends PropertyCodeGenerator {
 
   private static class ImmutableMapMethod extends Excerpt {
 
-    static final LazyName REFERENCE = new LazyName("immutableMap", new ImmutableMapMethod());
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableMap", new ImmutableMapMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableMap", INLINE_REFERENCE);
 
     private ImmutableMapMethod() {}
 
@@ -335,7 +398,7 @@ class MapProperty extends PropertyCodeGenerator {
     public void addTo(SourceBuilder code) {
       code.addLine("")
           .addLine("private static <K, V> %1$s<K, V> %2$s(%1$s<K, V> entries) {",
-              Map.class, REFERENCE)
+              Map.class, INLINE_REFERENCE)
           .addLine("  switch (entries.size()) {")
           .addLine("  case 0:")
           .addLine("    return %s.emptyMap();", Collections.class)
@@ -353,4 +416,42 @@ class MapProperty extends PropertyCodeGenerator {
     @Override
     protected void addFields(FieldReceiver fields) {}
   }
+
+  private static class ImmutableMapCopyMethod extends Excerpt {
+
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableMapCopy", new ImmutableMapCopyMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableMapCopy", INLINE_REFERENCE);
+
+    private ImmutableMapCopyMethod() {}
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static <K, V> %1$s<K, V> %2$s(",
+              Map.class, INLINE_REFERENCE)
+          .addLine("    %s<? extends K, ? extends V> entries) {", Map.class)
+          .addLine("  %s<K, V> copy = new %s%s(entries);",
+              Map.class, LinkedHashMap.class, diamondOperator("K, V"))
+          .addLine("  if (copy.containsKey(null) || copy.containsValue(null)) {")
+          .addLine("    throw new %s();", NullPointerException.class)
+          .addLine("  }")
+          .addLine("  switch (copy.size()) {")
+          .addLine("  case 0:")
+          .addLine("    return %s.emptyMap();", Collections.class)
+          .addLine("  case 1:")
+          .addLine("    %s<K, V> entry = copy.entrySet().iterator().next();", Map.Entry.class)
+          .addLine("    return %s.singletonMap(entry.getKey(), entry.getValue());",
+              Collections.class)
+          .addLine("  default:")
+          .addLine("    return %s.unmodifiableMap(copy);", Collections.class)
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {}
+  }
 }
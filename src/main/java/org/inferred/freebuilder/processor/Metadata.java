@@ -152,6 +152,15 @@ public abstract class Metadata {
   /** Returns whether the value type has a toBuilder method that needs to be generated. */
   public abstract boolean getHasToBuilderMethod();
 
+  /**
+   * Returns whether the user's builder overrides {@code build()} or a property mutator, and so may
+   * be enforcing constraints that code bypassing the builder would skip.
+   */
+  public abstract boolean isBuilderCustomized();
+
+  /** Returns whether the value type is {@link java.io.Serializable}. */
+  public abstract boolean isValueSerializable();
+
   /** Returns a list of annotations that should be applied to the generated builder class. */
   public abstract ImmutableList<Excerpt> getGeneratedBuilderAnnotations();
 
@@ -210,6 +219,12 @@ public abstract class Metadata {
      */
     public abstract boolean isFullyCheckedCast();
 
+    /**
+     * Returns true if the user has declared an abstract {@code withX} method on the value type,
+     * returning a copy of the value with just this property changed.
+     */
+    public abstract boolean isWitherDeclared();
+
     /**
      * Returns a list of annotations that should be applied to the accessor methods of this
      * property; that is, the getter method, and a single setter method that will accept the result
@@ -223,7 +238,12 @@ public abstract class Metadata {
     }
 
     /** Builder for {@link Property}. */
-    public static class Builder extends Metadata_Property_Builder {}
+    public static class Builder extends Metadata_Property_Builder {
+
+      public Builder() {
+        super.setWitherDeclared(false);
+      }
+    }
   }
 
   public static final Function<Property, PropertyCodeGenerator> GET_CODE_GENERATOR =
@@ -240,6 +260,8 @@ public abstract class Metadata {
     public Builder() {
       super.setValueTypeVisibility(Visibility.PRIVATE);
       super.setHasToBuilderMethod(false);
+      super.setBuilderCustomized(false);
+      super.setValueSerializable(false);
     }
 
     /**
@@ -50,6 +50,8 @@ abstract class Metadata_Builder {
     PROPERTY_ENUM("propertyEnum"),
     BUILDER_SERIALIZABLE("builderSerializable"),
     HAS_TO_BUILDER_METHOD("hasToBuilderMethod"),
+    BUILDER_CUSTOMIZED("builderCustomized"),
+    VALUE_SERIALIZABLE("valueSerializable"),
     VALUE_TYPE_VISIBILITY("valueTypeVisibility"),
     ;
 
@@ -87,6 +89,8 @@ abstract class Metadata_Builder {
           new LinkedHashMap<Metadata.StandardMethod, Metadata.UnderrideLevel>();
   private boolean builderSerializable;
   private boolean hasToBuilderMethod;
+  private boolean builderCustomized;
+  private boolean valueSerializable;
   private List<Excerpt> generatedBuilderAnnotations = ImmutableList.of();
   private List<Excerpt> valueTypeAnnotations = ImmutableList.of();
   private Metadata.Visibility valueTypeVisibility;
@@ -629,6 +633,52 @@ abstract class Metadata_Builder {
     return hasToBuilderMethod;
   }
 
+  /**
+   * Sets the value to be returned by {@link Metadata#isBuilderCustomized()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setBuilderCustomized(boolean builderCustomized) {
+    this.builderCustomized = builderCustomized;
+    _unsetProperties.remove(Metadata_Builder.Property.BUILDER_CUSTOMIZED);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isBuilderCustomized()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isBuilderCustomized() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED),
+        "builderCustomized not set");
+    return builderCustomized;
+  }
+
+  /**
+   * Sets the value to be returned by {@link Metadata#isValueSerializable()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Builder setValueSerializable(boolean valueSerializable) {
+    this.valueSerializable = valueSerializable;
+    _unsetProperties.remove(Metadata_Builder.Property.VALUE_SERIALIZABLE);
+    return (Metadata.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata#isValueSerializable()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isValueSerializable() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE),
+        "valueSerializable not set");
+    return valueSerializable;
+  }
+
   /**
    * Adds {@code element} to the list to be returned from {@link
    * Metadata#getGeneratedBuilderAnnotations()}.
@@ -936,6 +986,14 @@ abstract class Metadata_Builder {
         || value.getHasToBuilderMethod() != _defaults.getHasToBuilderMethod()) {
       setHasToBuilderMethod(value.getHasToBuilderMethod());
     }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED)
+        || value.isBuilderCustomized() != _defaults.isBuilderCustomized()) {
+      setBuilderCustomized(value.isBuilderCustomized());
+    }
+    if (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+        || value.isValueSerializable() != _defaults.isValueSerializable()) {
+      setValueSerializable(value.isValueSerializable());
+    }
     if (value instanceof Metadata_Builder.Value
         && generatedBuilderAnnotations == ImmutableList.<Excerpt>of()) {
       generatedBuilderAnnotations = ImmutableList.copyOf(value.getGeneratedBuilderAnnotations());
@@ -1023,6 +1081,16 @@ abstract class Metadata_Builder {
             || template.getHasToBuilderMethod() != _defaults.getHasToBuilderMethod())) {
       setHasToBuilderMethod(template.getHasToBuilderMethod());
     }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED)
+            || template.isBuilderCustomized() != _defaults.isBuilderCustomized())) {
+      setBuilderCustomized(template.isBuilderCustomized());
+    }
+    if (!base._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+        && (_defaults._unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+            || template.isValueSerializable() != _defaults.isValueSerializable())) {
+      setValueSerializable(template.isValueSerializable());
+    }
     addAllGeneratedBuilderAnnotations(base.generatedBuilderAnnotations);
     addAllValueTypeAnnotations(base.valueTypeAnnotations);
     if (!base._unsetProperties.contains(Metadata_Builder.Property.VALUE_TYPE_VISIBILITY)
@@ -1051,6 +1119,8 @@ abstract class Metadata_Builder {
     standardMethodUnderrides.clear();
     builderSerializable = _defaults.builderSerializable;
     hasToBuilderMethod = _defaults.hasToBuilderMethod;
+    builderCustomized = _defaults.builderCustomized;
+    valueSerializable = _defaults.valueSerializable;
     clearGeneratedBuilderAnnotations();
     clearValueTypeAnnotations();
     valueTypeVisibility = _defaults.valueTypeVisibility;
@@ -1106,6 +1176,8 @@ abstract class Metadata_Builder {
         standardMethodUnderrides;
     private final boolean builderSerializable;
     private final boolean hasToBuilderMethod;
+    private final boolean builderCustomized;
+    private final boolean valueSerializable;
     private final ImmutableList<Excerpt> generatedBuilderAnnotations;
     private final ImmutableList<Excerpt> valueTypeAnnotations;
     private final Metadata.Visibility valueTypeVisibility;
@@ -1126,6 +1198,8 @@ abstract class Metadata_Builder {
       this.standardMethodUnderrides = ImmutableMap.copyOf(builder.standardMethodUnderrides);
       this.builderSerializable = builder.builderSerializable;
       this.hasToBuilderMethod = builder.hasToBuilderMethod;
+      this.builderCustomized = builder.builderCustomized;
+      this.valueSerializable = builder.valueSerializable;
       this.generatedBuilderAnnotations = ImmutableList.copyOf(builder.generatedBuilderAnnotations);
       this.valueTypeAnnotations = ImmutableList.copyOf(builder.valueTypeAnnotations);
       this.valueTypeVisibility = builder.valueTypeVisibility;
@@ -1203,6 +1277,16 @@ abstract class Metadata_Builder {
       return hasToBuilderMethod;
     }
 
+    @Override
+    public boolean isBuilderCustomized() {
+      return builderCustomized;
+    }
+
+    @Override
+    public boolean isValueSerializable() {
+      return valueSerializable;
+    }
+
     @Override
     public ImmutableList<Excerpt> getGeneratedBuilderAnnotations() {
       return generatedBuilderAnnotations;
@@ -1273,6 +1357,12 @@ abstract class Metadata_Builder {
       if (hasToBuilderMethod != other.hasToBuilderMethod) {
         return false;
       }
+      if (builderCustomized != other.builderCustomized) {
+        return false;
+      }
+      if (valueSerializable != other.valueSerializable) {
+        return false;
+      }
       if (!generatedBuilderAnnotations.equals(other.generatedBuilderAnnotations)) {
         return false;
       }
@@ -1306,6 +1396,8 @@ abstract class Metadata_Builder {
             standardMethodUnderrides,
             builderSerializable,
             hasToBuilderMethod,
+            builderCustomized,
+            valueSerializable,
             generatedBuilderAnnotations,
             valueTypeAnnotations,
             valueTypeVisibility,
@@ -1331,6 +1423,8 @@ abstract class Metadata_Builder {
               "standardMethodUnderrides=" + standardMethodUnderrides,
               "builderSerializable=" + builderSerializable,
               "hasToBuilderMethod=" + hasToBuilderMethod,
+              "builderCustomized=" + builderCustomized,
+              "valueSerializable=" + valueSerializable,
               "generatedBuilderAnnotations=" + generatedBuilderAnnotations,
               "valueTypeAnnotations=" + valueTypeAnnotations,
               "valueTypeVisibility=" + valueTypeVisibility,
@@ -1361,6 +1455,8 @@ abstract class Metadata_Builder {
         standardMethodUnderrides;
     private final boolean builderSerializable;
     private final boolean hasToBuilderMethod;
+    private final boolean builderCustomized;
+    private final boolean valueSerializable;
     private final ImmutableList<Excerpt> generatedBuilderAnnotations;
     private final ImmutableList<Excerpt> valueTypeAnnotations;
     private final Metadata.Visibility valueTypeVisibility;
@@ -1382,6 +1478,8 @@ abstract class Metadata_Builder {
       this.standardMethodUnderrides = ImmutableMap.copyOf(builder.standardMethodUnderrides);
       this.builderSerializable = builder.builderSerializable;
       this.hasToBuilderMethod = builder.hasToBuilderMethod;
+      this.builderCustomized = builder.builderCustomized;
+      this.valueSerializable = builder.valueSerializable;
       this.generatedBuilderAnnotations = ImmutableList.copyOf(builder.generatedBuilderAnnotations);
       this.valueTypeAnnotations = ImmutableList.copyOf(builder.valueTypeAnnotations);
       this.valueTypeVisibility = builder.valueTypeVisibility;
@@ -1487,6 +1585,22 @@ abstract class Metadata_Builder {
       return hasToBuilderMethod;
     }
 
+    @Override
+    public boolean isBuilderCustomized() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED)) {
+        throw new UnsupportedOperationException("builderCustomized not set");
+      }
+      return builderCustomized;
+    }
+
+    @Override
+    public boolean isValueSerializable() {
+      if (_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)) {
+        throw new UnsupportedOperationException("valueSerializable not set");
+      }
+      return valueSerializable;
+    }
+
     @Override
     public ImmutableList<Excerpt> getGeneratedBuilderAnnotations() {
       return generatedBuilderAnnotations;
@@ -1564,6 +1678,12 @@ abstract class Metadata_Builder {
       if (hasToBuilderMethod != other.hasToBuilderMethod) {
         return false;
       }
+      if (builderCustomized != other.builderCustomized) {
+        return false;
+      }
+      if (valueSerializable != other.valueSerializable) {
+        return false;
+      }
       if (!generatedBuilderAnnotations.equals(other.generatedBuilderAnnotations)) {
         return false;
       }
@@ -1599,6 +1719,8 @@ abstract class Metadata_Builder {
             standardMethodUnderrides,
             builderSerializable,
             hasToBuilderMethod,
+            builderCustomized,
+            valueSerializable,
             generatedBuilderAnnotations,
             valueTypeAnnotations,
             valueTypeVisibility,
@@ -1641,6 +1763,12 @@ abstract class Metadata_Builder {
               (!_unsetProperties.contains(Metadata_Builder.Property.HAS_TO_BUILDER_METHOD)
                   ? "hasToBuilderMethod=" + hasToBuilderMethod
                   : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.BUILDER_CUSTOMIZED)
+                  ? "builderCustomized=" + builderCustomized
+                  : null),
+              (!_unsetProperties.contains(Metadata_Builder.Property.VALUE_SERIALIZABLE)
+                  ? "valueSerializable=" + valueSerializable
+                  : null),
               "generatedBuilderAnnotations=" + generatedBuilderAnnotations,
               "valueTypeAnnotations=" + valueTypeAnnotations,
               (!_unsetProperties.contains(Metadata_Builder.Property.VALUE_TYPE_VISIBILITY)
@@ -42,6 +42,7 @@ abstract class Metadata_Property_Builder {
     USING_BEAN_CONVENTION("usingBeanConvention"),
     GETTER_NAME("getterName"),
     FULLY_CHECKED_CAST("fullyCheckedCast"),
+    WITHER_DECLARED("witherDeclared"),
     ;
 
     private final String name;
@@ -65,6 +66,7 @@ abstract class Metadata_Property_Builder {
   private String getterName;
   @Nullable private PropertyCodeGenerator codeGenerator = null;
   private boolean fullyCheckedCast;
+  private boolean witherDeclared;
   private final ArrayList<Excerpt> accessorAnnotations = new ArrayList<Excerpt>();
   private final EnumSet<Metadata_Property_Builder.Property> _unsetProperties =
       EnumSet.allOf(Metadata_Property_Builder.Property.class);
@@ -269,6 +271,29 @@ abstract class Metadata_Property_Builder {
     return fullyCheckedCast;
   }
 
+  /**
+   * Sets the value to be returned by {@link Metadata.Property#isWitherDeclared()}.
+   *
+   * @return this {@code Builder} object
+   */
+  public Metadata.Property.Builder setWitherDeclared(boolean witherDeclared) {
+    this.witherDeclared = witherDeclared;
+    _unsetProperties.remove(Metadata_Property_Builder.Property.WITHER_DECLARED);
+    return (Metadata.Property.Builder) this;
+  }
+
+  /**
+   * Returns the value that will be returned by {@link Metadata.Property#isWitherDeclared()}.
+   *
+   * @throws IllegalStateException if the field has not been set
+   */
+  public boolean isWitherDeclared() {
+    Preconditions.checkState(
+        !_unsetProperties.contains(Metadata_Property_Builder.Property.WITHER_DECLARED),
+        "witherDeclared not set");
+    return witherDeclared;
+  }
+
   /**
    * Adds {@code element} to the list to be returned from {@link Metadata.Property#getAccessorAnnotations()}.
    *
@@ -370,6 +395,10 @@ abstract class Metadata_Property_Builder {
         || value.isFullyCheckedCast() != _defaults.isFullyCheckedCast()) {
       setFullyCheckedCast(value.isFullyCheckedCast());
     }
+    if (_defaults._unsetProperties.contains(Metadata_Property_Builder.Property.WITHER_DECLARED)
+        || value.isWitherDeclared() != _defaults.isWitherDeclared()) {
+      setWitherDeclared(value.isWitherDeclared());
+    }
     addAllAccessorAnnotations(value.getAccessorAnnotations());
     return (Metadata.Property.Builder) this;
   }
@@ -421,6 +450,12 @@ abstract class Metadata_Property_Builder {
             || template.isFullyCheckedCast() != _defaults.isFullyCheckedCast())) {
       setFullyCheckedCast(template.isFullyCheckedCast());
     }
+    if (!base._unsetProperties.contains(Metadata_Property_Builder.Property.WITHER_DECLARED)
+        && (_defaults._unsetProperties.contains(
+                Metadata_Property_Builder.Property.WITHER_DECLARED)
+            || template.isWitherDeclared() != _defaults.isWitherDeclared())) {
+      setWitherDeclared(template.isWitherDeclared());
+    }
     addAllAccessorAnnotations(((Metadata_Property_Builder) template).accessorAnnotations);
     return (Metadata.Property.Builder) this;
   }
@@ -439,6 +474,7 @@ abstract class Metadata_Property_Builder {
     getterName = _defaults.getterName;
     codeGenerator = _defaults.codeGenerator;
     fullyCheckedCast = _defaults.fullyCheckedCast;
+    witherDeclared = _defaults.witherDeclared;
     accessorAnnotations.clear();
     _unsetProperties.clear();
     _unsetProperties.addAll(_defaults._unsetProperties);
@@ -479,6 +515,7 @@ abstract class Metadata_Property_Builder {
     private final String getterName;
     @Nullable private final PropertyCodeGenerator codeGenerator;
     private final boolean fullyCheckedCast;
+    private final boolean witherDeclared;
     private final ImmutableList<Excerpt> accessorAnnotations;
 
     private Value(Metadata_Property_Builder builder) {
@@ -491,6 +528,7 @@ abstract class Metadata_Property_Builder {
       this.getterName = builder.getterName;
       this.codeGenerator = builder.codeGenerator;
       this.fullyCheckedCast = builder.fullyCheckedCast;
+      this.witherDeclared = builder.witherDeclared;
       this.accessorAnnotations = ImmutableList.copyOf(builder.accessorAnnotations);
     }
 
@@ -541,6 +579,11 @@ abstract class Metadata_Property_Builder {
       return fullyCheckedCast;
     }
 
+    @Override
+    public boolean isWitherDeclared() {
+      return witherDeclared;
+    }
+
     @Override
     public ImmutableList<Excerpt> getAccessorAnnotations() {
       return accessorAnnotations;
@@ -581,6 +624,9 @@ abstract class Metadata_Property_Builder {
       if (fullyCheckedCast != other.fullyCheckedCast) {
         return false;
       }
+      if (witherDeclared != other.witherDeclared) {
+        return false;
+      }
       if (!accessorAnnotations.equals(other.accessorAnnotations)) {
         return false;
       }
@@ -600,6 +646,7 @@ abstract class Metadata_Property_Builder {
             getterName,
             codeGenerator,
             fullyCheckedCast,
+            witherDeclared,
             accessorAnnotations
           });
     }
@@ -617,6 +664,7 @@ abstract class Metadata_Property_Builder {
               "getterName=" + getterName,
               (codeGenerator != null ? "codeGenerator=" + codeGenerator : null),
               "fullyCheckedCast=" + fullyCheckedCast,
+              "witherDeclared=" + witherDeclared,
               "accessorAnnotations=" + accessorAnnotations)
           + "}";
     }
@@ -632,6 +680,7 @@ abstract class Metadata_Property_Builder {
     private final String getterName;
     @Nullable private final PropertyCodeGenerator codeGenerator;
     private final boolean fullyCheckedCast;
+    private final boolean witherDeclared;
     private final ImmutableList<Excerpt> accessorAnnotations;
     private final EnumSet<Metadata_Property_Builder.Property> _unsetProperties;
 
@@ -645,6 +694,7 @@ abstract class Metadata_Property_Builder {
       this.getterName = builder.getterName;
       this.codeGenerator = builder.codeGenerator;
       this.fullyCheckedCast = builder.fullyCheckedCast;
+      this.witherDeclared = builder.witherDeclared;
       this.accessorAnnotations = ImmutableList.copyOf(builder.accessorAnnotations);
       this._unsetProperties = builder._unsetProperties.clone();
     }
@@ -717,6 +767,14 @@ abstract class Metadata_Property_Builder {
       return fullyCheckedCast;
     }
 
+    @Override
+    public boolean isWitherDeclared() {
+      if (_unsetProperties.contains(Metadata_Property_Builder.Property.WITHER_DECLARED)) {
+        throw new UnsupportedOperationException("witherDeclared not set");
+      }
+      return witherDeclared;
+    }
+
     @Override
     public ImmutableList<Excerpt> getAccessorAnnotations() {
       return accessorAnnotations;
@@ -760,6 +818,9 @@ abstract class Metadata_Property_Builder {
       if (fullyCheckedCast != other.fullyCheckedCast) {
         return false;
       }
+      if (witherDeclared != other.witherDeclared) {
+        return false;
+      }
       if (!accessorAnnotations.equals(other.accessorAnnotations)) {
         return false;
       }
@@ -779,6 +840,7 @@ abstract class Metadata_Property_Builder {
             getterName,
             codeGenerator,
             fullyCheckedCast,
+            witherDeclared,
             accessorAnnotations,
             _unsetProperties
           });
@@ -811,6 +873,9 @@ abstract class Metadata_Property_Builder {
               (!_unsetProperties.contains(Metadata_Property_Builder.Property.FULLY_CHECKED_CAST)
                   ? "fullyCheckedCast=" + fullyCheckedCast
                   : null),
+              (!_unsetProperties.contains(Metadata_Property_Builder.Property.WITHER_DECLARED)
+                  ? "witherDeclared=" + witherDeclared
+                  : null),
               "accessorAnnotations=" + accessorAnnotations)
           + "}";
     }
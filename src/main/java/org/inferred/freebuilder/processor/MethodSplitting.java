@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+
+import java.util.List;
+
+/**
+ * Decides when a generated method that touches every property should be split into private
+ * helper methods, each handling a chunk of the properties.
+ *
+ * <p>HotSpot never JIT-compiles a method with more than {@value #HUGE_METHOD_LIMIT} bytes of
+ * bytecode (see {@code -XX:HugeMethodLimit}), so for a type with hundreds of properties, methods
+ * like {@code equals} and {@code mergeFrom} would otherwise stay interpreted forever. We cannot
+ * measure the bytecode javac will emit, so each kind of method has a generous per-property
+ * estimate, and chunks are sized to keep well under the limit even if the estimate is low.
+ */
+class MethodSplitting {
+
+  /** The largest method, in bytes of bytecode, that HotSpot will JIT-compile by default. */
+  static final int HUGE_METHOD_LIMIT = 8000;
+
+  /** The estimated bytecode we allow a single method or helper before splitting. */
+  private static final int CHUNK_BUDGET = 6000;
+
+  /** Methods that may be split, with an upper estimate of the bytecode each property adds. */
+  enum Cost {
+    MERGE_FROM(64),
+    CLEAR(24),
+    TO_BUILDER(48),
+    EQUALS(32),
+    HASH_CODE(16),
+    TO_STRING(48),
+    SPARSE_CONSTRUCTOR(64),
+    SPARSE_DEFAULTS(32),
+    PACKED_CONSTRUCTOR(20),
+    PACKED_HASH_CODE(32);
+
+    private final int bytesPerProperty;
+
+    Cost(int bytesPerProperty) {
+      this.bytesPerProperty = bytesPerProperty;
+    }
+  }
+
+  /**
+   * Returns {@code properties} divided into the chunks to give a helper method each, or a single
+   * chunk if the method is small enough not to need splitting.
+   */
+  static List<List<Property>> chunks(List<Property> properties, Cost cost) {
+    int chunkSize = CHUNK_BUDGET / cost.bytesPerProperty;
+    if (properties.size() <= chunkSize) {
+      return ImmutableList.of(properties);
+    }
+    return Lists.partition(properties, chunkSize);
+  }
+
+  private MethodSplitting() {}
+}
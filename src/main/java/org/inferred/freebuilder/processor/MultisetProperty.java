@@ -30,24 +30,31 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.ModelUtils.needsSafeVarargs;
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.STREAM_OVERLOADS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multisets;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedMultiset;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
@@ -202,7 +209,8 @@ class MultisetProperty extends PropertyCodeGenerator {
   }
 
   private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
-    if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+    if (code.feature(SOURCE_LEVEL).stream().isPresent()
+        && !code.feature(SLIM_API).omits(STREAM_OVERLOADS)) {
       addSpliteratorAddAll(code, metadata);
       addStreamAddAll(code, metadata);
       addIterableAddAll(code, metadata);
@@ -303,7 +311,7 @@ class MultisetProperty extends PropertyCodeGenerator {
 
   private void addMutate(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -399,6 +407,32 @@ class MultisetProperty extends PropertyCodeGenerator {
             finalField, ImmutableMultiset.class, property.getField().on(builder));
   }
 
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s", elementType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt element) {
+    return Optional.of(Excerpts.add("%s.%s(%s)", builder, addMethod(property), element));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(
+        ConcurrentBuilderSupport.multisetAccumulator(metadata, property, elementType));
+  }
+
+  @Override
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of(elementType);
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return Excerpts.add("%s.copyOf(%s)", ImmutableMultiset.class, parameter);
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     code.addLine("%s(%s.%s());", addAllMethod(property), value, property.getGetterName());
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.JacksonSupport.DESERIALIZER;
+import static org.inferred.freebuilder.processor.JacksonSupport.SERIALIZER;
+import static org.inferred.freebuilder.processor.util.feature.NativeImageConfig.NATIVE_IMAGE_CONFIG;
+import static org.inferred.freebuilder.processor.util.feature.SerializationProxy.SERIALIZATION_PROXY;
+
+import com.google.common.base.Joiner;
+
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.NativeImageConfig;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes GraalVM native-image {@value #REFLECT_CONFIG} and {@value #SERIALIZATION_CONFIG} entries
+ * for the generated classes that are reached reflectively.
+ *
+ * <p>Jackson instantiates the user's builder and introspects the generated builder, value and
+ * partial types; GWT looks up the static methods of {@code Value_CustomFieldSerializer}; Java
+ * serialization needs every serializable value, partial, builder and proxy class registered; and
+ * {@code ObjectMapper.findModules()} instantiates the generated {@code FreeBuilderModule} through
+ * its {@value JacksonModuleGenerator#SERVICES} entry.
+ *
+ * <p>native-image reads configuration from every directory under {@code META-INF/native-image},
+ * so each type's configuration goes in a directory of its own, named after the type and written
+ * only when the type is. Incremental compilations therefore replace or remove the configuration
+ * of the types they touch, and leave the rest alone.
+ */
+class NativeImageConfigGenerator {
+
+  static final String REFLECT_CONFIG = "reflect-config.json";
+  static final String SERIALIZATION_CONFIG = "serialization-config.json";
+  static final String RESOURCE_CONFIG = "resource-config.json";
+
+  /** The reflective access native-image should allow to a class. */
+  enum Access {
+    DECLARED_CONSTRUCTORS("allDeclaredConstructors"),
+    PUBLIC_CONSTRUCTORS("allPublicConstructors"),
+    DECLARED_METHODS("allDeclaredMethods"),
+    PUBLIC_METHODS("allPublicMethods"),
+    DECLARED_FIELDS("allDeclaredFields");
+
+    private final String key;
+
+    Access(String key) {
+      this.key = key;
+    }
+  }
+
+  /** Reflective access by binary class name, in the order the classes were recorded. */
+  private final Map<String, Set<Access>> reflected = new LinkedHashMap<String, Set<Access>>();
+  private final Set<String> serialized = new LinkedHashSet<String>();
+
+  /** Writes the configuration for the classes generated for {@code type}, if enabled. */
+  static void writeTypeConfig(
+      ProcessingEnvironment env, TypeElement type, Metadata metadata, FeatureSet features)
+      throws IOException {
+    NativeImageConfig config = features.get(NATIVE_IMAGE_CONFIG);
+    if (!config.isEnabled()) {
+      return;
+    }
+    NativeImageConfigGenerator generator = new NativeImageConfigGenerator();
+    generator.add(metadata, features);
+    generator.write(env, config, binaryName(metadata.getType().getQualifiedName()), type);
+  }
+
+  /**
+   * Writes the configuration letting {@code ObjectMapper.findModules()} load {@code module}, if
+   * enabled.
+   */
+  static void writeModuleConfig(
+      ProcessingEnvironment env,
+      QualifiedName module,
+      FeatureSet features,
+      Element... originatingElements) throws IOException {
+    NativeImageConfig config = features.get(NATIVE_IMAGE_CONFIG);
+    if (!config.isEnabled()) {
+      return;
+    }
+    NativeImageConfigGenerator generator = new NativeImageConfigGenerator();
+    generator.reflect(module, Access.DECLARED_CONSTRUCTORS, Access.PUBLIC_CONSTRUCTORS);
+    String directory = binaryName(module);
+    generator.write(env, config, directory, originatingElements);
+    Writer resourceConfig = env.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "",
+            config.directory() + "/" + directory + "/" + RESOURCE_CONFIG, originatingElements)
+        .openWriter();
+    try {
+      resourceConfig.append("{\"resources\": [\n")
+          .append("  {\"pattern\": \"\\\\Q")
+          .append(JacksonModuleGenerator.SERVICES)
+          .append("\\\\E\"}\n")
+          .append("]}\n");
+    } finally {
+      resourceConfig.close();
+    }
+  }
+
+  private void add(Metadata metadata, FeatureSet features) {
+    QualifiedName generatedBuilder = metadata.getGeneratedBuilder().getQualifiedName();
+    QualifiedName valueType = metadata.getValueType().getQualifiedName();
+    QualifiedName partialType = metadata.getPartialType().getQualifiedName();
+    boolean hasPartialType = CodeGenerator.hasPartialType(features);
+
+    reflect(metadata.getType().getQualifiedName(),
+        Access.DECLARED_METHODS, Access.PUBLIC_METHODS);
+    reflect(metadata.getBuilder().getQualifiedName(),
+        Access.DECLARED_CONSTRUCTORS, Access.PUBLIC_CONSTRUCTORS, Access.PUBLIC_METHODS);
+    reflect(generatedBuilder, Access.DECLARED_METHODS, Access.PUBLIC_METHODS);
+    reflect(valueType, Access.DECLARED_CONSTRUCTORS, Access.DECLARED_METHODS,
+        Access.PUBLIC_METHODS, Access.DECLARED_FIELDS);
+    if (hasPartialType) {
+      reflect(partialType, Access.DECLARED_CONSTRUCTORS, Access.DECLARED_METHODS,
+          Access.PUBLIC_METHODS, Access.DECLARED_FIELDS);
+    }
+    if (JacksonSupport.hasStreamingCodecs(metadata)) {
+      reflect(generatedBuilder.nestedType(SERIALIZER), Access.DECLARED_CONSTRUCTORS);
+      reflect(generatedBuilder.nestedType(DESERIALIZER), Access.DECLARED_CONSTRUCTORS);
+    }
+    if (GwtSupport.hasCustomFieldSerializer(metadata)) {
+      reflect(generatedBuilder.nestedType("Value_CustomFieldSerializer"),
+          Access.DECLARED_CONSTRUCTORS, Access.PUBLIC_METHODS);
+    }
+
+    if (metadata.isValueSerializable()) {
+      serialized.add(binaryName(valueType));
+      if (hasPartialType) {
+        serialized.add(binaryName(partialType));
+      }
+      if (features.get(SERIALIZATION_PROXY).isEnabled()
+          && SerializationProxySupport.supportsSerializationProxy(metadata)) {
+        QualifiedName proxy = SerializationProxySupport.serializationProxyName(metadata);
+        reflect(proxy, Access.DECLARED_CONSTRUCTORS, Access.DECLARED_METHODS,
+            Access.DECLARED_FIELDS);
+        serialized.add(binaryName(proxy));
+      }
+    }
+    if (metadata.isBuilderSerializable()) {
+      serialized.add(binaryName(metadata.getBuilder().getQualifiedName()));
+      serialized.add(binaryName(generatedBuilder));
+    }
+  }
+
+  private void write(
+      ProcessingEnvironment env,
+      NativeImageConfig config,
+      String directory,
+      Element... originatingElements) throws IOException {
+    String prefix = config.directory() + "/" + directory + "/";
+    Writer reflectConfig = env.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "",
+            prefix + REFLECT_CONFIG, originatingElements)
+        .openWriter();
+    try {
+      reflectConfig.append("[\n");
+      String separator = "";
+      for (Map.Entry<String, Set<Access>> entry : reflected.entrySet()) {
+        reflectConfig.append(separator)
+            .append("  {\"name\": \"").append(entry.getKey()).append('"');
+        for (Access access : entry.getValue()) {
+          reflectConfig.append(", \"").append(access.key).append("\": true");
+        }
+        reflectConfig.append('}');
+        separator = ",\n";
+      }
+      reflectConfig.append("\n]\n");
+    } finally {
+      reflectConfig.close();
+    }
+    if (serialized.isEmpty()) {
+      return;
+    }
+    Writer serializationConfig = env.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "",
+            prefix + SERIALIZATION_CONFIG, originatingElements)
+        .openWriter();
+    try {
+      serializationConfig.append("[\n");
+      String separator = "";
+      for (String name : serialized) {
+        serializationConfig.append(separator)
+            .append("  {\"name\": \"").append(name).append("\"}");
+        separator = ",\n";
+      }
+      serializationConfig.append("\n]\n");
+    } finally {
+      serializationConfig.close();
+    }
+  }
+
+  private void reflect(QualifiedName type, Access... accesses) {
+    String name = binaryName(type);
+    Set<Access> access = reflected.get(name);
+    if (access == null) {
+      access = EnumSet.noneOf(Access.class);
+      reflected.put(name, access);
+    }
+    for (Access a : accesses) {
+      access.add(a);
+    }
+  }
+
+  private static String binaryName(QualifiedName type) {
+    String nestedName = Joiner.on('$').join(type.getSimpleNames());
+    return type.getPackage().isEmpty() ? nestedName : type.getPackage() + "." + nestedName;
+  }
+}
@@ -23,6 +23,8 @@ import static org.inferred.freebuilder.processor.BuilderMethods.setter;
 import static org.inferred.freebuilder.processor.util.Block.methodBody;
 import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MAPPERS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
@@ -122,7 +124,7 @@ class NullableProperty extends PropertyCodeGenerator {
 
   private void addMapper(SourceBuilder code, final Metadata metadata) {
     ParameterizedType unaryOperator = code.feature(FUNCTION_PACKAGE).unaryOperator().orNull();
-    if (unaryOperator == null) {
+    if (unaryOperator == null || code.feature(SLIM_API).omits(MAPPERS)) {
       return;
     }
     TypeMirror typeParam = firstNonNull(property.getBoxedType(), property.getType());
@@ -174,6 +176,16 @@ class NullableProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s;", finalField, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    return property.getField();
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return parameter;
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     Excerpt defaults = Declarations.freshBuilder(code, metadata).orNull();
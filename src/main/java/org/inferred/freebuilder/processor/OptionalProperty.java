@@ -26,6 +26,8 @@ import static org.inferred.freebuilder.processor.util.Block.methodBody;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
 import static org.inferred.freebuilder.processor.util.ModelUtils.maybeUnbox;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MAPPERS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
@@ -33,6 +35,7 @@ import com.google.common.base.Optional;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
 import org.inferred.freebuilder.processor.util.FieldAccess;
 import org.inferred.freebuilder.processor.util.ParameterizedType;
 import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
@@ -52,7 +55,7 @@ class OptionalProperty extends PropertyCodeGenerator {
 
   @VisibleForTesting
   enum OptionalType {
-    GUAVA(QualifiedName.of(Optional.class), "absent", "fromNullable") {
+    GUAVA(QualifiedName.of(Optional.class), "absent", "fromNullable", "orNull()") {
       @Override
       protected void applyMapper(SourceBuilder code, Metadata metadata, Property property) {
         // Guava's transform method throws a NullPointerException if mapper returns null,
@@ -76,7 +79,7 @@ class OptionalProperty extends PropertyCodeGenerator {
             .addLine("}");
       }
     },
-    JAVA8(QualifiedName.of("java.util", "Optional"), "empty", "ofNullable") {
+    JAVA8(QualifiedName.of("java.util", "Optional"), "empty", "ofNullable", "orElse(null)") {
       @Override
       protected void applyMapper(SourceBuilder code, Metadata metadata, Property property) {
         code.addLine("  return %s(%s().map(mapper));", setter(property), getter(property));
@@ -91,11 +94,13 @@ class OptionalProperty extends PropertyCodeGenerator {
     private final QualifiedName cls;
     private final String empty;
     private final String ofNullable;
+    private final String orNull;
 
-    OptionalType(QualifiedName cls, String empty, String ofNullable) {
+    OptionalType(QualifiedName cls, String empty, String ofNullable, String orNull) {
       this.cls = cls;
       this.empty = empty;
       this.ofNullable = ofNullable;
+      this.orNull = orNull;
     }
 
     protected abstract void applyMapper(SourceBuilder code, Metadata metadata, Property property);
@@ -167,6 +172,11 @@ class OptionalProperty extends PropertyCodeGenerator {
     return Type.OPTIONAL;
   }
 
+  @Override
+  public Optional<Excerpt> getJsonPresenceCheck(Excerpt value) {
+    return Optional.<Excerpt>of(Excerpts.add("%s.isPresent()", value));
+  }
+
   @Override
   public void addValueFieldDeclaration(SourceBuilder code, FieldAccess finalField) {
     code.addLine("// Store a nullable object instead of an Optional. Escape analysis then")
@@ -175,6 +185,11 @@ class OptionalProperty extends PropertyCodeGenerator {
         .addLine("private final %s %s;", elementType, finalField);
   }
 
+  @Override
+  public TypeMirror getValueFieldType() {
+    return elementType;
+  }
+
   @Override
   public void addBuilderFieldDeclaration(SourceBuilder code) {
     code.addLine("// Store a nullable object instead of an Optional. Escape analysis then")
@@ -271,7 +286,7 @@ class OptionalProperty extends PropertyCodeGenerator {
 
   private void addMapper(SourceBuilder code, Metadata metadata) {
     ParameterizedType unaryOperator = code.feature(FUNCTION_PACKAGE).unaryOperator().orNull();
-    if (unaryOperator == null) {
+    if (unaryOperator == null || code.feature(SLIM_API).omits(MAPPERS)) {
       return;
     }
     code.addLine("")
@@ -328,6 +343,16 @@ class OptionalProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s;", finalField, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    return property.getField();
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    return Excerpts.add("%s.%s", parameter, optional.orNull);
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     String propertyValue = value + "." + property.getGetterName() + "()";
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.MethodSplitting.chunks;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NULLABLE;
+import static org.inferred.freebuilder.processor.util.feature.PackedFlags.PACKED_FLAGS;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.MethodSplitting.Cost;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.FieldAccess;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Generates the parts of a value type with packed flags that differ from an unpacked one.
+ *
+ * <p>Each boolean property takes one bit of a word, and each enum property with at most
+ * 2<sup>{@value #MAX_ENUM_BITS}</sup> constants takes just enough bits to hold its ordinals. The
+ * words are {@code int}s if every packed property fits in one, and {@code long}s otherwise; no
+ * property straddles two words. Only properties stored as-is are packed, so nullable and optional
+ * properties keep their own fields.
+ *
+ * <p>An enum is only packed if it is declared in the same source file as the value type, so it
+ * cannot gain constants without the value type being regenerated. Enums from elsewhere could be
+ * recompiled separately, overflowing the bits reserved for them.
+ */
+class PackedFlagsSupport {
+
+  private static final int MAX_ENUM_BITS = 8;
+
+  /** The bits of a word holding a single packed property. */
+  private static class Slot {
+    final int word;
+    final int shift;
+    final int bits;
+    final boolean isEnum;
+
+    Slot(int word, int shift, int bits, boolean isEnum) {
+      this.word = word;
+      this.shift = shift;
+      this.bits = bits;
+      this.isEnum = isEnum;
+    }
+  }
+
+  /** Returns whether the value type generated for {@code metadata} should pack its flags. */
+  static boolean isPacked(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(PACKED_FLAGS).isEnabled()
+        || SparseValueSupport.isSparse(code, metadata)
+        || GwtSupport.hasCustomFieldSerializer(metadata)
+        || (code.feature(SerializationProxy.SERIALIZATION_PROXY).isEnabled()
+            && metadata.isValueSerializable())) {
+      return false;
+    }
+    return slots(metadata).size() >= 2;
+  }
+
+  /** Returns an excerpt of the value type's field form of {@code property}, on {@code this}. */
+  static Excerpt valueField(Metadata metadata, Property property) {
+    Slot slot = slots(metadata).get(property);
+    if (slot == null) {
+      return property.getField();
+    }
+    boolean isLong = isLong(metadata);
+    Excerpt word = word(slot.word);
+    if (!slot.isEnum) {
+      return Excerpts.add("((%s & %s) != 0)", word, mask(isLong, 1, slot.shift));
+    }
+    Excerpt ordinal = (slot.shift == 0)
+        ? Excerpts.add("%s", word)
+        : Excerpts.add("(%s >>> %s)", word, slot.shift);
+    return Excerpts.add("%s[%s%s & %s]",
+        enumValues(property), isLong ? "(int) " : "", ordinal, mask(false, slot.bits, 0));
+  }
+
+  static void addFields(SourceBuilder code, Metadata metadata) {
+    Map<Property, Slot> slots = slots(metadata);
+    for (Property property : metadata.getProperties()) {
+      if (!slots.containsKey(property)) {
+        property.getCodeGenerator().addValueFieldDeclaration(code, property.getField());
+      }
+    }
+    for (int i = 0; i < wordCount(metadata); i++) {
+      code.addLine("  private final %s %s;", isLong(metadata) ? "long" : "int", word(i));
+    }
+  }
+
+  /**
+   * Adds a constructor copying each property from the builder. If there are too many packed
+   * properties to pack inline, each word is packed by a {@code _packN} helper.
+   */
+  static void addConstructor(SourceBuilder code, Metadata metadata) {
+    Map<Property, Slot> slots = slots(metadata);
+    List<Property> packed = ImmutableList.copyOf(slots.keySet());
+    boolean split = chunks(packed, Cost.PACKED_CONSTRUCTOR).size() > 1;
+    code.addLine("")
+        .addLine("  private %s(%s builder) {",
+            metadata.getValueType().getSimpleName(),
+            metadata.getGeneratedBuilder());
+    Block body = methodBody(code, "builder");
+    for (Property property : metadata.getProperties()) {
+      if (!slots.containsKey(property)) {
+        property.getCodeGenerator()
+            .addFinalFieldAssignment(body, property.getField().on("this"), "builder");
+      }
+    }
+    // Packed properties are stored as-is, so the builder's fields hold their final values
+    Function<Property, Excerpt> builderFields = new Function<Property, Excerpt>() {
+      @Override
+      public Excerpt apply(Property property) {
+        return property.getField().on("builder");
+      }
+    };
+    if (split) {
+      for (int i = 0; i < wordCount(metadata); i++) {
+        body.addLine("    %s = _pack%s(builder);", word(i).on("this"), i);
+      }
+    } else {
+      addWordAssignments(body, metadata, builderFields);
+    }
+    code.add(body)
+        .addLine("  }");
+    if (split) {
+      for (int i = 0; i < wordCount(metadata); i++) {
+        code.addLine("")
+            .addLine("  private %s _pack%s(%s builder) {",
+                isLong(metadata) ? "long" : "int", i, metadata.getGeneratedBuilder())
+            .addLine("    return %s;", wordValue(metadata, i, builderFields))
+            .addLine("  }");
+      }
+    }
+  }
+
+  /** Adds a constructor taking the value of each property, for code that bypasses the builder. */
+  static void addFieldwiseConstructor(SourceBuilder code, Metadata metadata) {
+    Map<Property, Slot> slots = slots(metadata);
+    code.addLine("")
+        .add("  private %s(", metadata.getValueType().getSimpleName());
+    String separator = "";
+    for (Property property : metadata.getProperties()) {
+      code.add(separator);
+      property.getCodeGenerator().addGetterAnnotations(code);
+      code.add("%s %s", property.getCodeGenerator().getValueFieldType(), property.getName());
+      separator = ", ";
+    }
+    code.add(") {\n");
+    for (Property property : metadata.getProperties()) {
+      if (!slots.containsKey(property)) {
+        code.addLine("    %s = %s;", property.getField().on("this"), property.getName());
+      }
+    }
+    addWordAssignments(code, metadata, new Function<Property, Excerpt>() {
+      @Override
+      public Excerpt apply(Property property) {
+        return Excerpts.add("%s", property.getName());
+      }
+    });
+    code.addLine("  }");
+  }
+
+  /**
+   * Adds an equals method comparing whole words before any unpacked field, in {@code _equalsN}
+   * helpers for huge types.
+   */
+  static void addEquals(SourceBuilder code, Metadata metadata) {
+    List<Property> unpacked = unpackedProperties(metadata);
+    List<List<Property>> chunks = chunks(unpacked, Cost.EQUALS);
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public boolean equals(Object obj) {");
+    BinaryCodecSupport.addUnwrapView(code, metadata);
+    code.addLine("    if (!(obj instanceof %s)) {", metadata.getValueType().getQualifiedName())
+        .addLine("      return false;")
+        .addLine("    }")
+        .addLine("    %1$s other = (%1$s) obj;", metadata.getValueType().withWildcards());
+    for (int i = 0; i < wordCount(metadata); i++) {
+      code.addLine("    if (%1$s != other.%1$s) {", word(i))
+          .addLine("      return false;")
+          .addLine("    }");
+    }
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("    if (!_equals%s(other)) {", i)
+            .addLine("      return false;")
+            .addLine("    }");
+      }
+    } else {
+      addFieldComparisons(code, unpacked);
+    }
+    code.addLine("    return true;")
+        .addLine("  }");
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private boolean _equals%s(%s other) {",
+                i, metadata.getValueType().withWildcards());
+        addFieldComparisons(code, chunks.get(i));
+        code.addLine("    return true;")
+            .addLine("  }");
+      }
+    }
+  }
+
+  private static void addFieldComparisons(SourceBuilder code, List<Property> properties) {
+    for (Property property : properties) {
+      code.addLine("    if (%s) {", ObjectsExcerpts.notEquals(
+              property.getField(),
+              property.getField().on("other"),
+              property.getType().getKind(),
+              (property.getCodeGenerator().getType() == Type.OPTIONAL)
+                  ? NULLABLE
+                  : NOT_NULLABLE))
+          .addLine("      return false;")
+          .addLine("    }");
+    }
+  }
+
+  /**
+   * Adds a hashCode method hashing every property, unpacked, in declaration order, so it gives
+   * the same hash code as an unpacked value type. Huge types gather the values into an array in
+   * {@code _hashValuesN} helpers.
+   */
+  static void addHashCode(SourceBuilder code, Metadata metadata) {
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.PACKED_HASH_CODE);
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int hashCode() {");
+    if (chunks.size() > 1) {
+      code.addLine("    Object[] values = new Object[%s];", metadata.getProperties().size());
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("    _hashValues%s(values);", i);
+      }
+      code.addLine("    return %s.hashCode(values);", Arrays.class)
+          .addLine("  }");
+      int index = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private void _hashValues%s(Object[] values) {", i);
+        for (Property property : chunks.get(i)) {
+          code.addLine("    values[%s] = %s;", index++, valueField(metadata, property));
+        }
+        code.addLine("  }");
+      }
+      return;
+    }
+    List<Excerpt> values = new ArrayList<Excerpt>();
+    for (Property property : metadata.getProperties()) {
+      values.add(valueField(metadata, property));
+    }
+    if (code.feature(SOURCE_LEVEL).javaUtilObjects().isPresent()) {
+      code.addLine("    return %s.hash(%s);",
+          code.feature(SOURCE_LEVEL).javaUtilObjects().get(), Excerpts.join(", ", values));
+    } else {
+      code.addLine("    return %s.hashCode(new Object[] { %s });",
+          Arrays.class, Excerpts.join(", ", values));
+    }
+    code.addLine("  }");
+  }
+
+  /** Adds the enum constants that packed ordinals are looked up in. */
+  static void addHelpers(SourceBuilder code, Metadata metadata) {
+    Map<Property, Slot> slots = slots(metadata);
+    boolean hasEnums = false;
+    for (Property property : metadata.getProperties()) {
+      Slot slot = slots.get(property);
+      if (slot != null && slot.isEnum) {
+        if (!hasEnums) {
+          code.addLine("");
+          hasEnums = true;
+        }
+        code.addLine("  private static final %1$s[] %2$s = %1$s.values();",
+            property.getType(), enumValues(property));
+      }
+    }
+  }
+
+  private static void addWordAssignments(
+      SourceBuilder code, Metadata metadata, Function<Property, Excerpt> values) {
+    for (int i = 0; i < wordCount(metadata); i++) {
+      code.addLine("    %s = %s;", word(i).on("this"), wordValue(metadata, i, values));
+    }
+  }
+
+  /** Returns an excerpt packing the properties stored in word {@code index}. */
+  private static Object wordValue(
+      Metadata metadata, int index, Function<Property, Excerpt> values) {
+    Map<Property, Slot> slots = slots(metadata);
+    boolean isLong = isLong(metadata);
+    List<Excerpt> parts = new ArrayList<Excerpt>();
+    for (Property property : metadata.getProperties()) {
+      Slot slot = slots.get(property);
+      if (slot == null || slot.word != index) {
+        continue;
+      }
+      Excerpt value = values.apply(property);
+      if (!slot.isEnum) {
+        parts.add(Excerpts.add("(%s ? %s : 0)", value, mask(isLong, 1, slot.shift)));
+      } else if (slot.shift == 0) {
+        parts.add(Excerpts.add("%s%s.ordinal()", isLong ? "(long) " : "", value));
+      } else {
+        parts.add(Excerpts.add("(%s%s.ordinal() << %s)",
+            isLong ? "(long) " : "", value, slot.shift));
+      }
+    }
+    return Excerpts.join("\n        | ", parts);
+  }
+
+  private static List<Property> unpackedProperties(Metadata metadata) {
+    Map<Property, Slot> slots = slots(metadata);
+    ImmutableList.Builder<Property> properties = ImmutableList.builder();
+    for (Property property : metadata.getProperties()) {
+      if (!slots.containsKey(property)) {
+        properties.add(property);
+      }
+    }
+    return properties.build();
+  }
+
+  /** Returns the packed properties, in declaration order, with the bits each is stored in. */
+  private static Map<Property, Slot> slots(Metadata metadata) {
+    List<Property> properties = new ArrayList<Property>();
+    List<Integer> widths = new ArrayList<Integer>();
+    int totalBits = 0;
+    for (Property property : metadata.getProperties()) {
+      Optional<Integer> bits = bits(metadata, property);
+      if (bits.isPresent()) {
+        properties.add(property);
+        widths.add(bits.get());
+        totalBits += bits.get();
+      }
+    }
+    int wordSize = (totalBits <= Integer.SIZE) ? Integer.SIZE : Long.SIZE;
+    ImmutableMap.Builder<Property, Slot> slots = ImmutableMap.builder();
+    int word = 0;
+    int shift = 0;
+    for (int i = 0; i < properties.size(); i++) {
+      int bits = widths.get(i);
+      if (shift + bits > wordSize) {
+        word++;
+        shift = 0;
+      }
+      boolean isEnum = properties.get(i).getType().getKind() != TypeKind.BOOLEAN;
+      slots.put(properties.get(i), new Slot(word, shift, bits, isEnum));
+      shift += bits;
+    }
+    return slots.build();
+  }
+
+  /**
+   * Returns the number of bits needed to store {@code property}, or absent if it cannot be
+   * packed: only booleans, and small enums declared alongside the value type, stored without a
+   * null check, are packed.
+   */
+  private static Optional<Integer> bits(Metadata metadata, Property property) {
+    if (!(property.getCodeGenerator() instanceof DefaultProperty)) {
+      return Optional.absent();
+    }
+    if (property.getType().getKind() == TypeKind.BOOLEAN) {
+      return Optional.of(1);
+    }
+    Optional<TypeElement> element = maybeAsTypeElement(property.getType());
+    if (!element.isPresent()
+        || element.get().getKind() != ElementKind.ENUM
+        || !topLevelType(QualifiedName.of(element.get()))
+            .equals(topLevelType(metadata.getType().getQualifiedName()))) {
+      return Optional.absent();
+    }
+    int constants = 0;
+    for (Element enclosed : element.get().getEnclosedElements()) {
+      if (enclosed.getKind() == ElementKind.ENUM_CONSTANT) {
+        constants++;
+      }
+    }
+    int bits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(constants - 1));
+    if (constants == 0 || bits > MAX_ENUM_BITS) {
+      return Optional.absent();
+    }
+    return Optional.of(bits);
+  }
+
+  private static QualifiedName topLevelType(QualifiedName type) {
+    while (!type.isTopLevel()) {
+      type = type.getEnclosingType();
+    }
+    return type;
+  }
+
+  private static int wordCount(Metadata metadata) {
+    int words = 0;
+    for (Slot slot : slots(metadata).values()) {
+      words = Math.max(words, slot.word + 1);
+    }
+    return words;
+  }
+
+  private static boolean isLong(Metadata metadata) {
+    int totalBits = 0;
+    for (Slot slot : slots(metadata).values()) {
+      totalBits += slot.bits;
+    }
+    return totalBits > Integer.SIZE;
+  }
+
+  private static FieldAccess word(int index) {
+    return new FieldAccess("_flags" + index);
+  }
+
+  private static Excerpt enumValues(Property property) {
+    return Excerpts.add("_%s_VALUES", property.getAllCapsName());
+  }
+
+  /** Returns a hex literal with {@code bits} bits set, starting at bit {@code shift}. */
+  private static String mask(boolean isLong, int bits, int shift) {
+    long mask = ((1L << bits) - 1) << shift;
+    return "0x" + Long.toHexString(mask) + (isLong ? "L" : "");
+  }
+
+  private PackedFlagsSupport() {}
+}
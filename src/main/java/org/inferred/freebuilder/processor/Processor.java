@@ -19,6 +19,7 @@ import static com.google.common.base.MoreObjects.firstNonNull;
 import static javax.lang.model.util.ElementFilter.typesIn;
 import static org.inferred.freebuilder.processor.util.ModelUtils.findAnnotationMirror;
 import static org.inferred.freebuilder.processor.util.RoundEnvironments.annotatedElementsIn;
+import static org.inferred.freebuilder.processor.util.feature.GenerationCacheDir.GENERATION_CACHE_DIR;
 
 import com.google.auto.service.AutoService;
 import com.google.common.annotations.VisibleForTesting;
@@ -30,10 +31,27 @@ import com.google.common.collect.MapMaker;
 import org.inferred.freebuilder.FreeBuilder;
 import org.inferred.freebuilder.processor.util.CompilationUnitBuilder;
 import org.inferred.freebuilder.processor.util.FilerUtils;
+import org.inferred.freebuilder.processor.util.feature.BinaryCodec;
+import org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod;
+import org.inferred.freebuilder.processor.util.feature.BuilderDiagnostics;
+import org.inferred.freebuilder.processor.util.feature.CollectorMethods;
+import org.inferred.freebuilder.processor.util.feature.ColumnsContainer;
+import org.inferred.freebuilder.processor.util.feature.ConcurrentBuilderClass;
 import org.inferred.freebuilder.processor.util.feature.EnvironmentFeatureSet;
 import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.FreeBuilderRuntime;
+import org.inferred.freebuilder.processor.util.feature.GenerationCacheDir;
+import org.inferred.freebuilder.processor.util.feature.NativeImageConfig;
+import org.inferred.freebuilder.processor.util.feature.PackedFlags;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+import org.inferred.freebuilder.processor.util.feature.SlimApi;
+import org.inferred.freebuilder.processor.util.feature.SparseValueLayout;
+import org.inferred.freebuilder.processor.util.feature.StaticFactoryMethod;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
 
 import java.io.IOException;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
@@ -65,9 +83,11 @@ public class Processor extends AbstractProcessor {
 
   private Analyser analyser;
   private final CodeGenerator codeGenerator = new CodeGenerator();
+  private final JacksonModuleGenerator jacksonModuleGenerator = new JacksonModuleGenerator();
   private final FeatureSet features;
 
   private transient FeatureSet environmentFeatures;
+  private transient GenerationCache generationCache;
 
   public Processor() {
     this.features = null;
@@ -83,6 +103,27 @@ public class Processor extends AbstractProcessor {
     return ImmutableSet.of(FreeBuilder.class.getName());
   }
 
+  @Override
+  public Set<String> getSupportedOptions() {
+    return ImmutableSet.of(
+        StaticFactoryMethod.OPTION,
+        BuildAndResetMethod.OPTION,
+        CollectorMethods.OPTION,
+        FreeBuilderRuntime.OPTION,
+        ConcurrentBuilderClass.OPTION,
+        StreamingJackson.OPTION,
+        BinaryCodec.OPTION,
+        SerializationProxy.OPTION,
+        ColumnsContainer.OPTION,
+        SparseValueLayout.OPTION,
+        PackedFlags.OPTION,
+        SlimApi.OPTION,
+        NativeImageConfig.OPTION,
+        BuilderDiagnostics.OPTION,
+        GenerationCacheDir.OPTION,
+        GenerationCacheDir.SIZE_OPTION);
+  }
+
   @Override
   public SourceVersion getSupportedSourceVersion() {
     return SourceVersion.latestSupported();
@@ -96,14 +137,30 @@ public class Processor extends AbstractProcessor {
           Kind.NOTE, "FreeBuilder processor registered twice; disabling duplicate instance");
       return;
     }
+    if (features == null) {
+      environmentFeatures = new EnvironmentFeatureSet(processingEnv);
+    }
+    FeatureSet featureSet = firstNonNull(features, environmentFeatures);
+    PropertyFactories propertyFactories;
+    try {
+      propertyFactories = PropertyFactories.withPlugins(ServiceLoader.load(
+          PropertyCodeGeneratorPlugin.class, Processor.class.getClassLoader()));
+    } catch (ServiceConfigurationError e) {
+      processingEnv.getMessager().printMessage(
+          Kind.ERROR, "Failed to load FreeBuilder plugin: " + e.getMessage());
+      propertyFactories = PropertyFactories.builtIn();
+    }
+    propertyFactories = propertyFactories.withLibraries(featureSet);
     analyser = new Analyser(
         processingEnv.getElementUtils(),
         processingEnv.getMessager(),
         MethodIntrospector.instance(processingEnv),
-        processingEnv.getTypeUtils());
-    if (features == null) {
-      environmentFeatures = new EnvironmentFeatureSet(processingEnv);
-    }
+        processingEnv.getTypeUtils(),
+        propertyFactories,
+        featureSet);
+    generationCache = GenerationCache
+        .open(featureSet.get(GENERATION_CACHE_DIR), propertyFactories.getPlugins())
+        .orNull();
   }
 
   @Override
@@ -112,20 +169,19 @@ public class Processor extends AbstractProcessor {
       // Another FreeBuilder Processor is already registered; skip processing
       return false;
     }
-    for (TypeElement type : typesIn(annotatedElementsIn(roundEnv, FreeBuilder.class))) {
+    Set<TypeElement> types = typesIn(annotatedElementsIn(roundEnv, FreeBuilder.class));
+    for (TypeElement type : types) {
       try {
         Metadata metadata = analyser.analyse(type);
-        CompilationUnitBuilder code = new CompilationUnitBuilder(
-            processingEnv,
-            metadata.getGeneratedBuilder().getQualifiedName(),
-            metadata.getVisibleNestedTypes(),
-            firstNonNull(features, environmentFeatures));
-        codeGenerator.writeBuilderSource(code, metadata);
         FilerUtils.writeCompilationUnit(
             processingEnv.getFiler(),
             metadata.getGeneratedBuilder().getQualifiedName(),
             type,
-            code.toString());
+            builderSource(metadata));
+        jacksonModuleGenerator.add(
+            type, metadata, processingEnv, firstNonNull(features, environmentFeatures));
+        NativeImageConfigGenerator.writeTypeConfig(
+            processingEnv, type, metadata, firstNonNull(features, environmentFeatures));
       } catch (Analyser.CannotGenerateCodeException e) {
         // Thrown to skip writing the builder source; the error will already have been issued.
       } catch (FilerException e) {
@@ -148,9 +204,44 @@ public class Processor extends AbstractProcessor {
             findAnnotationMirror(type, "org.inferred.freebuilder.FreeBuilder").get());
       }
     }
+    // Write the module once a round brings no new types, so it is still compiled normally.
+    if (jacksonModuleGenerator.hasPendingTypes()
+        && (types.isEmpty() || roundEnv.processingOver())) {
+      try {
+        jacksonModuleGenerator.write(processingEnv, firstNonNull(features, environmentFeatures));
+      } catch (IOException e) {
+        processingEnv.getMessager().printMessage(
+            Kind.ERROR, "I/O error: " + Throwables.getStackTraceAsString(e));
+      }
+    }
     return false;
   }
 
+  private String builderSource(Metadata metadata) {
+    FeatureSet currentFeatures = firstNonNull(features, environmentFeatures);
+    String fingerprint = null;
+    if (generationCache != null) {
+      fingerprint = generationCache.fingerprint(processingEnv, metadata, currentFeatures);
+    }
+    if (fingerprint != null) {
+      String source = generationCache.get(fingerprint);
+      if (source != null) {
+        return source;
+      }
+    }
+    CompilationUnitBuilder code = new CompilationUnitBuilder(
+        processingEnv,
+        metadata.getGeneratedBuilder().getQualifiedName(),
+        metadata.getVisibleNestedTypes(),
+        currentFeatures);
+    codeGenerator.writeBuilderSource(code, metadata);
+    String source = code.toString();
+    if (fingerprint != null) {
+      generationCache.put(fingerprint, source);
+    }
+    return source;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof Processor)) {
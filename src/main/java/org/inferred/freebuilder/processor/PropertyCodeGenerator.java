@@ -15,6 +15,9 @@
  */
 package org.inferred.freebuilder.processor;
 
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
+import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
+
 import com.google.common.base.MoreObjects;
 import com.google.common.base.MoreObjects.ToStringHelper;
 import com.google.common.base.Optional;
@@ -35,6 +38,7 @@ import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
@@ -42,7 +46,7 @@ import javax.lang.model.util.Types;
 public abstract class PropertyCodeGenerator {
 
   /** Data available to {@link Factory} instances when creating a {@link PropertyCodeGenerator}. */
-  interface Config {
+  public interface Config {
     /** Returns metadata about the builder being generated. */
     Metadata getMetadata();
 
@@ -73,7 +77,7 @@ public abstract class PropertyCodeGenerator {
   }
 
   /** Factory interface for {@link PropertyCodeGenerator}. */
-  interface Factory {
+  public interface Factory {
     /**
      * Create a new {@link PropertyCodeGenerator} for the property described in {@code config}.
      *
@@ -94,6 +98,22 @@ public abstract class PropertyCodeGenerator {
   /** Property type. */
   public enum Type { REQUIRED, OPTIONAL, HAS_DEFAULT }
 
+  /**
+   * Generates the concurrent collection a thread-safe builder accumulates a collection property
+   * into, and the methods writing to it without locking.
+   */
+  public abstract static class ConcurrentAccumulator {
+
+    /** Adds the field declaration for the property to the thread-safe builder. */
+    public abstract void addFieldDeclaration(SourceBuilder code);
+
+    /** Adds the methods accumulating into the field to the thread-safe builder. */
+    public abstract void addAccumulatorMethods(SourceBuilder code, Excerpt concurrentBuilder);
+
+    /** Adds everything accumulated in the field to {@code builder}, a regular builder. */
+    public abstract void addReplay(Block code, Excerpt builder);
+  }
+
   /** Returns whether the property is required, optional, or has a default. */
   public Type getType() {
     return Type.HAS_DEFAULT;
@@ -104,6 +124,11 @@ public abstract class PropertyCodeGenerator {
     code.addLine("private final %s %s;", property.getType(), finalField);
   }
 
+  /** Returns the type of the field storing the property in the value's source code. */
+  public TypeMirror getValueFieldType() {
+    return property.getType();
+  }
+
   /** Add the field declaration for the property to the builder's source code. */
   public abstract void addBuilderFieldDeclaration(SourceBuilder code);
 
@@ -114,6 +139,76 @@ public abstract class PropertyCodeGenerator {
   public abstract void addFinalFieldAssignment(
       SourceBuilder code, Excerpt finalField, String builder);
 
+  /**
+   * Returns an excerpt converting {@code parameter}, of the property's type, to the type of the
+   * value object's field, rejecting it as the builder would if it is invalid. Any statements the
+   * conversion requires are added to {@code code}.
+   */
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    if (property.getType().getKind().isPrimitive()) {
+      return parameter;
+    }
+    code.add(checkNotNullPreamble(parameter));
+    return checkNotNullInline(parameter);
+  }
+
+  /**
+   * Returns an excerpt holding the value object's field for this property, taken from the builder
+   * {@code this} immediately before it is cleared. Implementations may hand the builder's own
+   * state over rather than copying it, provided the builder no longer references it afterwards.
+   * Any statements the transfer requires are added to {@code code}.
+   */
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s %s;", getValueFieldType(), field);
+    addFinalFieldAssignment(code, field, "this");
+    return field;
+  }
+
+  /**
+   * Returns the type of element a {@code Collector} adds to this property one at a time, or
+   * absent if the property cannot be accumulated element by element.
+   */
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.absent();
+  }
+
+  /**
+   * Returns an excerpt adding {@code element}, of type {@link #getCollectorElementType()}, to the
+   * property on {@code builder}. Must be present exactly when {@link #getCollectorElementType()}
+   * is.
+   */
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt element) {
+    return Optional.absent();
+  }
+
+  /**
+   * Returns how a thread-safe builder accumulates this property element by element, or absent if
+   * it holds the property in a single volatile field.
+   */
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.absent();
+  }
+
+  /**
+   * Returns the types a streaming JSON deserializer can read this property as, one piece at a
+   * time: the element type, if it is read from a JSON array with {@link #addToCollector}, or the
+   * key and value types, if it is read from a JSON object with the property's {@code put} method.
+   * Returns an empty list if the property must be read as a single value.
+   */
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of();
+  }
+
+  /**
+   * Returns an expression that is true if {@code value}, a result of the property's getter, holds
+   * a value, if the property is a reference type like {@code Optional} that {@code @JsonInclude}
+   * treats as absent when empty. Returns {@link Optional#absent()} otherwise.
+   */
+  public Optional<Excerpt> getJsonPresenceCheck(Excerpt value) {
+    return Optional.absent();
+  }
+
   /** Add the final assignment of the property to the partial value object's source code. */
   public void addPartialFieldAssignment(
       SourceBuilder code, Excerpt finalField, String builder) {
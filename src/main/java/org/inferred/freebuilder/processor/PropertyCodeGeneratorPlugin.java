@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import java.util.Set;
+
+/**
+ * Service provider interface for plugging custom {@link PropertyCodeGenerator} implementations
+ * into the processor, e.g. for specialized collection types.
+ *
+ * <p>Implementations are loaded with {@link java.util.ServiceLoader} from the processor path, so
+ * must have a public no-args constructor and be listed in
+ * {@code META-INF/services/org.inferred.freebuilder.processor.PropertyCodeGeneratorPlugin}.
+ * Plugins are consulted after {@code @Nullable} properties have been handled, but before any of
+ * the built-in property types, so a plugin may take over a type FreeBuilder already supports.
+ *
+ * <p>The published freebuilder jar relocates its Guava dependency to
+ * {@code org.inferred.freebuilder.shaded.com.google}, and this API exposes Guava types, such as
+ * the {@code Optional} returned by {@link #create}. Plugins must therefore be compiled against
+ * that jar, importing the relocated types, not against FreeBuilder's unshaded classes; a plugin
+ * that is not is reported as an error when loaded.
+ */
+public interface PropertyCodeGeneratorPlugin extends PropertyCodeGenerator.Factory {
+
+  /**
+   * Returns the canonical names of the erased property types this plugin supports, e.g.
+   * {@code "it.unimi.dsi.fastutil.ints.IntList"}. {@link #create} will only be called for
+   * properties of these types, unless the set is empty, in which case it will be called for every
+   * property not already handled by a more specific factory.
+   */
+  Set<String> getPropertyTypes();
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeDeclared;
+import static org.inferred.freebuilder.processor.util.Shading.unshadedName;
+import static org.inferred.freebuilder.processor.util.feature.FastutilLibrary.FASTUTIL;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+
+import org.inferred.freebuilder.processor.FastutilTypes.Kind;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Config;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Factory;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.SortedSet;
+
+import javax.lang.model.type.DeclaredType;
+
+/**
+ * The {@link PropertyCodeGenerator.Factory} instances to create code generators with, indexed by
+ * the erased property type each handles, so only the factories that can apply to a property are
+ * tried.
+ *
+ * <p>Factories are tried in this order: the {@code @Nullable} factory, which handles properties
+ * of any type; plugins for the property's type; plugins for any type; the built-in factory for
+ * the property's type, including those for available libraries like fastutil; buildable types;
+ * and finally the default factory, which handles anything.
+ */
+class PropertyFactories {
+
+  /** Returns the built-in factories, with no plugins. */
+  static PropertyFactories builtIn() {
+    return new PropertyFactories(
+        ImmutableListMultimap.<String, PropertyCodeGeneratorPlugin>of(),
+        ImmutableList.<PropertyCodeGeneratorPlugin>of(),
+        BUILT_IN_FACTORIES);
+  }
+
+  /**
+   * Returns the built-in factories plus {@code plugins}, typically a {@link ServiceLoader}.
+   *
+   * @throws ServiceConfigurationError if {@code plugins} is a {@code ServiceLoader} and a plugin
+   *     cannot be loaded, or if a plugin was not compiled against this processor's plugin API
+   */
+  static PropertyFactories withPlugins(Iterable<? extends PropertyCodeGeneratorPlugin> plugins) {
+    ImmutableListMultimap.Builder<String, PropertyCodeGeneratorPlugin> pluginsByType =
+        ImmutableListMultimap.builder();
+    ImmutableList.Builder<PropertyCodeGeneratorPlugin> pluginsForAnyType =
+        ImmutableList.builder();
+    for (PropertyCodeGeneratorPlugin plugin : plugins) {
+      checkCompatible(plugin);
+      Set<String> propertyTypes = plugin.getPropertyTypes();
+      if (propertyTypes.isEmpty()) {
+        pluginsForAnyType.add(plugin);
+      }
+      for (String propertyType : propertyTypes) {
+        pluginsByType.put(propertyType, plugin);
+      }
+    }
+    return new PropertyFactories(
+        pluginsByType.build(), pluginsForAnyType.build(), BUILT_IN_FACTORIES);
+  }
+
+  /**
+   * Throws a {@link ServiceConfigurationError} unless {@code plugin}'s {@code create} method
+   * returns this processor's {@link Optional}. Guava is relocated in the published jar, so a plugin
+   * compiled against the unshaded classes would otherwise fail with an {@link AbstractMethodError}
+   * part-way through processing.
+   */
+  private static void checkCompatible(PropertyCodeGeneratorPlugin plugin) {
+    try {
+      Method create = plugin.getClass().getMethod("create", Config.class);
+      if (Optional.class.isAssignableFrom(create.getReturnType())) {
+        return;
+      }
+    } catch (NoSuchMethodException e) {
+      // Reported below
+    } catch (LinkageError e) {
+      // Reported below
+    }
+    throw new ServiceConfigurationError(plugin.getClass().getName() + " must be compiled against"
+        + " the freebuilder jar it runs with: create must return " + Optional.class.getName());
+  }
+
+  /** Built-in factories by the erased types they handle, as they would appear in user code. */
+  private static final ImmutableListMultimap<String, Factory> BUILT_IN_FACTORIES =
+      builtInFactories();
+
+  private static ImmutableListMultimap<String, Factory> builtInFactories() {
+    ImmutableListMultimap.Builder<String, Factory> factories = ImmutableListMultimap.builder();
+    register(factories, new ListProperty.Factory(),
+        Collection.class, List.class, ImmutableList.class);
+    register(factories, new SetProperty.Factory(), Set.class, ImmutableSet.class);
+    register(factories, new SortedSetProperty.Factory(),
+        SortedSet.class, ImmutableSortedSet.class);
+    register(factories, new MapProperty.Factory(), Map.class, ImmutableMap.class);
+    register(factories, new MultisetProperty.Factory(),
+        Multiset.class, ImmutableMultiset.class);
+    register(factories, new ListMultimapProperty.Factory(),
+        Multimap.class, ImmutableMultimap.class, ListMultimap.class, ImmutableListMultimap.class);
+    register(factories, new SetMultimapProperty.Factory(),
+        SetMultimap.class, ImmutableSetMultimap.class);
+    Factory optionalFactory = new OptionalProperty.Factory();
+    register(factories, optionalFactory, Optional.class);
+    factories.put("java.util.Optional", optionalFactory);
+    return factories.build();
+  }
+
+  /** Factories for fastutil's type-specific collections, by the erased types they handle. */
+  private static final ImmutableListMultimap<String, Factory> FASTUTIL_FACTORIES =
+      fastutilFactories();
+
+  private static ImmutableListMultimap<String, Factory> fastutilFactories() {
+    ImmutableListMultimap.Builder<String, Factory> factories = ImmutableListMultimap.builder();
+    Factory collectionFactory = new FastutilCollectionProperty.Factory();
+    Factory mapFactory = new FastutilMapProperty.Factory();
+    for (Kind kind : Kind.values()) {
+      if (kind.isPrimitive()) {
+        factories.put(kind.type("List").toString(), collectionFactory);
+      }
+    }
+    for (Kind keyKind : FastutilTypes.HASHABLE_KINDS) {
+      if (keyKind.isPrimitive()) {
+        factories.put(keyKind.type("Set").toString(), collectionFactory);
+      }
+      for (Kind valueKind : Kind.values()) {
+        if (keyKind.isPrimitive() || valueKind.isPrimitive()) {
+          factories.put(keyKind.type("2" + valueKind.prefix() + "Map").toString(), mapFactory);
+        }
+      }
+    }
+    return factories.build();
+  }
+
+  private static void register(
+      ImmutableListMultimap.Builder<String, Factory> factories,
+      Factory factory,
+      Class<?>... types) {
+    for (Class<?> type : types) {
+      factories.put(unshadedName(type.getName()), factory);
+    }
+  }
+
+  private final Factory nullableFactory = new NullableProperty.Factory();
+  private final ImmutableListMultimap<String, PropertyCodeGeneratorPlugin> pluginsByType;
+  private final ImmutableList<PropertyCodeGeneratorPlugin> pluginsForAnyType;
+  private final ImmutableListMultimap<String, Factory> builtInFactories;
+  private final Factory buildableFactory = new BuildableProperty.Factory();
+  private final Factory defaultFactory = new DefaultProperty.Factory();
+
+  private PropertyFactories(
+      ImmutableListMultimap<String, PropertyCodeGeneratorPlugin> pluginsByType,
+      ImmutableList<PropertyCodeGeneratorPlugin> pluginsForAnyType,
+      ImmutableListMultimap<String, Factory> builtInFactories) {
+    this.pluginsByType = pluginsByType;
+    this.pluginsForAnyType = pluginsForAnyType;
+    this.builtInFactories = builtInFactories;
+  }
+
+  /**
+   * Returns these factories plus those for the third-party collection libraries available in
+   * {@code features}, such as fastutil.
+   */
+  PropertyFactories withLibraries(FeatureSet features) {
+    if (!features.get(FASTUTIL).isAvailable()) {
+      return this;
+    }
+    return new PropertyFactories(
+        pluginsByType,
+        pluginsForAnyType,
+        ImmutableListMultimap.<String, Factory>builder()
+            .putAll(builtInFactories)
+            .putAll(FASTUTIL_FACTORIES)
+            .build());
+  }
+
+  /** Returns the plugins registered, for identifying the code that generates properties. */
+  ImmutableSet<PropertyCodeGeneratorPlugin> getPlugins() {
+    return ImmutableSet.<PropertyCodeGeneratorPlugin>builder()
+        .addAll(pluginsByType.values())
+        .addAll(pluginsForAnyType)
+        .build();
+  }
+
+  /** Returns a {@link PropertyCodeGenerator} for the property described in {@code config}. */
+  PropertyCodeGenerator create(Config config) {
+    Optional<? extends PropertyCodeGenerator> codeGenerator = nullableFactory.create(config);
+    if (codeGenerator.isPresent()) {
+      return codeGenerator.get();
+    }
+    DeclaredType type = maybeDeclared(config.getProperty().getType()).orNull();
+    String erasedType = (type == null) ? null : type.asElement().toString();
+    if (erasedType != null) {
+      codeGenerator = firstPresent(pluginsByType.get(erasedType), config);
+      if (codeGenerator.isPresent()) {
+        return codeGenerator.get();
+      }
+    }
+    codeGenerator = firstPresent(pluginsForAnyType, config);
+    if (codeGenerator.isPresent()) {
+      return codeGenerator.get();
+    }
+    if (erasedType != null) {
+      codeGenerator = firstPresent(builtInFactories.get(erasedType), config);
+      if (codeGenerator.isPresent()) {
+        return codeGenerator.get();
+      }
+    }
+    codeGenerator = buildableFactory.create(config);
+    if (codeGenerator.isPresent()) {
+      return codeGenerator.get();
+    }
+    codeGenerator = defaultFactory.create(config);
+    if (codeGenerator.isPresent()) {
+      return codeGenerator.get();
+    }
+    throw new AssertionError("DefaultProperty.Factory declined " + config.getProperty());
+  }
+
+  private static Optional<? extends PropertyCodeGenerator> firstPresent(
+      List<? extends Factory> factories, Config config) {
+    for (Factory factory : factories) {
+      Optional<? extends PropertyCodeGenerator> codeGenerator = factory.create(config);
+      if (codeGenerator.isPresent()) {
+        return codeGenerator;
+      }
+    }
+    return Optional.absent();
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.BuilderMethods.nullableSetter;
+import static org.inferred.freebuilder.processor.BuilderMethods.putMethod;
+import static org.inferred.freebuilder.processor.util.ModelUtils.maybeAsTypeElement;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Generates the optional {@code writeReplace} serialization proxy for a serializable value type.
+ *
+ * <p>The proxy writes each property in declaration order with no field names or class metadata
+ * beyond its own descriptor. Primitives, and boxed primitives that cannot be null, use the typed
+ * {@link java.io.ObjectOutput} methods; collections and maps are written as a size followed by
+ * their elements, so the stream never mentions the collection implementation. Reading replays the
+ * properties onto a builder, so the value is validated exactly as if it were built by hand.
+ */
+class SerializationProxySupport {
+
+  private static final String SIMPLE_NAME = "SerializationProxy";
+
+  /** Suffix of the typed {@code ObjectOutput} and {@code ObjectInput} methods, by type name. */
+  private static final Map<String, String> PRIMITIVE_METHODS =
+      ImmutableMap.<String, String>builder()
+          .put("boolean", "Boolean")
+          .put("byte", "Byte")
+          .put("short", "Short")
+          .put("int", "Int")
+          .put("long", "Long")
+          .put("char", "Char")
+          .put("float", "Float")
+          .put("double", "Double")
+          .put(Boolean.class.getName(), "Boolean")
+          .put(Byte.class.getName(), "Byte")
+          .put(Short.class.getName(), "Short")
+          .put(Integer.class.getName(), "Int")
+          .put(Long.class.getName(), "Long")
+          .put(Character.class.getName(), "Char")
+          .put(Float.class.getName(), "Float")
+          .put(Double.class.getName(), "Double")
+          .build();
+
+  /**
+   * Adds {@code writeReplace} and {@code readObject} methods, and the proxy class they refer to,
+   * to the value type being generated, if the feature is enabled and the type supports it.
+   */
+  static void addSerializationProxy(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(SerializationProxy.SERIALIZATION_PROXY).isEnabled()
+        || !supportsSerializationProxy(metadata)) {
+      return;
+    }
+    code.addLine("")
+        .addLine("  private Object writeReplace() {")
+        .addLine("    return new %s(this);", SIMPLE_NAME)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  private void readObject(%s in) throws %s {",
+            ObjectInputStream.class, InvalidObjectException.class)
+        .addLine("    throw new %s(\"Proxy required\");", InvalidObjectException.class)
+        .addLine("  }")
+        .addLine("")
+        .addLine("  /**")
+        .addLine("   * Serialized form of %s, written property by property, and rebuilt through",
+            metadata.getType().javadocLink())
+        .addLine("   * the builder when read.")
+        .addLine("   */")
+        .addLine("  private static final class %s implements %s {", SIMPLE_NAME, Serializable.class)
+        .addLine("")
+        .addLine("    private static final long serialVersionUID = 1L;")
+        .addLine("")
+        .addLine("    private transient %s _value;", metadata.getValueType())
+        .addLine("    private transient %s _builder;", metadata.getBuilder())
+        .addLine("")
+        .addLine("    %s(%s value) {", SIMPLE_NAME, metadata.getValueType())
+        .addLine("      this._value = value;")
+        .addLine("    }");
+    addWriteObject(code, metadata);
+    addReadObject(code, metadata);
+    code.addLine("")
+        .addLine("    private Object readResolve() throws %s {", ObjectStreamException.class)
+        .addLine("      try {")
+        .addLine("        return _builder.build();")
+        .addLine("      } catch (RuntimeException e) {")
+        .addLine("        throw invalidObject(e);")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("")
+        .addLine("    private static %s invalidObject(RuntimeException cause) {",
+            InvalidObjectException.class)
+        .addLine("      %1$s exception = new %1$s(cause.getMessage());",
+            InvalidObjectException.class)
+        .addLine("      exception.initCause(cause);")
+        .addLine("      return exception;")
+        .addLine("    }")
+        .addLine("  }");
+  }
+
+  /**
+   * Returns whether {@link #addSerializationProxy} adds a proxy to {@code metadata}'s value type
+   * when the feature is enabled.
+   */
+  static boolean supportsSerializationProxy(Metadata metadata) {
+    if (!metadata.isValueSerializable()
+        || metadata.getType().isParameterized()
+        || !metadata.getBuilderFactory().isPresent()) {
+      return false;
+    }
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      if (generator.getJsonStreamingTypes().isEmpty()
+          && generator.getCollectorElementType().isPresent()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the name of the proxy class {@link #addSerializationProxy} adds to the value type. */
+  static QualifiedName serializationProxyName(Metadata metadata) {
+    return metadata.getValueType().getQualifiedName().nestedType(SIMPLE_NAME);
+  }
+
+  private static void addWriteObject(SourceBuilder code, Metadata metadata) {
+    code.addLine("")
+        .addLine("    private void writeObject(%s out) throws %s {",
+            ObjectOutputStream.class, IOException.class)
+        .addLine("      out.defaultWriteObject();");
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      Excerpt field = property.getField().on("_value");
+      List<TypeMirror> types = generator.getJsonStreamingTypes();
+      if (types.size() == 1) {
+        code.addLine("      out.writeInt(%s.size());", field)
+            .addLine("      for (%s element : %s) {", types.get(0), field)
+            .addLine("        %s;", write(types.get(0), "element"))
+            .addLine("      }");
+      } else if (types.size() == 2) {
+        code.addLine("      out.writeInt(%s.size());", field)
+            .addLine("      for (%s<%s, %s> entry : %s.entrySet()) {",
+                Map.Entry.class, types.get(0), types.get(1), field)
+            .addLine("        %s;", write(types.get(0), "entry.getKey()"))
+            .addLine("        %s;", write(types.get(1), "entry.getValue()"))
+            .addLine("      }");
+      } else if (generator.getType() == Type.OPTIONAL) {
+        code.addLine("      out.writeObject(%s);", field);
+      } else {
+        code.addLine("      %s;", write(generator.getValueFieldType(), field));
+      }
+    }
+    code.addLine("    }");
+  }
+
+  private static void addReadObject(SourceBuilder code, Metadata metadata) {
+    Excerpt builder = Excerpts.add("_builder");
+    boolean uncheckedCasts = false;
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      List<TypeMirror> types = generator.getJsonStreamingTypes();
+      if (types.isEmpty()) {
+        uncheckedCasts |= isParameterized(generator.getValueFieldType());
+      }
+      for (TypeMirror type : types) {
+        uncheckedCasts |= isParameterized(type);
+      }
+    }
+    code.addLine("");
+    if (uncheckedCasts) {
+      code.addLine("    @%s(\"unchecked\")", SuppressWarnings.class);
+    }
+    code.addLine("    private void readObject(%s in) throws %s, %s {",
+            ObjectInputStream.class, IOException.class, ClassNotFoundException.class)
+        .addLine("      in.defaultReadObject();")
+        .addLine("      _builder = %s;",
+            metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES))
+        .addLine("      try {");
+    for (Property property : metadata.getProperties()) {
+      PropertyCodeGenerator generator = property.getCodeGenerator();
+      List<TypeMirror> types = generator.getJsonStreamingTypes();
+      if (types.size() == 1) {
+        code.addLine("        for (int i = 0, size = in.readInt(); i < size; i++) {")
+            .addLine("          %s;", generator.addToCollector(builder, read(types.get(0))).get())
+            .addLine("        }");
+      } else if (types.size() == 2) {
+        code.addLine("        for (int i = 0, size = in.readInt(); i < size; i++) {")
+            .addLine("          %s.%s(%s, %s);",
+                builder, putMethod(property), read(types.get(0)), read(types.get(1)))
+            .addLine("        }");
+      } else if (generator.getJsonPresenceCheck(Excerpts.add("value")).isPresent()) {
+        code.addLine("        %s.%s((%s) in.readObject());",
+            builder, nullableSetter(property), generator.getValueFieldType());
+      } else if (generator.getType() == Type.OPTIONAL) {
+        code.add("        ");
+        generator.addSetFromResult(code, builder,
+            Excerpts.add("(%s) in.readObject()", generator.getValueFieldType()));
+      } else {
+        code.add("        ");
+        generator.addSetFromResult(code, builder, read(generator.getValueFieldType()));
+      }
+    }
+    code.addLine("      } catch (RuntimeException e) {")
+        .addLine("        throw invalidObject(e);")
+        .addLine("      }")
+        .addLine("    }");
+  }
+
+  /** Returns an excerpt writing {@code value}, of type {@code type} and not null, to out. */
+  private static Excerpt write(TypeMirror type, Object value) {
+    Optional<String> primitive = primitiveMethod(type);
+    if (primitive.isPresent()) {
+      return Excerpts.add("out.write%s(%s)", primitive.get(), value);
+    }
+    return Excerpts.add("out.writeObject(%s)", value);
+  }
+
+  /** Returns an excerpt reading a value of type {@code type}, written by {@link #write}. */
+  private static Excerpt read(TypeMirror type) {
+    Optional<String> primitive = primitiveMethod(type);
+    if (primitive.isPresent()) {
+      return Excerpts.add("in.read%s()", primitive.get());
+    }
+    return Excerpts.add("(%s) in.readObject()", type);
+  }
+
+  private static Optional<String> primitiveMethod(TypeMirror type) {
+    Optional<TypeElement> element = maybeAsTypeElement(type);
+    String name = element.isPresent()
+        ? element.get().getQualifiedName().toString()
+        : type.toString();
+    return Optional.fromNullable(PRIMITIVE_METHODS.get(name));
+  }
+
+  private static boolean isParameterized(TypeMirror type) {
+    return type.getKind() == TypeKind.DECLARED
+        && !((DeclaredType) type).getTypeArguments().isEmpty();
+  }
+
+  private SerializationProxySupport() {}
+}
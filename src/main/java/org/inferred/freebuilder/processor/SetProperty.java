@@ -30,16 +30,24 @@ import static org.inferred.freebuilder.processor.util.ModelUtils.needsSafeVararg
 import static org.inferred.freebuilder.processor.util.ModelUtils.overrides;
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullInline;
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
+import static org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod.BUILD_AND_RESET;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.STREAM_OVERLOADS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedSet;
+import org.inferred.freebuilder.processor.excerpt.NonNullElements;
+import org.inferred.freebuilder.processor.excerpt.RuntimeName;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
@@ -51,6 +59,7 @@ import org.inferred.freebuilder.processor.util.LazyName;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.lang.model.type.DeclaredType;
@@ -133,8 +142,12 @@ class SetProperty extends PropertyCodeGenerator {
       code.addLine("private %s<%s> %s = %s.of();",
           Set.class, elementType, property.getField(), ImmutableSet.class);
     } else {
-      code.addLine("private final %1$s<%2$s> %3$s = new %1$s%4$s();",
-          LinkedHashSet.class, elementType, property.getField(), diamondOperator(elementType));
+      code.addLine("private %1$s%2$s<%3$s> %4$s = new %2$s%5$s();",
+          code.feature(BUILD_AND_RESET).isEnabled() ? "" : "final ",
+          LinkedHashSet.class,
+          elementType,
+          property.getField(),
+          diamondOperator(elementType));
     }
   }
 
@@ -230,7 +243,8 @@ class SetProperty extends PropertyCodeGenerator {
   }
 
   private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
-    if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+    if (code.feature(SOURCE_LEVEL).stream().isPresent()
+        && !code.feature(SLIM_API).omits(STREAM_OVERLOADS)) {
       addSpliteratorAddAll(code, metadata);
       addStreamAddAll(code, metadata);
     }
@@ -266,15 +280,53 @@ class SetProperty extends PropertyCodeGenerator {
     addJavadocForAddAll(code, metadata);
     addAccessorAnnotations(code);
     code.addLine("public %s %s(%s<? extends %s> elements) {",
-            metadata.getBuilder(),
-            addAllMethod(property),
-            Iterable.class,
-            elementType)
-        .add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
-        .addLine("  return (%s) this;", metadata.getBuilder())
+        metadata.getBuilder(),
+        addAllMethod(property),
+        Iterable.class,
+        elementType);
+    Block body = methodBody(code, "elements");
+    if (!overridesAddMethod) {
+      addBulkAddAll(body, metadata);
+    }
+    body.add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
+        .addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
         .addLine("}");
   }
 
+  /**
+   * Adds a fast path for collections, used when the add method is not overridden: one null
+   * check of each element of a snapshot, then one bulk add. An empty set takes an immutable set
+   * as-is.
+   */
+  private void addBulkAddAll(Block body, Metadata metadata) {
+    body.addLine("  if (elements instanceof %s) {", Collection.class);
+    if (body.feature(GUAVA).isAvailable()) {
+      body.addLine("    if (%1$s.isEmpty() && %1$s instanceof %2$s && elements instanceof %2$s) {",
+              property.getField(), ImmutableSet.class)
+          .addLine("      %s = %s.copyOf((%s<? extends %s>) elements);",
+              property.getField(), ImmutableSet.class, ImmutableSet.class, elementType)
+          .addLine("      return (%s) this;", metadata.getBuilder())
+          .addLine("    }");
+    }
+    body.addLine("    %s<%s> checked = %s((%s<? extends %s>) elements);",
+        List.class, elementType, NonNullElements.METHOD, Collection.class, elementType);
+    if (body.feature(GUAVA).isAvailable()) {
+      // Adding nothing must not copy an immutable set that may yet be reused
+      body.addLine("    if (!checked.isEmpty()) {")
+          .addLine("      if (%s instanceof %s) {", property.getField(), ImmutableSet.class)
+          .addLine("        %1$s = new %2$s%3$s(%1$s);",
+              property.getField(), LinkedHashSet.class, diamondOperator(elementType))
+          .addLine("      }")
+          .addLine("      %s.addAll(checked);", property.getField())
+          .addLine("    }");
+    } else {
+      body.addLine("    %s.addAll(checked);", property.getField());
+    }
+    body.addLine("    return (%s) this;", metadata.getBuilder())
+        .addLine("  }");
+  }
+
   private void addJavadocForAddAll(SourceBuilder code, Metadata metadata) {
     code.addLine("")
         .addLine("/**")
@@ -325,7 +377,7 @@ class SetProperty extends PropertyCodeGenerator {
 
   private void addMutator(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -418,6 +470,49 @@ class SetProperty extends PropertyCodeGenerator {
     code.addLine("%s = %s(%s);", finalField, immutableSetMethod, property.getField().on(builder));
   }
 
+  @Override
+  public Excerpt transferToValueField(Block code) {
+    Excerpt field = Excerpts.add("%s", property.getName());
+    code.addLine("%s<%s> %s = %s.unmodifiableSet(%s);",
+        Set.class, elementType, field, Collections.class, property.getField().on("this"));
+    if (code.feature(GUAVA).isAvailable()) {
+      code.addLine("%s = %s.of();", property.getField().on("this"), ImmutableSet.class);
+    } else {
+      code.addLine("%s = new %s%s();",
+          property.getField().on("this"), LinkedHashSet.class, diamondOperator(elementType));
+    }
+    return field;
+  }
+
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s", elementType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt element) {
+    return Optional.of(Excerpts.add("%s.%s(%s)", builder, addMethod(property), element));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(ConcurrentBuilderSupport.setAccumulator(metadata, property, elementType));
+  }
+
+  @Override
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of(elementType);
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    if (code.feature(GUAVA).isAvailable()) {
+      return Excerpts.add("%s.copyOf(%s)", ImmutableSet.class, parameter);
+    } else {
+      return Excerpts.add("%s(%s)", ImmutableSetCopyMethod.REFERENCE, parameter);
+    }
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     if (code.feature(GUAVA).isAvailable()) {
@@ -455,14 +550,19 @@ class SetProperty extends PropertyCodeGenerator {
 
   private static class ImmutableSetMethod extends Excerpt {
 
-    static final LazyName REFERENCE = new LazyName("immutableSet", new ImmutableSetMethod());
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableSet", new ImmutableSetMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableSet", INLINE_REFERENCE);
 
     private ImmutableSetMethod() {}
 
     @Override
     public void addTo(SourceBuilder code) {
       code.addLine("")
-          .addLine("private static <E> %1$s<E> %2$s(%1$s<E> elements) {", Set.class, REFERENCE)
+          .addLine("private static <E> %1$s<E> %2$s(%1$s<E> elements) {",
+              Set.class, INLINE_REFERENCE)
           .addLine("  switch (elements.size()) {")
           .addLine("  case 0:")
           .addLine("    return %s.emptySet();", Collections.class)
@@ -478,4 +578,39 @@ class SetProperty extends PropertyCodeGenerator {
     @Override
     protected void addFields(FieldReceiver fields) {}
   }
+
+  private static class ImmutableSetCopyMethod extends Excerpt {
+
+    private static final LazyName INLINE_REFERENCE =
+        new LazyName("immutableSetCopy", new ImmutableSetCopyMethod());
+
+    static final RuntimeName REFERENCE =
+        RuntimeName.method("FreeBuilderCollections", "immutableSetCopy", INLINE_REFERENCE);
+
+    private ImmutableSetCopyMethod() {}
+
+    @Override
+    public void addTo(SourceBuilder code) {
+      code.addLine("")
+          .addLine("private static <E> %s<E> %s(%s<? extends E> elements) {",
+              Set.class, INLINE_REFERENCE, Collection.class)
+          .addLine("  %s<E> copy = new %s%s(elements);",
+              Set.class, LinkedHashSet.class, diamondOperator("E"))
+          .addLine("  if (copy.contains(null)) {")
+          .addLine("    throw new %s();", NullPointerException.class)
+          .addLine("  }")
+          .addLine("  switch (copy.size()) {")
+          .addLine("  case 0:")
+          .addLine("    return %s.emptySet();", Collections.class)
+          .addLine("  case 1:")
+          .addLine("    return %s.singleton(copy.iterator().next());", Collections.class)
+          .addLine("  default:")
+          .addLine("    return %s.unmodifiableSet(copy);", Collections.class)
+          .addLine("  }")
+          .addLine("}");
+    }
+
+    @Override
+    protected void addFields(FieldReceiver fields) {}
+  }
 }
@@ -33,15 +33,21 @@ import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.check
 import static org.inferred.freebuilder.processor.util.PreconditionExcerpts.checkNotNullPreamble;
 import static org.inferred.freebuilder.processor.util.feature.FunctionPackage.FUNCTION_PACKAGE;
 import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.MUTATORS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.STREAM_OVERLOADS;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.diamondOperator;
 import static org.inferred.freebuilder.processor.util.feature.SourceLevel.nestedDiamondOperator;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 
 import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.ConcurrentAccumulator;
 import org.inferred.freebuilder.processor.excerpt.CheckedNavigableSet;
+import org.inferred.freebuilder.processor.excerpt.NonNullElements;
 import org.inferred.freebuilder.processor.util.Block;
 import org.inferred.freebuilder.processor.util.Excerpt;
 import org.inferred.freebuilder.processor.util.Excerpts;
@@ -53,6 +59,7 @@ import org.inferred.freebuilder.processor.util.SourceBuilder;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -283,7 +290,8 @@ class SortedSetProperty extends PropertyCodeGenerator {
   }
 
   private void addAddAllMethods(SourceBuilder code, Metadata metadata) {
-    if (code.feature(SOURCE_LEVEL).stream().isPresent()) {
+    if (code.feature(SOURCE_LEVEL).stream().isPresent()
+        && !code.feature(SLIM_API).omits(STREAM_OVERLOADS)) {
       addSpliteratorAddAll(code, metadata);
       addStreamAddAll(code, metadata);
     }
@@ -319,15 +327,36 @@ class SortedSetProperty extends PropertyCodeGenerator {
     addJavadocForAddAll(code, metadata);
     addAccessorAnnotations(code);
     code.addLine("public %s %s(%s<? extends %s> elements) {",
-            metadata.getBuilder(),
-            addAllMethod(property),
-            Iterable.class,
-            elementType)
-        .add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
-        .addLine("  return (%s) this;", metadata.getBuilder())
+        metadata.getBuilder(),
+        addAllMethod(property),
+        Iterable.class,
+        elementType);
+    Block body = methodBody(code, "elements");
+    if (!overridesAddMethod) {
+      addBulkAddAll(body, metadata);
+    }
+    body.add(Excerpts.forEach(unboxedType.or(elementType), "elements", addMethod(property)))
+        .addLine("  return (%s) this;", metadata.getBuilder());
+    code.add(body)
         .addLine("}");
   }
 
+  /**
+   * Adds a fast path for collections, used when the add method is not overridden: one null
+   * check of each element of a snapshot, then one bulk add.
+   */
+  private void addBulkAddAll(Block body, Metadata metadata) {
+    body.addLine("  if (elements instanceof %s) {", Collection.class)
+        .addLine("    %s<%s> checked = %s((%s<? extends %s>) elements);",
+            List.class, elementType, NonNullElements.METHOD, Collection.class, elementType)
+        .addLine("    if (!checked.isEmpty()) {");
+    addConvertToTreeSet(body);
+    body.addLine("      %s.addAll(checked);", property.getField())
+        .addLine("    }")
+        .addLine("    return (%s) this;", metadata.getBuilder())
+        .addLine("  }");
+  }
+
   private void addJavadocForAddAll(SourceBuilder code, Metadata metadata) {
     code.addLine("")
         .addLine("/**")
@@ -373,7 +402,7 @@ class SortedSetProperty extends PropertyCodeGenerator {
 
   private void addMutator(SourceBuilder code, Metadata metadata) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().orNull();
-    if (consumer == null) {
+    if (consumer == null || code.feature(SLIM_API).omits(MUTATORS)) {
       return;
     }
     code.addLine("")
@@ -481,6 +510,36 @@ class SortedSetProperty extends PropertyCodeGenerator {
     code.addLine("}");
   }
 
+  @Override
+  public Optional<Excerpt> getCollectorElementType() {
+    return Optional.of(Excerpts.add("%s", elementType));
+  }
+
+  @Override
+  public Optional<Excerpt> addToCollector(Excerpt builder, Excerpt element) {
+    return Optional.of(Excerpts.add("%s.%s(%s)", builder, addMethod(property), element));
+  }
+
+  @Override
+  public Optional<ConcurrentAccumulator> getConcurrentAccumulator() {
+    return Optional.of(ConcurrentBuilderSupport.setAccumulator(metadata, property, elementType));
+  }
+
+  @Override
+  public List<TypeMirror> getJsonStreamingTypes() {
+    return ImmutableList.of(elementType);
+  }
+
+  @Override
+  public Excerpt convertToValueField(Block code, Excerpt parameter) {
+    if (code.feature(GUAVA).isAvailable()) {
+      return Excerpts.add("%s.copyOfSorted(%s)", ImmutableSortedSet.class, parameter);
+    } else {
+      return Excerpts.add("%s.unmodifiableSortedSet(new %s%s(%s))",
+          Collections.class, TreeSet.class, diamondOperator(elementType), parameter);
+    }
+  }
+
   @Override
   public void addMergeFromValue(Block code, String value) {
     if (code.feature(GUAVA).isAvailable()) {
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static org.inferred.freebuilder.processor.BuilderFactory.TypeInference.EXPLICIT_TYPES;
+import static org.inferred.freebuilder.processor.MethodSplitting.chunks;
+import static org.inferred.freebuilder.processor.util.Block.methodBody;
+import static org.inferred.freebuilder.processor.util.ObjectsExcerpts.Nullability.NOT_NULLABLE;
+import static org.inferred.freebuilder.processor.util.feature.SparseValueLayout.SPARSE_VALUE_LAYOUT;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.MethodSplitting.Cost;
+import org.inferred.freebuilder.processor.PropertyCodeGenerator.Type;
+import org.inferred.freebuilder.processor.util.Block;
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.Excerpts;
+import org.inferred.freebuilder.processor.util.ObjectsExcerpts;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.lang.model.type.TypeKind;
+
+/**
+ * Generates the parts of a sparse value type that differ from a dense one.
+ *
+ * <p>Required properties keep a field each. Every other property is numbered, and only stored if
+ * it differs from the value a fresh builder would give it, in {@code _values}; bit {@code i} of
+ * {@code _present} is set if property {@code i} was stored, so its position in {@code _values} is
+ * the number of bits set below it. The defaults themselves are read from a partial built by a
+ * fresh builder the first time a value is constructed, not while the class is initialized.
+ *
+ * <p>Sparse layouts are only chosen for types with many properties, so every method touching all
+ * the properties is split with {@link MethodSplitting}.
+ */
+class SparseValueSupport {
+
+  /** Returns whether the value type generated for {@code metadata} should be sparse. */
+  static boolean isSparse(SourceBuilder code, Metadata metadata) {
+    if (!code.feature(SPARSE_VALUE_LAYOUT).appliesTo(metadata.getProperties().size())
+        || metadata.getType().isParameterized()
+        || !metadata.getBuilderFactory().isPresent()
+        || GwtSupport.hasCustomFieldSerializer(metadata)
+        || !CodeGenerator.hasPartialType(code)
+        || (code.feature(SerializationProxy.SERIALIZATION_PROXY).isEnabled()
+            && metadata.isValueSerializable())) {
+      return false;
+    }
+    return !sparseProperties(metadata).isEmpty();
+  }
+
+  /** Returns an excerpt of the value type's field form of {@code property}, on {@code this}. */
+  static Excerpt valueField(Metadata metadata, Property property) {
+    int index = sparseProperties(metadata).indexOf(property);
+    if (index < 0) {
+      return property.getField();
+    }
+    return Excerpts.add("this.<%s>_sparseValue(%s)", fieldType(property), index);
+  }
+
+  static void addFields(SourceBuilder code, Metadata metadata) {
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator().getType() == Type.REQUIRED) {
+        property.getCodeGenerator().addValueFieldDeclaration(code, property.getField());
+      }
+    }
+    code.addLine("  private final long[] _present;")
+        .addLine("  private final Object[] _values;");
+  }
+
+  /**
+   * Adds a constructor copying required properties into fields, and storing each other property
+   * only if it differs from its default. Each chunk of sparse properties is stored by a static
+   * {@code _storeN} helper, which returns the number of values stored so far.
+   */
+  static void addConstructor(SourceBuilder code, Metadata metadata) {
+    List<Property> sparseProperties = sparseProperties(metadata);
+    List<List<Property>> chunks = chunks(sparseProperties, Cost.SPARSE_CONSTRUCTOR);
+    code.addLine("")
+        .addLine("  private %s(%s builder) {",
+            metadata.getValueType().getSimpleName(),
+            metadata.getGeneratedBuilder());
+    Block body = methodBody(code, "builder");
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator().getType() == Type.REQUIRED) {
+        property.getCodeGenerator()
+            .addFinalFieldAssignment(body, property.getField().on("this"), "builder");
+      }
+    }
+    body.addLine("    Object[] defaults = _defaults();")
+        .addLine("    long[] present = new long[%s];", (sparseProperties.size() + 63) / 64)
+        .addLine("    Object[] values = new Object[%s];", sparseProperties.size())
+        .addLine("    int size = 0;");
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        body.addLine("    size = _store%s(builder, defaults, present, values, size);", i);
+      }
+    } else {
+      addStores(body, sparseProperties, 0);
+    }
+    body.addLine("    this._present = present;")
+        .addLine("    this._values = (size == values.length) ? values : %s.copyOf(values, size);",
+            Arrays.class);
+    code.add(body)
+        .addLine("  }");
+    if (chunks.size() > 1) {
+      int offset = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private static int _store%s(", i)
+            .addLine("      %s builder,", metadata.getGeneratedBuilder())
+            .addLine("      Object[] defaults,")
+            .addLine("      long[] present,")
+            .addLine("      Object[] values,")
+            .addLine("      int size) {");
+        Block chunkBody = methodBody(code, "builder", "defaults", "present", "values", "size");
+        addStores(chunkBody, chunks.get(i), offset);
+        chunkBody.addLine("    return size;");
+        code.add(chunkBody)
+            .addLine("  }");
+        offset += chunks.get(i).size();
+      }
+    }
+  }
+
+  /**
+   * Adds statements storing each of {@code properties}, numbered from {@code offset}, in
+   * {@code values} if it differs from its default. Primitives are compared unboxed, so only
+   * stored values are boxed.
+   */
+  private static void addStores(Block body, List<Property> properties, int offset) {
+    for (int i = 0; i < properties.size(); i++) {
+      Property property = properties.get(i);
+      int index = offset + i;
+      Excerpt local = Excerpts.add("_%s", property.getName());
+      Excerpt defaultValue = Excerpts.add("defaults[%s]", index);
+      body.addLine("    %s %s;", property.getCodeGenerator().getValueFieldType(), local);
+      property.getCodeGenerator().addFinalFieldAssignment(body, local, "builder");
+      if (property.getCodeGenerator().getValueFieldType().getKind().isPrimitive()) {
+        body.addLine("    if (%s) {", notEquals(
+            property, local, Excerpts.add("(%s) %s", fieldType(property), defaultValue)));
+      } else {
+        body.addLine("    if (!_isDefault(%s, %s)) {", local, defaultValue);
+      }
+      body.addLine("      present[%s] |= 1L << %s;", index / 64, index % 64)
+          .addLine("      values[size++] = %s;", local)
+          .addLine("    }");
+    }
+  }
+
+  /**
+   * Adds an equals method comparing the required fields, in {@code _equalsN} helpers for huge
+   * types, then the stored values. Two values with equal properties store the same ones, so the
+   * arrays are equal exactly when the properties are.
+   */
+  static void addEquals(SourceBuilder code, Metadata metadata) {
+    List<Property> requiredProperties = requiredProperties(metadata);
+    List<List<Property>> chunks = chunks(requiredProperties, Cost.EQUALS);
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public boolean equals(Object obj) {");
+    BinaryCodecSupport.addUnwrapView(code, metadata);
+    code.addLine("    if (!(obj instanceof %s)) {", metadata.getValueType().getQualifiedName())
+        .addLine("      return false;")
+        .addLine("    }")
+        .addLine("    %1$s other = (%1$s) obj;", metadata.getValueType().withWildcards());
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("    if (!_equals%s(other)) {", i)
+            .addLine("      return false;")
+            .addLine("    }");
+      }
+    } else {
+      addFieldComparisons(code, requiredProperties);
+    }
+    code.addLine("    return %1$s.equals(_present, other._present)", Arrays.class)
+        .addLine("        && %s.equals(_values, other._values);", Arrays.class)
+        .addLine("  }");
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private boolean _equals%s(%s other) {",
+                i, metadata.getValueType().withWildcards());
+        addFieldComparisons(code, chunks.get(i));
+        code.addLine("    return true;")
+            .addLine("  }");
+      }
+    }
+  }
+
+  private static void addFieldComparisons(SourceBuilder code, List<Property> properties) {
+    for (Property property : properties) {
+      code.addLine("    if (%s) {",
+              notEquals(property, property.getField(), property.getField().on("other")))
+          .addLine("      return false;")
+          .addLine("    }");
+    }
+  }
+
+  /**
+   * Adds a hashCode method giving the same hash code as a dense value type, by gathering every
+   * property value into an array, in {@code _hashValuesN} helpers for huge types.
+   */
+  static void addHashCode(SourceBuilder code, Metadata metadata) {
+    List<List<Property>> chunks = chunks(metadata.getProperties(), Cost.HASH_CODE);
+    code.addLine("")
+        .addLine("  @%s", Override.class)
+        .addLine("  public int hashCode() {");
+    if (chunks.size() > 1) {
+      code.addLine("    Object[] values = new Object[%s];", metadata.getProperties().size());
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("    _hashValues%s(values);", i);
+      }
+      code.addLine("    return %s.hashCode(values);", Arrays.class)
+          .addLine("  }");
+      int index = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private void _hashValues%s(Object[] values) {", i);
+        for (Property property : chunks.get(i)) {
+          code.addLine("    values[%s] = %s;", index++, valueField(metadata, property));
+        }
+        code.addLine("  }");
+      }
+      return;
+    }
+    List<Excerpt> values = new ArrayList<Excerpt>();
+    for (Property property : metadata.getProperties()) {
+      values.add(valueField(metadata, property));
+    }
+    code.addLine("    return %s.hashCode(new Object[] {", Arrays.class);
+    for (int i = 0; i < values.size(); i++) {
+      code.addLine("        %s%s", values.get(i), (i + 1 < values.size()) ? "," : " });");
+    }
+    code.addLine("  }");
+  }
+
+  /**
+   * Adds the defaults, read lazily from a partial built by a fresh builder, and the private
+   * methods used to read and write sparse fields.
+   */
+  static void addHelpers(SourceBuilder code, Metadata metadata) {
+    List<Property> sparseProperties = sparseProperties(metadata);
+    List<List<Property>> chunks = chunks(sparseProperties, Cost.SPARSE_DEFAULTS);
+    code.addLine("")
+        .addLine("  private static volatile Object[] _cachedDefaults;")
+        .addLine("")
+        .addLine("  private static Object[] _defaults() {")
+        .addLine("    Object[] defaults = _cachedDefaults;")
+        .addLine("    if (defaults == null) {");
+    Block body = methodBody(code);
+    body.addLine("      %s partial = %s.buildPartial();",
+            metadata.getType(),
+            metadata.getBuilderFactory().get().newBuilder(metadata.getBuilder(), EXPLICIT_TYPES))
+        .addLine("      defaults = new Object[%s];", sparseProperties.size());
+    if (chunks.size() > 1) {
+      for (int i = 0; i < chunks.size(); i++) {
+        body.addLine("      _defaults%s(partial, defaults);", i);
+      }
+    } else {
+      addDefaults(body, sparseProperties, 0);
+    }
+    body.addLine("      _cachedDefaults = defaults;");
+    code.add(body)
+        .addLine("    }")
+        .addLine("    return defaults;")
+        .addLine("  }");
+    if (chunks.size() > 1) {
+      int offset = 0;
+      for (int i = 0; i < chunks.size(); i++) {
+        code.addLine("")
+            .addLine("  private static void _defaults%s(%s partial, Object[] defaults) {",
+                i, metadata.getType());
+        Block chunkBody = methodBody(code, "partial", "defaults");
+        addDefaults(chunkBody, chunks.get(i), offset);
+        code.add(chunkBody)
+            .addLine("  }");
+        offset += chunks.get(i).size();
+      }
+    }
+    code.addLine("")
+        .addLine("  private static boolean _isDefault(Object value, Object defaultValue) {")
+        .addLine("    return (value == null)")
+        .addLine("        ? (defaultValue == null)")
+        .addLine("        : value.equals(defaultValue);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @%s(\"unchecked\")", SuppressWarnings.class)
+        .addLine("  private <T> T _sparseValue(int index) {")
+        .addLine("    int word = index >>> 6;")
+        .addLine("    long bit = 1L << index;")
+        .addLine("    if ((_present[word] & bit) == 0) {")
+        .addLine("      return (T) _defaults()[index];")
+        .addLine("    }")
+        .addLine("    int position = %s.bitCount(_present[word] & (bit - 1));", Long.class)
+        .addLine("    for (int i = 0; i < word; i++) {")
+        .addLine("      position += %s.bitCount(_present[i]);", Long.class)
+        .addLine("    }")
+        .addLine("    return (T) _values[position];")
+        .addLine("  }");
+  }
+
+  /** Adds statements reading each of {@code properties}, numbered from {@code offset}. */
+  private static void addDefaults(Block body, List<Property> properties, int offset) {
+    for (int i = 0; i < properties.size(); i++) {
+      Property property = properties.get(i);
+      Excerpt value = property.getCodeGenerator().convertToValueField(
+          body, Excerpts.add("partial.%s()", property.getGetterName()));
+      body.addLine("      defaults[%s] = %s;", offset + i, value);
+    }
+  }
+
+  /**
+   * Returns an excerpt comparing two values of {@code property}, unboxed if primitive, with the
+   * same semantics as the boxed type's equals method.
+   */
+  private static Excerpt notEquals(Property property, Excerpt a, Excerpt b) {
+    TypeKind kind = property.getType().getKind();
+    switch (kind) {
+      case FLOAT:
+        return Excerpts.add("%1$s.floatToIntBits(%2$s) != %1$s.floatToIntBits(%3$s)",
+            Float.class, a, b);
+
+      case DOUBLE:
+        return Excerpts.add("%1$s.doubleToLongBits(%2$s) != %1$s.doubleToLongBits(%3$s)",
+            Double.class, a, b);
+
+      default:
+        if (kind.isPrimitive()) {
+          return Excerpts.add("%s != %s", a, b);
+        }
+        return ObjectsExcerpts.notEquals(a, b, kind, NOT_NULLABLE);
+    }
+  }
+
+  private static List<Property> requiredProperties(Metadata metadata) {
+    ImmutableList.Builder<Property> properties = ImmutableList.builder();
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator().getType() == Type.REQUIRED) {
+        properties.add(property);
+      }
+    }
+    return properties.build();
+  }
+
+  /** Returns the properties stored sparsely, in the order of their bits in {@code _present}. */
+  private static List<Property> sparseProperties(Metadata metadata) {
+    ImmutableList.Builder<Property> properties = ImmutableList.builder();
+    for (Property property : metadata.getProperties()) {
+      if (property.getCodeGenerator().getType() != Type.REQUIRED) {
+        properties.add(property);
+      }
+    }
+    return properties.build();
+  }
+
+  /** Returns the type to read a stored property as, boxed if the field would be primitive. */
+  private static Object fieldType(Property property) {
+    if (property.getCodeGenerator().getValueFieldType().getKind().isPrimitive()) {
+      return firstNonNull(property.getBoxedType(), property.getType());
+    }
+    return property.getCodeGenerator().getValueFieldType();
+  }
+
+  private SparseValueSupport() {}
+}
@@ -8,6 +8,9 @@ import org.inferred.freebuilder.processor.util.SourceBuilder;
 import org.inferred.freebuilder.processor.util.LazyName;
 
 import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.RandomAccess;
 
@@ -17,25 +20,30 @@ import java.util.RandomAccess;
  */
 public class CheckedList extends Excerpt {
 
-  public static final LazyName TYPE = new LazyName("CheckedList", new CheckedList());
+  private static final LazyName INLINE_TYPE = new LazyName("CheckedList", new CheckedList());
+
+  public static final RuntimeName TYPE = RuntimeName.type("CheckedList", INLINE_TYPE);
 
   private CheckedList() {}
 
   @Override
   public void addTo(SourceBuilder code) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().get();
+    ParameterizedType predicate = code.feature(FUNCTION_PACKAGE).predicate().get();
+    ParameterizedType unaryOperator = code.feature(FUNCTION_PACKAGE).unaryOperator().get();
     code.addLine("")
         .addLine("/**")
         .addLine(" * A list implementation that delegates to a provided add method to perform")
         .addLine(" * element validation and insertion into a random-access backing list.")
         .addLine(" */")
         .addLine("private static class %s<E> extends %s<E> implements %s {",
-            TYPE, AbstractList.class, RandomAccess.class)
+            INLINE_TYPE, AbstractList.class, RandomAccess.class)
         .addLine("")
         .addLine("  private final %s<E> list;", List.class)
         .addLine("  private final %s<E> add;", consumer.getQualifiedName())
         .addLine("")
-        .addLine("  %s(%s<E> list, %s<E> add) {", TYPE, List.class, consumer.getQualifiedName())
+        .addLine("  %s(%s<E> list, %s<E> add) {",
+            INLINE_TYPE, List.class, consumer.getQualifiedName())
         .addLine("    this.list = list;")
         .addLine("    this.add = add;")
         .addLine("  }")
@@ -63,6 +71,31 @@ public class CheckedList extends Excerpt {
         .addLine("    }")
         .addLine("  }")
         .addLine("")
+        .addLine("  @Override public boolean addAll(%s<? extends E> elements) {", Collection.class)
+        .addLine("    int oldSize = list.size();")
+        .addLine("    for (E element : elements) {")
+        .addLine("      add.accept(element);")
+        .addLine("    }")
+        .addLine("    return list.size() != oldSize;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean addAll(int index, %s<? extends E> elements) {",
+            Collection.class)
+        .addLine("    if (index < 0 || index > list.size()) {")
+        .addLine("      throw new %s(\"Index: \" + index + \", Size: \" + list.size());",
+            IndexOutOfBoundsException.class)
+        .addLine("    }")
+        .addLine("    // Append to the end of the list with add, then rotate the inserted elements")
+        .addLine("    // into place in a single pass.")
+        .addLine("    int oldSize = list.size();")
+        .addLine("    addAll(elements);")
+        .addLine("    int added = list.size() - oldSize;")
+        .addLine("    if (added != 0 && index != oldSize) {")
+        .addLine("      %s.rotate(list.subList(index, list.size()), added);", Collections.class)
+        .addLine("    }")
+        .addLine("    return added != 0;")
+        .addLine("  }")
+        .addLine("")
         .addLine("  @Override public E remove(int index) {")
         .addLine("    return list.remove(index);")
         .addLine("  }")
@@ -74,6 +107,35 @@ public class CheckedList extends Excerpt {
         .addLine("  @Override protected void removeRange(int fromIndex, int toIndex) {")
         .addLine("    list.subList(fromIndex, toIndex).clear();")
         .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean removeIf(%s<? super E> filter) {",
+            predicate.getQualifiedName())
+        .addLine("    return list.removeIf(filter);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public void replaceAll(%s<E> operator) {",
+            unaryOperator.getQualifiedName())
+        .addLine("    // Append the replacements to the end of the list with add, then drop the")
+        .addLine("    // originals in a single pass; if add rejects one, drop the replacements.")
+        .addLine("    int oldSize = list.size();")
+        .addLine("    boolean replaced = false;")
+        .addLine("    try {")
+        .addLine("      for (int i = 0; i < oldSize; i++) {")
+        .addLine("        add.accept(operator.apply(list.get(i)));")
+        .addLine("      }")
+        .addLine("      replaced = true;")
+        .addLine("    } finally {")
+        .addLine("      if (replaced) {")
+        .addLine("        list.subList(0, oldSize).clear();")
+        .addLine("      } else {")
+        .addLine("        list.subList(oldSize, list.size()).clear();")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public void sort(%s<? super E> comparator) {", Comparator.class)
+        .addLine("    list.sort(comparator);")
+        .addLine("  }")
         .addLine("}");
   }
 
@@ -20,7 +20,9 @@ import java.util.Set;
  */
 public class CheckedMap extends Excerpt {
 
-  public static final LazyName TYPE = new LazyName("CheckedMap", new CheckedMap());
+  private static final LazyName INLINE_TYPE = new LazyName("CheckedMap", new CheckedMap());
+
+  public static final RuntimeName TYPE = RuntimeName.type("CheckedMap", INLINE_TYPE);
 
   private static class CheckedEntry extends Excerpt {
 
@@ -167,18 +169,21 @@ public class CheckedMap extends Excerpt {
   @Override
   public void addTo(SourceBuilder code) {
     ParameterizedType biConsumer = code.feature(FUNCTION_PACKAGE).biConsumer().get();
+    ParameterizedType function = code.feature(FUNCTION_PACKAGE).function().get();
+    ParameterizedType biFunction = code.feature(FUNCTION_PACKAGE).biFunction().get();
     code.addLine("")
         .addLine("/**")
         .addLine(" * A map implementation that delegates to a provided put method")
         .addLine(" * to perform entry validation and insertion into a backing map.")
         .addLine(" */")
-        .addLine("private static class %s<K, V> extends %s<K, V> {", TYPE, AbstractMap.class)
+        .addLine("private static class %s<K, V> extends %s<K, V> {",
+            INLINE_TYPE, AbstractMap.class)
         .addLine("")
         .addLine("  private final %s<K, V> map;", Map.class)
         .addLine("  private final %s<K, V> put;", biConsumer.getQualifiedName())
         .addLine("")
         .addLine("  %s(%s<K, V> map, %s<K, V> put) {",
-            TYPE, Map.class, biConsumer.getQualifiedName())
+            INLINE_TYPE, Map.class, biConsumer.getQualifiedName())
         .addLine("    this.map = map;")
         .addLine("    this.put = put;")
         .addLine("  }")
@@ -197,10 +202,44 @@ public class CheckedMap extends Excerpt {
         .addLine("    return oldValue;")
         .addLine("  }")
         .addLine("")
+        .addLine("  @Override public void putAll(%s<? extends K, ? extends V> m) {", Map.class)
+        .addLine("    for (%s<? extends K, ? extends V> entry : m.entrySet()) {",
+            Map.Entry.class)
+        .addLine("      put.accept(entry.getKey(), entry.getValue());")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public V computeIfAbsent(")
+        .addLine("      K key, %s<? super K, ? extends V> mappingFunction) {",
+            function.getQualifiedName())
+        .addLine("    V value = map.get(key);")
+        .addLine("    if (value == null) {")
+        .addLine("      V newValue = mappingFunction.apply(key);")
+        .addLine("      if (newValue != null) {")
+        .addLine("        put.accept(key, newValue);")
+        .addLine("        value = map.get(key);")
+        .addLine("      }")
+        .addLine("    }")
+        .addLine("    return value;")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public void replaceAll(")
+        .addLine("      %s<? super K, ? super V, ? extends V> function) {",
+            biFunction.getQualifiedName())
+        .addLine("    for (%s<K, V> entry : map.entrySet()) {", Map.Entry.class)
+        .addLine("      V newValue = function.apply(entry.getKey(), entry.getValue());")
+        .addLine("      put.accept(entry.getKey(), newValue);")
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("")
         .addLine("  @Override public V remove(Object key) {")
         .addLine("    return map.remove(key);")
         .addLine("  }")
         .addLine("")
+        .addLine("  @Override public int size() {")
+        .addLine("    return map.size();")
+        .addLine("  }")
+        .addLine("")
         .addLine("  @Override public void clear() {")
         .addLine("    map.clear();")
         .addLine("  }")
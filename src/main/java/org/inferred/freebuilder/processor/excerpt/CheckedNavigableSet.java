@@ -9,6 +9,7 @@ import org.inferred.freebuilder.processor.util.PreconditionExcerpts;
 import org.inferred.freebuilder.processor.util.SourceBuilder;
 
 import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NavigableSet;
@@ -19,21 +20,24 @@ import java.util.NavigableSet;
  */
 public class CheckedNavigableSet extends Excerpt {
 
-  public static final LazyName TYPE =
+  private static final LazyName INLINE_TYPE =
       new LazyName("CheckedNavigableSet", new CheckedNavigableSet());
 
+  public static final RuntimeName TYPE = RuntimeName.type("CheckedNavigableSet", INLINE_TYPE);
+
   private CheckedNavigableSet() {}
 
   @Override
   public void addTo(SourceBuilder code) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().get();
+    ParameterizedType predicate = code.feature(FUNCTION_PACKAGE).predicate().get();
     code.addLine("")
         .addLine("/**")
         .addLine(" * A set implementation that delegates to a provided add method")
         .addLine(" * to perform element validation and insertion into a backing set.")
         .addLine(" */")
         .addLine("private static class %s<E> extends %s<E> implements %s<E> {",
-            TYPE, AbstractSet.class, NavigableSet.class)
+            INLINE_TYPE, AbstractSet.class, NavigableSet.class)
         .addLine("")
         .addLine("  private final %s<E> set;", NavigableSet.class)
         .addLine("  private final %s<E> add;", consumer.getQualifiedName())
@@ -43,7 +47,7 @@ public class CheckedNavigableSet extends Excerpt {
         .addLine("  private final boolean toInclusive;")
         .addLine("")
         .addLine("  %s(%s<E> set, %s<E> add) {",
-            TYPE, NavigableSet.class, consumer.getQualifiedName())
+            INLINE_TYPE, NavigableSet.class, consumer.getQualifiedName())
         .addLine("    this.set = set;")
         .addLine("    this.add = add;")
         .addLine("    this.fromElement = null;")
@@ -52,7 +56,7 @@ public class CheckedNavigableSet extends Excerpt {
         .addLine("    this.toInclusive = false;")
         .addLine("  }")
         .addLine("")
-        .addLine("  %s(", TYPE)
+        .addLine("  %s(", INLINE_TYPE)
         .addLine("      %s<E> set,", NavigableSet.class)
         .addLine("      %s<E> add,", consumer.getQualifiedName())
         .addLine("      E fromElement,")
@@ -85,6 +89,23 @@ public class CheckedNavigableSet extends Excerpt {
         .addLine("    return set.remove(e);")
         .addLine("  }")
         .addLine("")
+        .addLine("  @Override public boolean removeAll(%s<?> elements) {", Collection.class)
+        .addLine("    return set.removeAll(elements);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean retainAll(%s<?> elements) {", Collection.class)
+        .addLine("    return set.retainAll(elements);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean removeIf(%s<? super E> filter) {",
+            predicate.getQualifiedName())
+        .addLine("    return set.removeIf(filter);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public void clear() {")
+        .addLine("    set.clear();")
+        .addLine("  }")
+        .addLine("")
         .addLine("  @Override public %s<? super E> comparator() {", Comparator.class)
         .addLine("    return set.comparator();")
         .addLine("  }");
@@ -124,7 +145,7 @@ public class CheckedNavigableSet extends Excerpt {
         .addLine("")
         .addLine("  @Override public %s<E> descendingSet() {", NavigableSet.class)
         .addLine("    %s<E> descendingSet = set.descendingSet();", NavigableSet.class)
-        .addLine("    return new %s(", TYPE)
+        .addLine("    return new %s(", INLINE_TYPE)
         .addLine("        descendingSet, add, toElement, toInclusive, fromElement, fromInclusive);")
         .addLine("  }")
         .addLine("")
@@ -141,7 +162,7 @@ public class CheckedNavigableSet extends Excerpt {
         .add(PreconditionExcerpts.checkNotNull("toElement"))
         .addLine("    %s<E> subSet = set.subSet(", NavigableSet.class)
         .addLine("        fromElement, fromInclusive, toElement, toInclusive);")
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        subSet, add, fromElement, fromInclusive, toElement, toInclusive);")
         .addLine("  }")
         .addLine("")
@@ -151,7 +172,7 @@ public class CheckedNavigableSet extends Excerpt {
         .add(PreconditionExcerpts.checkNotNull("toElement"))
         .addLine("    %s<E> headSet = set.headSet(toElement, inclusive);",
             NavigableSet.class)
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        headSet, add, fromElement, fromInclusive, toElement, inclusive);")
         .addLine("  }")
         .addLine("")
@@ -161,7 +182,7 @@ public class CheckedNavigableSet extends Excerpt {
         .add(PreconditionExcerpts.checkNotNull("fromElement"))
         .addLine("    %s<E> tailSet = set.tailSet(fromElement, inclusive);",
             NavigableSet.class)
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        tailSet, add, fromElement, inclusive, toElement, toInclusive);")
         .addLine("  }")
         .addLine("}");
@@ -175,21 +196,21 @@ public class CheckedNavigableSet extends Excerpt {
         .add(PreconditionExcerpts.checkNotNull("toElement"))
         .addLine("    %s<E> subSet = set.subSet(fromElement, true, toElement, false);",
             NavigableSet.class)
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        subSet, add, fromElement, true, toElement, false);")
         .addLine("  }")
         .addLine("")
         .addLine("  @Override public %s<E> headSet(E toElement) {", NavigableSet.class)
         .add(PreconditionExcerpts.checkNotNull("toElement"))
         .addLine("    %s<E> headSet = set.headSet(toElement, false);", NavigableSet.class)
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        headSet, add, fromElement, fromInclusive, toElement, false);")
         .addLine("  }")
         .addLine("")
         .addLine("  @Override public %s<E> tailSet(E fromElement) {", NavigableSet.class)
         .add(PreconditionExcerpts.checkNotNull("fromElement"))
         .addLine("    %s<E> tailSet = set.tailSet(fromElement, true);", NavigableSet.class)
-        .addLine("    return new %s<>(", TYPE)
+        .addLine("    return new %s<>(", INLINE_TYPE)
         .addLine("        tailSet, add, fromElement, true, toElement, toInclusive);")
         .addLine("  }");
   }
@@ -8,6 +8,7 @@ import org.inferred.freebuilder.processor.util.SourceBuilder;
 import org.inferred.freebuilder.processor.util.LazyName;
 
 import java.util.AbstractSet;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -17,24 +18,28 @@ import java.util.Set;
  */
 public class CheckedSet extends Excerpt {
 
-  public static final LazyName TYPE = new LazyName("CheckedSet", new CheckedSet());
+  private static final LazyName INLINE_TYPE = new LazyName("CheckedSet", new CheckedSet());
+
+  public static final RuntimeName TYPE = RuntimeName.type("CheckedSet", INLINE_TYPE);
 
   private CheckedSet() {}
 
   @Override
   public void addTo(SourceBuilder code) {
     ParameterizedType consumer = code.feature(FUNCTION_PACKAGE).consumer().get();
+    ParameterizedType predicate = code.feature(FUNCTION_PACKAGE).predicate().get();
     code.addLine("")
         .addLine("/**")
         .addLine(" * A set implementation that delegates to a provided add method")
         .addLine(" * to perform element validation and insertion into a backing set.")
         .addLine(" */")
-        .addLine("private static class %s<E> extends %s<E> {", TYPE, AbstractSet.class)
+        .addLine("private static class %s<E> extends %s<E> {", INLINE_TYPE, AbstractSet.class)
         .addLine("")
         .addLine("  private final %s<E> set;", Set.class)
         .addLine("  private final %s<E> add;", consumer.getQualifiedName())
         .addLine("")
-        .addLine("  %s(%s<E> set, %s<E> add) {", TYPE, Set.class, consumer.getQualifiedName())
+        .addLine("  %s(%s<E> set, %s<E> add) {",
+            INLINE_TYPE, Set.class, consumer.getQualifiedName())
         .addLine("    this.set = set;")
         .addLine("    this.add = add;")
         .addLine("  }")
@@ -64,6 +69,23 @@ public class CheckedSet extends Excerpt {
         .addLine("  @Override public boolean remove(Object e) {")
         .addLine("    return set.remove(e);")
         .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean removeAll(%s<?> elements) {", Collection.class)
+        .addLine("    return set.removeAll(elements);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean retainAll(%s<?> elements) {", Collection.class)
+        .addLine("    return set.retainAll(elements);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public boolean removeIf(%s<? super E> filter) {",
+            predicate.getQualifiedName())
+        .addLine("    return set.removeIf(filter);")
+        .addLine("  }")
+        .addLine("")
+        .addLine("  @Override public void clear() {")
+        .addLine("    set.clear();")
+        .addLine("  }")
         .addLine("}");
   }
 
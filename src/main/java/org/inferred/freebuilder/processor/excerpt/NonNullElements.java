@@ -0,0 +1,47 @@
+package org.inferred.freebuilder.processor.excerpt;
+
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.LazyName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Excerpts defining a method that snapshots a collection, checking none of its elements are null,
+ * so it can be added to a backing collection in a single bulk call.
+ */
+public class NonNullElements extends Excerpt {
+
+  private static final LazyName INLINE_METHOD =
+      new LazyName("nonNullElements", new NonNullElements());
+
+  public static final RuntimeName METHOD =
+      RuntimeName.method("FreeBuilderCollections", "nonNullElements", INLINE_METHOD);
+
+  private NonNullElements() {}
+
+  @Override
+  public void addTo(SourceBuilder code) {
+    code.addLine("")
+        .addLine("/**")
+        .addLine(" * Returns a snapshot of {@code elements}, or throws a NullPointerException")
+        .addLine(" * if it contains a null element.")
+        .addLine(" */")
+        .addLine("@%s(\"unchecked\")", SuppressWarnings.class)
+        .addLine("private static <E> %s<E> %s(%s<? extends E> elements) {",
+            List.class, INLINE_METHOD, Collection.class)
+        .addLine("  Object[] array = elements.toArray();")
+        .addLine("  for (Object element : array) {")
+        .addLine("    if (element == null) {")
+        .addLine("      throw new %s();", NullPointerException.class)
+        .addLine("    }")
+        .addLine("  }")
+        .addLine("  return (%1$s<E>)(%1$s<?>) %2$s.asList(array);", List.class, Arrays.class)
+        .addLine("}");
+  }
+
+  @Override
+  protected void addFields(FieldReceiver fields) {}
+}
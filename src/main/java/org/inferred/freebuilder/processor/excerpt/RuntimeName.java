@@ -0,0 +1,60 @@
+package org.inferred.freebuilder.processor.excerpt;
+
+import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.LazyName;
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+import org.inferred.freebuilder.processor.util.feature.FreeBuilderRuntime;
+
+/**
+ * Excerpts naming a type or static method shared from the freebuilder-runtime library when it is
+ * available, or declared lazily in the generated source otherwise.
+ */
+public class RuntimeName extends Excerpt {
+
+  /**
+   * Returns an excerpt naming the runtime type {@code simpleName}, or {@code fallback} if the
+   * runtime is unavailable.
+   */
+  public static RuntimeName type(String simpleName, LazyName fallback) {
+    return new RuntimeName(
+        QualifiedName.of(FreeBuilderRuntime.PACKAGE, simpleName), null, fallback);
+  }
+
+  /**
+   * Returns an excerpt naming the static method {@code methodName} of the runtime type
+   * {@code simpleName}, or {@code fallback} if the runtime is unavailable.
+   */
+  public static RuntimeName method(String simpleName, String methodName, LazyName fallback) {
+    return new RuntimeName(
+        QualifiedName.of(FreeBuilderRuntime.PACKAGE, simpleName), methodName, fallback);
+  }
+
+  private final QualifiedName type;
+  private final String methodName;
+  private final LazyName fallback;
+
+  private RuntimeName(QualifiedName type, String methodName, LazyName fallback) {
+    this.type = type;
+    this.methodName = methodName;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public void addTo(SourceBuilder code) {
+    if (!code.feature(FreeBuilderRuntime.FREEBUILDER_RUNTIME).isAvailable()) {
+      code.add(fallback);
+    } else if (methodName == null) {
+      code.add("%s", type);
+    } else {
+      code.add("%s.%s", type, methodName);
+    }
+  }
+
+  @Override
+  protected void addFields(FieldReceiver fields) {
+    fields.add("type", type);
+    fields.add("methodName", methodName);
+    fields.add("fallback", fallback);
+  }
+}
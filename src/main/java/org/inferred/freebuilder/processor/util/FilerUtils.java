@@ -39,8 +39,20 @@ public class FilerUtils {
       QualifiedName classToWrite,
       Element originatingElement,
       String source) throws IOException {
+    writeCompilationUnit(filer, classToWrite, new Element[] { originatingElement }, source);
+  }
+
+  /**
+   * Writes {@code source} to the correct file for {@code classToWrite}, generated from several
+   * {@code originatingElements}.
+   */
+  public static void writeCompilationUnit(
+      Filer filer,
+      QualifiedName classToWrite,
+      Element[] originatingElements,
+      String source) throws IOException {
     Writer writer = filer
-        .createSourceFile(classToWrite.toString(), originatingElement)
+        .createSourceFile(classToWrite.toString(), originatingElements)
         .openWriter();
     try {
       writer.append(source);
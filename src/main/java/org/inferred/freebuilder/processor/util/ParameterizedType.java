@@ -90,6 +90,14 @@ public class ParameterizedType extends Excerpt {
     return new ParameterizedType(qualifiedName, ImmutableList.copyOf(parameters));
   }
 
+  /**
+   * Returns a new {@link ParameterizedType} for {@code qualifiedName}, with the same type
+   * parameters as this type.
+   */
+  public ParameterizedType withQualifiedName(QualifiedName qualifiedName) {
+    return new ParameterizedType(qualifiedName, typeParameters);
+  }
+
   /**
    * Returns a new {@link ParameterizedType} of the same length as this type, filled with wildcards
    * ("?").
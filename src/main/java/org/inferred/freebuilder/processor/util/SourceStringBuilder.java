@@ -17,6 +17,8 @@ package org.inferred.freebuilder.processor.util;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.inferred.freebuilder.processor.util.AnnotationSource.addSource;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.SLIM_API;
+import static org.inferred.freebuilder.processor.util.feature.SlimApi.Omission.JAVADOC;
 
 import org.inferred.freebuilder.processor.util.Scope.FileScope;
 import org.inferred.freebuilder.processor.util.feature.Feature;
@@ -33,6 +35,12 @@ import javax.lang.model.type.TypeMirror;
 
 /**
  * A {@link SourceBuilder} that writes to a {@link StringBuilder}.
+ *
+ * <p>If the {@link org.inferred.freebuilder.processor.util.feature.SlimApi SLIM_API} feature omits
+ * javadoc, every javadoc comment is dropped as it is added, without formatting its arguments, so
+ * types only linked from javadoc are not imported. A javadoc comment starts with a format string
+ * whose first non-blank characters are <code>/**</code>, and ends with a format string containing
+ * <code>*&#47;</code>.
  */
 public class SourceStringBuilder implements SourceBuilder {
 
@@ -40,6 +48,8 @@ public class SourceStringBuilder implements SourceBuilder {
   private final StringBuilder destination = new StringBuilder();
   private final FeatureSet features;
   private final Scope scope;
+  private final boolean omitJavadoc;
+  private boolean inJavadoc = false;
 
   /**
    * Returns a {@link SourceStringBuilder} that always shortens types, even if that causes
@@ -62,6 +72,7 @@ public class SourceStringBuilder implements SourceBuilder {
     this.shortener = shortener;
     this.features = features;
     this.scope = scope;
+    this.omitJavadoc = features.get(SLIM_API).omits(JAVADOC);
   }
 
   @Override
@@ -72,6 +83,10 @@ public class SourceStringBuilder implements SourceBuilder {
 
   @Override
   public SourceStringBuilder add(String fmt, Object... args) {
+    if (omitJavadoc && (inJavadoc || fmt.trim().startsWith("/**"))) {
+      inJavadoc = !fmt.contains("*/");
+      return this;
+    }
     Object[] substituteArgs = new Object[args.length];
     for (int i = 0; i < args.length; i++) {
       substituteArgs[i] = substitute(args[i]);
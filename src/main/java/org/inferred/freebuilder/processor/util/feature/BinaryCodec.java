@@ -0,0 +1,59 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a compact binary codec, {@code Value_BinaryCodec}, for each type, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>A codec is only generated for non-generic types whose properties are all primitives, boxed
+ * primitives, strings, enums, collections and maps of those, or other {@code @FreeBuilder} types
+ * in the same package that have a codec of their own, which are encoded recursively with it.
+ * Types that contain themselves, directly or indirectly, get no codec. Code outside the
+ * package can reach the codec through the type's builder, e.g.
+ * {@code DataType.Builder.Value_BinaryCodec.writeTo(value, buffer)}.
+ */
+public enum BinaryCodec implements Feature<BinaryCodec> {
+
+  ENABLED("Binary codec"), DISABLED("No binary codec");
+
+  /**
+   * Processor option enabling the binary codec, e.g. {@code -Afreebuilder.binaryCodec=true}.
+   */
+  public static final String OPTION = "freebuilder.binaryCodec";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link BinaryCodec}.
+   */
+  public static final FeatureType<BinaryCodec> BINARY_CODEC =
+      new FeatureType<BinaryCodec>() {
+
+        @Override
+        protected BinaryCodec testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected BinaryCodec forEnvironment(ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  BinaryCodec(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,52 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a {@code buildAndReset} method on builders, handing the builder's collections
+ * to the value instead of copying them. Enabled with the {@value #OPTION} processor option.
+ * Defaults to {@link #DISABLED} in tests.
+ */
+public enum BuildAndResetMethod implements Feature<BuildAndResetMethod> {
+
+  ENABLED("buildAndReset"), DISABLED("No buildAndReset");
+
+  /** Processor option enabling buildAndReset, e.g. {@code -Afreebuilder.buildAndReset=true}. */
+  public static final String OPTION = "freebuilder.buildAndReset";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link BuildAndResetMethod}.
+   */
+  public static final FeatureType<BuildAndResetMethod> BUILD_AND_RESET =
+      new FeatureType<BuildAndResetMethod>() {
+
+        @Override
+        protected BuildAndResetMethod testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected BuildAndResetMethod forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  BuildAndResetMethod(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
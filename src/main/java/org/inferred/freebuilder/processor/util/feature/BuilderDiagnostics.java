@@ -0,0 +1,134 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether generated builders count their builds and merges, and record Java Flight Recorder
+ * events, enabled with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in
+ * tests.
+ *
+ * <p>Counters are {@code LongAdder}s, so diagnostics need Java 8; events are only generated if
+ * {@code jdk.jfr} is available to the compiler. Even when generated, the hooks do nothing unless
+ * the {@value #RUNTIME_PROPERTY} system property is set to {@code true}, and are guarded by a
+ * {@code static final} flag the JIT folds away when it is not.
+ */
+public final class BuilderDiagnostics implements Feature<BuilderDiagnostics> {
+
+  /** No diagnostics are generated. */
+  public static final BuilderDiagnostics DISABLED = new BuilderDiagnostics(false, false, 0);
+
+  /** The collection size above which builds record an event, if the option does not set one. */
+  public static final int DEFAULT_LARGE_COLLECTION_SIZE = 10000;
+
+  /**
+   * Processor option enabling diagnostics, e.g. {@code -Afreebuilder.diagnostics=true}, or
+   * {@code -Afreebuilder.diagnostics=500} to record builds with collections of over 500 elements.
+   */
+  public static final String OPTION = "freebuilder.diagnostics";
+
+  /**
+   * System property that switches generated diagnostics on at runtime, named apart from the
+   * {@value #OPTION} processor option so the two are not mistaken for each other.
+   */
+  public static final String RUNTIME_PROPERTY = "freebuilder.diagnostics.enabled";
+
+  /** System property overriding the large collection size at runtime. */
+  public static final String SIZE_PROPERTY = "freebuilder.diagnostics.largeCollectionSize";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link BuilderDiagnostics}.
+   */
+  public static final FeatureType<BuilderDiagnostics> BUILDER_DIAGNOSTICS =
+      new FeatureType<BuilderDiagnostics>() {
+
+        @Override
+        protected BuilderDiagnostics testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected BuilderDiagnostics forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          String option = env.getOptions().get(OPTION);
+          if (option == null
+              || option.trim().equalsIgnoreCase("false")
+              || features.get(SOURCE_LEVEL).compareTo(SourceLevel.JAVA_8) < 0) {
+            return DISABLED;
+          }
+          int largeCollectionSize = DEFAULT_LARGE_COLLECTION_SIZE;
+          try {
+            largeCollectionSize = Integer.parseInt(option.trim());
+          } catch (NumberFormatException e) {
+            // Any other value, e.g. "true", enables diagnostics with the default size
+          }
+          boolean events = env.getElementUtils().getTypeElement("jdk.jfr.Event") != null;
+          return new BuilderDiagnostics(true, events, largeCollectionSize);
+        }
+      };
+
+  /**
+   * Returns diagnostics recording events for builds with collections of more than
+   * {@code largeCollectionSize} elements.
+   */
+  public static BuilderDiagnostics withEvents(int largeCollectionSize) {
+    return new BuilderDiagnostics(true, true, largeCollectionSize);
+  }
+
+  /** Returns diagnostics that only count, for when {@code jdk.jfr} is unavailable. */
+  public static BuilderDiagnostics countersOnly() {
+    return new BuilderDiagnostics(true, false, 0);
+  }
+
+  private final boolean enabled;
+  private final boolean events;
+  private final int largeCollectionSize;
+
+  private BuilderDiagnostics(boolean enabled, boolean events, int largeCollectionSize) {
+    this.enabled = enabled;
+    this.events = events;
+    this.largeCollectionSize = largeCollectionSize;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns whether to record Java Flight Recorder events as well as counting. */
+  public boolean hasEvents() {
+    return events;
+  }
+
+  /** Returns the collection size above which builds record an event, unless overridden. */
+  public int largeCollectionSize() {
+    return largeCollectionSize;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof BuilderDiagnostics)) {
+      return false;
+    }
+    BuilderDiagnostics other = (BuilderDiagnostics) obj;
+    return other.enabled == enabled
+        && other.events == events
+        && other.largeCollectionSize == largeCollectionSize;
+  }
+
+  @Override
+  public int hashCode() {
+    return (enabled ? 1 : 0) + (events ? 2 : 0) + 31 * largeCollectionSize;
+  }
+
+  @Override
+  public String toString() {
+    if (!enabled) {
+      return "No diagnostics";
+    }
+    return events ? "Diagnostics above " + largeCollectionSize : "Diagnostic counters";
+  }
+}
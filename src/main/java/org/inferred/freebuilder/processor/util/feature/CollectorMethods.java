@@ -0,0 +1,53 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a static {@code Collector} factory method for each collection property,
+ * enabled with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ */
+public enum CollectorMethods implements Feature<CollectorMethods> {
+
+  ENABLED("Collectors"), DISABLED("No collectors");
+
+  /**
+   * Processor option enabling the collector methods, e.g. {@code -Afreebuilder.collectors=true}.
+   */
+  public static final String OPTION = "freebuilder.collectors";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link CollectorMethods}.
+   */
+  public static final FeatureType<CollectorMethods> COLLECTORS =
+      new FeatureType<CollectorMethods>() {
+
+        @Override
+        protected CollectorMethods testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected CollectorMethods forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  CollectorMethods(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,58 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a struct-of-arrays container, {@code Value_Columns}, for each type, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>The container stores each property of the values appended to it in its own growable array,
+ * primitive where the property is, so large in-memory collections of small values avoid an
+ * object header and a pointer per value. It is only generated for non-generic types. Code outside
+ * the package can reach it through the type's builder, e.g.
+ * {@code new DataType.Builder.Value_Columns()}.
+ */
+public enum ColumnsContainer implements Feature<ColumnsContainer> {
+
+  ENABLED("Columns container"), DISABLED("No columns container");
+
+  /**
+   * Processor option enabling the columns container, e.g. {@code -Afreebuilder.columns=true}.
+   */
+  public static final String OPTION = "freebuilder.columns";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link ColumnsContainer}.
+   */
+  public static final FeatureType<ColumnsContainer> COLUMNS =
+      new FeatureType<ColumnsContainer>() {
+
+        @Override
+        protected ColumnsContainer testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected ColumnsContainer forEnvironment(ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  ColumnsContainer(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,54 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a thread-safe {@code ConcurrentBuilder} alongside each builder, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ */
+public enum ConcurrentBuilderClass implements Feature<ConcurrentBuilderClass> {
+
+  ENABLED("Concurrent builder"), DISABLED("No concurrent builder");
+
+  /**
+   * Processor option enabling the concurrent builder, e.g.
+   * {@code -Afreebuilder.concurrentBuilder=true}.
+   */
+  public static final String OPTION = "freebuilder.concurrentBuilder";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link ConcurrentBuilderClass}.
+   */
+  public static final FeatureType<ConcurrentBuilderClass> CONCURRENT_BUILDER =
+      new FeatureType<ConcurrentBuilderClass>() {
+
+        @Override
+        protected ConcurrentBuilderClass testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected ConcurrentBuilderClass forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  ConcurrentBuilderClass(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,53 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Whether the fastutil primitive collections library is available or not. Defaults to
+ * {@link #UNAVAILABLE} in tests.
+ *
+ * <p>When available, fastutil's type-specific lists, sets and maps get fluent builder methods
+ * taking unboxed elements, rather than being treated as opaque values.
+ */
+public enum FastutilLibrary implements Feature<FastutilLibrary> {
+
+  AVAILABLE("fastutil"), UNAVAILABLE("No fastutil");
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link FastutilLibrary}.
+   */
+  public static final FeatureType<FastutilLibrary> FASTUTIL = new FeatureType<FastutilLibrary>() {
+
+    @Override
+    protected FastutilLibrary testDefault(FeatureSet features) {
+      return UNAVAILABLE;
+    }
+
+    @Override
+    protected FastutilLibrary forEnvironment(ProcessingEnvironment env, FeatureSet features) {
+      TypeElement element = env.getElementUtils().getTypeElement(INT_LIST);
+      return (element != null) ? AVAILABLE : UNAVAILABLE;
+    }
+  };
+
+  private static final String INT_LIST = "it.unimi.dsi.fastutil.ints.IntList";
+
+  private final String humanReadableFormat;
+
+  FastutilLibrary(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isAvailable() {
+    return this != UNAVAILABLE;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,75 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+
+import org.inferred.freebuilder.processor.util.QualifiedName;
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Whether generated builders may use the freebuilder-runtime library, enabled with the
+ * {@value #OPTION} processor option. Defaults to {@link #UNAVAILABLE} in tests.
+ *
+ * <p>When enabled, generated builders reference the collection views and helper methods the
+ * library contains, instead of each declaring its own private copy. The generated code then needs
+ * the library at run time as well as compile time, which the processor cannot check, so it is
+ * never used just because it happens to be on the compile classpath. The library targets Java 8,
+ * so it is never used when generating code for an earlier source level, and the option is ignored
+ * if the library is missing from the compile classpath.
+ */
+public enum FreeBuilderRuntime implements Feature<FreeBuilderRuntime> {
+
+  AVAILABLE("FreeBuilder runtime"), UNAVAILABLE("No FreeBuilder runtime");
+
+  /**
+   * Processor option enabling use of the freebuilder-runtime library, e.g.
+   * {@code -Afreebuilder.runtime=true}.
+   */
+  public static final String OPTION = "freebuilder.runtime";
+
+  /** Package containing the shared types of the freebuilder-runtime library. */
+  public static final String PACKAGE = "org.inferred.freebuilder.runtime";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link FreeBuilderRuntime}.
+   */
+  public static final FeatureType<FreeBuilderRuntime> FREEBUILDER_RUNTIME =
+      new FeatureType<FreeBuilderRuntime>() {
+
+        @Override
+        protected FreeBuilderRuntime testDefault(FeatureSet features) {
+          return UNAVAILABLE;
+        }
+
+        @Override
+        protected FreeBuilderRuntime forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          if (!Boolean.parseBoolean(env.getOptions().get(OPTION))
+              || features.get(SOURCE_LEVEL).compareTo(SourceLevel.JAVA_8) < 0) {
+            return UNAVAILABLE;
+          }
+          TypeElement element = env.getElementUtils().getTypeElement(MARKER.toString());
+          return (element != null) ? AVAILABLE : UNAVAILABLE;
+        }
+      };
+
+  private static final QualifiedName MARKER = QualifiedName.of(PACKAGE, "FreeBuilderCollections");
+
+  private final String humanReadableFormat;
+
+  FreeBuilderRuntime(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isAvailable() {
+    return this != UNAVAILABLE;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
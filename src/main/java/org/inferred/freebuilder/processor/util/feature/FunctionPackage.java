@@ -47,6 +47,12 @@ public enum FunctionPackage implements Feature<FunctionPackage> {
       QualifiedName.of("java.util.function", "BiConsumer").withParameters("T", "U");
   private static final ParameterizedType UNARY_OPERATOR =
       QualifiedName.of("java.util.function", "UnaryOperator").withParameters("T");
+  private static final ParameterizedType PREDICATE =
+      QualifiedName.of("java.util.function", "Predicate").withParameters("T");
+  private static final ParameterizedType FUNCTION =
+      QualifiedName.of("java.util.function", "Function").withParameters("T", "R");
+  private static final ParameterizedType BI_FUNCTION =
+      QualifiedName.of("java.util.function", "BiFunction").withParameters("T", "U", "R");
 
   private final String humanReadableFormat;
 
@@ -75,6 +81,27 @@ public enum FunctionPackage implements Feature<FunctionPackage> {
     return ifAvailable(UNARY_OPERATOR);
   }
 
+  /**
+   * Parameterized type for {@code java.util.function.Predicate<T>}, if available.
+   */
+  public Optional<ParameterizedType> predicate() {
+    return ifAvailable(PREDICATE);
+  }
+
+  /**
+   * Parameterized type for {@code java.util.function.Function<T, R>}, if available.
+   */
+  public Optional<ParameterizedType> function() {
+    return ifAvailable(FUNCTION);
+  }
+
+  /**
+   * Parameterized type for {@code java.util.function.BiFunction<T, U, R>}, if available.
+   */
+  public Optional<ParameterizedType> biFunction() {
+    return ifAvailable(BI_FUNCTION);
+  }
+
   @Override
   public String toString() {
     return humanReadableFormat;
@@ -0,0 +1,105 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.io.File;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Where to keep previously generated builder source between compilations, set with the
+ * {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>The directory may be shared between builds, and is kept under {@value #SIZE_OPTION}
+ * megabytes (default {@value #DEFAULT_SIZE_MB}) by evicting the least recently used entries.
+ */
+public final class GenerationCacheDir implements Feature<GenerationCacheDir> {
+
+  /** No generated source is cached. */
+  public static final GenerationCacheDir DISABLED = new GenerationCacheDir(null, 0);
+
+  /** Processor option naming the cache directory, e.g. {@code -Afreebuilder.cacheDir=/tmp/fb}. */
+  public static final String OPTION = "freebuilder.cacheDir";
+
+  /** Processor option bounding the size of the cache in megabytes. */
+  public static final String SIZE_OPTION = "freebuilder.cacheSize";
+
+  public static final int DEFAULT_SIZE_MB = 64;
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link GenerationCacheDir}.
+   */
+  public static final FeatureType<GenerationCacheDir> GENERATION_CACHE_DIR =
+      new FeatureType<GenerationCacheDir>() {
+
+        @Override
+        protected GenerationCacheDir testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected GenerationCacheDir forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          String directory = env.getOptions().get(OPTION);
+          if (directory == null || directory.trim().isEmpty()) {
+            return DISABLED;
+          }
+          int sizeMb = DEFAULT_SIZE_MB;
+          String size = env.getOptions().get(SIZE_OPTION);
+          if (size != null) {
+            try {
+              sizeMb = Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+              // Ignore malformed sizes, as other options ignore malformed values
+            }
+          }
+          return at(new File(directory.trim()), sizeMb * 1024L * 1024L);
+        }
+      };
+
+  /** Returns a cache kept in {@code directory}, holding up to {@code maxBytes} of source. */
+  public static GenerationCacheDir at(File directory, long maxBytes) {
+    return (maxBytes > 0) ? new GenerationCacheDir(directory, maxBytes) : DISABLED;
+  }
+
+  private final File directory;
+  private final long maxBytes;
+
+  private GenerationCacheDir(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  public File directory() {
+    return directory;
+  }
+
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof GenerationCacheDir)) {
+      return false;
+    }
+    GenerationCacheDir other = (GenerationCacheDir) obj;
+    return ((directory == null) ? other.directory == null : directory.equals(other.directory))
+        && maxBytes == other.maxBytes;
+  }
+
+  @Override
+  public int hashCode() {
+    return ((directory == null) ? 0 : directory.hashCode()) + 31 * (int) maxBytes;
+  }
+
+  @Override
+  public String toString() {
+    return isEnabled() ? "Generation cache in " + directory : "No generation cache";
+  }
+}
@@ -0,0 +1,94 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.regex.Pattern;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Where to write GraalVM native-image configuration for the generated types, set with the
+ * {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>native-image picks up {@code reflect-config.json} and {@code serialization-config.json} from
+ * any directory under {@code META-INF/native-image/<group>/<artifact>/} on the classpath, so the
+ * option names the Maven coordinates of the project being compiled, e.g.
+ * {@code com.example/my-service}. Each generated type gets its own subdirectory.
+ */
+public final class NativeImageConfig implements Feature<NativeImageConfig> {
+
+  /** No native-image configuration is written. */
+  public static final NativeImageConfig DISABLED = new NativeImageConfig(null);
+
+  /**
+   * Processor option naming the {@code <group>/<artifact>} to write configuration for, e.g.
+   * {@code -Afreebuilder.nativeImage=com.example/my-service}.
+   */
+  public static final String OPTION = "freebuilder.nativeImage";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link NativeImageConfig}.
+   */
+  public static final FeatureType<NativeImageConfig> NATIVE_IMAGE_CONFIG =
+      new FeatureType<NativeImageConfig>() {
+
+        @Override
+        protected NativeImageConfig testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected NativeImageConfig forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          String coordinates = env.getOptions().get(OPTION);
+          return (coordinates == null) ? DISABLED : forArtifact(coordinates.trim());
+        }
+      };
+
+  private static final Pattern COORDINATES = Pattern.compile("[\\w.-]+/[\\w.-]+");
+
+  /**
+   * Returns configuration written under {@code META-INF/native-image/<coordinates>/}, or
+   * {@link #DISABLED} if {@code coordinates} is not of the form {@code <group>/<artifact>}.
+   */
+  public static NativeImageConfig forArtifact(String coordinates) {
+    return COORDINATES.matcher(coordinates).matches()
+        ? new NativeImageConfig(coordinates)
+        : DISABLED;
+  }
+
+  private final String coordinates;
+
+  private NativeImageConfig(String coordinates) {
+    this.coordinates = coordinates;
+  }
+
+  public boolean isEnabled() {
+    return coordinates != null;
+  }
+
+  /** Returns the directory to write configuration files to, relative to the class output. */
+  public String directory() {
+    return "META-INF/native-image/" + coordinates;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof NativeImageConfig)) {
+      return false;
+    }
+    String other = ((NativeImageConfig) obj).coordinates;
+    return (coordinates == null) ? other == null : coordinates.equals(other);
+  }
+
+  @Override
+  public int hashCode() {
+    return (coordinates == null) ? 0 : coordinates.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return isEnabled() ? "Native image config for " + coordinates : "No native image config";
+  }
+}
@@ -0,0 +1,57 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether value types pack their boolean and small enum properties into shared words, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>When a value type has at least two such properties, each takes one bit, or just enough bits
+ * to hold its enum's ordinals, of an {@code int} or {@code long} field instead of a field of its
+ * own, and {@code equals} compares the words whole. Only enums declared in the same source file
+ * as the value type are packed.
+ */
+public enum PackedFlags implements Feature<PackedFlags> {
+
+  ENABLED("Packed flags"), DISABLED("Unpacked flags");
+
+  /**
+   * Processor option enabling packed flags, e.g. {@code -Afreebuilder.packedFlags=true}.
+   */
+  public static final String OPTION = "freebuilder.packedFlags";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link PackedFlags}.
+   */
+  public static final FeatureType<PackedFlags> PACKED_FLAGS =
+      new FeatureType<PackedFlags>() {
+
+        @Override
+        protected PackedFlags testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected PackedFlags forEnvironment(ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  PackedFlags(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,61 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether serializable value types are written through a compact serialization proxy, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>When enabled, the value type of a {@link java.io.Serializable} {@code @FreeBuilder} type
+ * replaces itself on serialization with a proxy that writes each property in order, using the
+ * primitive {@code ObjectOutput} methods where it can, and writes collections and maps inline.
+ * On deserialization, the proxy rebuilds the value through the type's builder, so any validation
+ * the builder performs is applied to the stream too. Generic types, and types with multimap
+ * properties, keep the default serialized form.
+ */
+public enum SerializationProxy implements Feature<SerializationProxy> {
+
+  ENABLED("Serialization proxy"), DISABLED("Default serialization");
+
+  /**
+   * Processor option enabling serialization proxies, e.g.
+   * {@code -Afreebuilder.serializationProxy=true}.
+   */
+  public static final String OPTION = "freebuilder.serializationProxy";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link SerializationProxy}.
+   */
+  public static final FeatureType<SerializationProxy> SERIALIZATION_PROXY =
+      new FeatureType<SerializationProxy>() {
+
+        @Override
+        protected SerializationProxy testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected SerializationProxy forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  SerializationProxy(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,136 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Which optional parts of the generated API to leave out, selected with the {@value #OPTION}
+ * processor option. Defaults to {@link #FULL} in tests.
+ *
+ * <p>Every method a builder declares is loaded, verified and kept in metaspace whether or not it
+ * is ever called, so services that only use the core setters and {@code build()} can trim the
+ * method families they never use. See {@link Omission} for what can be left out.
+ */
+public final class SlimApi implements Feature<SlimApi> {
+
+  /** A part of the generated API that can be left out. */
+  public enum Omission {
+    /** {@code mapX(UnaryOperator)} methods. */
+    MAPPERS("mappers"),
+    /** {@code mutateX(Consumer)} methods. */
+    MUTATORS("mutators"),
+    /** {@code addAllX} overloads taking a {@code Spliterator} or {@code BaseStream}. */
+    STREAM_OVERLOADS("streams"),
+    /**
+     * The {@code buildPartial()} method and the partial type behind it. Ignored if the binary
+     * codec is enabled, as its views read defaults from partials; values are never sparse without
+     * them. Types generated without partials cannot be nested as buildable properties of types
+     * generated with them.
+     */
+    PARTIALS("partials"),
+    /** Javadoc comments on generated methods and types. */
+    JAVADOC("javadoc");
+
+    private final String optionValue;
+
+    Omission(String optionValue) {
+      this.optionValue = optionValue;
+    }
+
+    @Override
+    public String toString() {
+      return optionValue;
+    }
+  }
+
+  /** The full API: nothing is left out. */
+  public static final SlimApi FULL = new SlimApi(EnumSet.noneOf(Omission.class));
+
+  /**
+   * Processor option listing the parts of the API to leave out, e.g.
+   * {@code -Afreebuilder.slim=mappers,mutators,streams,partials,javadoc}, or {@code all}.
+   */
+  public static final String OPTION = "freebuilder.slim";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link SlimApi}.
+   */
+  public static final FeatureType<SlimApi> SLIM_API =
+      new FeatureType<SlimApi>() {
+
+        @Override
+        protected SlimApi testDefault(FeatureSet features) {
+          return FULL;
+        }
+
+        @Override
+        protected SlimApi forEnvironment(ProcessingEnvironment env, FeatureSet features) {
+          String omissions = env.getOptions().get(OPTION);
+          return (omissions == null) ? FULL : parse(omissions);
+        }
+      };
+
+  /** Returns an API leaving out {@code omissions}. */
+  public static SlimApi omitting(Omission... omissions) {
+    EnumSet<Omission> omitted = EnumSet.noneOf(Omission.class);
+    for (Omission omission : omissions) {
+      omitted.add(omission);
+    }
+    return new SlimApi(omitted);
+  }
+
+  /**
+   * Returns an API leaving out the comma-separated {@link Omission omissions} in
+   * {@code optionValue}, or all of them if it is {@code all}. Unrecognised values are ignored.
+   */
+  static SlimApi parse(String optionValue) {
+    EnumSet<Omission> omitted = EnumSet.noneOf(Omission.class);
+    for (String value : Splitter.on(',').trimResults().omitEmptyStrings().split(optionValue)) {
+      String lowerCaseValue = value.toLowerCase(Locale.ROOT);
+      if (lowerCaseValue.equals("all")) {
+        return new SlimApi(EnumSet.allOf(Omission.class));
+      }
+      for (Omission omission : Omission.values()) {
+        if (omission.optionValue.equals(lowerCaseValue)) {
+          omitted.add(omission);
+        }
+      }
+    }
+    return new SlimApi(omitted);
+  }
+
+  private final Set<Omission> omitted;
+
+  private SlimApi(EnumSet<Omission> omitted) {
+    this.omitted = omitted;
+  }
+
+  /** Returns whether {@code omission} should be left out of the generated API. */
+  public boolean omits(Omission omission) {
+    return omitted.contains(omission);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof SlimApi) && ((SlimApi) obj).omitted.equals(omitted);
+  }
+
+  @Override
+  public int hashCode() {
+    return omitted.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return omitted.isEmpty() ? "Full API" : "Slim API without " + Joiner.on(", ").join(omitted);
+  }
+}
@@ -189,6 +189,28 @@ public enum SourceLevel implements Feature<SourceLevel> {
     }
   }
 
+  public Optional<QualifiedName> uncheckedIOException() {
+    switch (this) {
+      case JAVA_6:
+      case JAVA_7:
+        return Optional.absent();
+
+      default:
+        return Optional.of(QualifiedName.of("java.io", "UncheckedIOException"));
+    }
+  }
+
+  public Optional<QualifiedName> collector() {
+    switch (this) {
+      case JAVA_6:
+      case JAVA_7:
+        return Optional.absent();
+
+      default:
+        return Optional.of(QualifiedName.of("java.util.stream", "Collector"));
+    }
+  }
+
   public List<String> javacArguments() {
     return ImmutableList.of("-source", Integer.toString(version));
   }
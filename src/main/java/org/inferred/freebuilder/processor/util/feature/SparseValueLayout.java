@@ -0,0 +1,88 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether value types with many properties store their non-required properties sparsely, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>When a type has more properties than the threshold, its value type keeps a field for each
+ * required property as usual, but only stores the other properties when they differ from the
+ * builder's defaults, in a single array indexed by a presence bitmap. Getters for properties that
+ * were left at their defaults return constants shared by every instance.
+ */
+public final class SparseValueLayout implements Feature<SparseValueLayout> {
+
+  /** Dense values: one field per property, however many properties the type has. */
+  public static final SparseValueLayout DISABLED = new SparseValueLayout(Integer.MAX_VALUE);
+
+  /**
+   * Processor option setting the property count above which values are sparse, e.g.
+   * {@code -Afreebuilder.sparseThreshold=64}.
+   */
+  public static final String OPTION = "freebuilder.sparseThreshold";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link SparseValueLayout}.
+   */
+  public static final FeatureType<SparseValueLayout> SPARSE_VALUE_LAYOUT =
+      new FeatureType<SparseValueLayout>() {
+
+        @Override
+        protected SparseValueLayout testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected SparseValueLayout forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          String threshold = env.getOptions().get(OPTION);
+          if (threshold == null) {
+            return DISABLED;
+          }
+          try {
+            return above(Integer.parseInt(threshold.trim()));
+          } catch (NumberFormatException e) {
+            return DISABLED;
+          }
+        }
+      };
+
+  /** Returns a layout making values sparse if they have more than {@code threshold} properties. */
+  public static SparseValueLayout above(int threshold) {
+    return (threshold < 0 || threshold == Integer.MAX_VALUE)
+        ? DISABLED
+        : new SparseValueLayout(threshold);
+  }
+
+  private final int threshold;
+
+  private SparseValueLayout(int threshold) {
+    this.threshold = threshold;
+  }
+
+  /** Returns whether a type with {@code propertyCount} properties should be sparse. */
+  public boolean appliesTo(int propertyCount) {
+    return propertyCount > threshold;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return (obj instanceof SparseValueLayout) && ((SparseValueLayout) obj).threshold == threshold;
+  }
+
+  @Override
+  public int hashCode() {
+    return threshold;
+  }
+
+  @Override
+  public String toString() {
+    return (threshold == Integer.MAX_VALUE)
+        ? "Dense values"
+        : "Sparse values above " + threshold + " properties";
+  }
+}
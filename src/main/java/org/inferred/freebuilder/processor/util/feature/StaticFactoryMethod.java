@@ -0,0 +1,51 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate a static {@code of} factory method taking every property value, enabled
+ * with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ */
+public enum StaticFactoryMethod implements Feature<StaticFactoryMethod> {
+
+  ENABLED("Static factory"), DISABLED("No static factory");
+
+  /** Processor option enabling the static factory method, e.g. {@code -Afreebuilder.of=true}. */
+  public static final String OPTION = "freebuilder.of";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link StaticFactoryMethod}.
+   */
+  public static final FeatureType<StaticFactoryMethod> STATIC_FACTORY =
+      new FeatureType<StaticFactoryMethod>() {
+
+        @Override
+        protected StaticFactoryMethod testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected StaticFactoryMethod forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  StaticFactoryMethod(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
@@ -0,0 +1,58 @@
+package org.inferred.freebuilder.processor.util.feature;
+
+import org.inferred.freebuilder.processor.util.SourceBuilder;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Whether to generate streaming Jackson codecs for {@code @JsonDeserialize}-annotated types,
+ * enabled with the {@value #OPTION} processor option. Defaults to {@link #DISABLED} in tests.
+ *
+ * <p>To use the generated {@code Value_JsonDeserializer}, name it in the type's annotation, e.g.
+ * {@code @JsonDeserialize(using = DataType_Builder.Value_JsonDeserializer.class)}. The generated
+ * code requires Jackson 2.6 or later.
+ */
+public enum StreamingJackson implements Feature<StreamingJackson> {
+
+  ENABLED("Streaming Jackson"), DISABLED("Reflective Jackson");
+
+  /**
+   * Processor option enabling the streaming codecs, e.g.
+   * {@code -Afreebuilder.jackson.streaming=true}.
+   */
+  public static final String OPTION = "freebuilder.jackson.streaming";
+
+  /**
+   * Constant to pass to {@link SourceBuilder#feature(FeatureType)} to get the current status of
+   * {@link StreamingJackson}.
+   */
+  public static final FeatureType<StreamingJackson> STREAMING_JACKSON =
+      new FeatureType<StreamingJackson>() {
+
+        @Override
+        protected StreamingJackson testDefault(FeatureSet features) {
+          return DISABLED;
+        }
+
+        @Override
+        protected StreamingJackson forEnvironment(
+            ProcessingEnvironment env, FeatureSet features) {
+          return Boolean.parseBoolean(env.getOptions().get(OPTION)) ? ENABLED : DISABLED;
+        }
+      };
+
+  private final String humanReadableFormat;
+
+  StreamingJackson(String humanReadableFormat) {
+    this.humanReadableFormat = humanReadableFormat;
+  }
+
+  public boolean isEnabled() {
+    return this == ENABLED;
+  }
+
+  @Override
+  public String toString() {
+    return humanReadableFormat;
+  }
+}
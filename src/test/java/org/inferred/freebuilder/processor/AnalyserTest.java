@@ -348,6 +348,65 @@ public class AnalyserTest {
             + "implement toBuilder");
   }
 
+  @Test
+  public void witherMethod() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType {",
+        "  String getName();",
+        "  int getAge();",
+        "  DataType withName(String name);",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    Map<String, Property> properties = uniqueIndex(dataType.getProperties(), GET_NAME);
+    assertThat(properties.keySet()).containsExactly("name", "age");
+    assertTrue(properties.get("name").isWitherDeclared());
+    assertFalse(properties.get("age").isWitherDeclared());
+    assertThat(messager.getMessagesByElement().keys()).isEmpty();
+  }
+
+  @Test
+  public void witherMethod_genericInterface() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType<T> {",
+        "  T getItem();",
+        "  DataType<T> withItem(T item);",
+        "  class Builder<T> extends DataType_Builder<T> { }",
+        "}"));
+    assertTrue(getOnlyElement(dataType.getProperties()).isWitherDeclared());
+    assertThat(messager.getMessagesByElement().keys()).isEmpty();
+  }
+
+  @Test
+  public void witherMethod_noMatchingProperty() throws CannotGenerateCodeException {
+    analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType {",
+        "  String getName();",
+        "  DataType withNickname(String nickname);",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    assertThat(messager.getMessagesByElement().keySet()).containsExactly("withNickname");
+    assertThat(messager.getMessagesByElement().get("withNickname"))
+        .containsExactly("[ERROR] No property found for wither method");
+  }
+
+  @Test
+  public void witherMethod_wrongParameterType() throws CannotGenerateCodeException {
+    Metadata dataType = analyser.analyse(model.newType(
+        "package com.example;",
+        "public interface DataType {",
+        "  String getName();",
+        "  DataType withName(CharSequence name);",
+        "  class Builder extends DataType_Builder { }",
+        "}"));
+    assertFalse(getOnlyElement(dataType.getProperties()).isWitherDeclared());
+    assertThat(messager.getMessagesByElement().keySet()).containsExactly("withName");
+    assertThat(messager.getMessagesByElement().get("withName"))
+        .containsExactly("[ERROR] Parameter of withName must match the type of property name");
+  }
+
   @Test
   public void twoBeanGetters() throws CannotGenerateCodeException {
     Metadata dataType = analyser.analyse(model.newType(
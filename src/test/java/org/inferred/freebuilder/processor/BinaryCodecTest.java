@@ -0,0 +1,637 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.BinaryCodec;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.PackedFlags;
+import org.inferred.freebuilder.processor.util.feature.SparseValueLayout;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class BinaryCodecTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, BinaryCodec.ENABLED),
+        new StaticFeatureSet(JAVA_8, BinaryCodec.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, BinaryCodec.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, BinaryCodec.ENABLED),
+        new StaticFeatureSet(JAVA_8, BinaryCodec.ENABLED, SparseValueLayout.above(0)),
+        new StaticFeatureSet(JAVA_8, BinaryCodec.ENABLED, PackedFlags.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  int getX();")
+      .addLine("  @%s String getName();", Nullable.class)
+      .addLine("  %s<Integer> getValues();", List.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  private static final JavaFileObject ALL_TYPES = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface AllTypes {")
+      .addLine("  enum Color { RED, GREEN }")
+      .addLine("")
+      .addLine("  boolean isFlag();")
+      .addLine("  byte getByteValue();")
+      .addLine("  short getShortValue();")
+      .addLine("  int getIntValue();")
+      .addLine("  long getLongValue();")
+      .addLine("  char getCharValue();")
+      .addLine("  float getFloatValue();")
+      .addLine("  double getDoubleValue();")
+      .addLine("  String getString();")
+      .addLine("  Color getColor();")
+      .addLine("  @%s Long getBoxed();", Nullable.class)
+      .addLine("  %s<Color> getColors();", Set.class)
+      .addLine("  %s<String, Double> getWeights();", Map.class)
+      .addLine("")
+      .addLine("  class Builder extends AllTypes_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void writesTaggedFieldsInPropertyOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setX(-1)")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .addValues(1, 300)")
+            .addLine("    .build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(12);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(value, buffer);")
+            .addLine("assertEquals(")
+            .addLine("    Arrays.toString(new byte[] {")
+            .addLine("        8, 1,  // x = -1")
+            .addLine("        18, 1, 97,  // name = \"a\"")
+            .addLine("        28, 2, 0, 2, (byte) 0xD8, 4,  // values = [1, 300]")
+            .addLine("        0}),")
+            .addLine("    Arrays.toString(buffer.array()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void omitsNullPropertiesAndEmptyCollections() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setX(3).build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(8);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(value, buffer);")
+            .addLine("assertEquals(3, buffer.position());")
+            .addLine("assertEquals(")
+            .addLine("    Arrays.toString(new byte[] {8, 6, 0}),")
+            .addLine("    Arrays.toString(Arrays.copyOf(buffer.array(), 3)));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void roundTripsEveryEncoding() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ALL_TYPES)
+        .with(new TestBuilder()
+            .addImport("com.example.AllTypes")
+            .addImport("java.io.ByteArrayInputStream")
+            .addImport("java.io.ByteArrayOutputStream")
+            .addImport("java.io.DataInputStream")
+            .addImport("java.io.DataOutputStream")
+            .addImport("java.io.IOException")
+            .addLine("AllTypes value = new AllTypes.Builder()")
+            .addLine("    .setFlag(true)")
+            .addLine("    .setByteValue(Byte.MIN_VALUE)")
+            .addLine("    .setShortValue((short) -300)")
+            .addLine("    .setIntValue(Integer.MAX_VALUE)")
+            .addLine("    .setLongValue(Long.MIN_VALUE)")
+            .addLine("    .setCharValue('\\u20ac')")
+            .addLine("    .setFloatValue(1.5f)")
+            .addLine("    .setDoubleValue(-0.25)")
+            .addLine("    .setString(\"caf\\u00e9\")")
+            .addLine("    .setColor(AllTypes.Color.GREEN)")
+            .addLine("    .setBoxed(7L)")
+            .addLine("    .addColors(AllTypes.Color.RED, AllTypes.Color.GREEN)")
+            .addLine("    .putWeights(\"a\", 0.5)")
+            .addLine("    .putWeights(\"b\", 2.0)")
+            .addLine("    .build();")
+            .addLine("try {")
+            .addLine("  ByteArrayOutputStream bytes = new ByteArrayOutputStream();")
+            .addLine("  AllTypes.Builder.Value_BinaryCodec.writeTo(")
+            .addLine("      value, new DataOutputStream(bytes));")
+            .addLine("  DataInputStream in =")
+            .addLine("      new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));")
+            .addLine("  assertEquals(value, AllTypes.Builder.Value_BinaryCodec.readFrom(in));")
+            .addLine("  assertEquals(-1, in.read());")
+            .addLine("} catch (IOException e) {")
+            .addLine("  throw new AssertionError(e);")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void roundTripsConsecutiveValuesThroughByteBuffer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType first = new DataType.Builder()")
+            .addLine("    .setX(1)")
+            .addLine("    .setName(\"first\")")
+            .addLine("    .build();")
+            .addLine("DataType second = new DataType.Builder()")
+            .addLine("    .setX(2)")
+            .addLine("    .addValues(4, 5, 6)")
+            .addLine("    .build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(64);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(first, buffer);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(second, buffer);")
+            .addLine("buffer.flip();")
+            .addLine("assertEquals(first, DataType.Builder.Value_BinaryCodec.readFrom(buffer));")
+            .addLine("assertEquals(second, DataType.Builder.Value_BinaryCodec.readFrom(buffer));")
+            .addLine("assertFalse(buffer.hasRemaining());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void writeToByteBufferThrowsWhenFull() {
+    thrown.expect(java.nio.BufferOverflowException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setX(1)")
+            .addLine("    .setName(\"a long name\")")
+            .addLine("    .build();")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(")
+            .addLine("    value, java.nio.ByteBuffer.allocate(4));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void readFromByteBufferRejectsTruncatedValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("try {")
+            .addLine("  DataType.Builder.Value_BinaryCodec.readFrom(")
+            .addLine("      java.nio.ByteBuffer.wrap(new byte[] {8, 6, 18, 5, 97}));")
+            .addLine("  fail(\"Expected IOException\");")
+            .addLine("} catch (java.io.IOException expected) {}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void readFromThrowsIfRequiredPropertyMissing() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("try {")
+            .addLine("  DataType.Builder.Value_BinaryCodec.readFrom(")
+            .addLine("      java.nio.ByteBuffer.wrap(new byte[] {18, 1, 97, 0}));")
+            .addLine("  fail(\"Expected IOException\");")
+            .addLine("} catch (java.io.IOException e) {")
+            .addLine("  assertTrue(e.getMessage(), e.getMessage().contains(\"x\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void readFromRejectsUnknownEnumConstant() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  enum Color { RED }")
+            .addLine("  Color getColor();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("try {")
+            .addLine("  DataType.Builder.Value_BinaryCodec.readFrom(java.nio.ByteBuffer.wrap(")
+            .addLine("      new byte[] {10, 4, 'B', 'L', 'U', 'E', 0}));")
+            .addLine("  fail(\"Expected IOException\");")
+            .addLine("} catch (java.io.IOException e) {")
+            .addLine("  assertTrue(e.getMessage(), e.getMessage().contains(\"BLUE\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void skipsUnknownFieldsOfEveryWireType() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("byte[] bytes = {")
+            .addLine("    72, (byte) 0x96, 1,  // field 9: varint 150")
+            .addLine("    82, 2, 104, 105,  // field 10: bytes \"hi\"")
+            .addLine("    89, 1, 2, 3, 4, 5, 6, 7, 8,  // field 11: fixed64")
+            .addLine("    99, 8, 2, 18, 1, 97, 0,  // field 12: message")
+            .addLine("    108, 2, 0, 1, 2,  // field 13: list of varints")
+            .addLine("    117, 1, 2, 3, 4,  // field 14: fixed32")
+            .addLine("    126, 1, 2, 0, 1, 107, 3,  // field 15: map of bytes to varints")
+            .addLine("    8, 10,  // x = 5")
+            .addLine("    0};")
+            .addLine("DataType expected = new DataType.Builder().setX(5).build();")
+            .addLine("assertEquals(expected,")
+            .addLine("    DataType.Builder.Value_BinaryCodec.readFrom(")
+            .addLine("        java.nio.ByteBuffer.wrap(bytes)));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void encodesNestedFreeBuilderTypesRecursively() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface Item {")
+            .addLine("  String getName();")
+            .addLine("  int getQuantity();")
+            .addLine("")
+            .addLine("  class Builder extends Item_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface Order {")
+            .addLine("  Item getPrimary();")
+            .addLine("  %s<Item> getExtras();", List.class)
+            .addLine("  %s<String, Item> getByCode();", Map.class)
+            .addLine("")
+            .addLine("  class Builder extends Order_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new TestBuilder()
+            .addImport("com.example.Item")
+            .addImport("com.example.Order")
+            .addLine("Item apple = new Item.Builder().setName(\"apple\").setQuantity(3).build();")
+            .addLine("Item pear = new Item.Builder().setName(\"pear\").setQuantity(1).build();")
+            .addLine("Order order = new Order.Builder()")
+            .addLine("    .setPrimary(apple)")
+            .addLine("    .addExtras(pear, apple)")
+            .addLine("    .putByCode(\"p\", pear)")
+            .addLine("    .build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(128);")
+            .addLine("Order.Builder.Value_BinaryCodec.writeTo(order, buffer);")
+            .addLine("buffer.flip();")
+            .addLine("assertEquals(order, Order.Builder.Value_BinaryCodec.readFrom(buffer));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewDecodesEveryEncoding() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ALL_TYPES)
+        .with(new TestBuilder()
+            .addImport("com.example.AllTypes")
+            .addLine("AllTypes value = new AllTypes.Builder()")
+            .addLine("    .setFlag(true)")
+            .addLine("    .setByteValue(Byte.MIN_VALUE)")
+            .addLine("    .setShortValue((short) -300)")
+            .addLine("    .setIntValue(Integer.MAX_VALUE)")
+            .addLine("    .setLongValue(Long.MIN_VALUE)")
+            .addLine("    .setCharValue('\\u20ac')")
+            .addLine("    .setFloatValue(1.5f)")
+            .addLine("    .setDoubleValue(-0.25)")
+            .addLine("    .setString(\"caf\\u00e9\")")
+            .addLine("    .setColor(AllTypes.Color.GREEN)")
+            .addLine("    .addColors(AllTypes.Color.RED, AllTypes.Color.GREEN)")
+            .addLine("    .putWeights(\"a\", 0.5)")
+            .addLine("    .build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(128);")
+            .addLine("AllTypes.Builder.Value_BinaryCodec.writeTo(value, buffer);")
+            .addLine("buffer.flip();")
+            .addLine("AllTypes view = AllTypes.Builder.Value_BinaryCodec.view(buffer);")
+            .addLine("assertFalse(buffer.hasRemaining());")
+            .addLine("assertTrue(view.isFlag());")
+            .addLine("assertEquals(Byte.MIN_VALUE, view.getByteValue());")
+            .addLine("assertEquals(-300, view.getShortValue());")
+            .addLine("assertEquals(Integer.MAX_VALUE, view.getIntValue());")
+            .addLine("assertEquals(Long.MIN_VALUE, view.getLongValue());")
+            .addLine("assertEquals('\\u20ac', view.getCharValue());")
+            .addLine("assertEquals(1.5f, view.getFloatValue(), 0);")
+            .addLine("assertEquals(-0.25, view.getDoubleValue(), 0);")
+            .addLine("assertEquals(\"caf\\u00e9\", view.getString());")
+            .addLine("assertEquals(AllTypes.Color.GREEN, view.getColor());")
+            .addLine("assertNull(view.getBoxed());")
+            .addLine("assertEquals(value.getColors(), view.getColors());")
+            .addLine("assertEquals(value.getWeights(), view.getWeights());")
+            .addLine("assertEquals(value.toString(), view.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewDecodesEachPropertyOnceOnFirstCall() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setX(1).setName(\"a\").build();")
+            .addLine("java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(6);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(value, buffer);")
+            .addLine("buffer.flip();")
+            .addLine("DataType view = DataType.Builder.Value_BinaryCodec.view(buffer);")
+            .addLine("buffer.put(4, (byte) 'b');")
+            .addLine("assertEquals(\"b\", view.getName());")
+            .addLine("buffer.put(4, (byte) 'c');")
+            .addLine("assertEquals(\"b\", view.getName());")
+            .addLine("assertEquals(1, view.getX());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewReturnsDefaultsForAbsentPropertiesAndAdvancesBuffer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("java.nio.ByteBuffer buffer =")
+            .addLine("    java.nio.ByteBuffer.wrap(new byte[] {8, 6, 0, 8, 8, 0});")
+            .addLine("DataType first = DataType.Builder.Value_BinaryCodec.view(buffer);")
+            .addLine("assertEquals(3, buffer.position());")
+            .addLine("DataType second = DataType.Builder.Value_BinaryCodec.view(buffer);")
+            .addLine("assertFalse(buffer.hasRemaining());")
+            .addLine("assertEquals(3, first.getX());")
+            .addLine("assertNull(first.getName());")
+            .addLine("assertTrue(first.getValues().isEmpty());")
+            .addLine("assertEquals(4, second.getX());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewEqualityComparesDecodedProperties() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setX(1).addValues(2, 3).build();")
+            .addLine("java.nio.ByteBuffer heap = java.nio.ByteBuffer.allocate(16);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(value, heap);")
+            .addLine("DataType.Builder.Value_BinaryCodec.writeTo(")
+            .addLine("    new DataType.Builder().setX(2).build(), heap);")
+            .addLine("heap.flip();")
+            .addLine("java.nio.ByteBuffer reordered = java.nio.ByteBuffer.wrap(new byte[] {")
+            .addLine("    82, 2, 104, 105,  // field 10: bytes \"hi\"")
+            .addLine("    28, 2, 0, 4, 6,  // values = [2, 3]")
+            .addLine("    8, 2,  // x = 1")
+            .addLine("    0});")
+            .addLine("DataType first = DataType.Builder.Value_BinaryCodec.view(heap);")
+            .addLine("DataType second = DataType.Builder.Value_BinaryCodec.view(heap);")
+            .addLine("DataType copy = DataType.Builder.Value_BinaryCodec.view(reordered);")
+            .addLine("assertEquals(first, copy);")
+            .addLine("assertEquals(value.hashCode(), first.hashCode());")
+            .addLine("assertEquals(value.hashCode(), copy.hashCode());")
+            .addLine("assertFalse(first.equals(second));")
+            .addLine("assertEquals(first, value);")
+            .addLine("assertEquals(value, first);")
+            .addLine("assertFalse(value.equals(second));")
+            .addLine("assertEquals(1, new java.util.HashSet<DataType>(")
+            .addLine("    java.util.Arrays.asList(value, first, copy)).size());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewSkipsUnknownFields() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("byte[] bytes = {")
+            .addLine("    82, 2, 104, 105,  // field 10: bytes \"hi\"")
+            .addLine("    8, 10,  // x = 5")
+            .addLine("    99, 8, 2, 18, 1, 97, 0,  // field 12: message")
+            .addLine("    0};")
+            .addLine("DataType view = DataType.Builder.Value_BinaryCodec.view(")
+            .addLine("    java.nio.ByteBuffer.wrap(bytes));")
+            .addLine("assertEquals(5, view.getX());")
+            .addLine("assertNull(view.getName());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewThrowsIfRequiredPropertyMissing() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("try {")
+            .addLine("  DataType.Builder.Value_BinaryCodec.view(")
+            .addLine("      java.nio.ByteBuffer.wrap(new byte[] {18, 1, 97, 0}));")
+            .addLine("  fail(\"Expected IOException\");")
+            .addLine("} catch (java.io.IOException e) {")
+            .addLine("  assertTrue(e.getMessage(), e.getMessage().contains(\"x\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewGetterWrapsMalformedProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType view = DataType.Builder.Value_BinaryCodec.view(")
+            .addLine("    java.nio.ByteBuffer.wrap(new byte[] {")
+            .addLine("        8, 2,  // x = 1")
+            .addLine("        28, 1, 2, 1, 97,  // values = [\"a\"], of the wrong wire type")
+            .addLine("        0}));")
+            .addLine("assertEquals(1, view.getX());")
+            .addLine("try {")
+            .addLine("  view.getValues();")
+            .addLine("  fail(\"Expected exception\");")
+            .addLine("} catch (RuntimeException e) {")
+            .addLine("  assertTrue(e.toString(), e.getCause() instanceof java.io.IOException);")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedWhenNestedTypeHasNoCodec() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface Item {")
+            .addLine("  %s getWhen();", Date.class)
+            .addLine("")
+            .addLine("  class Builder extends Item_Builder {}")
+            .addLine("}")
+            .build())
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  Item getItem();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_BinaryCodec\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedForSelfContainingTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  %s<DataType> getChildren();", List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_BinaryCodec\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedForUnsupportedPropertyTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  %s getWhen();", Date.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_BinaryCodec\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_BinaryCodec\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(ALL_TYPES)
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport("java.util.Arrays");
+  }
+}
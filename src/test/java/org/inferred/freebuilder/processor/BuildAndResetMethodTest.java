@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.BuildAndResetMethod;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class BuildAndResetMethodTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, BuildAndResetMethod.ENABLED),
+        new StaticFeatureSet(JAVA_8, BuildAndResetMethod.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, BuildAndResetMethod.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, BuildAndResetMethod.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("  %s<Integer> getIds();", java.util.Set.class)
+      .addLine("  %s<String, Integer> getScores();", java.util.Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void buildAndResetReturnsValueEqualToBuiltValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .addIds(1, 2)")
+            .addLine("    .putScores(\"a\", 1);")
+            .addLine("DataType expected = builder.build();")
+            .addLine("DataType value = builder.buildAndReset();")
+            .addLine("assertEquals(expected, value);")
+            .addLine("assertEquals(expected.toString(), value.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetClearsBuilder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .addIds(1)")
+            .addLine("    .putScores(\"a\", 1);")
+            .addLine("builder.buildAndReset();")
+            .addLine("assertThat(builder.getTags()).isEmpty();")
+            .addLine("assertThat(builder.getIds()).isEmpty();")
+            .addLine("assertThat(builder.getScores()).isEmpty();")
+            .addLine("DataType value = builder.setName(\"Bob\").build();")
+            .addLine("assertEquals(\"Bob\", value.getName());")
+            .addLine("assertThat(value.getTags()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetUnsetsRequiredProperties() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [name]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder().setName(\"Alice\");")
+            .addLine("builder.buildAndReset();")
+            .addLine("builder.build();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void builderChangesAfterResetDoNotAffectValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .addIds(1)")
+            .addLine("    .putScores(\"a\", 1);")
+            .addLine("DataType value = builder.buildAndReset();")
+            .addLine("builder.addTags(\"y\").addIds(2).putScores(\"b\", 2);")
+            .addLine("assertThat(value.getTags()).containsExactly(\"x\");")
+            .addLine("assertThat(value.getIds()).containsExactly(1);")
+            .addLine("assertThat(value.getScores()).containsEntry(\"a\", 1);")
+            .addLine("assertThat(value.getScores()).hasSize(1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetReturnsUnmodifiableCollections() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .buildAndReset();")
+            .addLine("value.getTags().add(\"y\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetThrowsIfRequiredPropertyUnset() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [name]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder().addTags(\"x\").buildAndReset();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetUsesOverriddenBuild() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("name must not be empty");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("  %s<String> getTags();", List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {")
+            .addLine("    @Override public DataType build() {")
+            .addLine("      DataType value = super.build();")
+            .addLine("      if (value.getName().isEmpty()) {")
+            .addLine("        throw new IllegalStateException(\"name must not be empty\");")
+            .addLine("      }")
+            .addLine("      return value;")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("new DataType.Builder().setName(\"\").buildAndReset();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildAndResetNotGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (%s method : DataType.Builder.class.getMethods()) {",
+                java.lang.reflect.Method.class)
+            .addLine("  assertFalse(method.getName().equals(\"buildAndReset\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
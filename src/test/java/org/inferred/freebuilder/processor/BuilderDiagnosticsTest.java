@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.BuilderDiagnostics.BUILDER_DIAGNOSTICS;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.BuilderDiagnostics;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class BuilderDiagnosticsTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    ImmutableList.Builder<FeatureSet> featureSets = ImmutableList.<FeatureSet>builder()
+        .add(new StaticFeatureSet(JAVA_8, BuilderDiagnostics.countersOnly()))
+        .add(new StaticFeatureSet(
+            JAVA_8, GuavaLibrary.AVAILABLE, BuilderDiagnostics.countersOnly()));
+    if (jfrAvailable()) {
+      featureSets.add(new StaticFeatureSet(JAVA_8, BuilderDiagnostics.withEvents(2)));
+    }
+    return featureSets.build();
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("")
+      .addLine("  Builder toBuilder();")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Before
+  public void setUp() throws ClassNotFoundException {
+    if (features.get(BUILDER_DIAGNOSTICS).hasEvents()) {
+      behaviorTester.withPermittedPackage(Class.forName("jdk.jfr.Event").getPackage());
+    }
+  }
+
+  @Test
+  public void buildsAreCounted() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("System.setProperty(\"freebuilder.diagnostics.enabled\", \"true\");")
+            .addLine("long builds = DataType.Builder.Value_Diagnostics.BUILDS.sum();")
+            .addLine("DataType.Builder builder = new DataType.Builder().setName(\"Alice\");")
+            .addLine("builder.build();")
+            .addLine("builder.addTags(\"x\").build();")
+            .addLine("assertEquals(builds + 2, DataType.Builder.Value_Diagnostics.BUILDS.sum());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mergesAndToBuildersAreCounted() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("System.setProperty(\"freebuilder.diagnostics.enabled\", \"true\");")
+            .addLine("long merges = DataType.Builder.Value_Diagnostics.MERGES.sum();")
+            .addLine("long toBuilders = DataType.Builder.Value_Diagnostics.TO_BUILDERS.sum();")
+            .addLine("DataType.Builder builder = new DataType.Builder().setName(\"Alice\");")
+            .addLine("DataType value = builder.build();")
+            .addLine("new DataType.Builder().mergeFrom(builder);")
+            .addLine("value.toBuilder();")
+            .addLine("assertEquals(merges + 2, DataType.Builder.Value_Diagnostics.MERGES.sum());")
+            .addLine("assertEquals(toBuilders + 1,")
+            .addLine("    DataType.Builder.Value_Diagnostics.TO_BUILDERS.sum());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void failedBuildIsNotCounted() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Not set: [name]");
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("System.setProperty(\"freebuilder.diagnostics.enabled\", \"true\");")
+            .addLine("long builds = DataType.Builder.Value_Diagnostics.BUILDS.sum();")
+            .addLine("try {")
+            .addLine("  new DataType.Builder().addTags(\"x\").build();")
+            .addLine("} finally {")
+            .addLine("  assertEquals(builds, DataType.Builder.Value_Diagnostics.BUILDS.sum());")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void largeBuildRecordsEvent() {
+    assumeTrue(features.get(BUILDER_DIAGNOSTICS).hasEvents());
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("System.setProperty(\"freebuilder.diagnostics.enabled\", \"true\");")
+            .addLine("jdk.jfr.Recording recording = new jdk.jfr.Recording();")
+            .addLine("recording.enable(\"com.example.DataType.LargeBuild\");")
+            .addLine("recording.start();")
+            .addLine("new DataType.Builder().setName(\"Alice\").addTags(\"x\", \"y\").build();")
+            .addLine("new DataType.Builder().setName(\"Bob\").addTags(\"x\", \"y\", \"z\")")
+            .addLine("    .build();")
+            .addLine("recording.stop();")
+            .addLine("java.nio.file.Path dump =")
+            .addLine("    java.nio.file.Files.createTempFile(\"diagnostics\", \".jfr\");")
+            .addLine("recording.dump(dump);")
+            .addLine("recording.close();")
+            .addLine("java.util.List<jdk.jfr.consumer.RecordedEvent> events =")
+            .addLine("    jdk.jfr.consumer.RecordingFile.readAllEvents(dump);")
+            .addLine("java.nio.file.Files.delete(dump);")
+            .addLine("assertEquals(1, events.size());")
+            .addLine("assertEquals(\"tags\", events.get(0).getString(\"property\"));")
+            .addLine("assertEquals(3, events.get(0).getInt(\"size\"));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void diagnosticsNotGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet(JAVA_8)))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (Class<?> nested : DataType.Builder.class.getSuperclass()")
+            .addLine("    .getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_Diagnostics\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  private static boolean jfrAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
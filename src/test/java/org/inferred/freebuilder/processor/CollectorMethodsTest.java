@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.CollectorMethods;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class CollectorMethodsTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_8, CollectorMethods.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, CollectorMethods.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<Integer> getItems();", List.class)
+      .addLine("  %s<String> getTags();", Set.class)
+      .addLine("  %s<String, Integer> getScores();", Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public Builder() {")
+      .addLine("      setName(\"default\");")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void listCollectorAddsEachElement() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = %s.of(1, 2, 3)", Stream.class)
+            .addLine("    .collect(DataType.Builder.itemsCollector());")
+            .addLine("assertThat(value.getItems()).containsExactly(1, 2, 3).inOrder();")
+            .addLine("assertEquals(\"default\", value.getName());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void listCollectorPreservesOrderOnParallelStream() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = %s.range(0, 10000).boxed().parallel()", IntStream.class)
+            .addLine("    .collect(DataType.Builder.itemsCollector());")
+            .addLine("assertEquals(10000, value.getItems().size());")
+            .addLine("for (int i = 0; i < 10000; i++) {")
+            .addLine("  assertEquals(i, (int) value.getItems().get(i));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void setCollectorDeduplicatesOnParallelStream() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = %s.range(0, 10000).parallel()", IntStream.class)
+            .addLine("    .mapToObj(i -> \"tag\" + (i %% 10))")
+            .addLine("    .collect(DataType.Builder.tagsCollector());")
+            .addLine("assertThat(value.getTags()).hasSize(10);")
+            .addLine("assertThat(value.getTags()).contains(\"tag7\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mapCollectorPutsEachEntry() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Map<String, Integer> scores = new java.util.LinkedHashMap<>();")
+            .addLine("scores.put(\"a\", 1);")
+            .addLine("scores.put(\"b\", 2);")
+            .addLine("DataType value = scores.entrySet().parallelStream()")
+            .addLine("    .collect(DataType.Builder.scoresCollector());")
+            .addLine("assertThat(value.getScores()).containsEntry(\"a\", 1);")
+            .addLine("assertThat(value.getScores()).containsEntry(\"b\", 2);")
+            .addLine("assertThat(value.getScores()).hasSize(2);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void collectorSupportsGenericTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType<A, B extends Number> {")
+            .addLine("  %s<A, B> getScores();", Map.class)
+            .addLine("")
+            .addLine("  class Builder<A, B extends Number> extends DataType_Builder<A, B> {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType<String, Integer> value = %s.of(\"a\", \"bb\")", Stream.class)
+            .addLine("    .map(s -> new java.util.AbstractMap.SimpleEntry<>(s, s.length()))")
+            .addLine("    .collect(DataType.Builder.<String, Integer>scoresCollector());")
+            .addLine("assertThat(value.getScores()).containsEntry(\"bb\", 2);")
+            .addLine("assertThat(value.getScores()).hasSize(2);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void collectorNotGeneratedForRequiredProperties() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("  %s<Integer> getItems();", List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("for (%s method : DataType.Builder.class.getMethods()) {",
+                java.lang.reflect.Method.class)
+            .addLine("  assertFalse(method.getName().equals(\"itemsCollector\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void collectorNotGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet(JAVA_8)))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (%s method : DataType.Builder.class.getMethods()) {",
+                java.lang.reflect.Method.class)
+            .addLine("  assertFalse(method.getName().endsWith(\"Collector\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(Map.class);
+  }
+}
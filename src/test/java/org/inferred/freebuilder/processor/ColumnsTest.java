@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.ColumnsContainer;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class ColumnsTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, ColumnsContainer.ENABLED),
+        new StaticFeatureSet(JAVA_8, ColumnsContainer.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, ColumnsContainer.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, ColumnsContainer.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  long getId();")
+      .addLine("  int getCount();")
+      .addLine("  double getScore();")
+      .addLine("  String getTag();")
+      .addLine("  @%s String getNote();", Nullable.class)
+      .addLine("  %s<String> getLabels();", List.class)
+      .addLine("")
+      .addLine("  DataType withCount(int count);")
+      .addLine("  Builder toBuilder();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void readsBackAppendedValues() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType first = new DataType.Builder()")
+            .addLine("    .setId(1L << 40)")
+            .addLine("    .setCount(3)")
+            .addLine("    .setScore(0.5)")
+            .addLine("    .setTag(\"a\")")
+            .addLine("    .addLabels(\"x\", \"y\")")
+            .addLine("    .build();")
+            .addLine("DataType.Builder.Value_Columns columns =")
+            .addLine("    new DataType.Builder.Value_Columns()")
+            .addLine("        .append(first)")
+            .addLine("        .append(first.toBuilder().setCount(4).setNote(\"n\"));")
+            .addLine("assertEquals(2, columns.size());")
+            .addLine("assertEquals(1L << 40, columns.getId(0));")
+            .addLine("assertEquals(4, columns.getCount(1));")
+            .addLine("assertEquals(0.5, columns.getScore(1), 0.0);")
+            .addLine("assertEquals(\"a\", columns.getTag(1));")
+            .addLine("assertNull(columns.getNote(0));")
+            .addLine("assertEquals(\"n\", columns.getNote(1));")
+            .addLine("assertEquals(ImmutableList.of(\"x\", \"y\"), columns.getLabels(1));")
+            .addLine("DataType view = columns.get(0);")
+            .addLine("assertEquals(first, view.toBuilder().build());")
+            .addLine("assertEquals(first.hashCode(), view.hashCode());")
+            .addLine("assertEquals(first.toString(), view.toString());")
+            .addLine("assertEquals(first.withCount(4), view.withCount(4));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void viewsOfEqualValuesAreEqual() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setId(1)")
+            .addLine("    .setCount(2)")
+            .addLine("    .setScore(-0.0)")
+            .addLine("    .setTag(\"a\")")
+            .addLine("    .build();")
+            .addLine("DataType.Builder.Value_Columns columns =")
+            .addLine("    new DataType.Builder.Value_Columns()")
+            .addLine("        .append(value)")
+            .addLine("        .append(value)")
+            .addLine("        .append(value.withCount(3));")
+            .addLine("assertEquals(columns.get(0), columns.get(1));")
+            .addLine("assertFalse(columns.get(0).equals(columns.get(2)));")
+            .addLine("assertFalse(columns.get(0).equals(value));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void growsPastInitialCapacity() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder.Value_Columns columns =")
+            .addLine("    new DataType.Builder.Value_Columns(0);")
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .setId(0)")
+            .addLine("    .setScore(1)")
+            .addLine("    .setTag(\"t\");")
+            .addLine("for (int i = 0; i < 100; i++) {")
+            .addLine("  columns.append(builder.setCount(i));")
+            .addLine("}")
+            .addLine("assertEquals(100, columns.size());")
+            .addLine("int i = 0;")
+            .addLine("for (DataType view : columns) {")
+            .addLine("  assertEquals(i, view.getCount());")
+            .addLine("  assertEquals(i, columns.getCount(i));")
+            .addLine("  i++;")
+            .addLine("}")
+            .addLine("assertEquals(100, i);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void rejectsIndicesOutOfRange() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder.Value_Columns columns =")
+            .addLine("    new DataType.Builder.Value_Columns();")
+            .addLine("try {")
+            .addLine("  columns.getCount(0);")
+            .addLine("  fail(\"Expected IndexOutOfBoundsException\");")
+            .addLine("} catch (IndexOutOfBoundsException expected) {}")
+            .addLine("try {")
+            .addLine("  columns.get(-1);")
+            .addLine("  fail(\"Expected IndexOutOfBoundsException\");")
+            .addLine("} catch (IndexOutOfBoundsException expected) {}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void appendingIncompleteBuilderThrows() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder.Value_Columns columns =")
+            .addLine("    new DataType.Builder.Value_Columns();")
+            .addLine("try {")
+            .addLine("  columns.append(new DataType.Builder().setId(1));")
+            .addLine("  fail(\"Expected IllegalStateException\");")
+            .addLine("} catch (IllegalStateException expected) {}")
+            .addLine("assertEquals(0, columns.size());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getQuantity();")
+            .addLine("  public abstract %s<%s<String, Integer>> getTables();",
+                List.class, Map.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(ImmutableList.class);
+  }
+}
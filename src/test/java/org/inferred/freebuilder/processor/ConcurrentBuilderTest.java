@@ -0,0 +1,316 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.GuavaLibrary.GUAVA;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.ConcurrentBuilderClass;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class ConcurrentBuilderTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, ConcurrentBuilderClass.ENABLED),
+        new StaticFeatureSet(JAVA_8, ConcurrentBuilderClass.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, ConcurrentBuilderClass.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, ConcurrentBuilderClass.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getCount();")
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("  %s<Integer> getItems();", List.class)
+      .addLine("  %s<String> getTags();", Set.class)
+      .addLine("  %s<String, Integer> getScores();", Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public Builder() {")
+      .addLine("      setCount(-1);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void buildReturnsValueEqualToBuiltValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder.ConcurrentBuilder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setCount(3)")
+            .addLine("    .setNickname(\"Al\")")
+            .addLine("    .addItems(1)")
+            .addLine("    .addItems(2)")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .putScores(\"a\", 1)")
+            .addLine("    .putScores(\"a\", 2)")
+            .addLine("    .build();")
+            .addLine("DataType expected = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setCount(3)")
+            .addLine("    .setNickname(\"Al\")")
+            .addLine("    .addItems(1, 2)")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .putScores(\"a\", 2)")
+            .addLine("    .build();")
+            .addLine("assertEquals(expected, value);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildKeepsBuilderDefaults() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder.ConcurrentBuilder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(-1, value.getCount());")
+            .addLine("assertNull(value.getNickname());")
+            .addLine("assertThat(value.getItems()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildThrowsIfRequiredPropertyUnset() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("name");
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder.ConcurrentBuilder().addItems(1).build();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void addThrowsNpeForNullElement() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder.ConcurrentBuilder().addTags(null);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void setThrowsNpeForNullValue() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder.ConcurrentBuilder().setName(null);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void buildRunsOverriddenSetters() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("count must be non-negative");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  int getCount();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {")
+            .addLine("    @Override public Builder setCount(int count) {")
+            .addLine("      if (count < 0) {")
+            .addLine("        throw new IllegalArgumentException(\"count must be non-negative\");")
+            .addLine("      }")
+            .addLine("      return super.setCount(count);")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("new DataType.Builder.ConcurrentBuilder().setCount(-1).build();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void accumulatesFromManyThreads() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("final DataType.Builder.ConcurrentBuilder builder =")
+            .addLine("    new DataType.Builder.ConcurrentBuilder().setName(\"Alice\");")
+            .addLine("Thread[] threads = new Thread[8];")
+            .addLine("for (int t = 0; t < threads.length; t++) {")
+            .addLine("  final int offset = t * 1000;")
+            .addLine("  threads[t] = new Thread(new Runnable() {")
+            .addLine("    @Override public void run() {")
+            .addLine("      for (int i = 0; i < 1000; i++) {")
+            .addLine("        builder.addItems(offset + i);")
+            .addLine("        builder.addTags(\"tag\" + (i %% 10));")
+            .addLine("        builder.putScores(\"key\" + (offset + i), i);")
+            .addLine("        if (i %% 100 == 0) {")
+            .addLine("          builder.build();")
+            .addLine("        }")
+            .addLine("      }")
+            .addLine("    }")
+            .addLine("  });")
+            .addLine("  threads[t].start();")
+            .addLine("}")
+            .addLine("for (Thread thread : threads) {")
+            .addLine("  thread.join();")
+            .addLine("}")
+            .addLine("DataType value = builder.build();")
+            .addLine("assertEquals(8000, value.getItems().size());")
+            .addLine("assertEquals(8000, new %s<Integer>(value.getItems()).size());",
+                java.util.HashSet.class)
+            .addLine("assertEquals(10, value.getTags().size());")
+            .addLine("assertEquals(8000, value.getScores().size());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void accumulatesGuavaCollections() {
+    assumeTrue(features.get(GUAVA).isAvailable());
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  %s<String> getNames();", Multiset.class)
+            .addLine("  %s<String, Integer> getItems();", ListMultimap.class)
+            .addLine("  %s<String, Integer> getTags();", SetMultimap.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder.ConcurrentBuilder()")
+            .addLine("    .addNames(\"a\")")
+            .addLine("    .addNames(\"a\")")
+            .addLine("    .putItems(\"x\", 1)")
+            .addLine("    .putItems(\"x\", 1)")
+            .addLine("    .putItems(\"x\", 2)")
+            .addLine("    .putTags(\"y\", 1)")
+            .addLine("    .putTags(\"y\", 1)")
+            .addLine("    .build();")
+            .addLine("assertEquals(2, value.getNames().count(\"a\"));")
+            .addLine("assertThat(value.getItems().get(\"x\")).containsExactly(1, 1, 2).inOrder();")
+            .addLine("assertThat(value.getTags().get(\"y\")).containsExactly(1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void supportsGenericTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType<A, B extends Number> {")
+            .addLine("  A getPropertyA();")
+            .addLine("  %s<A, B> getScores();", Map.class)
+            .addLine("")
+            .addLine("  class Builder<A, B extends Number> extends DataType_Builder<A, B> {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType<String, Integer> value =")
+            .addLine("    new DataType.Builder.ConcurrentBuilder<String, Integer>()")
+            .addLine("        .setPropertyA(\"a\")")
+            .addLine("        .putScores(\"b\", 2)")
+            .addLine("        .build();")
+            .addLine("assertEquals(\"a\", value.getPropertyA());")
+            .addLine("assertEquals(2, (int) value.getScores().get(\"b\"));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (Class<?> cls : DataType.Builder.class.getClasses()) {")
+            .addLine("  assertFalse(cls.getSimpleName().equals(\"ConcurrentBuilder\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_7;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.SOURCE_LEVEL;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.collect.ImmutableList;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMaps;
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FastutilLibrary;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+/** Behavioral tests for fastutil's type-specific collection properties. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class FastutilPropertyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, FastutilLibrary.AVAILABLE),
+        new StaticFeatureSet(JAVA_7, FastutilLibrary.AVAILABLE),
+        new StaticFeatureSet(JAVA_8, FastutilLibrary.AVAILABLE),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, FastutilLibrary.AVAILABLE));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  %s getScores();", IntList.class)
+      .addLine("  %s getIds();", LongSet.class)
+      .addLine("  %s<String> getNames();", Int2ObjectMap.class)
+      .addLine("  %s<String> getWeights();", Object2DoubleMap.class)
+      .addLine("")
+      .addLine("  Builder toBuilder();")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Before
+  public void setUp() {
+    behaviorTester.withPermittedPackage(Hash.class.getPackage());
+  }
+
+  @Test
+  public void listElementsAreAddedUnboxed() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addScores(1)")
+            .addLine("    .addScores(2, 3)")
+            .addLine("    .addAllScores(%s.wrap(new int[] { 4, 5 }))", IntArrayList.class)
+            .addLine("    .addAllScores(%s.asList(6))", Arrays.class)
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.wrap(new int[] { 1, 2, 3, 4, 5, 6 }), value.getScores());",
+                IntArrayList.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void builtListIsUnmodifiable() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().addScores(1).build();")
+            .addLine("value.getScores().add(2);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void builtListIsACopy() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder().addScores(1);")
+            .addLine("DataType value = builder.build();")
+            .addLine("builder.addScores(2);")
+            .addLine("assertEquals(%s.wrap(new int[] { 1 }), value.getScores());",
+                IntArrayList.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void setElementsAreAddedAndRemovedUnboxed() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addIds(1L, 2L, 2L, 3L)")
+            .addLine("    .removeIds(1L)")
+            .addLine("    .build();")
+            .addLine("assertEquals(2, value.getIds().size());")
+            .addLine("assertTrue(value.getIds().contains(2L));")
+            .addLine("assertTrue(value.getIds().contains(3L));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mapEntriesArePutAndRemoved() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .putNames(1, \"one\")")
+            .addLine("    .putNames(2, \"two\")")
+            .addLine("    .removeNames(1)")
+            .addLine("    .putWeights(\"a\", 0.5)")
+            .addLine("    .putAllWeights(%s.singletonMap(\"b\", 1.5))", Collections.class)
+            .addLine("    .build();")
+            .addLine("assertEquals(1, value.getNames().size());")
+            .addLine("assertEquals(\"two\", value.getNames().get(2));")
+            .addLine("assertEquals(0.5, value.getWeights().getDouble(\"a\"), 0.0);")
+            .addLine("assertEquals(1.5, value.getWeights().getDouble(\"b\"), 0.0);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void nullMapValueIsRejected() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder().putNames(1, null);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void builtMapIsUnmodifiable() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().putWeights(\"a\", 0.5).build();")
+            .addLine("value.getWeights().put(\"b\", 1.5);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mergeFromValueCopiesEveryProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addScores(1)")
+            .addLine("    .addIds(2L)")
+            .addLine("    .putNames(3, \"three\")")
+            .addLine("    .putWeights(\"four\", 4.0)")
+            .addLine("    .build();")
+            .addLine("DataType copy = value.toBuilder().addScores(5).build();")
+            .addLine("assertEquals(%s.wrap(new int[] { 1, 5 }), copy.getScores());",
+                IntArrayList.class)
+            .addLine("assertEquals(value.getIds(), copy.getIds());")
+            .addLine("assertEquals(value.getNames(), copy.getNames());")
+            .addLine("assertEquals(value.getWeights(), copy.getWeights());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateMethodsTakeFastutilTypes() {
+    assumeTrue(features.get(SOURCE_LEVEL).hasLambdas());
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addScores(3, 1, 2)")
+            .addLine("    .mutateScores(scores -> scores.removeInt(0))")
+            .addLine("    .putNames(1, \"one\")")
+            .addLine("    .mutateNames(names -> names.remove(1))")
+            .addLine("    .build();")
+            .addLine("assertEquals(%s.wrap(new int[] { 1, 2 }), value.getScores());",
+                IntArrayList.class)
+            .addLine("assertTrue(value.getNames().isEmpty());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void fastutilTypesAreOpaqueWithoutFeature() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet(features.get(SOURCE_LEVEL))))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setScores(%s.wrap(new int[] { 1 }))", IntArrayList.class)
+            .addLine("    .setIds(%s.EMPTY_SET)", LongSets.class)
+            .addLine("    .setNames(%s.<String>emptyMap())", Int2ObjectMaps.class)
+            .addLine("    .setWeights(%s.<String>emptyMap())", Object2DoubleMaps.class)
+            .addLine("    .build();")
+            .addLine("assertEquals(1, value.getScores().getInt(0));")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Tests the {@code FreeBuilderModule} service entry against a real class output directory, as
+ * left by a build tool or an earlier compilation.
+ */
+@RunWith(JUnit4.class)
+public class FreeBuilderModuleOutputTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File sources;
+  private File generated;
+  private File classes;
+
+  @Before
+  public void setUp() throws IOException {
+    sources = folder.newFolder("src");
+    generated = folder.newFolder("generated");
+    classes = folder.newFolder("classes");
+  }
+
+  @Test
+  public void keepsExistingServiceEntries() throws IOException {
+    File services = new File(classes, JacksonModuleGenerator.SERVICES);
+    services.getParentFile().mkdirs();
+    Files.write(
+        "com.example.CustomModule\ncom.example.deleted.FreeBuilderModule\n",
+        services,
+        Charsets.UTF_8);
+
+    compile(dataType("First"));
+
+    assertThat(Files.readLines(services, Charsets.UTF_8))
+        .containsExactly("com.example.CustomModule", "com.example.FreeBuilderModule")
+        .inOrder();
+  }
+
+  @Test
+  public void incrementalBuildRegistersTypesCompiledEarlier() throws Exception {
+    File first = dataType("First");
+    File second = dataType("Second");
+    compile(first, second);
+
+    compile(first);
+
+    File services = new File(classes, JacksonModuleGenerator.SERVICES);
+    assertThat(Files.readLines(services, Charsets.UTF_8))
+        .containsExactly("com.example.FreeBuilderModule");
+    URLClassLoader classLoader = new URLClassLoader(
+        new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+    try {
+      ObjectMapper mapper = new ObjectMapper();
+      mapper.registerModule((Module) classLoader
+          .loadClass("com.example.FreeBuilderModule").newInstance());
+      SerializerProvider serializers =
+          ((DefaultSerializerProvider) mapper.getSerializerProvider()).createInstance(
+              mapper.getSerializationConfig(), mapper.getSerializerFactory());
+      for (String type : ImmutableList.of("First", "Second")) {
+        assertThat(serializers
+                .findValueSerializer(classLoader.loadClass("com.example." + type), null)
+                .getClass()
+                .getName())
+            .isEqualTo("com.example." + type + "_Builder$Value_JsonSerializer");
+      }
+    } finally {
+      classLoader.close();
+    }
+  }
+
+  private File dataType(String name) throws IOException {
+    File source = new File(sources, "com/example/" + name + ".java");
+    source.getParentFile().mkdirs();
+    Files.write(
+        "package com.example;\n"
+            + "@org.inferred.freebuilder.FreeBuilder\n"
+            + "@com.fasterxml.jackson.databind.annotation.JsonDeserialize(\n"
+            + "    builder = " + name + ".Builder.class)\n"
+            + "public interface " + name + " {\n"
+            + "  String getName();\n"
+            + "  class Builder extends " + name + "_Builder {}\n"
+            + "}\n",
+        source,
+        Charsets.UTF_8);
+    return source;
+  }
+
+  private void compile(File... sourceFiles) throws IOException {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = javac.getStandardFileManager(null, null, null);
+    try {
+      List<String> options = new ArrayList<String>();
+      options.add("-classpath");
+      options.add(System.getProperty("java.class.path") + File.pathSeparator + classes);
+      options.add("-d");
+      options.add(classes.getPath());
+      options.add("-s");
+      options.add(generated.getPath());
+      CompilationTask task = javac.getTask(
+          null,
+          fileManager,
+          null,
+          options,
+          null,
+          fileManager.getJavaFileObjects(sourceFiles));
+      task.setProcessors(ImmutableList.of(
+          new Processor(new StaticFeatureSet(JAVA_8, StreamingJackson.ENABLED))));
+      assertThat(task.call()).isTrue();
+    } finally {
+      fileManager.close();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class FreeBuilderModuleTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_8, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, StreamingJackson.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example.data;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  private static final JavaFileObject OTHER_TYPE = new SourceBuilder()
+      .addLine("package com.example.other;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(builder = OtherType.Builder.class)", JsonDeserialize.class)
+      .addLine("public interface OtherType {")
+      .addLine("  int getCount();")
+      .addLine("")
+      .addLine("  class Builder extends OtherType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void registersEachPackageInItsOwnModule() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(OTHER_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(testBuilder()
+            .addImport("com.example.other.OtherType")
+            .addLine("%s mapper = new %s();", ObjectMapper.class, ObjectMapper.class)
+            .addLine("assertEquals(Arrays.asList(")
+            .addLine("        \"com.example.data.FreeBuilderModule\",")
+            .addLine("        \"com.example.other.FreeBuilderModule\"),")
+            .addLine("    listedModules(DataType.class));")
+            .addLine("mapper.registerModule(new com.example.data.FreeBuilderModule());")
+            .addLine("mapper.registerModule(new com.example.other.FreeBuilderModule());")
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .build();")
+            .addLine("OtherType other = new OtherType.Builder().setCount(3).build();")
+            .addLine("assertEquals(value,")
+            .addLine("    mapper.readValue(mapper.writeValueAsString(value), DataType.class));")
+            .addLine("assertEquals(other,")
+            .addLine("    mapper.readValue(mapper.writeValueAsString(other), OtherType.class));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void replacesBuilderBasedDeserializer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(testBuilder()
+            .addLine("%s mapper = new %s();", ObjectMapper.class, ObjectMapper.class)
+            .addLine("registerListedModule(mapper, DataType.class);")
+            .addLine("%s context = ((%s) mapper.getDeserializationContext())",
+                DefaultDeserializationContext.class, DefaultDeserializationContext.class)
+            .addLine("    .createInstance(mapper.getDeserializationConfig(),")
+            .addLine("        mapper.getFactory().createParser(\"{}\"), null);")
+            .addLine("assertEquals(DataType.Builder.Value_JsonDeserializer.class, context")
+            .addLine("    .findRootValueDeserializer(mapper.constructType(DataType.class))")
+            .addLine("    .getClass());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(OTHER_TYPE)
+        .compiles()
+        .withNoWarnings();
+  }
+
+  @Test
+  public void notGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("assertEquals(Collections.emptyList(), listedModules(DataType.class));")
+            .build())
+        .runTest();
+  }
+
+  /** Returns the generated modules listed in the service entry visible from {@code type}. */
+  public static List<String> listedModules(Class<?> type) throws IOException {
+    List<String> modules = new ArrayList<String>();
+    InputStream services = type.getResourceAsStream("/" + JacksonModuleGenerator.SERVICES);
+    if (services != null) {
+      try {
+        for (String line : CharStreams.readLines(new InputStreamReader(services, Charsets.UTF_8))) {
+          if (line.endsWith("." + JacksonModuleGenerator.SIMPLE_NAME)) {
+            modules.add(line);
+          }
+        }
+      } finally {
+        services.close();
+      }
+    }
+    return modules;
+  }
+
+  /**
+   * Registers the generated module for {@code type}'s package listed in the service entry visible
+   * from {@code type}, as {@code ObjectMapper.findAndRegisterModules()} would.
+   */
+  public static void registerListedModule(ObjectMapper mapper, Class<?> type)
+      throws IOException, ReflectiveOperationException {
+    String pkg = type.getName().substring(0, type.getName().lastIndexOf('.'));
+    String module = pkg + "." + JacksonModuleGenerator.SIMPLE_NAME;
+    List<String> modules = listedModules(type);
+    assertTrue(modules.toString(), modules.contains(module));
+    mapper.registerModule((Module) type.getClassLoader().loadClass(module).newInstance());
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.data.DataType")
+        .addImport(Arrays.class)
+        .addImport(Collections.class)
+        .addStaticImport(FreeBuilderModuleTest.class, "listedModules")
+        .addStaticImport(FreeBuilderModuleTest.class, "registerListedModule");
+  }
+}
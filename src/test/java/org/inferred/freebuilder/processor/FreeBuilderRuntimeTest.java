@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.FreeBuilderRuntime;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.inferred.freebuilder.runtime.FreeBuilderCollections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class FreeBuilderRuntimeTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_8, FreeBuilderRuntime.AVAILABLE),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, FreeBuilderRuntime.AVAILABLE));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  %s<String> getNames();", List.class)
+      .addLine("  %s<String> getTags();", Set.class)
+      .addLine("  %s<String> getSorted();", SortedSet.class)
+      .addLine("  %s<String, Integer> getCounts();", Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    @Override public Builder addNames(String name) {")
+      .addLine("      return super.addNames(name.trim());")
+      .addLine("    }")
+      .addLine("    @Override public Builder addTags(String tag) {")
+      .addLine("      return super.addTags(tag.trim());")
+      .addLine("    }")
+      .addLine("    @Override public Builder addSorted(String element) {")
+      .addLine("      return super.addSorted(element.trim());")
+      .addLine("    }")
+      .addLine("    @Override public Builder putCounts(String key, int value) {")
+      .addLine("      return super.putCounts(key.trim(), value);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Before
+  public void setUp() {
+    behaviorTester.withPermittedPackage(FreeBuilderCollections.class.getPackage());
+  }
+
+  @Test
+  public void mutateUsesSharedCheckedViews() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .mutateNames(names -> {")
+            .addLine("      assertEquals(CheckedList.class, names.getClass());")
+            .addLine("      names.add(\" a \");")
+            .addLine("    })")
+            .addLine("    .mutateTags(tags -> {")
+            .addLine("      assertEquals(CheckedSet.class, tags.getClass());")
+            .addLine("      tags.add(\" b \");")
+            .addLine("    })")
+            .addLine("    .mutateSorted(sorted -> {")
+            .addLine("      assertEquals(CheckedNavigableSet.class, sorted.getClass());")
+            .addLine("      sorted.add(\" c \");")
+            .addLine("    })")
+            .addLine("    .mutateCounts(counts -> {")
+            .addLine("      assertEquals(CheckedMap.class, counts.getClass());")
+            .addLine("      counts.put(\" d \", 1);")
+            .addLine("    })")
+            .addLine("    .build();")
+            .addLine("assertEquals(ImmutableList.of(\"a\"), value.getNames());")
+            .addLine("assertEquals(ImmutableSet.of(\"b\"), value.getTags());")
+            .addLine("assertEquals(ImmutableSet.of(\"c\"), value.getSorted());")
+            .addLine("assertEquals(ImmutableMap.of(\"d\", 1), value.getCounts());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void builderDeclaresNoInlineHelpers() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().startsWith(\"Checked\"));")
+            .addLine("}")
+            .addLine("for (%s method : generatedBuilder.getDeclaredMethods()) {",
+                Method.class)
+            .addLine("  assertFalse(method.getName().startsWith(\"immutable\"));")
+            .addLine("  assertFalse(method.getName().equals(\"nonNullElements\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void copiesCollectionsIntoValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .addAllNames(ImmutableList.of(\"a\", \"b\"))")
+            .addLine("    .addAllTags(ImmutableList.of(\"c\"))")
+            .addLine("    .putCounts(\"d\", 1);")
+            .addLine("DataType value = builder.build();")
+            .addLine("builder.clearNames().clearTags().clearCounts();")
+            .addLine("assertEquals(ImmutableList.of(\"a\", \"b\"), value.getNames());")
+            .addLine("assertEquals(ImmutableSet.of(\"c\"), value.getTags());")
+            .addLine("assertEquals(ImmutableMap.of(\"d\", 1), value.getCounts());")
+            .addLine("try {")
+            .addLine("  value.getNames().add(\"e\");")
+            .addLine("  fail(\"Expected UnsupportedOperationException\");")
+            .addLine("} catch (UnsupportedOperationException expected) {}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport("org.inferred.freebuilder.runtime.CheckedList")
+        .addImport("org.inferred.freebuilder.runtime.CheckedMap")
+        .addImport("org.inferred.freebuilder.runtime.CheckedNavigableSet")
+        .addImport("org.inferred.freebuilder.runtime.CheckedSet")
+        .addImport(ImmutableList.class)
+        .addImport(ImmutableMap.class)
+        .addImport(ImmutableSet.class);
+  }
+}
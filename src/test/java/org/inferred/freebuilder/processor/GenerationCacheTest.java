@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.processor.util.feature.GenerationCacheDir;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+
+@RunWith(JUnit4.class)
+public class GenerationCacheTest {
+
+  private static final String SOURCE = "class Foo_Builder {}";
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void missReturnsNull() {
+    GenerationCache cache = new GenerationCache(folder.getRoot(), 1024, "1.0");
+    assertThat(cache.get("abc123")).isNull();
+  }
+
+  @Test
+  public void hitReturnsCachedSource() {
+    GenerationCache cache = new GenerationCache(folder.getRoot(), 1024, "1.0");
+    cache.put("abc123", SOURCE);
+    assertThat(cache.get("abc123")).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void entriesSurviveAcrossCompilations() {
+    new GenerationCache(folder.getRoot(), 1024, "1.0").put("abc123", SOURCE);
+    GenerationCache cache = new GenerationCache(folder.getRoot(), 1024, "1.0");
+    assertThat(cache.get("abc123")).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void createsMissingDirectory() {
+    File directory = new File(folder.getRoot(), "nested/cache");
+    GenerationCache cache = new GenerationCache(directory, 1024, "1.0");
+    cache.put("abc123", SOURCE);
+    assertThat(cache.get("abc123")).isEqualTo(SOURCE);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedEntries() {
+    String source = Strings.repeat("x", 100);
+    GenerationCache cache = new GenerationCache(folder.getRoot(), 350, "1.0");
+    cache.put("first", source);
+    cache.put("second", source);
+    cache.put("third", source);
+    // File timestamps may be too coarse to order the writes above, so set them explicitly
+    backdate("first", 30000);
+    backdate("second", 20000);
+    backdate("third", 10000);
+    // Reading "first" makes "second" the least recently used
+    assertThat(cache.get("first")).isEqualTo(source);
+    cache.put("fourth", source);
+    assertThat(cache.get("second")).isNull();
+    assertThat(cache.get("first")).isEqualTo(source);
+    assertThat(cache.get("fourth")).isEqualTo(source);
+  }
+
+  @Test
+  public void disabledConfigOpensNoCache() {
+    assertThat(GenerationCache.open(GenerationCacheDir.DISABLED, ImmutableList.of()).isPresent())
+        .isFalse();
+  }
+
+  private void backdate(String fingerprint, long millis) {
+    new File(folder.getRoot(), fingerprint + GenerationCache.SUFFIX)
+        .setLastModified(System.currentTimeMillis() - millis);
+  }
+}
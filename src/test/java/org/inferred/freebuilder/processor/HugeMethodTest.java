@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.PackedFlags;
+import org.inferred.freebuilder.processor.util.feature.SparseValueLayout;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.MethodInfo;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+/** Tests that types with hundreds of properties get methods HotSpot is willing to compile. */
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class HugeMethodTest {
+
+  /** HotSpot's default {@code -XX:HugeMethodLimit}, in bytes of bytecode. */
+  private static final int HUGE_METHOD_LIMIT = 8000;
+
+  private static final int PROPERTIES = 400;
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6),
+        new StaticFeatureSet(JAVA_8),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE),
+        new StaticFeatureSet(JAVA_8, SparseValueLayout.above(100)),
+        new StaticFeatureSet(JAVA_8, PackedFlags.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = wideDataType();
+  private static final JavaFileObject FLAGS_TYPE = flagsDataType();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void noGeneratedMethodExceedsHugeMethodLimit() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("assertNoHugeMethods(new DataType.Builder().getClass().getSuperclass());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void flagsTypeHasNoHugeMethods() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(FLAGS_TYPE)
+        .with(new TestBuilder()
+            .addImport("com.example.FlagsType")
+            .addStaticImport(HugeMethodTest.class, "assertNoHugeMethods")
+            .addLine("assertNoHugeMethods(new FlagsType.Builder().getClass().getSuperclass());")
+            .addLine("FlagsType value = new FlagsType.Builder()")
+            .addLine("    .setFlag1(true)")
+            .addLine("    .setMode2(FlagsType.Mode.C)")
+            .addLine("    .setFlag399(true)")
+            .addLine("    .build();")
+            .addLine("FlagsType copy = new FlagsType.Builder().mergeFrom(value).build();")
+            .addLine("assertEquals(value, copy);")
+            .addLine("assertEquals(value.hashCode(), copy.hashCode());")
+            .addLine("assertEquals(FlagsType.Mode.C, copy.getMode2());")
+            .addLine("assertTrue(copy.isFlag399());")
+            .addLine("assertFalse(value.equals(copy.toBuilder().setFlag399(false).build()));")
+            .addLine("assertFalse(value.equals(copy.toBuilder().setName0(\"x\").build()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void splitEqualsAndHashCode() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName1(\"a\")")
+            .addLine("    .setName397(\"b\")")
+            .addLine("    .addItems2(\"c\")")
+            .addLine("    .setSize399(7)")
+            .addLine("    .build();")
+            .addLine("DataType copy = new DataType.Builder().mergeFrom(value).build();")
+            .addLine("assertEquals(value, copy);")
+            .addLine("assertEquals(value.hashCode(), copy.hashCode());")
+            .addLine("assertFalse(value.equals(copy.toBuilder().setSize399(8).build()));")
+            .addLine("assertFalse(value.equals(copy.toBuilder().setCount0(1).build()));")
+            .addLine("DataType partial = value.toBuilder().buildPartial();")
+            .addLine("assertEquals(partial, partial.toBuilder().buildPartial());")
+            .addLine("assertEquals(partial.hashCode(),")
+            .addLine("    partial.toBuilder().buildPartial().hashCode());")
+            .addLine("assertFalse(partial.equals(value));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void splitToString() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName1(\"a\")")
+            .addLine("    .setName397(\"b\")")
+            .addLine("    .setSize399(7)")
+            .addLine("    .build();")
+            .addLine("String string = value.toString();")
+            .addLine("assertTrue(string, string.startsWith(\"DataType{count0=0, name1=a, \"));")
+            .addLine("assertTrue(string,")
+            .addLine("    string.endsWith(\", name397=b, items398=[], size399=7}\"));")
+            .addLine("assertFalse(string, string.contains(\"size3=\"));")
+            .addLine("String partial = new DataType.Builder().setName1(\"a\").buildPartial()")
+            .addLine("    .toString();")
+            .addLine("assertTrue(partial,")
+            .addLine("    partial.startsWith(\"partial DataType{count0=0, name1=a, \"));")
+            .addLine("assertTrue(partial, partial.endsWith(\", count396=0, items398=[]}\"));")
+            .addLine("assertFalse(partial, partial.contains(\"name397=\"));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void splitClear() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .setCount0(5)")
+            .addLine("    .setName397(\"b\")")
+            .addLine("    .addItems398(\"c\")")
+            .addLine("    .setSize399(7);")
+            .addLine("builder.clear();")
+            .addLine("assertEquals(new DataType.Builder().buildPartial(), builder.buildPartial());")
+            .build())
+        .runTest();
+  }
+
+  /**
+   * Fails if any method of {@code type}, or of the types nested in it, has more bytecode than
+   * HotSpot will JIT-compile.
+   */
+  public static void assertNoHugeMethods(Class<?> type) throws IOException {
+    assertMethodsSmallEnough(type);
+    for (Class<?> nestedType : type.getDeclaredClasses()) {
+      assertMethodsSmallEnough(nestedType);
+    }
+  }
+
+  private static void assertMethodsSmallEnough(Class<?> type) throws IOException {
+    InputStream classBytes = type.getResourceAsStream(
+        "/" + type.getName().replace('.', '/') + ".class");
+    assertNotNull("No class file found for " + type, classBytes);
+    ClassFile classFile;
+    try {
+      classFile = new ClassFile(new DataInputStream(classBytes));
+    } finally {
+      classBytes.close();
+    }
+    for (Object method : classFile.getMethods()) {
+      MethodInfo methodInfo = (MethodInfo) method;
+      CodeAttribute code = methodInfo.getCodeAttribute();
+      if (code != null) {
+        assertTrue(
+            type.getSimpleName() + "." + methodInfo.getName() + methodInfo.getDescriptor()
+                + " has " + code.getCodeLength() + " bytes of bytecode",
+            code.getCodeLength() <= HUGE_METHOD_LIMIT);
+      }
+    }
+  }
+
+  /**
+   * Returns a type with {@link #PROPERTIES} properties, cycling through defaulted ints, strings
+   * (only the first and last of which are required), lists and nullable integers.
+   */
+  private static JavaFileObject wideDataType() {
+    SourceBuilder dataType = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public interface DataType {");
+    for (int i = 0; i < PROPERTIES; i++) {
+      switch (i % 4) {
+        case 0:
+          dataType.addLine("  int getCount%s();", i);
+          break;
+
+        case 1:
+          dataType.addLine("  String getName%s();", i);
+          break;
+
+        case 2:
+          dataType.addLine("  %s<String> getItems%s();", List.class, i);
+          break;
+
+        default:
+          dataType.addLine("  @%s Integer getSize%s();", Nullable.class, i);
+          break;
+      }
+    }
+    dataType.addLine("")
+        .addLine("  Builder toBuilder();")
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {")
+        .addLine("    public Builder() {");
+    for (int i = 0; i < PROPERTIES; i += 4) {
+      dataType.addLine("      setCount%s(0);", i);
+    }
+    // Leave the first and last names required
+    for (int i = 5; i < PROPERTIES - 4; i += 4) {
+      dataType.addLine("      setName%s(\"\");", i);
+    }
+    dataType.addLine("    }")
+        .addLine("  }")
+        .addLine("}");
+    return dataType.build();
+  }
+
+  /**
+   * Returns a type with {@link #PROPERTIES} properties, mostly booleans and small enums, all
+   * defaulted, so too many can be packed to pack inline.
+   */
+  private static JavaFileObject flagsDataType() {
+    SourceBuilder dataType = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public interface FlagsType {")
+        .addLine("  enum Mode { A, B, C }")
+        .addLine("");
+    for (int i = 0; i < PROPERTIES; i++) {
+      switch (i % 8) {
+        case 0:
+          dataType.addLine("  String getName%s();", i);
+          break;
+
+        case 2:
+        case 6:
+          dataType.addLine("  Mode getMode%s();", i);
+          break;
+
+        default:
+          dataType.addLine("  boolean isFlag%s();", i);
+          break;
+      }
+    }
+    dataType.addLine("")
+        .addLine("  Builder toBuilder();")
+        .addLine("")
+        .addLine("  class Builder extends FlagsType_Builder {")
+        .addLine("    public Builder() {");
+    for (int i = 0; i < PROPERTIES; i++) {
+      switch (i % 8) {
+        case 0:
+          dataType.addLine("      setName%s(\"\");", i);
+          break;
+
+        case 2:
+        case 6:
+          dataType.addLine("      setMode%s(Mode.A);", i);
+          break;
+
+        default:
+          dataType.addLine("      setFlag%s(false);", i);
+          break;
+      }
+    }
+    dataType.addLine("    }")
+        .addLine("  }")
+        .addLine("}");
+    return dataType.build();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addStaticImport(HugeMethodTest.class, "assertNoHugeMethods");
+  }
+}
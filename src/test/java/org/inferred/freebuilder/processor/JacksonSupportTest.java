@@ -25,7 +25,10 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import org.inferred.freebuilder.processor.Analyser.CannotGenerateCodeException;
 import org.inferred.freebuilder.processor.Metadata.Property;
 import org.inferred.freebuilder.processor.util.Excerpt;
+import org.inferred.freebuilder.processor.util.QualifiedName;
 import org.inferred.freebuilder.processor.util.SourceStringBuilder;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
 import org.inferred.freebuilder.processor.util.testing.FakeMessager;
 import org.inferred.freebuilder.processor.util.testing.ModelRule;
 import org.junit.Before;
@@ -47,6 +50,7 @@ public class JacksonSupportTest {
   private final FakeMessager messager = new FakeMessager();
 
   private Analyser analyser;
+  private Analyser streamingAnalyser;
 
   @Before
   public void setup() {
@@ -55,6 +59,13 @@ public class JacksonSupportTest {
         messager,
         MethodIntrospector.instance(model.environment()),
         model.typeUtils());
+    streamingAnalyser = new Analyser(
+        model.elementUtils(),
+        messager,
+        MethodIntrospector.instance(model.environment()),
+        model.typeUtils(),
+        PropertyFactories.builtIn(),
+        new StaticFeatureSet(StreamingJackson.ENABLED));
   }
 
   @Test
@@ -142,6 +153,62 @@ public class JacksonSupportTest {
     assertThat(property.getAccessorAnnotations()).named("property accessor annotations").isEmpty();
   }
 
+  @Test
+  public void streamingCodecsAddedForPlainJsonProperties() throws CannotGenerateCodeException {
+    TypeElement dataType = model.newType(
+        "package com.example;",
+        "@" + JsonDeserialize.class.getName() + "(builder = DataType.Builder.class)",
+        "public interface DataType {",
+        "  int getFooBar();",
+        "  class Builder extends DataType_Builder {}",
+        "}");
+
+    Metadata metadata = streamingAnalyser.analyse(dataType);
+
+    QualifiedName generatedBuilder = QualifiedName.of("com.example", "DataType_Builder");
+    assertThat(metadata.getNestedClasses()).hasSize(2);
+    assertThat(metadata.getVisibleNestedTypes()).containsAllOf(
+        generatedBuilder.nestedType("Value_JsonDeserializer"),
+        generatedBuilder.nestedType("Value_JsonSerializer"));
+  }
+
+  @Test
+  public void streamingCodecsNotAddedByDefault() throws CannotGenerateCodeException {
+    TypeElement dataType = model.newType(
+        "package com.example;",
+        "@" + JsonDeserialize.class.getName() + "(builder = DataType.Builder.class)",
+        "public interface DataType {",
+        "  int getFooBar();",
+        "  class Builder extends DataType_Builder {}",
+        "}");
+
+    Metadata metadata = analyser.analyse(dataType);
+
+    QualifiedName generatedBuilder = QualifiedName.of("com.example", "DataType_Builder");
+    assertThat(metadata.getNestedClasses()).isEmpty();
+    assertThat(metadata.getVisibleNestedTypes()).containsNoneOf(
+        generatedBuilder.nestedType("Value_JsonDeserializer"),
+        generatedBuilder.nestedType("Value_JsonSerializer"));
+    assertThat(metadata.getValueTypeAnnotations()).isEmpty();
+  }
+
+  @Test
+  public void jacksonXmlAnnotationDisablesStreamingCodecs() throws CannotGenerateCodeException {
+    TypeElement dataType = model.newType(
+        "package com.example;",
+        "import " + JacksonXmlProperty.class.getName() + ";",
+        "@" + JsonDeserialize.class.getName() + "(builder = DataType.Builder.class)",
+        "public interface DataType {",
+        "  @JacksonXmlProperty(localName=\"b-ob\") int getFooBar();",
+        "  class Builder extends DataType_Builder {}",
+        "}");
+
+    Metadata metadata = streamingAnalyser.analyse(dataType);
+
+    assertThat(metadata.getNestedClasses()).isEmpty();
+    assertThat(metadata.getValueTypeAnnotations()).isEmpty();
+  }
+
   private void assertPropertyHasAnnotation(Property property, Class annotationClass,
                                            String annotationString) {
     Optional<Excerpt> annotationExcerpt = property.getAccessorAnnotations()
@@ -38,6 +38,7 @@ import org.junit.runners.Parameterized.Parameters;
 import org.junit.runners.Parameterized.UseParametersRunnerFactory;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.tools.JavaFileObject;
@@ -459,6 +460,116 @@ public class ListMutateMethodTest {
         .runTest();
   }
 
+  @Test
+  public void mutateAndAddAllAtIndexModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2))
+            .addLine("    .mutateItems(items -> items.addAll(1, %s.of(%s)))",
+                ImmutableList.class, elements.examples(3, 4))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.get(), elements.examples(0, 3, 4, 1, 2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndAddAllAtIndexChecksArguments() {
+    if (checked) {
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage(elements.errorMessage());
+    }
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1))
+            .addLine("    .mutateItems(items -> items.addAll(1, %s.asList(%s, %s)));",
+                Arrays.class, elements.example(2), elements.invalidExample())
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndReplaceAllModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2))
+            .addLine("    .mutateItems(items -> items.replaceAll(")
+            .addLine("        e -> e.equals(%s) ? %s : e))",
+                elements.example(1), elements.example(3))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.get(), elements.examples(0, 3, 2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndReplaceAllLeavesUnderlyingPropertyUnchangedIfRejected() {
+    assumeTrue(checked);
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("DataType.Builder builder = new DataType.Builder()")
+            .addLine("    .addItems(%s);", elements.examples(0, 1, 2))
+            .addLine("try {")
+            .addLine("  builder.mutateItems(items -> items.replaceAll(")
+            .addLine("      e -> e.equals(%s) ? %s : e));",
+                elements.example(1), elements.invalidExample())
+            .addLine("  fail(\"Expected IllegalArgumentException\");")
+            .addLine("} catch (IllegalArgumentException expected) {}")
+            .addLine("assertThat(builder.build().%s).containsExactly(%s).inOrder();",
+                convention.get(), elements.examples(0, 1, 2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndRemoveIfModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2, 1))
+            .addLine("    .mutateItems(items -> items.removeIf(e -> e.equals(%s)))",
+                elements.example(1))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.get(), elements.examples(0, 2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndSortModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(listPropertyType)
+        .with(testBuilder()
+            .addLine("%s<%s> order = %s.of(%s);",
+                List.class, elements.type(), ImmutableList.class, elements.examples(2, 0, 1))
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2))
+            .addLine("    .mutateItems(items -> items.sort(%s.comparingInt(order::indexOf)))",
+                Comparator.class)
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s).inOrder();",
+                convention.get(), elements.examples(2, 0, 1))
+            .build())
+        .runTest();
+  }
+
   private static TestBuilder testBuilder() {
     return new TestBuilder().addImport("com.example.DataType");
   }
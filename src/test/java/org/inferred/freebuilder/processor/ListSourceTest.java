@@ -97,13 +97,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (name.isEmpty() && name instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        name = ImmutableList.copyOf((ImmutableList<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (name instanceof ImmutableList) {",
         "          name = new ArrayList<String>(name);",
         "        }",
-        "        ((ArrayList<?>) name).ensureCapacity(name.size() + elementsSize);",
+        "        name.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (String element : elements) {",
         "      addName(element);",
@@ -169,13 +175,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (age.isEmpty() && age instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        age = ImmutableList.copyOf((ImmutableList<? extends Integer>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (age instanceof ImmutableList) {",
         "          age = new ArrayList<Integer>(age);",
         "        }",
-        "        ((ArrayList<?>) age).ensureCapacity(age.size() + elementsSize);",
+        "        age.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (int element : elements) {",
         "      addAge(element);",
@@ -357,6 +369,22 @@ public class ListSourceTest {
             + "+ \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -415,13 +443,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (name.isEmpty() && name instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        name = ImmutableList.copyOf((ImmutableList<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (name instanceof ImmutableList) {",
         "          name = new ArrayList<>(name);",
         "        }",
-        "        ((ArrayList<?>) name).ensureCapacity(name.size() + elementsSize);",
+        "        name.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (String element : elements) {",
         "      addName(element);",
@@ -487,13 +521,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (age.isEmpty() && age instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        age = ImmutableList.copyOf((ImmutableList<? extends Integer>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (age instanceof ImmutableList) {",
         "          age = new ArrayList<>(age);",
         "        }",
-        "        ((ArrayList<?>) age).ensureCapacity(age.size() + elementsSize);",
+        "        age.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (int element : elements) {",
         "      addAge(element);",
@@ -663,6 +703,22 @@ public class ListSourceTest {
             + "+ \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -751,6 +807,21 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (name.isEmpty() && name instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        name = ImmutableList.copyOf((ImmutableList<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (name instanceof ImmutableList) {",
+        "          name = new ArrayList<>(name);",
+        "        }",
+        "        name.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    return addAllName(elements.spliterator());",
         "  }",
         "",
@@ -864,6 +935,21 @@ public class ListSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (age.isEmpty() && age instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        age = ImmutableList.copyOf((ImmutableList<? extends Integer>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (age instanceof ImmutableList) {",
+        "          age = new ArrayList<>(age);",
+        "        }",
+        "        age.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    return addAllAge(elements.spliterator());",
         "  }",
         "",
@@ -1050,6 +1136,22 @@ public class ListSourceTest {
             + "+ \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -1105,8 +1207,9 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      name.ensureCapacity(name.size() + elementsSize);",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      name.addAll(checked);",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (String element : elements) {",
         "      addName(element);",
@@ -1166,8 +1269,9 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      age.ensureCapacity(age.size() + elementsSize);",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      age.addAll(checked);",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (int element : elements) {",
         "      addAge(element);",
@@ -1350,6 +1454,22 @@ public class ListSourceTest {
             + "Arrays.asList(elements.toArray()));",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -1402,8 +1522,9 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      name.ensureCapacity(name.size() + elementsSize);",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      name.addAll(checked);",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (String element : elements) {",
         "      addName(element);",
@@ -1463,8 +1584,9 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      age.ensureCapacity(age.size() + elementsSize);",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      age.addAll(checked);",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (int element : elements) {",
         "      addAge(element);",
@@ -1635,6 +1757,22 @@ public class ListSourceTest {
             + "Arrays.asList(elements.toArray()));",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -1692,13 +1830,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (name.isEmpty() && name instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        name = ImmutableList.copyOf((ImmutableList<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (name instanceof ImmutableList) {",
         "          name = new ArrayList<String>(name);",
         "        }",
-        "        ((ArrayList<?>) name).ensureCapacity(name.size() + elementsSize);",
+        "        name.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (String element : elements) {",
         "      addName(element);",
@@ -1764,13 +1908,19 @@ public class ListSourceTest {
         "   */",
         "  public Person.Builder addAllAge(Iterable<? extends Integer> elements) {",
         "    if (elements instanceof Collection) {",
-        "      int elementsSize = ((Collection<?>) elements).size();",
-        "      if (elementsSize != 0) {",
+        "      if (age.isEmpty() && age instanceof ImmutableList && elements instanceof "
+            + "ImmutableList) {",
+        "        age = ImmutableList.copyOf((ImmutableList<? extends Integer>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<Integer> checked = nonNullElements((Collection<? extends Integer>) elements);",
+        "      if (!checked.isEmpty()) {",
         "        if (age instanceof ImmutableList) {",
         "          age = new ArrayList<Integer>(age);",
         "        }",
-        "        ((ArrayList<?>) age).ensureCapacity(age.size() + elementsSize);",
+        "        age.addAll(checked);",
         "      }",
+        "      return (Person.Builder) this;",
         "    }",
         "    for (int element : elements) {",
         "      addAge(element);",
@@ -1952,6 +2102,22 @@ public class ListSourceTest {
             + "+ \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
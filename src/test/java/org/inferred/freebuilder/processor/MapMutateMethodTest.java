@@ -339,6 +339,108 @@ public class MapMutateMethodTest {
         .runTest();
   }
 
+  @Test
+  public void putAllModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .putItems(%s, %s)", keys.example(0), values.example(0))
+            .addLine("    .mutateItems(items -> items.putAll(%s))", exampleMap(1, 1, 2, 2))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).isEqualTo(ImmutableMap.of(%s, %s, %s, %s, %s, %s));",
+                convention.get(),
+                keys.example(0), values.example(0),
+                keys.example(1), values.example(1),
+                keys.example(2), values.example(2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void putAllChecksArguments() {
+    if (checked) {
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("value " + values.errorMessage());
+    }
+    behaviorTester
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .mutateItems(items -> items.putAll(ImmutableMap.of(%s, %s)));",
+                keys.example(0), values.invalidExample())
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void computeIfAbsentModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(testBuilder()
+            .addLine("List<Object> results = new ArrayList<>();")
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .putItems(%s, %s)", keys.example(0), values.example(0))
+            .addLine("    .mutateItems(items -> {")
+            .addLine("      results.add(items.computeIfAbsent(%s, k -> %s));",
+                keys.example(0), values.example(2))
+            .addLine("      results.add(items.computeIfAbsent(%s, k -> %s));",
+                keys.example(1), values.example(1))
+            .addLine("    })")
+            .addLine("    .build();")
+            .addLine("assertThat(results).containsExactly(%s, %s).inOrder();",
+                values.example(0), values.example(1))
+            .addLine("assertThat(value.%s).isEqualTo(%s);",
+                convention.get(), exampleMap(0, 0, 1, 1))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void computeIfAbsentChecksArguments() {
+    if (checked) {
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("key " + keys.errorMessage());
+    }
+    behaviorTester
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .mutateItems(items -> items.computeIfAbsent(%s, k -> %s));",
+                keys.invalidExample(), values.example(0))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void replaceAllModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .putItems(%s, %s)", keys.example(0), values.example(0))
+            .addLine("    .putItems(%s, %s)", keys.example(1), values.example(1))
+            .addLine("    .mutateItems(items -> items.replaceAll(")
+            .addLine("        (k, v) -> k.equals(%s) ? %s : v))",
+                keys.example(1), values.example(2))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).isEqualTo(%s);",
+                convention.get(), exampleMap(0, 0, 1, 2))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void replaceAllChecksArguments() {
+    if (checked) {
+      thrown.expect(IllegalArgumentException.class);
+      thrown.expectMessage("value " + values.errorMessage());
+    }
+    behaviorTester
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .putItems(%s, %s)", keys.example(0), values.example(0))
+            .addLine("    .mutateItems(items -> items.replaceAll((k, v) -> %s));",
+                values.invalidExample())
+            .build())
+        .runTest();
+  }
+
   private String exampleMap(int key, int value) {
     return String.format("ImmutableMap.of(%s, %s)", keys.example(key), values.example(value));
   }
@@ -84,8 +84,10 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
-        "      putName(entry.getKey(), entry.getValue());",
+        "      Preconditions.checkNotNull(entry.getKey());",
+        "      Preconditions.checkNotNull(entry.getValue());",
         "    }",
+        "    name.putAll(map);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -282,8 +284,10 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
-        "      putName(entry.getKey(), entry.getValue());",
+        "      Preconditions.checkNotNull(entry.getKey());",
+        "      Preconditions.checkNotNull(entry.getValue());",
         "    }",
+        "    name.putAll(map);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -476,8 +480,14 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
-        "      putName(entry.getKey(), entry.getValue());",
+        "      if (entry.getKey() == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "      if (entry.getValue() == null) {",
+        "        throw new NullPointerException();",
+        "      }",
         "    }",
+        "    name.putAll(map);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -684,8 +694,10 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
-        "      putName(entry.getKey(), entry.getValue());",
+        "      Objects.requireNonNull(entry.getKey());",
+        "      Objects.requireNonNull(entry.getValue());",
         "    }",
+        "    name.putAll(map);",
         "    return (Person.Builder) this;",
         "  }",
         "",
@@ -888,8 +900,10 @@ public class MapSourceTest {
         "   */",
         "  public Person.Builder putAllName(Map<? extends Integer, ? extends String> map) {",
         "    for (Map.Entry<? extends Integer, ? extends String> entry : map.entrySet()) {",
-        "      putName(entry.getKey(), entry.getValue());",
+        "      Preconditions.checkNotNull(entry.getKey());",
+        "      Preconditions.checkNotNull(entry.getValue());",
         "    }",
+        "    name.putAll(map);",
         "    return (Person.Builder) this;",
         "  }",
         "",
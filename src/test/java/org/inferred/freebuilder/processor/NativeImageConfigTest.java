@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+import static org.junit.Assert.assertNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.ImmutableList;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.NativeImageConfig;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class NativeImageConfigTest {
+
+  private static final NativeImageConfig CONFIG =
+      NativeImageConfig.forArtifact("com.example/data");
+  private static final StreamingJackson JACKSON = StreamingJackson.ENABLED;
+  private static final SerializationProxy PROXY = SerializationProxy.ENABLED;
+  private static final String DIRECTORY = "/META-INF/native-image/com.example/data/";
+  private static final String TYPE_DIRECTORY = DIRECTORY + "com.example.DataType/";
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, CONFIG, JACKSON, PROXY),
+        new StaticFeatureSet(JAVA_8, CONFIG, JACKSON, PROXY),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, CONFIG, JACKSON, PROXY));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  private static final JavaFileObject SERIALIZABLE_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(serializable = true)", GwtCompatible.class)
+      .addLine("public interface DataType extends %s {", Serializable.class)
+      .addLine("  String getName();")
+      .addLine("  int getCount();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void reflectConfigCoversGeneratedTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("List<String> names = readNames(DataType.class, \"reflect-config.json\");")
+            .addLine("assertEquals(Arrays.asList(")
+            .addLine("        \"com.example.DataType\",")
+            .addLine("        \"com.example.DataType$Builder\",")
+            .addLine("        \"com.example.DataType_Builder\",")
+            .addLine("        \"com.example.DataType_Builder$Value\",")
+            .addLine("        \"com.example.DataType_Builder$Partial\",")
+            .addLine("        \"com.example.DataType_Builder$Value_JsonSerializer\",")
+            .addLine("        \"com.example.DataType_Builder$Value_JsonDeserializer\"),")
+            .addLine("    names);")
+            .addLine("assertCompiled(DataType.class, names);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void reflectConfigCoversGwtSerializer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(SERIALIZABLE_TYPE)
+        .with(testBuilder()
+            .addLine("List<String> names = readNames(DataType.class, \"reflect-config.json\");")
+            .addLine("assertTrue(names.toString(), names.contains(")
+            .addLine("    \"com.example.DataType_Builder$Value_CustomFieldSerializer\"));")
+            .addLine("assertCompiled(DataType.class, names);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void serializationConfigCoversSerializableValues() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(SERIALIZABLE_TYPE)
+        .with(testBuilder()
+            .addLine("List<String> names =")
+            .addLine("    readNames(DataType.class, \"serialization-config.json\");")
+            .addLine("assertEquals(Arrays.asList(")
+            .addLine("        \"com.example.DataType_Builder$Value\",")
+            .addLine("        \"com.example.DataType_Builder$Partial\",")
+            .addLine("        \"com.example.DataType_Builder$Value$SerializationProxy\"),")
+            .addLine("    names);")
+            .addLine("assertCompiled(DataType.class, names);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void noSerializationConfigWithoutSerializableTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("assertNull(DataType.class.getResourceAsStream(")
+            .addLine("    \"%sserialization-config.json\"));", TYPE_DIRECTORY)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void eachTypeHasItsOwnConfig() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface OtherType {")
+            .addLine("  int getCount();")
+            .addLine("")
+            .addLine("  class Builder extends OtherType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("List<String> names = readNames(DataType.class, \"reflect-config.json\");")
+            .addLine("assertFalse(names.toString(), names.contains(\"com.example.OtherType\"));")
+            .addLine("List<String> otherNames =")
+            .addLine("    readNames(com.example.OtherType.class, \"reflect-config.json\");")
+            .addLine("assertEquals(Arrays.asList(")
+            .addLine("        \"com.example.OtherType\",")
+            .addLine("        \"com.example.OtherType$Builder\",")
+            .addLine("        \"com.example.OtherType_Builder\",")
+            .addLine("        \"com.example.OtherType_Builder$Value\",")
+            .addLine("        \"com.example.OtherType_Builder$Partial\"),")
+            .addLine("    otherNames);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void registersJacksonModule() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("List<String> modules = listedModules(DataType.class);")
+            .addLine("assertEquals(modules.toString(), 1, modules.size());")
+            .addLine("assertEquals(modules, readNames(")
+            .addLine("    DataType.class, modules.get(0), \"reflect-config.json\"));")
+            .addLine("assertCompiled(DataType.class, modules);")
+            .addLine("assertNotNull(DataType.class.getResourceAsStream(")
+            .addLine("    \"%s\" + modules.get(0) + \"/resource-config.json\"));", DIRECTORY)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notWrittenByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("assertNull(DataType.class.getResourceAsStream(")
+            .addLine("    \"%sreflect-config.json\"));", TYPE_DIRECTORY)
+            .build())
+        .runTest();
+  }
+
+  /**
+   * Returns the class names listed in {@code file} in the configuration directory of
+   * {@code type}, read from {@code type}'s classloader.
+   */
+  public static List<String> readNames(Class<?> type, String file) throws IOException {
+    return readNames(type, type.getName(), file);
+  }
+
+  /**
+   * Returns the class names listed in {@code file} in the configuration directory named
+   * {@code directory}, read from {@code type}'s classloader.
+   */
+  public static List<String> readNames(Class<?> type, String directory, String file)
+      throws IOException {
+    InputStream config = type.getResourceAsStream(DIRECTORY + directory + "/" + file);
+    assertNotNull("No " + file + " written", config);
+    List<String> names = new ArrayList<String>();
+    try {
+      for (JsonNode entry : new ObjectMapper().readTree(config)) {
+        names.add(entry.get("name").asText());
+      }
+    } finally {
+      config.close();
+    }
+    return names;
+  }
+
+  /** Fails unless every class in {@code names} was compiled alongside {@code type}. */
+  public static void assertCompiled(Class<?> type, List<String> names) throws IOException {
+    for (String name : names) {
+      InputStream classFile = type.getResourceAsStream("/" + name.replace('.', '/') + ".class");
+      assertNotNull("No class file found for " + name, classFile);
+      classFile.close();
+    }
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(List.class)
+        .addImport(java.util.Arrays.class)
+        .addStaticImport(NativeImageConfigTest.class, "readNames")
+        .addStaticImport(NativeImageConfigTest.class, "assertCompiled")
+        .addStaticImport(FreeBuilderModuleTest.class, "listedModules");
+  }
+}
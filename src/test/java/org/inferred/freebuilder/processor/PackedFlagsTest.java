@@ -0,0 +1,342 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.PackedFlags;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class PackedFlagsTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, PackedFlags.ENABLED),
+        new StaticFeatureSet(JAVA_8, PackedFlags.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, PackedFlags.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, PackedFlags.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  enum Color { RED, GREEN, BLUE }")
+      .addLine("")
+      .addLine("  String getName();")
+      .addLine("  boolean isEnabled();")
+      .addLine("  Color getColor();")
+      .addLine("  @%s Color getAccent();", Nullable.class)
+      .addLine("  boolean isVisible();")
+      .addLine("  %s<String> getLabels();", List.class)
+      .addLine("")
+      .addLine("  DataType withColor(Color color);")
+      .addLine("  Builder toBuilder();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public Builder() {")
+      .addLine("      setEnabled(false);")
+      .addLine("      setVisible(true);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void gettersReturnPackedValues() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (DataType.Color color : DataType.Color.values()) {")
+            .addLine("  for (int bits = 0; bits < 4; bits++) {")
+            .addLine("    DataType value = new DataType.Builder()")
+            .addLine("        .setName(\"n\")")
+            .addLine("        .setEnabled((bits & 1) != 0)")
+            .addLine("        .setColor(color)")
+            .addLine("        .setVisible((bits & 2) != 0)")
+            .addLine("        .build();")
+            .addLine("    assertEquals(\"n\", value.getName());")
+            .addLine("    assertEquals((bits & 1) != 0, value.isEnabled());")
+            .addLine("    assertEquals(color, value.getColor());")
+            .addLine("    assertNull(value.getAccent());")
+            .addLine("    assertEquals((bits & 2) != 0, value.isVisible());")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void storesFlagsInOneWord() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .setColor(DataType.Color.RED)")
+            .addLine("    .build();")
+            .addLine("java.util.Set<String> fields = new java.util.HashSet<String>();")
+            .addLine("for (java.lang.reflect.Field field")
+            .addLine("    : value.getClass().getDeclaredFields()) {")
+            .addLine("  if (!java.lang.reflect.Modifier.isStatic(field.getModifiers())) {")
+            .addLine("    fields.add(field.getType() + \" \" + field.getName());")
+            .addLine("  }")
+            .addLine("}")
+            .addLine("assertEquals(ImmutableSet.of(")
+            .addLine("        \"class java.lang.String name\",")
+            .addLine("        \"class com.example.DataType$Color accent\",")
+            .addLine("        \"interface java.util.List labels\",")
+            .addLine("        \"int _flags0\"),")
+            .addLine("    fields);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void equalsComparesWords() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .setEnabled(true)")
+            .addLine("    .setColor(DataType.Color.GREEN)")
+            .addLine("    .build();")
+            .addLine("DataType same = new DataType.Builder()")
+            .addLine("    .setColor(DataType.Color.GREEN)")
+            .addLine("    .setEnabled(true)")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(value, same);")
+            .addLine("assertEquals(value.hashCode(), same.hashCode());")
+            .addLine("assertFalse(value.equals(value.withColor(DataType.Color.BLUE)));")
+            .addLine("assertFalse(value.equals(value.toBuilder().setEnabled(false).build()));")
+            .addLine("assertFalse(value.equals(value.toBuilder().setVisible(false).build()));")
+            .addLine("assertFalse(value.equals(")
+            .addLine("    value.toBuilder().setAccent(DataType.Color.RED).build()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void hashCodeMatchesUnpackedLayout() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .setColor(DataType.Color.BLUE)")
+            .addLine("    .setAccent(DataType.Color.RED)")
+            .addLine("    .build();")
+            .addLine("assertEquals(java.util.Arrays.hashCode(new Object[] {")
+            .addLine("        \"n\", false, DataType.Color.BLUE, DataType.Color.RED, true,")
+            .addLine("        ImmutableSet.of().asList() }),")
+            .addLine("    value.hashCode());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void toStringMatchesUnpackedFormat() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .setColor(DataType.Color.BLUE)")
+            .addLine("    .setAccent(DataType.Color.RED)")
+            .addLine("    .addLabels(\"l\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"DataType{name=n, enabled=false, color=BLUE, accent=RED, \"")
+            .addLine("    + \"visible=true, labels=[l]}\", value.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withersAndToBuilderRoundTrip() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"n\")")
+            .addLine("    .setEnabled(true)")
+            .addLine("    .setColor(DataType.Color.RED)")
+            .addLine("    .build();")
+            .addLine("DataType changed = value.withColor(DataType.Color.BLUE);")
+            .addLine("assertEquals(DataType.Color.BLUE, changed.getColor());")
+            .addLine("assertTrue(changed.isEnabled());")
+            .addLine("assertTrue(changed.isVisible());")
+            .addLine("assertEquals(value, changed.withColor(DataType.Color.RED));")
+            .addLine("assertEquals(value, value.toBuilder().build());")
+            .addLine("try {")
+            .addLine("  value.withColor(null);")
+            .addLine("  fail(\"Expected NullPointerException\");")
+            .addLine("} catch (NullPointerException expected) {}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void spillsIntoLongWords() {
+    SourceBuilder dataType = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public interface DataType {");
+    for (int i = 0; i < 70; i++) {
+      dataType.addLine("  boolean isFlag%s();", i);
+    }
+    dataType.addLine("")
+        .addLine("  class Builder extends DataType_Builder {")
+        .addLine("    public Builder() {");
+    for (int i = 0; i < 70; i++) {
+      dataType.addLine("      setFlag%s(false);", i);
+    }
+    dataType.addLine("    }")
+        .addLine("  }")
+        .addLine("}");
+    behaviorTester
+        .with(new Processor(features))
+        .with(dataType.build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setFlag0(true)")
+            .addLine("    .setFlag35(true)")
+            .addLine("    .setFlag63(true)")
+            .addLine("    .setFlag64(true)")
+            .addLine("    .setFlag69(true)")
+            .addLine("    .build();")
+            .addLine("assertTrue(value.isFlag0());")
+            .addLine("assertFalse(value.isFlag1());")
+            .addLine("assertTrue(value.isFlag35());")
+            .addLine("assertFalse(value.isFlag62());")
+            .addLine("assertTrue(value.isFlag63());")
+            .addLine("assertTrue(value.isFlag64());")
+            .addLine("assertFalse(value.isFlag65());")
+            .addLine("assertTrue(value.isFlag69());")
+            .addLine("assertEquals(value, new DataType.Builder().mergeFrom(value).build());")
+            .addLine("assertFalse(value.equals(")
+            .addLine("    new DataType.Builder().mergeFrom(value).setFlag64(false).build()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void leavesEnumsFromOtherFilesUnpacked() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("public enum Mode { FAST, SAFE }")
+            .build())
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  boolean isEnabled();")
+            .addLine("  boolean isVisible();")
+            .addLine("  Mode getMode();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setEnabled(true)")
+            .addLine("    .setVisible(false)")
+            .addLine("    .setMode(com.example.Mode.SAFE)")
+            .addLine("    .build();")
+            .addLine("java.util.Set<String> fields = new java.util.HashSet<String>();")
+            .addLine("for (java.lang.reflect.Field field")
+            .addLine("    : value.getClass().getDeclaredFields()) {")
+            .addLine("  if (!java.lang.reflect.Modifier.isStatic(field.getModifiers())) {")
+            .addLine("    fields.add(field.getType() + \" \" + field.getName());")
+            .addLine("  }")
+            .addLine("}")
+            .addLine("assertEquals(ImmutableSet.of(")
+            .addLine("        \"class com.example.Mode mode\",")
+            .addLine("        \"int _flags0\"),")
+            .addLine("    fields);")
+            .addLine("assertEquals(com.example.Mode.SAFE, value.getMode());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public enum Size { SMALL, LARGE }")
+            .addLine("")
+            .addLine("  public abstract boolean isEnabled();")
+            .addLine("  public abstract Size getSize();")
+            .addLine("  public abstract %s<%s<String, Integer>> getTables();",
+                List.class, Map.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(ImmutableSet.class);
+  }
+}
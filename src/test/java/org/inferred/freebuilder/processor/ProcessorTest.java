@@ -15,9 +15,15 @@
  */
 package org.inferred.freebuilder.processor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.testing.EqualsTester;
+import com.google.gwt.user.client.rpc.CustomFieldSerializer;
 import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.client.rpc.SerializationStreamReader;
+import com.google.gwt.user.client.rpc.SerializationStreamWriter;
 import com.google.gwt.user.server.rpc.RPC;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -46,8 +52,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.tools.JavaFileObject;
@@ -747,6 +756,62 @@ public class ProcessorTest {
         .runTest();
   }
 
+  @Test
+  public void testGwtSerialize_writesPropertiesInlineAndInOrder() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(GWT_MIXED_TYPE)
+        .withPermittedPackage(CustomFieldSerializer.class.getPackage())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setName(\"foo\")")
+            .addLine("    .addTags(\"a\", \"b\")")
+            .addLine("    .setCount(3)")
+            .addLine("    .putScores(\"x\", 7)")
+            .addLine("    .build();")
+            .addLine("assertEquals(")
+            .addLine("    \"[String, Int, String, String, Int, Int, String, Int, Object]\",")
+            .addLine("    %s.gwtWrites(value).toString());", this.getClass())
+            .addLine("%s.gwtSerialize(value);", this.getClass())
+            .build())
+        .withContextClassLoader()  // Used by GWT to find the custom field serializer.
+        .runTest();
+  }
+
+  @Test
+  public void testGwtSerialize_roundTripsThroughCustomFieldSerializer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(GWT_MIXED_TYPE)
+        .withPermittedPackage(CustomFieldSerializer.class.getPackage())
+        .with(new TestBuilder()
+            .addLine("com.example.DataType value = new com.example.DataType.Builder()")
+            .addLine("    .setName(\"foo\")")
+            .addLine("    .addTags(\"a\", \"b\")")
+            .addLine("    .setCount(3)")
+            .addLine("    .putScores(\"x\", 7)")
+            .addLine("    .setNickname(\"f\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(value, %s.gwtRoundTrip(value));", this.getClass())
+            .build())
+        .runTest();
+  }
+
+  private static final JavaFileObject GWT_MIXED_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(serializable = true)", GwtCompatible.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("  int getCount();")
+      .addLine("  %s<String, Integer> getScores();", Map.class)
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("")
+      .addLine("  public static class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
   /**
    * Server-side deserialize does not match server-side serialize, so we can't test a round trip.
    */
@@ -764,6 +829,133 @@ public class ProcessorTest {
     }
   }
 
+  /** Returns the kinds of write the value's generated custom field serializer makes, in order. */
+  public static <T> List<String> gwtWrites(T object) throws Exception {
+    RecordingStream stream = new RecordingStream();
+    customFieldSerializer(object).serializeInstance(stream, object);
+    return stream.kinds;
+  }
+
+  /** Round-trips a value through its generated custom field serializer, without GWT RPC. */
+  public static <T> T gwtRoundTrip(T object) throws Exception {
+    CustomFieldSerializer<T> serializer = customFieldSerializer(object);
+    RecordingStream stream = new RecordingStream();
+    serializer.serializeInstance(stream, object);
+    T result = serializer.instantiateInstance(stream);
+    assertTrue("Unread values: " + stream.values, stream.values.isEmpty());
+    return result;
+  }
+
+  private static <T> CustomFieldSerializer<T> customFieldSerializer(T object) throws Exception {
+    Class<?> serializerClass = Class.forName(
+        object.getClass().getEnclosingClass().getName() + "$Value_CustomFieldSerializer",
+        true,
+        object.getClass().getClassLoader());
+    Constructor<?> constructor = serializerClass.getDeclaredConstructor();
+    constructor.setAccessible(true);
+    @SuppressWarnings("unchecked")
+    CustomFieldSerializer<T> serializer = (CustomFieldSerializer<T>) constructor.newInstance();
+    return serializer;
+  }
+
+  /** Records each value written to it, and the kind of write, then replays them when read. */
+  private static class RecordingStream
+      implements SerializationStreamWriter, SerializationStreamReader {
+
+    final List<String> kinds = new ArrayList<>();
+    final List<Object> values = new ArrayList<>();
+
+    private void write(String kind, Object value) {
+      kinds.add(kind);
+      values.add(value);
+    }
+
+    private Object read(String kind) {
+      assertEquals(kinds.remove(0), kind);
+      return values.remove(0);
+    }
+
+    @Override public void writeBoolean(boolean value) {
+      write("Boolean", value);
+    }
+
+    @Override public void writeByte(byte value) {
+      write("Byte", value);
+    }
+
+    @Override public void writeChar(char value) {
+      write("Char", value);
+    }
+
+    @Override public void writeDouble(double value) {
+      write("Double", value);
+    }
+
+    @Override public void writeFloat(float value) {
+      write("Float", value);
+    }
+
+    @Override public void writeInt(int value) {
+      write("Int", value);
+    }
+
+    @Override public void writeLong(long value) {
+      write("Long", value);
+    }
+
+    @Override public void writeObject(Object value) {
+      write("Object", value);
+    }
+
+    @Override public void writeShort(short value) {
+      write("Short", value);
+    }
+
+    @Override public void writeString(String value) {
+      write("String", value);
+    }
+
+    @Override public boolean readBoolean() {
+      return (Boolean) read("Boolean");
+    }
+
+    @Override public byte readByte() {
+      return (Byte) read("Byte");
+    }
+
+    @Override public char readChar() {
+      return (Character) read("Char");
+    }
+
+    @Override public double readDouble() {
+      return (Double) read("Double");
+    }
+
+    @Override public float readFloat() {
+      return (Float) read("Float");
+    }
+
+    @Override public int readInt() {
+      return (Integer) read("Int");
+    }
+
+    @Override public long readLong() {
+      return (Long) read("Long");
+    }
+
+    @Override public Object readObject() {
+      return read("Object");
+    }
+
+    @Override public short readShort() {
+      return (Short) read("Short");
+    }
+
+    @Override public String readString() {
+      return (String) read("String");
+    }
+  }
+
   public static <T> T reserialize(final T object) {
     ByteArrayOutputStream bytes = new ByteArrayOutputStream();
     try {
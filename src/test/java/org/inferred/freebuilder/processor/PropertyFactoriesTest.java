@@ -0,0 +1,208 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.inferred.freebuilder.processor.Analyser.CannotGenerateCodeException;
+import org.inferred.freebuilder.processor.Metadata.Property;
+import org.inferred.freebuilder.processor.util.testing.FakeMessager;
+import org.inferred.freebuilder.processor.util.testing.ModelRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.Set;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+
+/** Unit tests for {@link PropertyFactories}. */
+@RunWith(JUnit4.class)
+public class PropertyFactoriesTest {
+
+  @Rule public final ModelRule model = new ModelRule();
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  private final FakeMessager messager = new FakeMessager();
+
+  @Test
+  public void builtInFactoriesDispatchOnErasedType() throws CannotGenerateCodeException {
+    Metadata metadata = analyse(PropertyFactories.builtIn());
+
+    assertThat(codeGenerator(metadata, "names")).isInstanceOf(ListProperty.class);
+    assertThat(codeGenerator(metadata, "ages")).isInstanceOf(MapProperty.class);
+    assertThat(codeGenerator(metadata, "id")).isInstanceOf(DefaultProperty.class);
+  }
+
+  @Test
+  public void pluginTakesOverItsPropertyTypes() throws CannotGenerateCodeException {
+    RecordingPlugin plugin = new RecordingPlugin(ImmutableSet.of("java.util.List"));
+
+    Metadata metadata = analyse(PropertyFactories.withPlugins(ImmutableList.of(plugin)));
+
+    assertThat(codeGenerator(metadata, "names")).isInstanceOf(DefaultProperty.class);
+    assertThat(codeGenerator(metadata, "ages")).isInstanceOf(MapProperty.class);
+    assertThat(plugin.propertiesSeen).containsExactly("names");
+  }
+
+  @Test
+  public void pluginForAnyTypeSeesEveryProperty() throws CannotGenerateCodeException {
+    DecliningPlugin plugin = new DecliningPlugin();
+
+    Metadata metadata = analyse(PropertyFactories.withPlugins(ImmutableList.of(plugin)));
+
+    assertThat(codeGenerator(metadata, "names")).isInstanceOf(ListProperty.class);
+    assertThat(codeGenerator(metadata, "ages")).isInstanceOf(MapProperty.class);
+    assertThat(plugin.propertiesSeen).containsExactly("names", "ages", "id");
+  }
+
+  @Test
+  public void nullablePropertiesAreNotPassedToPlugins() throws CannotGenerateCodeException {
+    DecliningPlugin plugin = new DecliningPlugin();
+
+    Metadata metadata = new Analyser(
+        model.elementUtils(),
+        messager,
+        MethodIntrospector.instance(model.environment()),
+        model.typeUtils(),
+        PropertyFactories.withPlugins(ImmutableList.of(plugin)))
+        .analyse(model.newType(
+            "package com.example;",
+            "interface DataType {",
+            "  @javax.annotation.Nullable String getName();",
+            "  class Builder extends DataType_Builder {}",
+            "}"));
+
+    assertThat(codeGenerator(metadata, "name")).isInstanceOf(NullableProperty.class);
+    assertThat(plugin.propertiesSeen).isEmpty();
+  }
+
+  @Test
+  public void getPluginsReturnsEachPluginOnce() {
+    RecordingPlugin plugin =
+        new RecordingPlugin(ImmutableSet.of("java.util.List", "java.util.Set"));
+    DecliningPlugin anyType = new DecliningPlugin();
+
+    PropertyFactories factories = PropertyFactories.withPlugins(
+        ImmutableList.<PropertyCodeGeneratorPlugin>of(plugin, anyType));
+
+    assertThat(factories.getPlugins()).containsExactly(plugin, anyType);
+  }
+
+  @Test
+  public void rejectsPluginCompiledAgainstAnotherPluginApi() throws Exception {
+    // Mimics a plugin compiled against unshaded classes, whose create method returns another
+    // Optional, by returning Object
+    ClassPool pool = ClassPool.getDefault();
+    CtClass pluginClass = pool.makeClass("com.example.IncompatiblePlugin");
+    pluginClass.addInterface(pool.get(PropertyCodeGeneratorPlugin.class.getName()));
+    pluginClass.addConstructor(CtNewConstructor.defaultConstructor(pluginClass));
+    CtMethod getPropertyTypes = new CtMethod(
+        pool.get(Set.class.getName()), "getPropertyTypes", new CtClass[0], pluginClass);
+    getPropertyTypes.setBody("return java.util.Collections.EMPTY_SET;");
+    pluginClass.addMethod(getPropertyTypes);
+    CtMethod create = new CtMethod(
+        pool.get(Object.class.getName()),
+        "create",
+        new CtClass[] { pool.get(PropertyCodeGenerator.Config.class.getName()) },
+        pluginClass);
+    create.setBody("return null;");
+    pluginClass.addMethod(create);
+    PropertyCodeGeneratorPlugin plugin = (PropertyCodeGeneratorPlugin) pluginClass
+        .toClass(getClass().getClassLoader(), getClass().getProtectionDomain())
+        .newInstance();
+
+    thrown.expect(ServiceConfigurationError.class);
+    thrown.expectMessage("com.example.IncompatiblePlugin must be compiled against");
+    PropertyFactories.withPlugins(ImmutableList.of(plugin));
+  }
+
+  private Metadata analyse(PropertyFactories factories) throws CannotGenerateCodeException {
+    Analyser analyser = new Analyser(
+        model.elementUtils(),
+        messager,
+        MethodIntrospector.instance(model.environment()),
+        model.typeUtils(),
+        factories);
+    return analyser.analyse(model.newType(
+        "package com.example;",
+        "interface DataType {",
+        "  java.util.List<String> getNames();",
+        "  java.util.Map<String, Integer> getAges();",
+        "  String getId();",
+        "  class Builder extends DataType_Builder {}",
+        "}"));
+  }
+
+  private static PropertyCodeGenerator codeGenerator(Metadata metadata, String name) {
+    for (Property property : metadata.getProperties()) {
+      if (property.getName().equals(name)) {
+        return property.getCodeGenerator();
+      }
+    }
+    throw new AssertionError("No property " + name);
+  }
+
+  /** Generates properties of its types as plain values, recording each property it is passed. */
+  private static class RecordingPlugin implements PropertyCodeGeneratorPlugin {
+
+    final List<String> propertiesSeen = new ArrayList<String>();
+    private final Set<String> propertyTypes;
+
+    RecordingPlugin(Set<String> propertyTypes) {
+      this.propertyTypes = propertyTypes;
+    }
+
+    @Override
+    public Set<String> getPropertyTypes() {
+      return propertyTypes;
+    }
+
+    @Override
+    public Optional<DefaultProperty> create(PropertyCodeGenerator.Config config) {
+      propertiesSeen.add(config.getProperty().getName());
+      return new DefaultProperty.Factory().create(config);
+    }
+  }
+
+  /** Declines every property, recording each one it is passed. */
+  private static class DecliningPlugin implements PropertyCodeGeneratorPlugin {
+
+    final List<String> propertiesSeen = new ArrayList<String>();
+
+    @Override
+    public Set<String> getPropertyTypes() {
+      return ImmutableSet.of();
+    }
+
+    @Override
+    public Optional<PropertyCodeGenerator> create(PropertyCodeGenerator.Config config) {
+      propertiesSeen.add(config.getProperty().getName());
+      return Optional.absent();
+    }
+  }
+}
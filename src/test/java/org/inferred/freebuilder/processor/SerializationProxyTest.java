@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.SerializationProxy;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class SerializationProxyTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, SerializationProxy.ENABLED),
+        new StaticFeatureSet(JAVA_8, SerializationProxy.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, SerializationProxy.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, SerializationProxy.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType extends %s {", Serializable.class)
+      .addLine("  enum Color { RED, GREEN }")
+      .addLine("")
+      .addLine("  int getQuantity();")
+      .addLine("  double getWeight();")
+      .addLine("  char getInitial();")
+      .addLine("  Long getIdentifier();")
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("  %s<String> getLabels();", List.class)
+      .addLine("  %s<Color> getColors();", Set.class)
+      .addLine("  %s<String, Integer> getScores();", Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public static final int[] MAX_QUANTITY = { 100 };")
+      .addLine("")
+      .addLine("    @Override public Builder setQuantity(int quantity) {")
+      .addLine("      if (quantity > MAX_QUANTITY[0]) {")
+      .addLine("        throw new IllegalArgumentException(\"Too many: \" + quantity);")
+      .addLine("      }")
+      .addLine("      return super.setQuantity(quantity);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void roundTripsThroughJavaSerialization() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(SerializationProxyTest.class.getPackage())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setQuantity(3)")
+            .addLine("    .setWeight(-0.5)")
+            .addLine("    .setInitial('q')")
+            .addLine("    .setIdentifier(1L << 40)")
+            .addLine("    .setNickname(\"Q\")")
+            .addLine("    .addLabels(\"a\", \"b\")")
+            .addLine("    .addColors(DataType.Color.GREEN)")
+            .addLine("    .putScores(\"x\", 7)")
+            .addLine("    .build();")
+            .addLine("assertEquals(value, reserialize(value));")
+            .addLine("DataType empty = new DataType.Builder()")
+            .addLine("    .setQuantity(0)")
+            .addLine("    .setWeight(0)")
+            .addLine("    .setInitial('a')")
+            .addLine("    .setIdentifier(0L)")
+            .addLine("    .build();")
+            .addLine("assertEquals(empty, reserialize(empty));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void writesPropertiesWithoutFieldOrCollectionMetadata() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(SerializationProxyTest.class.getPackage())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setQuantity(3)")
+            .addLine("    .setWeight(1)")
+            .addLine("    .setInitial('q')")
+            .addLine("    .setIdentifier(2L)")
+            .addLine("    .addLabels(\"a\")")
+            .addLine("    .putScores(\"x\", 7)")
+            .addLine("    .build();")
+            .addLine("String stream = new String(serialize(value), \"ISO-8859-1\");")
+            .addLine("assertFalse(stream, stream.contains(\"quantity\"));")
+            .addLine("assertFalse(stream, stream.contains(\"labels\"));")
+            .addLine("assertFalse(stream, stream.contains(\"java.util\"));")
+            .addLine("assertFalse(stream, stream.contains(\"com.google\"));")
+            .addLine("assertFalse(stream, stream.contains(\"java.lang.Integer\"));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void revalidatesThroughBuilderWhenRead() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(SerializationProxyTest.class.getPackage())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setQuantity(50)")
+            .addLine("    .setWeight(1)")
+            .addLine("    .setInitial('q')")
+            .addLine("    .setIdentifier(2L)")
+            .addLine("    .build();")
+            .addLine("byte[] bytes = serialize(value);")
+            .addLine("DataType.Builder.MAX_QUANTITY[0] = 10;")
+            .addLine("try {")
+            .addLine("  deserialize(bytes, DataType.class.getClassLoader());")
+            .addLine("  fail(\"Expected InvalidObjectException\");")
+            .addLine("} catch (RuntimeException e) {")
+            .addLine("  assertEquals(")
+            .addLine("      java.io.InvalidObjectException.class, e.getCause().getClass());")
+            .addLine("  assertEquals(\"Too many: 50\", e.getCause().getMessage());")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void keepsDefaultSerializedFormByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .withPermittedPackage(SerializationProxyTest.class.getPackage())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setQuantity(3)")
+            .addLine("    .setWeight(1)")
+            .addLine("    .setInitial('q')")
+            .addLine("    .setIdentifier(2L)")
+            .addLine("    .build();")
+            .addLine("String stream = new String(serialize(value), \"ISO-8859-1\");")
+            .addLine("assertTrue(stream, stream.contains(\"quantity\"));")
+            .addLine("assertEquals(value, reserialize(value));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedForNonSerializableTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  int getQuantity();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setQuantity(1).build();")
+            .addLine("for (java.lang.reflect.Method method")
+            .addLine("    : value.getClass().getDeclaredMethods()) {")
+            .addLine("  assertFalse(method.getName().equals(\"writeReplace\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType implements %s {", Serializable.class)
+            .addLine("  private static final long serialVersionUID = 1L;")
+            .addLine("")
+            .addLine("  public abstract int getQuantity();")
+            .addLine("  public abstract %s<%s<String, Integer>> getTables();",
+                List.class, Map.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addStaticImport(SerializationProxyTest.class, "serialize")
+        .addStaticImport(SerializationProxyTest.class, "deserialize")
+        .addStaticImport(SerializationProxyTest.class, "reserialize");
+  }
+
+  public static byte[] serialize(Object value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(value);
+      out.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static Object deserialize(byte[] bytes, final ClassLoader classLoader) {
+    try {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws ClassNotFoundException {
+          return Class.forName(desc.getName(), false, classLoader);
+        }
+      };
+      return in.readObject();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public static Object reserialize(Object value) {
+    return deserialize(serialize(value), value.getClass().getClassLoader());
+  }
+}
@@ -228,6 +228,36 @@ public class SetMutateMethodTest {
         .runTest();
   }
 
+  @Test
+  public void mutateAndRemoveIfModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2))
+            .addLine("    .mutateItems(items -> items.removeIf(e -> !e.equals(%s)))",
+                elements.example(1))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s);",
+                convention.get(), elements.example(1))
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void mutateAndRetainAllModifiesUnderlyingProperty() {
+    behaviorTester
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .addItems(%s)", elements.examples(0, 1, 2))
+            .addLine("    .mutateItems(items -> items.retainAll(%s.of(%s)))",
+                ImmutableSet.class, elements.examples(1, 2, 3))
+            .addLine("    .build();")
+            .addLine("assertThat(value.%s).containsExactly(%s);",
+                convention.get(), elements.examples(1, 2))
+            .build())
+        .runTest();
+  }
+
   @Test
   public void mutateAndAddDelegatesToAddMethodForValidation() {
     if (checked) {
@@ -98,6 +98,21 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (name.isEmpty() && name instanceof ImmutableSet && elements instanceof "
+            + "ImmutableSet) {",
+        "        name = ImmutableSet.copyOf((ImmutableSet<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (name instanceof ImmutableSet) {",
+        "          name = new LinkedHashSet<String>(name);",
+        "        }",
+        "        name.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -266,6 +281,22 @@ public class SetSourceTest {
         "      return \"partial Person{name=\" + name + \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -326,6 +357,21 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (name.isEmpty() && name instanceof ImmutableSet && elements instanceof "
+            + "ImmutableSet) {",
+        "        name = ImmutableSet.copyOf((ImmutableSet<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (name instanceof ImmutableSet) {",
+        "          name = new LinkedHashSet<>(name);",
+        "        }",
+        "        name.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -488,6 +534,22 @@ public class SetSourceTest {
         "      return \"partial Person{name=\" + name + \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -572,6 +634,21 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (name.isEmpty() && name instanceof ImmutableSet && elements instanceof "
+            + "ImmutableSet) {",
+        "        name = ImmutableSet.copyOf((ImmutableSet<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (name instanceof ImmutableSet) {",
+        "          name = new LinkedHashSet<>(name);",
+        "        }",
+        "        name.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    elements.forEach(this::addName);",
         "    return (Person.Builder) this;",
         "  }",
@@ -753,6 +830,22 @@ public class SetSourceTest {
         "      return \"partial Person{name=\" + name + \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -812,6 +905,11 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      name.addAll(checked);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -979,6 +1077,22 @@ public class SetSourceTest {
         "        return Collections.unmodifiableSet(new LinkedHashSet<E>(elements));",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -1035,6 +1149,11 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      name.addAll(checked);",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -1193,6 +1312,22 @@ public class SetSourceTest {
         "        return Collections.unmodifiableSet(new LinkedHashSet<>(elements));",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -1252,6 +1387,21 @@ public class SetSourceTest {
         "   * @throws NullPointerException if {@code elements} is null or contains a null element",
         "   */",
         "  public Person.Builder addAllName(Iterable<? extends String> elements) {",
+        "    if (elements instanceof Collection) {",
+        "      if (name.isEmpty() && name instanceof ImmutableSet && elements instanceof "
+            + "ImmutableSet) {",
+        "        name = ImmutableSet.copyOf((ImmutableSet<? extends String>) elements);",
+        "        return (Person.Builder) this;",
+        "      }",
+        "      List<String> checked = nonNullElements((Collection<? extends String>) elements);",
+        "      if (!checked.isEmpty()) {",
+        "        if (name instanceof ImmutableSet) {",
+        "          name = new LinkedHashSet<String>(name);",
+        "        }",
+        "        name.addAll(checked);",
+        "      }",
+        "      return (Person.Builder) this;",
+        "    }",
         "    for (String element : elements) {",
         "      addName(element);",
         "    }",
@@ -1420,6 +1570,22 @@ public class SetSourceTest {
         "      return \"partial Person{name=\" + name + \"}\";",
         "    }",
         "  }",
+        "",
+        "  /**",
+        "   * Returns a snapshot of {@code elements}, or throws a NullPointerException if it "
+            + "contains a null",
+        "   * element.",
+        "   */",
+        "  @SuppressWarnings(\"unchecked\")",
+        "  private static <E> List<E> nonNullElements(Collection<? extends E> elements) {",
+        "    Object[] array = elements.toArray();",
+        "    for (Object element : array) {",
+        "      if (element == null) {",
+        "        throw new NullPointerException();",
+        "      }",
+        "    }",
+        "    return (List<E>) (List<?>) Arrays.asList(array);",
+        "  }",
         "}\n"));
   }
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.SlimApi;
+import org.inferred.freebuilder.processor.util.feature.SlimApi.Omission;
+import org.inferred.freebuilder.processor.util.feature.SparseValueLayout;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class SlimApiTest {
+
+  private static final SlimApi SLIM = SlimApi.omitting(Omission.values());
+  private static final SparseValueLayout SPARSE = SparseValueLayout.above(2);
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, SLIM, SPARSE),
+        new StaticFeatureSet(JAVA_8, SLIM, SPARSE),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, SLIM, SPARSE));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getCount();")
+      .addLine("  @%s String getNote();", Nullable.class)
+      .addLine("  %s<String> getItems();", List.class)
+      .addLine("  %s<String, Integer> getScores();", Map.class)
+      .addLine("")
+      .addLine("  Builder toBuilder();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public Builder() {")
+      .addLine("      setCount(1);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void coreApiStillWorks() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .setNote(\"b\")")
+            .addLine("    .addItems(\"c\")")
+            .addLine("    .addAllItems(Arrays.asList(\"d\", \"e\"))")
+            .addLine("    .putScores(\"f\", 2)")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"a\", value.getName());")
+            .addLine("assertEquals(1, value.getCount());")
+            .addLine("assertEquals(Arrays.asList(\"c\", \"d\", \"e\"), value.getItems());")
+            .addLine("DataType copy = value.toBuilder().clear().mergeFrom(value).build();")
+            .addLine("assertEquals(value, copy);")
+            .addLine("assertEquals(value.hashCode(), copy.hashCode());")
+            .addLine("assertEquals(\"DataType{name=a, count=1, note=b, items=[c, d, e], \"")
+            .addLine("    + \"scores={f=2}}\", value.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void omitsMappersAndMutators() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder =")
+            .addLine("    new DataType.Builder().getClass().getSuperclass();")
+            .addLine("for (Method method : generatedBuilder.getDeclaredMethods()) {")
+            .addLine("  assertFalse(method.toString(), method.getName().startsWith(\"map\"));")
+            .addLine("  assertFalse(method.toString(), method.getName().startsWith(\"mutate\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void addAllOnlyTakesIterables() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder =")
+            .addLine("    new DataType.Builder().getClass().getSuperclass();")
+            .addLine("for (Method method : generatedBuilder.getDeclaredMethods()) {")
+            .addLine("  if (method.getName().equals(\"addAllItems\")) {")
+            .addLine("    assertEquals(Arrays.<Class<?>>asList(Iterable.class),")
+            .addLine("        Arrays.asList(method.getParameterTypes()));")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void omitsPartials() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder =")
+            .addLine("    new DataType.Builder().getClass().getSuperclass();")
+            .addLine("for (Method method : generatedBuilder.getDeclaredMethods()) {")
+            .addLine("  assertFalse(method.getName().equals(\"buildPartial\"));")
+            .addLine("}")
+            .addLine("for (Class<?> nested : generatedBuilder.getDeclaredClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Partial\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void valuesAreDenseWithoutPartials() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setName(\"a\").build();")
+            .addLine("for (Field field : value.getClass().getDeclaredFields()) {")
+            .addLine("  assertFalse(field.getName().equals(\"_values\"));")
+            .addLine("}")
+            .addLine("assertEquals(1, value.getCount());")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(java.lang.reflect.Field.class)
+        .addImport(java.lang.reflect.Method.class)
+        .addImport(java.util.Arrays.class);
+  }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.SparseValueLayout;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class SparseValueTest {
+
+  private static final SparseValueLayout SPARSE = SparseValueLayout.above(2);
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, SPARSE),
+        new StaticFeatureSet(JAVA_8, SPARSE),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, SPARSE),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, SPARSE));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getRetries();")
+      .addLine("  double getRatio();")
+      .addLine("  boolean isVerbose();")
+      .addLine("  @%s Integer getSize();", Nullable.class)
+      .addLine("  %s<String> getHosts();", List.class)
+      .addLine("  %s<String, Integer> getPorts();", Map.class)
+      .addLine("")
+      .addLine("  DataType withRetries(int retries);")
+      .addLine("  Builder toBuilder();")
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {")
+      .addLine("    public Builder() {")
+      .addLine("      setRetries(3);")
+      .addLine("      setRatio(0.5);")
+      .addLine("      setVerbose(false);")
+      .addLine("    }")
+      .addLine("  }")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void gettersReturnDefaultsAndStoredValues() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType defaults = new DataType.Builder().setName(\"a\").build();")
+            .addLine("assertEquals(\"a\", defaults.getName());")
+            .addLine("assertEquals(3, defaults.getRetries());")
+            .addLine("assertEquals(0.5, defaults.getRatio(), 0.0);")
+            .addLine("assertFalse(defaults.isVerbose());")
+            .addLine("assertNull(defaults.getSize());")
+            .addLine("assertEquals(ImmutableList.of(), defaults.getHosts());")
+            .addLine("assertEquals(ImmutableMap.of(), defaults.getPorts());")
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"b\")")
+            .addLine("    .setRatio(2)")
+            .addLine("    .setVerbose(true)")
+            .addLine("    .setSize(7)")
+            .addLine("    .addHosts(\"h\")")
+            .addLine("    .putPorts(\"p\", 80)")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"b\", value.getName());")
+            .addLine("assertEquals(3, value.getRetries());")
+            .addLine("assertEquals(2.0, value.getRatio(), 0.0);")
+            .addLine("assertTrue(value.isVerbose());")
+            .addLine("assertEquals((Integer) 7, value.getSize());")
+            .addLine("assertEquals(ImmutableList.of(\"h\"), value.getHosts());")
+            .addLine("assertEquals(ImmutableMap.of(\"p\", 80), value.getPorts());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void defaultedPropertiesShareInstances() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType first = new DataType.Builder().setName(\"a\").build();")
+            .addLine("DataType second = new DataType.Builder().setName(\"b\").build();")
+            .addLine("assertSame(first.getHosts(), second.getHosts());")
+            .addLine("assertSame(first.getPorts(), second.getPorts());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void equalsAndHashCodeMatchAcrossLayouts() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .setRetries(4)")
+            .addLine("    .addHosts(\"h\")")
+            .addLine("    .build();")
+            .addLine("DataType same = new DataType.Builder()")
+            .addLine("    .addHosts(\"h\")")
+            .addLine("    .setRetries(4)")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .build();")
+            .addLine("DataType reset = same.toBuilder().setRetries(3).build();")
+            .addLine("assertEquals(value, same);")
+            .addLine("assertEquals(value.hashCode(), same.hashCode());")
+            .addLine("assertFalse(value.equals(reset));")
+            .addLine("assertEquals(new DataType.Builder().setName(\"a\").addHosts(\"h\").build(),")
+            .addLine("    reset);")
+            .addLine("assertFalse(value.equals(value.toBuilder().setName(\"b\").build()));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void hashCodeMatchesDenseLayout() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .setRatio(1.5)")
+            .addLine("    .setSize(2)")
+            .addLine("    .addHosts(\"h\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(java.util.Arrays.hashCode(new Object[] {")
+            .addLine("        \"a\", 3, 1.5, false, 2, ImmutableList.of(\"h\"), ImmutableMap.of()")
+            .addLine("    }),")
+            .addLine("    value.hashCode());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void toStringMatchesDenseFormat() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .setVerbose(true)")
+            .addLine("    .addHosts(\"h\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(\"DataType{name=a, retries=3, ratio=0.5, verbose=true, \"")
+            .addLine("    + \"hosts=[h], ports={}}\", value.toString());")
+            .addLine("assertEquals(\"DataType{name=a, retries=3, ratio=0.5, verbose=true, \"")
+            .addLine("    + \"size=2, hosts=[h], ports={}}\",")
+            .addLine("    value.toBuilder().setSize(2).build().toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withersAndToBuilderRoundTrip() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"a\")")
+            .addLine("    .putPorts(\"p\", 1)")
+            .addLine("    .build();")
+            .addLine("DataType changed = value.withRetries(9);")
+            .addLine("assertEquals(9, changed.getRetries());")
+            .addLine("assertEquals(ImmutableMap.of(\"p\", 1), changed.getPorts());")
+            .addLine("assertEquals(value, changed.withRetries(3));")
+            .addLine("assertEquals(value, value.toBuilder().build());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void typesAtThresholdStayDense() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  int getQuantity();")
+            .addLine("  %s<String> getLabels();", List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder().setQuantity(1).build();")
+            .addLine("for (java.lang.reflect.Field field")
+            .addLine("    : value.getClass().getDeclaredFields()) {")
+            .addLine("  assertFalse(field.getName().equals(\"_values\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void storesMoreThan64SparseProperties() {
+    SourceBuilder dataType = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public interface DataType {");
+    for (int i = 0; i < 70; i++) {
+      dataType.addLine("  @%s Integer getItem%s();", Nullable.class, i);
+    }
+    dataType.addLine("")
+        .addLine("  class Builder extends DataType_Builder {}")
+        .addLine("}");
+    behaviorTester
+        .with(new Processor(features))
+        .with(dataType.build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setItem1(1)")
+            .addLine("    .setItem63(63)")
+            .addLine("    .setItem64(64)")
+            .addLine("    .setItem69(69)")
+            .addLine("    .build();")
+            .addLine("assertNull(value.getItem0());")
+            .addLine("assertEquals((Integer) 1, value.getItem1());")
+            .addLine("assertEquals((Integer) 63, value.getItem63());")
+            .addLine("assertEquals((Integer) 64, value.getItem64());")
+            .addLine("assertNull(value.getItem65());")
+            .addLine("assertEquals((Integer) 69, value.getItem69());")
+            .addLine("assertEquals(value, new DataType.Builder().mergeFrom(value).build());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void splitsMethodsOfHugeTypes() {
+    SourceBuilder dataType = new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("public interface DataType {");
+    for (int i = 0; i < 400; i++) {
+      dataType.addLine("  %s getItem%s();", (i % 2 == 0) ? "int" : "String", i);
+    }
+    dataType.addLine("")
+        .addLine("  Builder toBuilder();")
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {")
+        .addLine("    public Builder() {");
+    for (int i = 0; i < 400; i++) {
+      dataType.addLine("      setItem%s(%s);", i, (i % 2 == 0) ? "" + i : "\"" + i + "\"");
+    }
+    dataType.addLine("    }")
+        .addLine("  }")
+        .addLine("}");
+    behaviorTester
+        .with(new Processor(features))
+        .with(dataType.build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setItem2(-2)")
+            .addLine("    .setItem399(\"x\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(0, value.getItem0());")
+            .addLine("assertEquals(-2, value.getItem2());")
+            .addLine("assertEquals(\"397\", value.getItem397());")
+            .addLine("assertEquals(\"x\", value.getItem399());")
+            .addLine("Object[] values = new Object[400];")
+            .addLine("for (int i = 0; i < 400; i++) {")
+            .addLine("  values[i] = (i %% 2 == 0) ? (Object) i : (Object) (\"\" + i);")
+            .addLine("}")
+            .addLine("values[2] = -2;")
+            .addLine("values[399] = \"x\";")
+            .addLine("assertEquals(java.util.Arrays.hashCode(values), value.hashCode());")
+            .addLine("assertEquals(value, value.toBuilder().build());")
+            .addLine("assertFalse(value.equals(value.toBuilder().setItem2(2).build()));")
+            .addLine("assertTrue(value.toString().startsWith(\"DataType{item0=0, item1=1, \"));")
+            .addLine("assertTrue(value.toString().endsWith(\", item398=398, item399=x}\"));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public abstract class DataType {")
+            .addLine("  public abstract int getQuantity();")
+            .addLine("  public abstract %s<%s<String, Integer>> getTables();",
+                List.class, Map.class)
+            .addLine("  public abstract %s<String, %s<Long>> getIndex();", Map.class, List.class)
+            .addLine("")
+            .addLine("  public static class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .compiles()
+        .withNoWarnings();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType")
+        .addImport(ImmutableList.class)
+        .addImport(ImmutableMap.class);
+  }
+}
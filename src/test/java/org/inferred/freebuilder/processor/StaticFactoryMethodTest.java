@@ -0,0 +1,298 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFactoryMethod;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class StaticFactoryMethodTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, StaticFactoryMethod.ENABLED),
+        new StaticFeatureSet(JAVA_8, StaticFactoryMethod.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, StaticFactoryMethod.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, StaticFactoryMethod.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getAge();")
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("  %s<String, Integer> getScores();", java.util.Map.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void ofReturnsValueEqualToBuiltValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("java.util.Map<String, Integer> scores =")
+            .addLine("    new java.util.HashMap<String, Integer>();")
+            .addLine("scores.put(\"a\", 1);")
+            .addLine("DataType value = DataType.Builder.of(")
+            .addLine("    \"Alice\", 28, null, java.util.Arrays.asList(\"x\", \"y\"), scores);")
+            .addLine("DataType expected = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .putScores(\"a\", 1)")
+            .addLine("    .build();")
+            .addLine("assertEquals(expected, value);")
+            .addLine("assertEquals(expected.toString(), value.toString());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofCopiesCollectionArguments() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("java.util.List<String> tags = new java.util.ArrayList<String>();")
+            .addLine("tags.add(\"x\");")
+            .addLine("java.util.Map<String, Integer> scores =")
+            .addLine("    new java.util.HashMap<String, Integer>();")
+            .addLine("DataType value = DataType.Builder.of(\"Alice\", 28, null, tags, scores);")
+            .addLine("tags.add(\"y\");")
+            .addLine("scores.put(\"a\", 1);")
+            .addLine("assertThat(value.getTags()).containsExactly(\"x\");")
+            .addLine("assertThat(value.getScores()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofReturnsUnmodifiableCollections() {
+    thrown.expect(UnsupportedOperationException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = DataType.Builder.of(")
+            .addLine("    \"Alice\", 28, null, java.util.Arrays.asList(\"x\", \"y\"),")
+            .addLine("    new java.util.HashMap<String, Integer>());")
+            .addLine("value.getTags().add(\"z\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofThrowsNpeForNullArgument() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder.of(null, 28, null, java.util.Arrays.<String>asList(),")
+            .addLine("    new java.util.HashMap<String, Integer>());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofThrowsNpeForNullElement() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType.Builder.of(")
+            .addLine("    \"Alice\", 28, null, java.util.Arrays.asList(\"x\", null),")
+            .addLine("    new java.util.HashMap<String, Integer>());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofThrowsNpeForNullMapValue() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("java.util.Map<String, Integer> scores =")
+            .addLine("    new java.util.HashMap<String, Integer>();")
+            .addLine("scores.put(\"a\", null);")
+            .addLine("DataType.Builder.of(")
+            .addLine("    \"Alice\", 28, null, java.util.Arrays.<String>asList(), scores);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofDelegatesToBuilderIfSetterOverridden() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("age must be non-negative");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("  int getAge();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {")
+            .addLine("    @Override public Builder setAge(int age) {")
+            .addLine("      if (age < 0) {")
+            .addLine("        throw new IllegalArgumentException(\"age must be non-negative\");")
+            .addLine("      }")
+            .addLine("      return super.setAge(age);")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType.Builder.of(\"Alice\", -1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofDelegatesToBuilderIfBuildOverridden() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("name must not be empty");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {")
+            .addLine("    @Override public DataType build() {")
+            .addLine("      DataType value = super.build();")
+            .addLine("      if (value.getName().isEmpty()) {")
+            .addLine("        throw new IllegalStateException(\"name must not be empty\");")
+            .addLine("      }")
+            .addLine("      return value;")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType.Builder.of(\"\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofSupportsGenericTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType<A, B extends Number> {")
+            .addLine("  A getPropertyA();")
+            .addLine("  %s<B> getPropertyB();", List.class)
+            .addLine("")
+            .addLine("  class Builder<A, B extends Number> extends DataType_Builder<A, B> {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType<String, Integer> value =")
+            .addLine("    DataType.Builder.of(\"a\", java.util.Arrays.asList(1, 2));")
+            .addLine("assertEquals(\"a\", value.getPropertyA());")
+            .addLine("assertThat(value.getPropertyB()).containsExactly(1, 2).inOrder();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofSupportsSingleTypeVariableProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType<T> {")
+            .addLine("  T getProperty();")
+            .addLine("")
+            .addLine("  class Builder<T> extends DataType_Builder<T> {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType<String> value = DataType.Builder.of(\"a\");")
+            .addLine("assertEquals(\"a\", value.getProperty());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void ofNotGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("for (%s method : DataType.Builder.class.getMethods()) {",
+                java.lang.reflect.Method.class)
+            .addLine("  assertFalse(method.getName().equals(\"of\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
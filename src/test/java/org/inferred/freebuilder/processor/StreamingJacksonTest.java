@@ -0,0 +1,483 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_6;
+import static org.inferred.freebuilder.processor.util.feature.SourceLevel.JAVA_8;
+
+import com.google.common.collect.ImmutableList;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.GuavaLibrary;
+import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
+import org.inferred.freebuilder.processor.util.feature.StreamingJackson;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class StreamingJacksonTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return ImmutableList.<FeatureSet>of(
+        new StaticFeatureSet(JAVA_6, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_8, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_6, GuavaLibrary.AVAILABLE, StreamingJackson.ENABLED),
+        new StaticFeatureSet(JAVA_8, GuavaLibrary.AVAILABLE, StreamingJackson.ENABLED));
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("@%s(using = DataType_Builder.Value_JsonDeserializer.class)",
+          JsonDeserialize.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getAge();")
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("  @%s(\"tag\") %s<String> getTags();", JsonProperty.class, List.class)
+      .addLine("  %s<Integer> getIds();", Set.class)
+      .addLine("  %s<String, Long> getScores();", Map.class)
+      .addLine("  %s getWhen();", java.util.Date.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void readsEveryPropertyKind() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = mapper.readValue(")
+            .addLine("    \"{'name':'Alice','age':28,'nickname':'Al','tag':['x','y'],\"")
+            .addLine("    + \"'ids':[3,1],'scores':{'a':1,'b':2},'when':1000}\",")
+            .addLine("    DataType.class);")
+            .addLine("DataType expected = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setNickname(\"Al\")")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .addIds(3, 1)")
+            .addLine("    .putScores(\"a\", 1L)")
+            .addLine("    .putScores(\"b\", 2L)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("assertEquals(expected, value);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void roundTripsSerializedValue() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .putScores(\"a\", 1L)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("String json = mapper.writeValueAsString(value);")
+            .addLine("assertEquals(value, mapper.readValue(json, DataType.class));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void skipsNullCollections() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = mapper.readValue(")
+            .addLine("    \"{'name':'Alice','age':28,'tag':null,'scores':null,'when':0}\",")
+            .addLine("    DataType.class);")
+            .addLine("assertThat(value.getTags()).isEmpty();")
+            .addLine("assertThat(value.getScores()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void rejectsUnknownProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("try {")
+            .addLine("  mapper.readValue(")
+            .addLine("      \"{'name':'Alice','age':28,'when':0,'tags':['x']}\", DataType.class);")
+            .addLine("  fail(\"Expected UnrecognizedPropertyException\");")
+            .addLine("} catch (%s e) {", UnrecognizedPropertyException.class)
+            .addLine("  assertEquals(\"tags\", e.getPropertyName());")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void requiresPropertiesToBeSet() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("try {")
+            .addLine("  mapper.readValue(\"{'name':'Alice','when':0}\", DataType.class);")
+            .addLine("  fail(\"Expected JsonMappingException\");")
+            .addLine("} catch (%s e) {", JsonMappingException.class)
+            .addLine("  assertThat(e.getMessage()).contains(\"Not set: [age]\");")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void reportsNullScalarAsMappingException() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("try {")
+            .addLine("  mapper.readValue(\"{'name':null,'age':28,'when':0}\", DataType.class);")
+            .addLine("  fail(\"Expected JsonMappingException\");")
+            .addLine("} catch (%s e) {", JsonMappingException.class)
+            .addLine("  assertThat(e.getMessage()).contains(\"'name'\");")
+            .addLine("  assertThat(e.getCause()).isInstanceOf(NullPointerException.class);")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void reportsNullElementAsMappingException() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("try {")
+            .addLine("  mapper.readValue(")
+            .addLine("      \"{'name':'Alice','age':28,'tag':[null],'when':0}\", DataType.class);")
+            .addLine("  fail(\"Expected JsonMappingException\");")
+            .addLine("} catch (%s e) {", JsonMappingException.class)
+            .addLine("  assertThat(e.getMessage()).contains(\"'tag'\");")
+            .addLine("  assertThat(e.getCause()).isInstanceOf(NullPointerException.class);")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void writesEveryPropertyKind() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setNickname(\"Al\")")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .addIds(3)")
+            .addLine("    .putScores(\"a\", 1L)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("assertEquals(")
+            .addLine("    \"{'name':'Alice','age':28,'nickname':'Al','tag':['x','y'],'ids':[3],\"")
+            .addLine("        + \"'scores':{'a':1},'when':1000}\",")
+            .addLine("    mapper.writeValueAsString(value).replace('\"', '\\''));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void usesGeneratedSerializer() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("assertEquals(DataType.Builder.Value_JsonSerializer.class,")
+            .addLine("    value.getClass().getAnnotation(%s.class).using());",
+                JsonSerialize.class)
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void writesNullWithDefaultInclusion() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("assertThat(mapper.writeValueAsString(value).replace('\"', '\\''))")
+            .addLine("    .contains(\"'nickname':null\");")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void honoursMapperInclusion() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setWhen(new java.util.Date(1000))")
+            .addLine("    .build();")
+            .addLine("mapper.setSerializationInclusion(%s.Include.NON_EMPTY);", JsonInclude.class)
+            .addLine("assertEquals(\"{'name':'Alice','age':28,'when':1000}\",")
+            .addLine("    mapper.writeValueAsString(value).replace('\"', '\\''));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void honoursJsonIncludeAnnotations() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("@%s(using = DataType_Builder.Value_JsonDeserializer.class)",
+                JsonDeserialize.class)
+            .addLine("@%s(%s.Include.NON_NULL)", JsonInclude.class, JsonInclude.class)
+            .addLine("public interface DataType {")
+            .addLine("  @%s String getName();", Nullable.class)
+            .addLine("  @%s String getNickname();", Nullable.class)
+            .addLine("  %s<String> getTags();", List.class)
+            .addLine("  @%s(%s.Include.NON_EMPTY) %s<String> getIds();",
+                JsonInclude.class, JsonInclude.class, List.class)
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .withPermittedPackage(ObjectMapper.class.getPackage())
+        .withPermittedPackage(JsonParser.class.getPackage())
+        .with(mapperTestBuilder()
+            .addLine("DataType value = new DataType.Builder().setName(\"Alice\").build();")
+            .addLine("assertEquals(\"{'name':'Alice','tags':[]}\",")
+            .addLine("    mapper.writeValueAsString(value).replace('\"', '\\''));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .compiles()
+        .withNoWarnings();
+  }
+
+  @Test
+  public void notGeneratedForIgnoredProperties() {
+    assertNoStreamingDeserializer(new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+        .addLine("public interface DataType {")
+        .addLine("  String getName();")
+        .addLine("  @%s int getAge();", JsonIgnore.class)
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {}")
+        .addLine("}")
+        .build());
+  }
+
+  @Test
+  public void notGeneratedForUnrecognizedGetterAnnotations() {
+    assertNoStreamingDeserializer(new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+        .addLine("public interface DataType {")
+        .addLine("  String getName();")
+        .addLine("  @%s(shape = %s.Shape.STRING) int getAge();", JsonFormat.class, JsonFormat.class)
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {}")
+        .addLine("}")
+        .build());
+  }
+
+  @Test
+  public void notGeneratedForUnrecognizedJsonPropertyAttributes() {
+    assertNoStreamingDeserializer(new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+        .addLine("public interface DataType {")
+        .addLine("  String getName();")
+        .addLine("  @%s(access = %s.Access.READ_ONLY) int getAge();",
+            JsonProperty.class, JsonProperty.class)
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {}")
+        .addLine("}")
+        .build());
+  }
+
+  @Test
+  public void notGeneratedForAnnotatedBuilder() {
+    assertNoStreamingDeserializer(new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+        .addLine("public interface DataType {")
+        .addLine("  String getName();")
+        .addLine("")
+        .addLine("  @%s(ignoreUnknown = true)", JsonIgnoreProperties.class)
+        .addLine("  class Builder extends DataType_Builder {}")
+        .addLine("}")
+        .build());
+  }
+
+  @Test
+  public void notGeneratedForAnnotatedBuilderMethods() {
+    assertNoStreamingDeserializer(new SourceBuilder()
+        .addLine("package com.example;")
+        .addLine("@%s", FreeBuilder.class)
+        .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+        .addLine("public interface DataType {")
+        .addLine("  String getName();")
+        .addLine("")
+        .addLine("  class Builder extends DataType_Builder {")
+        .addLine("    @%s public void other(String key, Object value) {}", JsonAnySetter.class)
+        .addLine("  }")
+        .addLine("}")
+        .build());
+  }
+
+  private void assertNoStreamingDeserializer(JavaFileObject dataType) {
+    behaviorTester
+        .with(new Processor(features))
+        .with(dataType)
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_JsonDeserializer\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void notGeneratedByDefault() {
+    behaviorTester
+        .with(new Processor(new StaticFeatureSet()))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("@%s(builder = DataType.Builder.class)", JsonDeserialize.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("Class<?> generatedBuilder = DataType.Builder.class.getSuperclass();")
+            .addLine("for (Class<?> nested : generatedBuilder.getClasses()) {")
+            .addLine("  assertFalse(nested.getSimpleName().equals(\"Value_JsonDeserializer\"));")
+            .addLine("}")
+            .build())
+        .runTest();
+  }
+
+  /** Returns a test builder declaring a {@code mapper} that accepts single-quoted JSON. */
+  private static TestBuilder mapperTestBuilder() {
+    return testBuilder()
+        .addLine("%s mapper = new %s()", ObjectMapper.class, ObjectMapper.class)
+        .addLine("    .configure(%s.Feature.ALLOW_SINGLE_QUOTES, true);", JsonParser.class);
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2018 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.inferred.freebuilder.processor;
+
+import org.inferred.freebuilder.FreeBuilder;
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.testing.BehaviorTester;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory;
+import org.inferred.freebuilder.processor.util.testing.ParameterizedBehaviorTestFactory.Shared;
+import org.inferred.freebuilder.processor.util.testing.SourceBuilder;
+import org.inferred.freebuilder.processor.util.testing.TestBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+import org.junit.runners.Parameterized.UseParametersRunnerFactory;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+@RunWith(Parameterized.class)
+@UseParametersRunnerFactory(ParameterizedBehaviorTestFactory.class)
+public class WitherMethodTest {
+
+  @Parameters(name = "{0}")
+  public static List<FeatureSet> featureSets() {
+    return FeatureSets.ALL;
+  }
+
+  private static final JavaFileObject DATA_TYPE = new SourceBuilder()
+      .addLine("package com.example;")
+      .addLine("@%s", FreeBuilder.class)
+      .addLine("public interface DataType {")
+      .addLine("  String getName();")
+      .addLine("  int getAge();")
+      .addLine("  @%s String getNickname();", Nullable.class)
+      .addLine("  %s<String> getTags();", List.class)
+      .addLine("")
+      .addLine("  DataType withName(String name);")
+      .addLine("  DataType withAge(int age);")
+      .addLine("  DataType withNickname(@%s String nickname);", Nullable.class)
+      .addLine("  DataType withTags(%s<String> tags);", List.class)
+      .addLine("")
+      .addLine("  class Builder extends DataType_Builder {}")
+      .addLine("}")
+      .build();
+
+  @Parameter public FeatureSet features;
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+  @Shared public BehaviorTester behaviorTester;
+
+  @Test
+  public void withReturnsCopyWithPropertyChanged() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = value.withAge(29);")
+            .addLine("DataType expected = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(29)")
+            .addLine("    .addTags(\"x\")")
+            .addLine("    .build();")
+            .addLine("assertEquals(expected, copy);")
+            .addLine("assertEquals(28, value.getAge());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withSharesUnchangedProperties() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .addTags(\"x\", \"y\")")
+            .addLine("    .build();")
+            .addLine("DataType copy = value.withName(\"Bob\");")
+            .addLine("assertEquals(\"Bob\", copy.getName());")
+            .addLine("assertSame(value.getTags(), copy.getTags());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withCopiesCollectionArgument() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .build();")
+            .addLine("java.util.List<String> tags = new java.util.ArrayList<String>();")
+            .addLine("tags.add(\"x\");")
+            .addLine("DataType copy = value.withTags(tags);")
+            .addLine("tags.add(\"y\");")
+            .addLine("assertThat(copy.getTags()).containsExactly(\"x\");")
+            .addLine("assertThat(value.getTags()).isEmpty();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withThrowsNpeForNullArgument() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .build()")
+            .addLine("    .withName(null);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withThrowsNpeForNullElement() {
+    thrown.expect(NullPointerException.class);
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .build()")
+            .addLine("    .withTags(java.util.Arrays.asList(\"x\", null));")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withAcceptsNullForNullableProperty() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .setNickname(\"Al\")")
+            .addLine("    .build();")
+            .addLine("assertNull(value.withNickname(null).getNickname());")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withDelegatesToBuilderIfSetterOverridden() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("age must be non-negative");
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType {")
+            .addLine("  String getName();")
+            .addLine("  int getAge();")
+            .addLine("  DataType withAge(int age);")
+            .addLine("")
+            .addLine("  class Builder extends DataType_Builder {")
+            .addLine("    @Override public Builder setAge(int age) {")
+            .addLine("      if (age < 0) {")
+            .addLine("        throw new IllegalArgumentException(\"age must be non-negative\");")
+            .addLine("      }")
+            .addLine("      return super.setAge(age);")
+            .addLine("    }")
+            .addLine("  }")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .setAge(28)")
+            .addLine("    .build();")
+            .addLine("value.withAge(-1);")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withOnPartialPreservesUnsetProperties() {
+    thrown.expect(UnsupportedOperationException.class);
+    thrown.expectMessage("age not set");
+    behaviorTester
+        .with(new Processor(features))
+        .with(DATA_TYPE)
+        .with(testBuilder()
+            .addLine("DataType value = new DataType.Builder()")
+            .addLine("    .setName(\"Alice\")")
+            .addLine("    .buildPartial()")
+            .addLine("    .withName(\"Bob\");")
+            .addLine("assertEquals(\"Bob\", value.getName());")
+            .addLine("value.getAge();")
+            .build())
+        .runTest();
+  }
+
+  @Test
+  public void withSupportsGenericTypes() {
+    behaviorTester
+        .with(new Processor(features))
+        .with(new SourceBuilder()
+            .addLine("package com.example;")
+            .addLine("@%s", FreeBuilder.class)
+            .addLine("public interface DataType<A, B extends Number> {")
+            .addLine("  A getPropertyA();")
+            .addLine("  B getPropertyB();")
+            .addLine("  DataType<A, B> withPropertyB(B propertyB);")
+            .addLine("")
+            .addLine("  class Builder<A, B extends Number> extends DataType_Builder<A, B> {}")
+            .addLine("}")
+            .build())
+        .with(testBuilder()
+            .addLine("DataType<String, Integer> value = new DataType.Builder<String, Integer>()")
+            .addLine("    .setPropertyA(\"a\")")
+            .addLine("    .setPropertyB(1)")
+            .addLine("    .build()")
+            .addLine("    .withPropertyB(2);")
+            .addLine("assertEquals(\"a\", value.getPropertyA());")
+            .addLine("assertEquals(2, (int) value.getPropertyB());")
+            .build())
+        .runTest();
+  }
+
+  private static TestBuilder testBuilder() {
+    return new TestBuilder()
+        .addImport("com.example.DataType");
+  }
+}
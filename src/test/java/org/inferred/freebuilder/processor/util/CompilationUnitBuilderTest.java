@@ -26,6 +26,9 @@ import static org.mockito.Mockito.when;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
+import org.inferred.freebuilder.processor.util.feature.FeatureSet;
+import org.inferred.freebuilder.processor.util.feature.SlimApi;
+import org.inferred.freebuilder.processor.util.feature.SlimApi.Omission;
 import org.inferred.freebuilder.processor.util.feature.StaticFeatureSet;
 import org.inferred.freebuilder.processor.util.testing.ModelRule;
 import org.junit.Before;
@@ -39,6 +42,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.processing.Filer;
@@ -92,6 +96,47 @@ public class CompilationUnitBuilderTest {
         source.toString());
   }
 
+  @Test
+  public void testSlimApiOmitsJavadoc() {
+    CompilationUnitBuilder source = newSourceWriter(
+        "com.example", "Bar", new StaticFeatureSet(SlimApi.omitting(Omission.JAVADOC)));
+    source
+        .addLine("/**")
+        .addLine(" * Bar.")
+        .addLine(" */")
+        .addLine("public class Bar {")
+        .addLine("  /** Returns 1. */")
+        .addLine("  public int one() {")
+        .addLine("    /* Not javadoc */")
+        .addLine("    return 1;")
+        .addLine("  }")
+        .addLine("}");
+    assertEquals(
+        "// Autogenerated code. Do not modify.\n"
+            + "package com.example;\n\n"
+            + "public class Bar {\n"
+            + "  public int one() {\n"
+            + "    /* Not javadoc */\n"
+            + "    return 1;\n"
+            + "  }\n"
+            + "}\n",
+        source.toString());
+  }
+
+  @Test
+  public void testSlimApiDoesNotImportTypesOnlyLinkedFromJavadoc() {
+    CompilationUnitBuilder source = newSourceWriter(
+        "com.example", "Bar", new StaticFeatureSet(SlimApi.omitting(Omission.JAVADOC)));
+    source
+        .addLine("/** See {@link %s}. */", BitSet.class)
+        .addLine("public class Bar {}");
+    assertEquals(
+        "// Autogenerated code. Do not modify.\n"
+            + "package com.example;\n\n"
+            + "public class Bar {}\n",
+        source.toString());
+  }
+
   @Test
   public void testAddLine_typeInSamePackage() {
     CompilationUnitBuilder source = newSourceWriter("com.example", "Bar");
@@ -207,12 +252,17 @@ public class CompilationUnitBuilderTest {
   }
 
   private CompilationUnitBuilder newSourceWriter(String pkg, String simpleName) {
+    return newSourceWriter(pkg, simpleName, new StaticFeatureSet());
+  }
+
+  private CompilationUnitBuilder newSourceWriter(
+      String pkg, String simpleName, FeatureSet features) {
     ProcessingEnvironment environment = Mockito.spy(model.environment());
     doReturn(filer).when(environment).getFiler();
     return new CompilationUnitBuilder(
         environment,
         QualifiedName.of(pkg, simpleName),
         ImmutableSet.<QualifiedName>of(),
-        new StaticFeatureSet());
+        features);
   }
 }
@@ -38,6 +38,7 @@ import org.inferred.freebuilder.processor.util.testing.TestBuilder.TestFile;
 import org.inferred.freebuilder.processor.util.testing.TestBuilder.TestSource;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -49,6 +50,7 @@ import java.util.Set;
 import javax.annotation.processing.Processor;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileManager;
@@ -186,6 +188,34 @@ class SingleBehaviorTester implements BehaviorTester {
         throw new ClassNotFoundException();
       }
     }
+
+    /**
+     * Serves compiled source class files, so tests can inspect their bytecode, and any other
+     * resources written by the processor.
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+      try {
+        if (name.endsWith(".class")) {
+          String className =
+              name.substring(0, name.length() - ".class".length()).replace('/', '.');
+          JavaFileObject classFile = fileManager.getJavaFileForInput(
+              StandardLocation.CLASS_OUTPUT, className, CLASS);
+          if (classFile != null) {
+            return classFile.openInputStream();
+          }
+        } else {
+          FileObject resource = fileManager.getFileForInput(
+              StandardLocation.CLASS_OUTPUT, "", name);
+          if (resource != null) {
+            return resource.openInputStream();
+          }
+        }
+      } catch (IOException e) {
+        return null;
+      }
+      return super.getResourceAsStream(name);
+    }
   }
 
   /**
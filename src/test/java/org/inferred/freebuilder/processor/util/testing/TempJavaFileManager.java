@@ -126,7 +126,8 @@ public class TempJavaFileManager implements JavaFileManager {
 
   @Override
   public boolean isSameFile(FileObject a, FileObject b) {
-    if (a instanceof InMemoryJavaFile || b instanceof InMemoryJavaFile) {
+    if (a instanceof InMemoryJavaFile || b instanceof InMemoryJavaFile
+        || a instanceof InMemoryFile || b instanceof InMemoryFile) {
       return a == b;
     }
     return delegate.isSameFile(a, b);